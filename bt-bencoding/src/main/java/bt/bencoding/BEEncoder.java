@@ -25,7 +25,10 @@ import bt.bencoding.model.BEString;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -82,7 +85,7 @@ public class BEEncoder {
 
         BigInteger value = integer.getValue();
         write(out, BEParser.INTEGER_PREFIX);
-        write(out, Integer.toString(value.intValueExact()).getBytes(defaultCharset));
+        write(out, value.toString().getBytes(defaultCharset));
         write(out, BEParser.EOF);
     }
 
@@ -132,6 +135,178 @@ public class BEEncoder {
         write(out, BEParser.EOF);
     }
 
+    /**
+     * Calculate the size of the object's bencoded representation.
+     *
+     * @return Number of bytes, that {@link #encode(BEObject, ByteBuffer)} will write
+     * @since 1.8
+     */
+    public int encodedLength(BEObject<?> object) {
+        Objects.requireNonNull(object);
+
+        switch (object.getType()) {
+            case STRING: {
+                return stringLength(((BEString) object).getValue().length);
+            }
+            case INTEGER: {
+                // prefix, value, terminator
+                return 1 + integerLength(((BEInteger) object).getValue()) + 1;
+            }
+            case LIST: {
+                int length = 2; // prefix and terminator
+                for (BEObject<?> value : ((BEList) object).getValue()) {
+                    length += encodedLength(value);
+                }
+                return length;
+            }
+            case MAP: {
+                int length = 2; // prefix and terminator
+                for (Map.Entry<String, BEObject<?>> e : ((BEMap) object).getValue().entrySet()) {
+                    length += stringLength(utf8Length(e.getKey()));
+                    length += encodedLength(e.getValue());
+                }
+                return length;
+            }
+            default: {
+                throw new IllegalArgumentException("Unknown type: " + object.getType().name().toLowerCase());
+            }
+        }
+    }
+
+    /**
+     * Write bencoded object directly to a buffer, without intermediate copies.
+     *
+     * <p>Nothing is written, if the buffer does not have enough space for the whole object
+     * (see {@link #encodedLength(BEObject)}).
+     *
+     * @return true if the object has been written, false if the buffer does not have enough space
+     * @since 1.8
+     */
+    public boolean encode(BEObject<?> object, ByteBuffer buffer) {
+        if (buffer.remaining() < encodedLength(object)) {
+            return false;
+        }
+        write(object, buffer);
+        return true;
+    }
+
+    private void write(BEObject<?> object, ByteBuffer buffer) {
+        switch (object.getType()) {
+            case STRING: {
+                writeString(((BEString) object).getValue(), buffer);
+                break;
+            }
+            case INTEGER: {
+                buffer.put((byte) BEParser.INTEGER_PREFIX);
+                writeInteger(((BEInteger) object).getValue(), buffer);
+                buffer.put((byte) BEParser.EOF);
+                break;
+            }
+            case LIST: {
+                buffer.put((byte) BEParser.LIST_PREFIX);
+                for (BEObject<?> value : ((BEList) object).getValue()) {
+                    write(value, buffer);
+                }
+                buffer.put((byte) BEParser.EOF);
+                break;
+            }
+            case MAP: {
+                buffer.put((byte) BEParser.MAP_PREFIX);
+                Map<String, BEObject<?>> map = ((BEMap) object).getValue();
+                List<Map.Entry<byte[], BEObject<?>>> entries = new ArrayList<>(map.size());
+                for (Map.Entry<String, BEObject<?>> e : map.entrySet()) {
+                    entries.add(new AbstractMap.SimpleImmutableEntry<>(e.getKey().getBytes(defaultCharset), e.getValue()));
+                }
+                entries.sort(Map.Entry.comparingByKey(ByteStringComparator.comparator()));
+                for (Map.Entry<byte[], BEObject<?>> e : entries) {
+                    writeString(e.getKey(), buffer);
+                    write(e.getValue(), buffer);
+                }
+                buffer.put((byte) BEParser.EOF);
+                break;
+            }
+            default: {
+                throw new IllegalArgumentException("Unknown type: " + object.getType().name().toLowerCase());
+            }
+        }
+    }
+
+    private static void writeString(byte[] bytes, ByteBuffer buffer) {
+        writeDecimal(bytes.length, buffer);
+        buffer.put((byte) ':');
+        buffer.put(bytes);
+    }
+
+    private static int stringLength(int length) {
+        // length, delimiter, body
+        return decimalLength(length) + 1 + length;
+    }
+
+    private static int integerLength(BigInteger value) {
+        // values, that don't fit in a long, are rare enough to not bother about the extra copy
+        return isLong(value) ? decimalLength(value.longValue()) : value.toString().length();
+    }
+
+    private static void writeInteger(BigInteger value, ByteBuffer buffer) {
+        if (isLong(value)) {
+            writeDecimal(value.longValue(), buffer);
+        } else {
+            buffer.put(value.toString().getBytes(defaultCharset));
+        }
+    }
+
+    private static boolean isLong(BigInteger value) {
+        // excludes Long.MIN_VALUE, which can't be negated
+        return value.bitLength() < Long.SIZE - 1;
+    }
+
+    private static void writeDecimal(long value, ByteBuffer buffer) {
+        long v = value;
+        if (v < 0) {
+            buffer.put((byte) '-');
+            v = -v;
+        }
+        int digits = decimalLength(v);
+        int position = buffer.position();
+        for (int i = digits - 1; i >= 0; i--) {
+            buffer.put(position + i, (byte) ('0' + v % 10));
+            v /= 10;
+        }
+        buffer.position(position + digits);
+    }
+
+    private static int decimalLength(long value) {
+        int length = 1;
+        if (value < 0) {
+            length++;
+            value = -value;
+        }
+        while (value >= 10) {
+            value /= 10;
+            length++;
+        }
+        return length;
+    }
+
+    private static int utf8Length(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                // unpaired surrogates are encoded as a single replacement byte ('?')
+                length += Character.isSurrogate(c) ? 1 : 3;
+            }
+        }
+        return length;
+    }
+
     private void write(OutputStream out, int i) throws IOException {
         out.write(i);
     }
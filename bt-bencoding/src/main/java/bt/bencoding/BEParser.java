@@ -25,6 +25,7 @@ import bt.bencoding.model.BEString;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
 /**
@@ -41,6 +42,7 @@ public class BEParser implements AutoCloseable {
     static final char MAP_PREFIX = 'd';
 
     private Scanner scanner;
+    private BufferScanner bufferScanner;
     private final BEType type;
     private Object parsedObject;
 
@@ -75,6 +77,9 @@ public class BEParser implements AutoCloseable {
     /**
      * Create a parser for the provided bencoded document.
      *
+     * <p>The array is not copied: parsed objects are views of the caller's array,
+     * so it must not be modified while the objects are in use.
+     *
      * @param bs Bencoded document.
      * @since 1.0
      */
@@ -83,8 +88,27 @@ public class BEParser implements AutoCloseable {
         if (bs == null || bs.length == 0) {
             throw new IllegalArgumentException("Can't parse bytes array: null or empty");
         }
-        this.scanner = new Scanner(bs);
-        this.type = getTypeForPrefix((char) scanner.peek());
+        this.bufferScanner = new BufferScanner(ByteBuffer.wrap(bs));
+        this.type = getTypeForPrefix((char) bufferScanner.peek());
+    }
+
+    /**
+     * Create a parser for the provided bencoded document.
+     *
+     * <p>Parsed objects are views of the provided buffer, and their binary representation
+     * is not copied until it's requested, so the buffer must not be modified while the objects are in use.
+     * Position and limit of the buffer are not modified by the parser.
+     *
+     * @param buffer Buffer, containing a bencoded document between its position and limit.
+     * @since 1.8
+     */
+    public BEParser(ByteBuffer buffer) {
+
+        if (buffer == null || !buffer.hasRemaining()) {
+            throw new IllegalArgumentException("Can't parse buffer: null or empty");
+        }
+        this.bufferScanner = new BufferScanner(buffer);
+        this.type = getTypeForPrefix((char) bufferScanner.peek());
     }
 
     /**
@@ -194,13 +218,39 @@ public class BEParser implements AutoCloseable {
         return readObject(BEType.MAP, BEMapBuilder.class);
     }
 
+    /**
+     * Get the number of bytes, that the document's root object occupies in the source.
+     * Useful when the source contains some other data after the bencoded document.
+     *
+     * @throws IllegalStateException if the root object has not been read yet
+     * @since 1.8
+     */
+    public int getRootObjectLength() {
+        if (parsedObject == null) {
+            throw new IllegalStateException("Root object has not been read yet");
+        }
+        if (bufferScanner != null) {
+            return bufferScanner.getScannedLength();
+        }
+        // stream scanner reads one byte past the object, so rely on the object's own content
+        return ((BEObject<?>) parsedObject).getContent().length;
+    }
+
     private <T extends BEObject> T readObject(BEType type, Class<? extends BEObjectBuilder<T>> builderClass) {
 
         assertType(type);
 
         @SuppressWarnings("unchecked")
         T result = (T) parsedObject;
-        if (result == null) {
+        if (result == null && bufferScanner != null) {
+            try {
+                @SuppressWarnings("unchecked")
+                T object = (T) bufferScanner.readObject();
+                parsedObject = result = object;
+            } catch (Exception e) {
+                throw new BtParseException("Failed to read from encoded data", bufferScanner.getScannedContents(), e);
+            }
+        } else if (result == null) {
             try {
                 // relying on the default constructor being present
                 parsedObject = result = scanner.readObject(builderClass.newInstance());
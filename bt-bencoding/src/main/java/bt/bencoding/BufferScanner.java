@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.bencoding;
+
+import bt.bencoding.model.BEInteger;
+import bt.bencoding.model.BEList;
+import bt.bencoding.model.BEMap;
+import bt.bencoding.model.BEObject;
+import bt.bencoding.model.BEString;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Scans a bencoded document, that is entirely available in memory.
+ *
+ * <p>Unlike {@link Scanner}, does not copy the scanned data:
+ * parsed objects keep a reference to the source buffer along with their offset and length in it,
+ * and copy their binary representation only when it's requested.
+ *
+ * @since 1.8
+ */
+class BufferScanner {
+
+    private static final Charset KEY_CHARSET = Charset.forName("UTF-8");
+
+    // longest decimal number, that is guaranteed to fit into long
+    private static final int MAX_LONG_DIGITS = 18;
+
+    private final ByteBuffer source;
+    private final int start;
+    private final int limit;
+    private int position;
+
+    /**
+     * @param source Buffer, containing the document between its position and limit.
+     *               Position and limit of the buffer are not modified.
+     */
+    BufferScanner(ByteBuffer source) {
+        this.source = source;
+        this.start = source.position();
+        this.limit = source.limit();
+        this.position = start;
+    }
+
+    int peek() {
+        return (position < limit) ? (source.get(position) & 0xFF) : -1;
+    }
+
+    int getScannedLength() {
+        return position - start;
+    }
+
+    byte[] getScannedContents() {
+        byte[] contents = new byte[position - start];
+        ByteBuffer view = source.duplicate();
+        view.position(start);
+        view.get(contents);
+        return contents;
+    }
+
+    BEObject<?> readObject() {
+        int b = peek();
+        if (b == -1) {
+            throw new IllegalStateException("Unexpected end of data");
+        }
+        BEType type;
+        try {
+            type = BEParser.getTypeForPrefix((char) b);
+        } catch (IllegalStateException e) {
+            // include the offending byte in the scanned contents
+            position++;
+            throw e;
+        }
+        switch (type) {
+            case STRING: {
+                return readString();
+            }
+            case INTEGER: {
+                return readInteger();
+            }
+            case LIST: {
+                return readList();
+            }
+            case MAP: {
+                return readMap();
+            }
+            default: {
+                throw new IllegalStateException("Invalid type prefix: " + (char) b);
+            }
+        }
+    }
+
+    BEString readString() {
+        int length = readStringLength();
+        BEString string = new BEString(source, position, length);
+        position += length;
+        return string;
+    }
+
+    BEInteger readInteger() {
+        int begin = position;
+        expect(BEParser.INTEGER_PREFIX);
+
+        boolean negative = (peek() == '-');
+        if (negative) {
+            position++;
+        }
+        int digitsStart = position;
+        long value = 0;
+        int b;
+        while ((b = next()) != BEParser.EOF) {
+            if (!isDigit(b)) {
+                throw new IllegalArgumentException("Unexpected token while reading integer (as ASCII char): " + (char) b);
+            }
+            value = value * 10 + (b - '0');
+        }
+        int digits = position - 1 - digitsStart;
+        if (digits == 0) {
+            throw new IllegalStateException("Can't build integer -- no digits");
+        }
+
+        BigInteger result;
+        if (digits <= MAX_LONG_DIGITS) {
+            result = BigInteger.valueOf(negative ? -value : value);
+        } else {
+            result = new BigInteger(decode(begin + 1, position - 1 - (begin + 1)));
+        }
+        return new BEInteger(source, begin, position - begin, result);
+    }
+
+    BEList readList() {
+        int begin = position;
+        expect(BEParser.LIST_PREFIX);
+
+        List<BEObject<?>> values = new ArrayList<>();
+        while (peek() != BEParser.EOF) {
+            values.add(readObject());
+        }
+        position++;
+        return new BEList(source, begin, position - begin, values);
+    }
+
+    BEMap readMap() {
+        int begin = position;
+        expect(BEParser.MAP_PREFIX);
+
+        Map<String, BEObject<?>> values = new HashMap<>();
+        while (peek() != BEParser.EOF) {
+            String key = readKey();
+            values.put(key, readObject());
+        }
+        position++;
+        return new BEMap(source, begin, position - begin, values);
+    }
+
+    private String readKey() {
+        int length = readStringLength();
+        String key = decode(position, length);
+        position += length;
+        return key;
+    }
+
+    private int readStringLength() {
+        int b = next();
+        if (!isDigit(b)) {
+            throw new IllegalArgumentException("Unexpected token while reading string's length (as ASCII char): " + (char) b);
+        }
+        long length = b - '0';
+        while ((b = next()) != BEStringBuilder.DELIMITER) {
+            if (!isDigit(b)) {
+                throw new IllegalArgumentException("Unexpected token while reading string's length (as ASCII char): " + (char) b);
+            }
+            length = length * 10 + (b - '0');
+            if (length > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("String is too long");
+            }
+        }
+        if (position + length > limit) {
+            throw new IllegalStateException("Can't build string: insufficient content");
+        }
+        return (int) length;
+    }
+
+    private void expect(char prefix) {
+        int b = next();
+        if (b != prefix) {
+            throw new IllegalArgumentException("Unexpected token (as ASCII char): " + (char) b + ", expected: " + prefix);
+        }
+    }
+
+    private int next() {
+        int b = peek();
+        if (b == -1) {
+            throw new IllegalStateException("Unexpected end of data -- content was not terminated");
+        }
+        position++;
+        return b;
+    }
+
+    private String decode(int offset, int length) {
+        if (source.hasArray()) {
+            return new String(source.array(), source.arrayOffset() + offset, length, KEY_CHARSET);
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer view = source.duplicate();
+        view.position(offset);
+        view.get(bytes);
+        return new String(bytes, KEY_CHARSET);
+    }
+
+    private static boolean isDigit(int b) {
+        return b >= '0' && b <= '9';
+    }
+}
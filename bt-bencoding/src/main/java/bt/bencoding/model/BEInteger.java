@@ -22,6 +22,7 @@ import bt.bencoding.BEType;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 
 /**
  * BEncoded integer.
@@ -33,7 +34,10 @@ import java.math.BigInteger;
  */
 public class BEInteger implements BEObject<BigInteger> {
 
-    private byte[] content;
+    private volatile byte[] content;
+    private final ByteBuffer source;
+    private final int offset;
+    private final int length;
     private BigInteger value;
     private BEEncoder encoder;
 
@@ -44,6 +48,27 @@ public class BEInteger implements BEObject<BigInteger> {
      */
     public BEInteger(byte[] content, BigInteger value) {
         this.content = content;
+        this.source = null;
+        this.offset = 0;
+        this.length = 0;
+        this.value = value;
+        encoder = BEEncoder.encoder();
+    }
+
+    /**
+     * @param source Buffer, containing binary representation of this integer.
+     *               The buffer must not be modified, as the representation is copied
+     *               only when it is requested for the first time.
+     * @param offset Absolute offset of this integer's binary representation in the buffer
+     * @param length Length of this integer's binary representation
+     * @param value Parsed value
+     * @since 1.8
+     */
+    public BEInteger(ByteBuffer source, int offset, int length, BigInteger value) {
+        this.content = null;
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
         this.value = value;
         encoder = BEEncoder.encoder();
     }
@@ -55,6 +80,10 @@ public class BEInteger implements BEObject<BigInteger> {
 
     @Override
     public byte[] getContent() {
+        byte[] content = this.content;
+        if (content == null) {
+            this.content = content = BufferUtil.toByteArray(source, offset, length);
+        }
         return content;
     }
 
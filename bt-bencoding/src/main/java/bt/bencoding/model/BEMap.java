@@ -21,6 +21,7 @@ import bt.bencoding.BEType;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Map;
@@ -32,7 +33,10 @@ import java.util.Map;
  */
 public class BEMap implements BEObject<Map<String, BEObject<?>>> {
 
-    private byte[] content;
+    private volatile byte[] content;
+    private final ByteBuffer source;
+    private final int offset;
+    private final int length;
     private Map<String, BEObject<?>> value;
     private BEEncoder encoder;
 
@@ -43,6 +47,27 @@ public class BEMap implements BEObject<Map<String, BEObject<?>>> {
      */
     public BEMap(byte[] content, Map<String, BEObject<?>> value) {
         this.content = content;
+        this.source = null;
+        this.offset = 0;
+        this.length = 0;
+        this.value = Collections.unmodifiableMap(value);
+        encoder = BEEncoder.encoder();
+    }
+
+    /**
+     * @param source Buffer, containing binary representation of this dictionary.
+     *               The buffer must not be modified, as the representation is copied
+     *               only when it is requested for the first time.
+     * @param offset Absolute offset of this dictionary's binary representation in the buffer
+     * @param length Length of this dictionary's binary representation
+     * @param value Parsed value
+     * @since 1.8
+     */
+    public BEMap(ByteBuffer source, int offset, int length, Map<String, BEObject<?>> value) {
+        this.content = null;
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
         this.value = Collections.unmodifiableMap(value);
         encoder = BEEncoder.encoder();
     }
@@ -54,6 +79,10 @@ public class BEMap implements BEObject<Map<String, BEObject<?>>> {
 
     @Override
     public byte[] getContent() {
+        byte[] content = this.content;
+        if (content == null) {
+            this.content = content = BufferUtil.toByteArray(source, offset, length);
+        }
         return content;
     }
 
@@ -21,6 +21,7 @@ import bt.bencoding.BEType;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 
@@ -32,11 +33,13 @@ import java.util.Arrays;
 public class BEString implements BEObject<byte[]> {
     private static final Charset defaultCharset = Charset.forName("UTF-8");
 
-    private byte[] content;
+    private volatile byte[] content;
+    private final ByteBuffer source;
+    private final int offset;
+    private final int length;
     private BEEncoder encoder;
 
     private volatile String stringValue;
-    private final Object lock;
 
     /**
      * @param content Binary representation of this string, as read from source.
@@ -45,8 +48,26 @@ public class BEString implements BEObject<byte[]> {
      */
     public BEString(byte[] content) {
         this.content = content;
+        this.source = null;
+        this.offset = 0;
+        this.length = 0;
+        this.encoder = BEEncoder.encoder();
+    }
+
+    /**
+     * @param source Buffer, containing binary representation of this string.
+     *               The buffer must not be modified, as the representation is copied (or decoded)
+     *               only when it is requested for the first time.
+     * @param offset Absolute offset of this string's binary representation in the buffer
+     * @param length Length of this string's binary representation
+     * @since 1.8
+     */
+    public BEString(ByteBuffer source, int offset, int length) {
+        this.content = null;
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
         this.encoder = BEEncoder.encoder();
-        this.lock = new Object();
     }
 
     @Override
@@ -56,12 +77,16 @@ public class BEString implements BEObject<byte[]> {
 
     @Override
     public byte[] getContent() {
+        byte[] content = this.content;
+        if (content == null) {
+            this.content = content = BufferUtil.toByteArray(source, offset, length);
+        }
         return content;
     }
 
     @Override
     public byte[] getValue() {
-        return content;
+        return getContent();
     }
 
     @Override
@@ -70,12 +95,17 @@ public class BEString implements BEObject<byte[]> {
     }
 
     public String getValue(Charset charset) {
+        byte[] content = this.content;
+        if (content == null) {
+            // decode directly from the source, without copying the binary representation
+            return BufferUtil.decode(source, offset, length, charset);
+        }
         return new String(content, charset);
     }
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(content);
+        return Arrays.hashCode(getContent());
     }
 
     @Override
@@ -89,17 +119,15 @@ public class BEString implements BEObject<byte[]> {
             return true;
         }
 
-        return Arrays.equals(content, ((BEString) obj).getContent());
+        return Arrays.equals(getContent(), ((BEString) obj).getContent());
     }
 
     @Override
     public String toString() {
+        String stringValue = this.stringValue;
         if (stringValue == null) {
-            synchronized (lock) {
-                if (stringValue == null) {
-                    stringValue = new String(content, defaultCharset);
-                }
-            }
+            // benign race: the string may be decoded more than once
+            this.stringValue = stringValue = getValue(defaultCharset);
         }
         return stringValue;
     }
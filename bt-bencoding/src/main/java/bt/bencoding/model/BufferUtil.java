@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.bencoding.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+class BufferUtil {
+
+    /**
+     * @return Copy of the buffer's region; position and limit of the buffer are not modified
+     */
+    static byte[] toByteArray(ByteBuffer source, int offset, int length) {
+        byte[] bytes = new byte[length];
+        if (source.hasArray()) {
+            System.arraycopy(source.array(), source.arrayOffset() + offset, bytes, 0, length);
+        } else {
+            ByteBuffer view = source.duplicate();
+            view.position(offset);
+            view.get(bytes);
+        }
+        return bytes;
+    }
+
+    /**
+     * @return Decoded buffer's region; position and limit of the buffer are not modified
+     */
+    static String decode(ByteBuffer source, int offset, int length, Charset charset) {
+        if (source.hasArray()) {
+            return new String(source.array(), source.arrayOffset() + offset, length, charset);
+        }
+        ByteBuffer view = source.duplicate();
+        view.limit(offset + length);
+        view.position(offset);
+        return charset.decode(view).toString();
+    }
+}
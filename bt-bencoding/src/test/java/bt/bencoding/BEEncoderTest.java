@@ -26,6 +26,7 @@ import org.junit.Test;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -33,7 +34,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class BEEncoderTest {
 
@@ -91,6 +95,84 @@ public class BEEncoderTest {
         assertEquals(m, parser.readMap().getValue());
     }
 
+    @Test
+    public void testEncode_ByteBuffer() {
+        BEMap map = createNestedMap();
+        byte[] expected = encode(map);
+
+        BEEncoder encoder = BEEncoder.encoder();
+        assertEquals(expected.length, encoder.encodedLength(map));
+
+        ByteBuffer buffer = ByteBuffer.allocate(expected.length + 1);
+        buffer.put((byte) 0);
+        assertTrue(encoder.encode(map, buffer));
+        assertEquals(expected.length + 1, buffer.position());
+
+        byte[] actual = new byte[expected.length];
+        buffer.position(1);
+        buffer.get(actual);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void testEncode_ByteBuffer_InsufficientSpace() {
+        BEMap map = createNestedMap();
+        ByteBuffer buffer = ByteBuffer.allocate(encode(map).length - 1);
+
+        assertFalse(BEEncoder.encoder().encode(map, buffer));
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    public void testEncode_ByteBuffer_NegativeInteger() {
+        BEInteger i = new BEInteger(null, BigInteger.valueOf(-1234567890));
+        ByteBuffer buffer = ByteBuffer.allocate(BEEncoder.encoder().encodedLength(i));
+
+        assertTrue(BEEncoder.encoder().encode(i, buffer));
+        assertArrayEquals(encode(i), buffer.array());
+    }
+
+    @Test
+    public void testEncode_ByteBuffer_LargeIntegers() {
+        BigInteger[] values = new BigInteger[]{
+                BigInteger.valueOf(Integer.MAX_VALUE).add(BigInteger.ONE),
+                BigInteger.valueOf(Long.MAX_VALUE),
+                BigInteger.valueOf(Long.MIN_VALUE),
+                BigInteger.valueOf(Long.MAX_VALUE).multiply(BigInteger.TEN).negate()
+        };
+        for (BigInteger value : values) {
+            BEInteger i = new BEInteger(null, value);
+            ByteBuffer buffer = ByteBuffer.allocate(BEEncoder.encoder().encodedLength(i));
+
+            assertTrue(BEEncoder.encoder().encode(i, buffer));
+            assertArrayEquals(encode(i), buffer.array());
+            assertArrayEquals(("i" + value + "e").getBytes(defaultCharset), buffer.array());
+        }
+    }
+
+    private static BEMap createNestedMap() {
+        BEString s = new BEString("some string1:2#3".getBytes(defaultCharset));
+        BEInteger i = new BEInteger(null, BigInteger.valueOf(-1234567890));
+        BEMap emptyMap = new BEMap(null, new HashMap<>());
+
+        Map<String, BEObject<?>> m = new HashMap<>();
+        m.put("list", new BEList(null, Arrays.asList(s, i, emptyMap)));
+        m.put("k\u00e9y", s);
+        m.put("key", emptyMap);
+        m.put("a", new BEInteger(null, BigInteger.ZERO));
+        return new BEMap(null, m);
+    }
+
+    private static byte[] encode(BEObject<?> object) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            object.writeTo(out);
+        } catch (IOException e) {
+            // can't happen
+        }
+        return out.toByteArray();
+    }
+
     private static BEParser encodeAndCreateParser(BEObject<?> object) {
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         try {
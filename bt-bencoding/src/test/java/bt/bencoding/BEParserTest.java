@@ -16,12 +16,16 @@
 
 package bt.bencoding;
 
+import bt.bencoding.model.BEInteger;
 import bt.bencoding.model.BEList;
+import bt.bencoding.model.BEMap;
 import bt.bencoding.model.BEObject;
 import bt.bencoding.model.BEString;
 import org.junit.Test;
 
 import java.math.BigInteger;
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -143,4 +147,79 @@ public class BEParserTest {
                         .collect(Collectors.toList())
                         .toArray());
     }
+
+    @Test
+    public void testParse_Integer_Long() {
+        BEParser parser = new BEParser("i-123456789012345678901234567890e".getBytes());
+        assertEquals(new BigInteger("-123456789012345678901234567890"), parser.readInteger().getValue());
+    }
+
+    @Test
+    public void testParse_Map_Content() {
+        byte[] info = "d6:lengthi1e4:name4:spame".getBytes(charset);
+        byte[] document = ("d4:info" + new String(info, charset) + "e").getBytes(charset);
+
+        BEMap map = new BEParser(document).readMap();
+        assertArrayEquals(document, map.getContent());
+        assertArrayEquals(info, map.getValue().get("info").getContent());
+
+        BEMap infoMap = (BEMap) map.getValue().get("info");
+        assertArrayEquals("i1e".getBytes(charset), infoMap.getValue().get("length").getContent());
+        assertEquals(BigInteger.ONE, ((BEInteger) infoMap.getValue().get("length")).getValue());
+        assertEquals("spam", infoMap.getValue().get("name").toString());
+    }
+
+    @Test
+    public void testParse_TrailingData() {
+        byte[] document = "d1:ai1ee<raw data>".getBytes(charset);
+        BEMap map = new BEParser(document).readMap();
+        assertEquals(8, map.getContent().length);
+    }
+
+    @Test
+    public void testParse_RootObjectLength() {
+        byte[] document = "d1:ai1ee<raw data>".getBytes(charset);
+
+        BEParser bufferParser = new BEParser(ByteBuffer.wrap(document));
+        bufferParser.readMap();
+        assertEquals(8, bufferParser.getRootObjectLength());
+
+        BEParser streamParser = new BEParser(new ByteArrayInputStream(document));
+        streamParser.readMap();
+        assertEquals(8, streamParser.getRootObjectLength());
+    }
+
+    @Test
+    public void testParse_ByteBuffer() {
+        ByteBuffer buffer = ByteBuffer.wrap("xxl4:spami1eeyy".getBytes(charset));
+        buffer.position(2);
+        buffer.limit(buffer.capacity() - 2);
+
+        BEList list = new BEParser(buffer).readList();
+        assertArrayEquals("l4:spami1ee".getBytes(charset), list.getContent());
+        assertEquals("spam", ((BEString) list.getValue().get(0)).getValue(charset));
+        assertEquals(2, buffer.position());
+    }
+
+    @Test
+    public void testParse_DirectByteBuffer() {
+        byte[] document = "d4:spam4:eggse".getBytes(charset);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(document.length);
+        buffer.put(document);
+        buffer.flip();
+
+        BEMap map = new BEParser(buffer).readMap();
+        assertArrayEquals(document, map.getContent());
+        assertArrayEquals("eggs".getBytes(charset), ((BEString) map.getValue().get("spam")).getValue());
+    }
+
+    @Test(expected = Exception.class)
+    public void testParse_Map_Exception_NotTerminated() {
+        new BEParser("d4:spam4:eggs".getBytes()).readMap();
+    }
+
+    @Test(expected = Exception.class)
+    public void testParse_String_Exception_InvalidLength() {
+        new BEParser("1a:s".getBytes()).readString();
+    }
 }
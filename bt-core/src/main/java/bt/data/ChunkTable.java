@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.data;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Compact list of torrent's chunks.
+ *
+ * <p>Instead of keeping a separate descriptor (with its' own data range, block set, locks and checksum) per chunk,
+ * all state is stored in a few flat arrays, shared by all chunks of the torrent:
+ * chunk hashes are kept in a single byte array, block availability -- in a single bitmask,
+ * and access to chunks' data is guarded by a fixed number of striped locks.
+ * Chunk descriptors are lightweight views over this state, which are created on demand.
+ * Two descriptors are equal, if they represent the same chunk of the same torrent.
+ *
+ * @since 1.8
+ */
+class ChunkTable extends AbstractList<ChunkDescriptor> implements RandomAccess {
+
+    private static final int CHUNK_HASH_LENGTH = 20;
+    private static final int LOCK_STRIPES = 64;
+
+    private final DataRange data;
+    private final long totalSize;
+    private final long chunkSize;
+    private final long blockSize;
+    private final int chunkCount;
+    private final int blocksPerChunk;
+
+    private final byte[] chunkHashes;
+    private final AtomicLongArray blocks;
+    private final ReadWriteLock[] locks;
+
+    /**
+     * @param data Torrent's data
+     * @param chunkSize Size of a chunk (last chunk can be smaller)
+     * @param blockSize Size of a block (should not be greater than chunk size)
+     * @param chunkHashes Concatenated hashes of all chunks
+     */
+    ChunkTable(DataRange data, long chunkSize, long blockSize, byte[] chunkHashes) {
+        if (chunkSize <= 0 || blockSize <= 0 || blockSize > chunkSize) {
+            throw new IllegalArgumentException("Illegal arguments: chunk size (" + chunkSize
+                    + "), block size (" + blockSize + ")");
+        }
+
+        long chunkCount = (data == null) ? 0 : (data.length() + chunkSize - 1) / chunkSize;
+        if (chunkCount * CHUNK_HASH_LENGTH != chunkHashes.length) {
+            throw new IllegalArgumentException("Expected " + chunkCount + " chunk hashes, got "
+                    + (chunkHashes.length / CHUNK_HASH_LENGTH));
+        }
+
+        long blocksPerChunk = (chunkSize + blockSize - 1) / blockSize;
+        if (blocksPerChunk > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many blocks: chunk size (" + chunkSize
+                    + "), block size (" + blockSize + ")");
+        }
+        long words = (chunkCount * blocksPerChunk + Long.SIZE - 1) / Long.SIZE;
+        if (words > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many blocks: " + (chunkCount * blocksPerChunk));
+        }
+
+        this.data = data;
+        this.totalSize = (data == null) ? 0 : data.length();
+        this.chunkSize = chunkSize;
+        this.blockSize = blockSize;
+        this.chunkCount = (int) chunkCount;
+        this.blocksPerChunk = (int) blocksPerChunk;
+        this.chunkHashes = chunkHashes;
+        this.blocks = new AtomicLongArray((int) words);
+
+        this.locks = new ReadWriteLock[(int) Math.max(1, Math.min(chunkCount, LOCK_STRIPES))];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    @Override
+    public ChunkDescriptor get(int index) {
+        if (index < 0 || index >= chunkCount) {
+            throw new IndexOutOfBoundsException("Invalid chunk index: " + index + ", expected 0.." + (chunkCount - 1));
+        }
+        return new Chunk(index);
+    }
+
+    @Override
+    public int size() {
+        return chunkCount;
+    }
+
+    private long chunkLength(int index) {
+        return (index == chunkCount - 1) ? totalSize - chunkSize * index : chunkSize;
+    }
+
+    private int blockCount(int index) {
+        return (int) ((chunkLength(index) + blockSize - 1) / blockSize);
+    }
+
+    private long lastBlockSize(int index) {
+        long lastBlockSize = chunkLength(index) % blockSize;
+        return (lastBlockSize > 0) ? lastBlockSize : blockSize;
+    }
+
+    private ReadWriteLock getLock(int index) {
+        return locks[index % locks.length];
+    }
+
+    private long firstBit(int index) {
+        return (long) index * blocksPerChunk;
+    }
+
+    private boolean isSet(long bit) {
+        return (blocks.get((int) (bit >>> 6)) & (1L << bit)) != 0;
+    }
+
+    private void set(long from, long to) {
+        for (long bit = from; bit < to; ) {
+            int word = (int) (bit >>> 6);
+            long wordEnd = Math.min(to, ((long) word + 1) << 6);
+            long mask = (wordEnd - bit == Long.SIZE) ? -1L : ((1L << (wordEnd - bit)) - 1) << bit;
+            long current;
+            do {
+                current = blocks.get(word);
+            } while ((current & mask) != mask && !blocks.compareAndSet(word, current, current | mask));
+            bit = wordEnd;
+        }
+    }
+
+    private int count(long from, long to) {
+        int count = 0;
+        for (long bit = from; bit < to; ) {
+            int word = (int) (bit >>> 6);
+            long wordEnd = Math.min(to, ((long) word + 1) << 6);
+            long mask = (wordEnd - bit == Long.SIZE) ? -1L : ((1L << (wordEnd - bit)) - 1) << bit;
+            count += Long.bitCount(blocks.get(word) & mask);
+            bit = wordEnd;
+        }
+        return count;
+    }
+
+    /**
+     * Mark blocks, that are completely covered by the written range, as available.
+     * Same semantics as in {@link bt.data.range.BlockRange}: if only a part of some block is written,
+     * then it's not counted; the last block is counted, if all of its' data is present.
+     */
+    private void markAvailable(int index, long offset, long length) {
+        long chunkLength = chunkLength(index);
+        int blockCount = blockCount(index);
+        long firstBit = firstBit(index);
+
+        long lastBlockOffset = chunkLength - lastBlockSize(index);
+        if (offset <= lastBlockOffset && offset + length >= chunkLength) {
+            set(firstBit + blockCount - 1, firstBit + blockCount);
+        }
+
+        if (length >= blockSize) {
+            long firstBlockIndex = (offset + blockSize - 1) / blockSize;
+            long lastBlockIndex = (offset + length) / blockSize - 1;
+            if (lastBlockIndex >= firstBlockIndex) {
+                set(firstBit + firstBlockIndex, firstBit + Math.min(lastBlockIndex + 1, blockCount));
+            }
+        }
+    }
+
+    private class Chunk implements ChunkDescriptor {
+
+        private final int index;
+
+        Chunk(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public byte[] getChecksum() {
+            byte[] checksum = new byte[CHUNK_HASH_LENGTH];
+            System.arraycopy(chunkHashes, index * CHUNK_HASH_LENGTH, checksum, 0, CHUNK_HASH_LENGTH);
+            return checksum;
+        }
+
+        @Override
+        public DataRange getData() {
+            return new ChunkDataRange(index, 0, data.getSubrange(chunkSize * index, chunkLength(index)));
+        }
+
+        @Override
+        public int blockCount() {
+            return ChunkTable.this.blockCount(index);
+        }
+
+        @Override
+        public long length() {
+            return chunkLength(index);
+        }
+
+        @Override
+        public long blockSize() {
+            return blockSize;
+        }
+
+        @Override
+        public long lastBlockSize() {
+            return ChunkTable.this.lastBlockSize(index);
+        }
+
+        @Override
+        public boolean isPresent(int blockIndex) {
+            int blockCount = blockCount();
+            if (blockIndex < 0 || blockIndex >= blockCount) {
+                throw new IllegalArgumentException("Invalid block index: " + blockIndex + ". Expected 0.." + (blockCount - 1));
+            }
+            return isSet(firstBit(index) + blockIndex);
+        }
+
+        @Override
+        public boolean isComplete() {
+            int blockCount = blockCount();
+            long firstBit = firstBit(index);
+            return count(firstBit, firstBit + blockCount) == blockCount;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            long firstBit = firstBit(index);
+            return count(firstBit, firstBit + blockCount()) == 0;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            Chunk that = (Chunk) obj;
+            return index == that.index && getTable() == that.getTable();
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(getTable()) + index;
+        }
+
+        private ChunkTable getTable() {
+            return ChunkTable.this;
+        }
+    }
+
+    /**
+     * Synchronized view of (a part of) some chunk's data, which keeps track of written blocks.
+     */
+    private class ChunkDataRange implements DataRange {
+
+        private final int index;
+        private final long offset;
+        private final DataRange delegate;
+
+        ChunkDataRange(int index, long offset, DataRange delegate) {
+            this.index = index;
+            this.offset = offset;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void visitUnits(DataRangeVisitor visitor) {
+            ReadWriteLock lock = getLock(index);
+            lock.writeLock().lock();
+            try {
+                delegate.visitUnits(visitor);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        @Override
+        public long length() {
+            return delegate.length();
+        }
+
+        @Override
+        public DataRange getSubrange(long offset, long length) {
+            return new ChunkDataRange(index, this.offset + offset, delegate.getSubrange(offset, length));
+        }
+
+        @Override
+        public DataRange getSubrange(long offset) {
+            return new ChunkDataRange(index, this.offset + offset, delegate.getSubrange(offset));
+        }
+
+        @Override
+        public byte[] getBytes() {
+            ReadWriteLock lock = getLock(index);
+            lock.readLock().lock();
+            try {
+                return delegate.getBytes();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public void putBytes(byte[] block) {
+            ReadWriteLock lock = getLock(index);
+            lock.writeLock().lock();
+            try {
+                delegate.putBytes(block);
+                markAvailable(index, offset, block.length);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+}
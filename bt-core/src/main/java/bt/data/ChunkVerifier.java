@@ -16,6 +16,9 @@
 
 package bt.data;
 
+import bt.service.CryptoUtil;
+
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -43,4 +46,17 @@ public interface ChunkVerifier {
      * @since 1.2
      */
     boolean verify(ChunkDescriptor chunk);
+
+    /**
+     * Conducts verification of the provided chunk's data, that is held in memory.
+     * By default, the data is hashed with SHA-1 in the calling thread.
+     *
+     * @param chunk Chunk
+     * @param data Chunk's data
+     * @return true if the data matches the chunk's checksum
+     * @since 1.8
+     */
+    default boolean verify(ChunkDescriptor chunk, byte[] data) {
+        return Arrays.equals(chunk.getChecksum(), CryptoUtil.getSha1Digest(data));
+    }
 }
@@ -18,6 +18,7 @@ package bt.data;
 
 import bt.BtException;
 import bt.data.digest.Digester;
+import bt.data.range.ByteRange;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,11 +51,10 @@ public class DefaultChunkVerifier implements ChunkVerifier {
                     bitfield.getPiecesTotal() + ", number of chunks: " + chunks.size());
         }
 
-        ChunkDescriptor[] arr = chunks.toArray(new ChunkDescriptor[chunks.size()]);
         if (numOfHashingThreads > 1) {
-            collectParallel(arr, bitfield);
+            collectParallel(chunks, bitfield);
         } else {
-            createWorker(arr, 0, arr.length, bitfield).run();
+            createWorker(chunks, 0, chunks.size(), bitfield).run();
         }
         // try to purge all data that was loaded by the verifiers
         System.gc();
@@ -69,22 +69,29 @@ public class DefaultChunkVerifier implements ChunkVerifier {
         return Arrays.equals(expected, actual);
     }
 
-    private List<ChunkDescriptor> collectParallel(ChunkDescriptor[] chunks, Bitfield bitfield) {
+    @Override
+    public boolean verify(ChunkDescriptor chunk, byte[] data) {
+        byte[] expected = chunk.getChecksum();
+        byte[] actual = digester.digest(new ByteRange(data));
+        return Arrays.equals(expected, actual);
+    }
+
+    private List<ChunkDescriptor> collectParallel(List<ChunkDescriptor> chunks, Bitfield bitfield) {
         int n = numOfHashingThreads;
         ExecutorService workers = Executors.newFixedThreadPool(n);
 
         List<Future<?>> futures = new ArrayList<>();
 
-        int batchSize = chunks.length / n;
+        int batchSize = chunks.size() / n;
         int i, limit = 0;
-        while ((i = limit) < chunks.length) {
+        while ((i = limit) < chunks.size()) {
             if (futures.size() == n - 1) {
                 // assign the remaining bits to the last worker
-                limit = chunks.length;
+                limit = chunks.size();
             } else {
                 limit = i + batchSize;
             }
-            futures.add(workers.submit(createWorker(chunks, i, Math.min(chunks.length, limit), bitfield)));
+            futures.add(workers.submit(createWorker(chunks, i, Math.min(chunks.size(), limit), bitfield)));
         }
 
         if (LOGGER.isDebugEnabled()) {
@@ -115,10 +122,10 @@ public class DefaultChunkVerifier implements ChunkVerifier {
                     errors.stream().map(this::errorToString).reduce(String::concat).get());
         }
 
-        return Arrays.asList(chunks);
+        return chunks;
     }
 
-    private Runnable createWorker(ChunkDescriptor[] chunks,
+    private Runnable createWorker(List<ChunkDescriptor> chunks,
                                   int from,
                                   int to,
                                   Bitfield bitfield) {
@@ -129,8 +136,9 @@ public class DefaultChunkVerifier implements ChunkVerifier {
                     ++i;
                     continue;
                 }
+                ChunkDescriptor chunk = chunks.get(i);
                 int[] emptyUnits = new int[]{0};
-                chunks[i].getData().visitUnits((u, off, lim) -> {
+                chunk.getData().visitUnits((u, off, lim) -> {
                     // limit of 0 means an empty file,
                     // and we don't want to account for those
                     if (u.size() == 0 && lim != 0) {
@@ -142,7 +150,7 @@ public class DefaultChunkVerifier implements ChunkVerifier {
                 // if any of this chunk's storage units is empty,
                 // then the chunk is neither complete nor verified
                 if (emptyUnits[0] == 0) {
-                    final boolean correct = verify(chunks[i]);
+                    final boolean correct = verify(chunk);
                     if (correct) {
                         bitfield.markComplete(i);
                     }
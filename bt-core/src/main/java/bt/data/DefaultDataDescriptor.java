@@ -17,21 +17,20 @@
 package bt.data;
 
 import bt.BtException;
-import bt.data.range.BlockRange;
-import bt.data.range.Ranges;
 import bt.data.storage.Storage;
 import bt.metainfo.Torrent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
 class DefaultDataDescriptor implements DataDescriptor {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultDataDescriptor.class);
 
+    private static final int CHUNK_HASH_LENGTH = 20;
+
     private Storage storage;
 
     private Torrent torrent;
@@ -61,11 +60,6 @@ class DefaultDataDescriptor implements DataDescriptor {
             transferBlockSize = chunkSize;
         }
 
-        int chunksTotal = (int) Math.ceil(totalSize / chunkSize);
-        List<ChunkDescriptor> chunks = new ArrayList<>(chunksTotal + 1);
-
-        Iterator<byte[]> chunkHashes = torrent.getChunkHashes().iterator();
-
         final List<TorrentFileInfo> torrentFileInfos = storage.register(torrent);
 
         // filter out empty files (and create them at once)
@@ -83,45 +77,30 @@ class DefaultDataDescriptor implements DataDescriptor {
             }
         });
 
+        DataRange data = null;
+        long chunksTotal = 0;
         if (nonEmptyStorageUnits.size() > 0) {
             long limitInLastUnit = nonEmptyStorageUnits.get(nonEmptyStorageUnits.size() - 1).capacity();
-            DataRange data = new ReadWriteDataRange(nonEmptyStorageUnits, 0, limitInLastUnit);
-
-            long off, lim;
-            long remaining = totalSize;
-            while (remaining > 0) {
-                off = chunks.size() * chunkSize;
-                lim = Math.min(chunkSize, remaining);
-
-                DataRange subrange = data.getSubrange(off, lim);
-
-                if (!chunkHashes.hasNext()) {
-                    throw new BtException("Wrong number of chunk hashes in the torrent: too few");
-                }
-
-                chunks.add(buildChunkDescriptor(subrange, transferBlockSize, chunkHashes.next()));
-
-                remaining -= chunkSize;
-            }
+            data = new ReadWriteDataRange(nonEmptyStorageUnits, 0, limitInLastUnit);
+            chunksTotal = (totalSize + chunkSize - 1) / chunkSize;
         }
 
-        if (chunkHashes.hasNext()) {
+        // chunks share the torrent's array of hashes instead of keeping their own copies
+        byte[] chunkHashes = torrent.getConcatenatedChunkHashes();
+        long hashesTotal = chunkHashes.length / CHUNK_HASH_LENGTH;
+        if (hashesTotal > chunksTotal) {
             throw new BtException("Wrong number of chunk hashes in the torrent: too many");
+        } else if (hashesTotal < chunksTotal) {
+            throw new BtException("Wrong number of chunk hashes in the torrent: too few");
         }
 
+        ChunkTable chunks = new ChunkTable(data, chunkSize, transferBlockSize, chunkHashes);
+
         this.bitfield = buildBitfield(chunks);
         this.chunkDescriptors = chunks;
         this.torrentFileInfos = torrentFileInfos;
     }
 
-    private ChunkDescriptor buildChunkDescriptor(DataRange data, long blockSize, byte[] checksum) {
-        BlockRange<DataRange> blockData = Ranges.blockRange(data, blockSize);
-        DataRange synchronizedData = Ranges.synchronizedDataRange(blockData);
-        BlockSet synchronizedBlockSet = Ranges.synchronizedBlockSet(blockData.getBlockSet());
-
-        return new DefaultChunkDescriptor(synchronizedData, synchronizedBlockSet, checksum);
-    }
-
     private Bitfield buildBitfield(List<ChunkDescriptor> chunks) {
         Bitfield bitfield = new Bitfield(chunks.size());
         verifier.verify(chunks, bitfield);
@@ -18,7 +18,6 @@ package bt.data;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -163,17 +162,18 @@ class ReadWriteDataRange implements DataRange {
         long offsetInFirstRequestedFile,
              limitInLastRequestedFile;
 
-        // determine the file that the requested block begins in
-        firstRequestedFileIndex = -1;
-        for (int i = 0; i < units.size(); i++) {
-            if (offset < fileOffsets[i]) {
-                firstRequestedFileIndex = i - 1;
-                break;
-            } else if (i == units.size() - 1) {
-                // reached the last file
-                firstRequestedFileIndex = i;
+        // determine the file that the requested block begins in,
+        // i.e. the last file, which begins at or before the requested offset
+        int low = 0, high = units.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (fileOffsets[mid] <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
             }
         }
+        firstRequestedFileIndex = low;
 
         offsetInFirstRequestedFile = offset - fileOffsets[firstRequestedFileIndex];
         if (firstRequestedFileIndex == 0) {
@@ -209,10 +209,7 @@ class ReadWriteDataRange implements DataRange {
             }
         }
 
-        List<StorageUnit> _units = new ArrayList<>();
-        int len = lastRequestedFileIndex - firstRequestedFileIndex;
-        _units.addAll(Arrays.asList(Arrays.copyOfRange(units.toArray(
-                new StorageUnit[len]), firstRequestedFileIndex, lastRequestedFileIndex + 1)));
+        List<StorageUnit> _units = new ArrayList<>(units.subList(firstRequestedFileIndex, lastRequestedFileIndex + 1));
 
         return new ReadWriteDataRange(
                 _units,
@@ -19,6 +19,8 @@ package bt.data.digest;
 import bt.data.DataRange;
 import bt.data.range.Range;
 
+import java.security.MessageDigest;
+
 /**
  * Calculates hash of some binary data.
  * Implementations may use different hashing algorithms.
@@ -44,4 +46,17 @@ public interface Digester {
      * @since 1.3
      */
     byte[] digest(Range<?> data);
+
+    /**
+     * Creates a new hashing context, that can be fed with data incrementally.
+     * Digesters, that don't support incremental hashing, return null,
+     * and the data is hashed in one go with {@link #digest(DataRange)} instead.
+     *
+     * @return Hashing context (uses the same algorithm as this digester) or null, if not supported
+     *
+     * @since 1.8
+     */
+    default MessageDigest createDigest() {
+        return null;
+    }
 }
@@ -79,7 +79,8 @@ public class JavaSecurityDigester implements Digester {
         return digest.digest();
     }
 
-    private MessageDigest createDigest() {
+    @Override
+    public MessageDigest createDigest() {
         try {
             return MessageDigest.getInstance(algorithm);
         } catch (NoSuchAlgorithmException e) {
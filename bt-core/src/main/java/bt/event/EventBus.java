@@ -71,11 +71,13 @@ public class EventBus implements EventSink, EventSource {
                                                Peer peer,
                                                boolean incoming,
                                                long connectionId,
-                                               BitSet publishedPieces) {
+                                               BitSet publishedPieces,
+                                               boolean fastExtensionEnabled) {
         long timestamp = System.currentTimeMillis();
         if (hasListeners(PeerConnectedEvent.class)) {
             long id = nextId();
-            fireEvent(new PeerConnectedEvent(id, timestamp, torrentId, peer, incoming, connectionId, publishedPieces));
+            fireEvent(new PeerConnectedEvent(id, timestamp, torrentId, peer, incoming, connectionId,
+                    publishedPieces, fastExtensionEnabled));
         }
     }
 
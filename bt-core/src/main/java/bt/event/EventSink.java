@@ -44,10 +44,27 @@ public interface EventSink {
 
     /**
      * Generate event, that a new connection with some peer has been established.
+     * The connection is considered to not support the Fast Extension.
      *
+     * @see #firePeerConnected(TorrentId, Peer, boolean, long, BitSet, boolean)
      * @since 1.5
      */
-    void firePeerConnected(TorrentId torrentId, Peer peer, boolean incoming, long connectionId, BitSet publishedPieces);
+    default void firePeerConnected(TorrentId torrentId, Peer peer, boolean incoming, long connectionId, BitSet publishedPieces) {
+        firePeerConnected(torrentId, peer, incoming, connectionId, publishedPieces, false);
+    }
+
+    /**
+     * Generate event, that a new connection with some peer has been established.
+     *
+     * @param fastExtensionEnabled true if both the local client and the remote peer support BEP-6: Fast Extension
+     * @since 1.8
+     */
+    void firePeerConnected(TorrentId torrentId,
+                           Peer peer,
+                           boolean incoming,
+                           long connectionId,
+                           BitSet publishedPieces,
+                           boolean fastExtensionEnabled);
 
     /**
      * Generate event, that a connection with some peer has been terminated.
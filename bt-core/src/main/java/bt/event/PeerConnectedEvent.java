@@ -34,6 +34,7 @@ public class PeerConnectedEvent extends BaseEvent implements TorrentEvent {
     private final boolean incoming;
     private final long connectionId;
     private final BitSet publishedPieces;
+    private final boolean fastExtensionEnabled;
 
     protected PeerConnectedEvent(long id,
                                  long timestamp,
@@ -41,13 +42,15 @@ public class PeerConnectedEvent extends BaseEvent implements TorrentEvent {
                                  Peer peer,
                                  boolean incoming,
                                  long connectionId,
-                                 BitSet publishedPieces) {
+                                 BitSet publishedPieces,
+                                 boolean fastExtensionEnabled) {
         super(id, timestamp);
         this.torrentId = Objects.requireNonNull(torrentId);
         this.peer = Objects.requireNonNull(peer);
         this.incoming = incoming;
         this.connectionId = connectionId;
         this.publishedPieces = Objects.requireNonNull(publishedPieces);
+        this.fastExtensionEnabled = fastExtensionEnabled;
     }
 
     @Override
@@ -83,10 +86,19 @@ public class PeerConnectedEvent extends BaseEvent implements TorrentEvent {
         return (BitSet) publishedPieces.clone();
     }
 
+    /**
+     * @return true if both the local client and the remote peer support BEP-6: Fast Extension
+     * @since 1.8
+     */
+    public boolean isFastExtensionEnabled() {
+        return fastExtensionEnabled;
+    }
+
     @Override
     public String toString() {
         return "[" + this.getClass().getSimpleName() + "] id {" + getId() + "}, timestamp {" + getTimestamp() +
                 "}, torrent {" + torrentId + "}, peer {" + peer + "}, incoming {" + incoming + "}, connectionId {"
-                + connectionId + "}, publishedPieces {" + publishedPieces.cardinality() + "}";
+                + connectionId + "}, publishedPieces {" + publishedPieces.cardinality() + "}, fastExtensionEnabled {"
+                + fastExtensionEnabled + "}";
     }
 }
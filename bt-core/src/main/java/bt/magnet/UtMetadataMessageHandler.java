@@ -16,6 +16,7 @@
 
 package bt.magnet;
 
+import bt.bencoding.BEEncoder;
 import bt.bencoding.BEParser;
 import bt.bencoding.model.BEInteger;
 import bt.bencoding.model.BEMap;
@@ -24,12 +25,8 @@ import bt.protocol.DecodingContext;
 import bt.protocol.EncodingContext;
 import bt.protocol.handler.MessageHandler;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.OutputStream;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -39,24 +36,10 @@ import java.util.HashMap;
  */
 public class UtMetadataMessageHandler implements MessageHandler<UtMetadata> {
     private final Collection<Class<? extends UtMetadata>> supportedTypes = Collections.singleton(UtMetadata.class);
+    private final BEEncoder encoder = BEEncoder.encoder();
 
     @Override
     public boolean encode(EncodingContext context, UtMetadata message, ByteBuffer buffer) {
-        boolean encoded = false;
-        try (ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
-            writeMessage(message, bos);
-            byte[] payload = bos.toByteArray();
-            if (buffer.remaining() >= payload.length) {
-                buffer.put(payload);
-                encoded = true;
-            }
-        } catch (IOException e) {
-            // can't happen
-        }
-        return encoded;
-    }
-
-    private void writeMessage(UtMetadata message, OutputStream out) throws IOException {
         BEMap m = new BEMap(null, new HashMap<String, BEObject<?>>() {{
             put(UtMetadata.messageTypeField(), new BEInteger(null, BigInteger.valueOf(message.getType().id())));
             put(UtMetadata.pieceIndexField(), new BEInteger(null, BigInteger.valueOf(message.getPieceIndex())));
@@ -64,33 +47,43 @@ public class UtMetadataMessageHandler implements MessageHandler<UtMetadata> {
                 put(UtMetadata.totalSizeField(), new BEInteger(null, BigInteger.valueOf(message.getTotalSize().get())));
             }
         }});
-        m.writeTo(out);
+
+        int dataLength = message.getData().map(data -> data.length).orElse(0);
+        if (buffer.remaining() < encoder.encodedLength(m) + dataLength) {
+            return false;
+        }
+        encoder.encode(m, buffer);
         if (message.getData().isPresent()) {
-            out.write(message.getData().get());
+            buffer.put(message.getData().get());
         }
+        return true;
     }
 
     @Override
     public int decode(DecodingContext context, ByteBuffer buffer) {
-        byte[] payload = new byte[buffer.remaining()];
-        buffer.get(payload);
-        try (BEParser parser = new BEParser(payload)) {
+        int payloadLength = buffer.remaining();
+        // parse in place: only integers are read from the map, and the piece data is copied directly from the buffer
+        try (BEParser parser = new BEParser(buffer)) {
             BEMap m = parser.readMap();
-            int length = m.getContent().length;
+            int length = parser.getRootObjectLength();
             UtMetadata.Type messageType = getMessageType(m);
             int pieceIndex = getPieceIndex(m);
             switch (messageType) {
                 case REQUEST: {
                     context.setMessage(UtMetadata.request(pieceIndex));
+                    buffer.position(buffer.limit());
                     return length;
                 }
                 case DATA: {
-                    byte[] data = Arrays.copyOfRange(payload, length, payload.length);
+                    byte[] data = new byte[payloadLength - length];
+                    buffer.position(buffer.position() + length);
+                    buffer.get(data);
                     context.setMessage(UtMetadata.data(pieceIndex, getTotalSize(m), data));
-                    return payload.length;
+                    return payloadLength;
                 }
                 case REJECT: {
                     context.setMessage(UtMetadata.reject(pieceIndex));
+                    buffer.position(buffer.limit());
                     return length;
                 }
                 default: {
@@ -99,6 +99,11 @@ class DefaultTorrent implements Torrent {
         };
     }
 
+    @Override
+    public byte[] getConcatenatedChunkHashes() {
+        return chunkHashes;
+    }
+
     @Override
     public long getSize() {
         return size;
@@ -19,6 +19,7 @@ package bt.metainfo;
 import bt.BtException;
 import bt.bencoding.BEParser;
 import bt.bencoding.BEType;
+import bt.bencoding.model.BEInteger;
 import bt.bencoding.model.BEList;
 import bt.bencoding.model.BEMap;
 import bt.bencoding.model.BEObject;
@@ -31,6 +32,7 @@ import bt.tracker.AnnounceKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigInteger;
@@ -39,10 +41,11 @@ import java.nio.charset.Charset;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.function.Function;
 
 /**
  *<p><b>Note that this class implements a service.
@@ -65,37 +68,41 @@ public class MetadataService implements IMetadataService {
     private static final String CREATION_DATE_KEY = "creation date";
     private static final String CREATED_BY_KEY = "created by";
 
-    private BEObjectModel torrentModel;
-    private BEObjectModel infodictModel;
+    private volatile BEObjectModel torrentModel;
+    private volatile BEObjectModel infodictModel;
     private Charset defaultCharset;
 
     public MetadataService() {
         this.defaultCharset = Charset.forName("UTF-8");
-
-        try {
-            try (InputStream in = MetadataService.class.getResourceAsStream("/metainfo.yml")) {
-                this.torrentModel = new YamlBEObjectModelLoader().load(in);
-            }
-            try (InputStream in = MetadataService.class.getResourceAsStream("/infodict.yml")) {
-                this.infodictModel = new YamlBEObjectModelLoader().load(in);
-            }
-        } catch (IOException e) {
-            throw new BtException("Failed to create metadata service", e);
-        }
     }
 
     @Override
     public Torrent fromUrl(URL url) {
-        try (BEParser parser = new BEParser(url)) {
-            return buildTorrent(parser);
+        try (InputStream in = url.openStream()) {
+            return fromInputStream(in);
+        } catch (IOException e) {
+            throw new BtException("Failed to read torrent from URL: " + url, e);
         }
     }
 
     @Override
     public Torrent fromInputStream(InputStream in) {
-        try (BEParser parser = new BEParser(in)) {
-            return buildTorrent(parser);
+        // read the whole document into memory, parsing it there is much faster than byte-by-byte from the stream
+        return fromByteArray(readFully(in));
+    }
+
+    private static byte[] readFully(InputStream in) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int read;
+        try {
+            while ((read = in.read(buf)) != -1) {
+                out.write(buf, 0, read);
+            }
+        } catch (IOException e) {
+            throw new BtException("Failed to read torrent from input stream", e);
         }
+        return out.toByteArray();
     }
 
     @Override
@@ -105,7 +112,6 @@ public class MetadataService implements IMetadataService {
         }
     }
 
-    @SuppressWarnings({"rawtypes", "unchecked"})
     private Torrent buildTorrent(BEParser parser) {
 
         if (parser.readType() != BEType.MAP) {
@@ -114,16 +120,61 @@ public class MetadataService implements IMetadataService {
         }
 
         BEMap metadata = parser.readMap();
+        try {
+            return buildTorrent(metadata);
+        } catch (SchemaViolationException e) {
+            // fast path failed; use the generic models to find out what exactly is wrong with the document
+            validate(metadata);
+            throw new BtException("Invalid metainfo format", e);
+        }
+    }
 
-        ValidationResult validationResult = torrentModel.validate(metadata);;
+    /**
+     * Validate the document against the standard metainfo model and the standalone info dictionary model.
+     * This is much slower than {@link #buildTorrent(BEMap)}, which performs the same checks,
+     * but provides detailed error messages.
+     */
+    private void validate(BEMap metadata) {
+        ValidationResult validationResult = getTorrentModel().validate(metadata);
         if (!validationResult.isSuccess()) {
-            ValidationResult infodictValidationResult = infodictModel.validate(metadata);
+            ValidationResult infodictValidationResult = getInfodictModel().validate(metadata);
             if (!infodictValidationResult.isSuccess()) {
                 throw new BtException("Validation failed for torrent metainfo:\n1. Standard torrent model: "
                     + Arrays.toString(validationResult.getMessages().toArray())
                         + "\n2. Standalone info dictionary model: " + Arrays.toString(infodictValidationResult.getMessages().toArray()));
             }
         }
+    }
+
+    private BEObjectModel getTorrentModel() {
+        if (torrentModel == null) {
+            torrentModel = loadModel("/metainfo.yml");
+        }
+        return torrentModel;
+    }
+
+    private BEObjectModel getInfodictModel() {
+        if (infodictModel == null) {
+            infodictModel = loadModel("/infodict.yml");
+        }
+        return infodictModel;
+    }
+
+    private static BEObjectModel loadModel(String resource) {
+        try (InputStream in = MetadataService.class.getResourceAsStream(resource)) {
+            return new YamlBEObjectModelLoader().load(in);
+        } catch (IOException e) {
+            throw new BtException("Failed to load metainfo model: " + resource, e);
+        }
+    }
+
+    /**
+     * Validates the document against the schema from metainfo.yml (or infodict.yml, if there's no info dictionary)
+     * and builds the torrent in a single pass.
+     *
+     * @throws SchemaViolationException if the document does not conform to the schema
+     */
+    private Torrent buildTorrent(BEMap metadata) {
 
         BEMap infoDictionary;
         TorrentSource source;
@@ -131,7 +182,8 @@ public class MetadataService implements IMetadataService {
         Map<String, BEObject<?>> root = metadata.getValue();
         if (root.containsKey(INFOMAP_KEY)) {
             // standard BEP-3 format
-            infoDictionary = (BEMap) root.get(INFOMAP_KEY);
+            infoDictionary = (BEMap) get(root, INFOMAP_KEY, BEType.MAP, true);
+            get(root, ANNOUNCE_KEY, BEType.STRING, true);
             source = new TorrentSource() {
                 @Override
                 public Optional<byte[]> getMetadata() {
@@ -162,106 +214,154 @@ public class MetadataService implements IMetadataService {
         DefaultTorrent torrent = new DefaultTorrent(source);
 
         try {
-            torrent.setTorrentId(TorrentId.fromBytes(CryptoUtil.getSha1Digest(infoDictionary.getContent())));
-
             Map<String, BEObject<?>> infoMap = infoDictionary.getValue();
 
-            if (infoMap.get(TORRENT_NAME_KEY) != null) {
-                byte[] name = (byte[]) infoMap.get(TORRENT_NAME_KEY).getValue();
-                torrent.setName(new String(name, defaultCharset));
+            BEString name = (BEString) get(infoMap, TORRENT_NAME_KEY, BEType.STRING, false);
+            BEInteger chunkSize = (BEInteger) get(infoMap, CHUNK_SIZE_KEY, BEType.INTEGER, true);
+            BEString chunkHashes = (BEString) get(infoMap, CHUNK_HASHES_KEY, BEType.STRING, true);
+            BEInteger torrentSize = (BEInteger) get(infoMap, TORRENT_SIZE_KEY, BEType.INTEGER, false);
+            BEList files = (BEList) get(infoMap, FILES_KEY, BEType.LIST, false);
+            BEInteger privateFlag = (BEInteger) get(infoMap, PRIVATE_KEY, BEType.INTEGER, false);
+            // exactly one of the two keys must be present
+            if ((torrentSize == null) == (files == null)) {
+                throw SchemaViolationException.INSTANCE;
             }
 
-            BigInteger chunkSize = (BigInteger) infoMap.get(CHUNK_SIZE_KEY).getValue();
-            torrent.setChunkSize(chunkSize.longValueExact());
+            if (name != null) {
+                torrent.setName(name.getValue(defaultCharset));
+            }
 
-            byte[] chunkHashes = (byte[]) infoMap.get(CHUNK_HASHES_KEY).getValue();
-            torrent.setChunkHashes(chunkHashes);
+            torrent.setChunkSize(chunkSize.getValue().longValueExact());
+            torrent.setChunkHashes(chunkHashes.getValue());
 
-            if (infoMap.get(TORRENT_SIZE_KEY) != null) {
-                BigInteger torrentSize = (BigInteger) infoMap.get(TORRENT_SIZE_KEY).getValue();
-                torrent.setSize(torrentSize.longValueExact());
+            if (torrentSize != null) {
+                torrent.setSize(torrentSize.getValue().longValueExact());
 
             } else {
-                List<BEMap> files = (List<BEMap>) infoMap.get(FILES_KEY).getValue();
-                List<TorrentFile> torrentFiles = new ArrayList<>(files.size() + 1);
-                BigInteger torrentSize = BigInteger.ZERO;
-                for (BEMap file : files) {
-
-                    Map<String, BEObject<?>> fileMap = file.getValue();
+                List<? extends BEObject<?>> fileList = files.getValue();
+                List<TorrentFile> torrentFiles = new ArrayList<>(fileList.size());
+                // directory names are usually shared by many files,
+                // so keep a single instance of each distinct path element
+                Map<String, String> pathElementCache = new HashMap<>();
+                long totalSize = 0;
+                for (BEObject<?> file : fileList) {
+
+                    Map<String, BEObject<?>> fileMap = cast(file, BEType.MAP, BEMap.class).getValue();
                     DefaultTorrentFile torrentFile = new DefaultTorrentFile();
 
-                    BigInteger fileSize = (BigInteger) fileMap.get(FILE_SIZE_KEY).getValue();
-                    torrentFile.setSize(fileSize.longValueExact());
-                    torrentSize = torrentSize.add(fileSize);
-
-                    List<BEString> pathElements = (List<BEString>) fileMap.get(FILE_PATH_ELEMENTS_KEY).getValue();
-
-                    torrentFile.setPathElements(pathElements.stream()
-                            .map(bytes -> bytes.getValue(defaultCharset))
-                            .collect(Collectors.toList()));
+                    long fileSize = ((BEInteger) get(fileMap, FILE_SIZE_KEY, BEType.INTEGER, true))
+                            .getValue().longValueExact();
+                    torrentFile.setSize(fileSize);
+                    totalSize = Math.addExact(totalSize, fileSize);
+
+                    List<? extends BEObject<?>> pathElements =
+                            ((BEList) get(fileMap, FILE_PATH_ELEMENTS_KEY, BEType.LIST, true)).getValue();
+                    String[] path = new String[pathElements.size()];
+                    for (int i = 0; i < path.length; i++) {
+                        String pathElement = cast(pathElements.get(i), BEType.STRING, BEString.class)
+                                .getValue(defaultCharset);
+                        path[i] = pathElementCache.computeIfAbsent(pathElement, Function.identity());
+                    }
+                    torrentFile.setPathElements(Arrays.asList(path));
 
                     torrentFiles.add(torrentFile);
                 }
 
                 torrent.setFiles(torrentFiles);
-                torrent.setSize(torrentSize.longValueExact());
+                torrent.setSize(totalSize);
             }
 
             boolean isPrivate = false;
-            if (infoMap.get(PRIVATE_KEY) != null) {
-                if (BigInteger.ONE.equals(infoMap.get(PRIVATE_KEY).getValue())) {
-                    torrent.setPrivate(true);
-                    isPrivate = true;
-                }
+            if (privateFlag != null && BigInteger.ONE.equals(privateFlag.getValue())) {
+                torrent.setPrivate(true);
+                isPrivate = true;
             }
 
-            if (root.get(CREATION_DATE_KEY) != null) {
-                BigInteger epochMilli = (BigInteger) root.get(CREATION_DATE_KEY).getValue();
+            BEInteger creationDate = (BEInteger) get(root, CREATION_DATE_KEY, BEType.INTEGER, false);
+            if (creationDate != null) {
+                BigInteger epochMilli = creationDate.getValue();
                 // TODO: some torrents contain bogus values here (like 101010101010), which causes an exception
                 torrent.setCreationDate(Instant.ofEpochMilli(epochMilli.intValueExact() * 1000L));
             }
 
-            if (root.get(CREATED_BY_KEY) != null) {
-                byte[] createdBy = (byte[]) root.get(CREATED_BY_KEY).getValue();
-                torrent.setCreatedBy(new String(createdBy, defaultCharset));
+            BEString createdBy = (BEString) get(root, CREATED_BY_KEY, BEType.STRING, false);
+            if (createdBy != null) {
+                torrent.setCreatedBy(createdBy.getValue(defaultCharset));
             }
 
-            AnnounceKey announceKey = null;
-            // TODO: support for private torrents with multiple trackers
-            if (!isPrivate && root.containsKey(ANNOUNCE_LIST_KEY)) {
-
-                List<List<String>> trackerUrls;
-
-                BEList announceList = (BEList) root.get(ANNOUNCE_LIST_KEY);
-                List<BEList> tierList = (List<BEList>) announceList.getValue();
+            // announce list is validated even if it's not going to be used
+            List<List<String>> trackerUrls = null;
+            BEList announceList = (BEList) get(root, ANNOUNCE_LIST_KEY, BEType.LIST, false);
+            if (announceList != null) {
+                List<? extends BEObject<?>> tierList = announceList.getValue();
                 trackerUrls = new ArrayList<>(tierList.size() + 1);
-                for (BEList tierElement : tierList) {
-
-                    List<String> tierTackerUrls;
+                for (BEObject<?> tierElement : tierList) {
 
-                    List<BEString> trackerUrlList = (List<BEString>) tierElement.getValue();
-                    tierTackerUrls = new ArrayList<>(trackerUrlList.size() + 1);
-                    for (BEString trackerUrlElement : trackerUrlList) {
-                        tierTackerUrls.add(trackerUrlElement.getValue(defaultCharset));
+                    List<? extends BEObject<?>> trackerUrlList = cast(tierElement, BEType.LIST, BEList.class).getValue();
+                    List<String> tierTackerUrls = new ArrayList<>(trackerUrlList.size() + 1);
+                    for (BEObject<?> trackerUrlElement : trackerUrlList) {
+                        tierTackerUrls.add(cast(trackerUrlElement, BEType.STRING, BEString.class).getValue(defaultCharset));
                     }
                     trackerUrls.add(tierTackerUrls);
                 }
+            }
 
+            AnnounceKey announceKey = null;
+            // TODO: support for private torrents with multiple trackers
+            if (!isPrivate && trackerUrls != null) {
                 announceKey = new AnnounceKey(trackerUrls);
 
             } else if (root.containsKey(ANNOUNCE_KEY)) {
-                byte[] trackerUrl = (byte[]) root.get(ANNOUNCE_KEY).getValue();
-                announceKey = new AnnounceKey(new String(trackerUrl, defaultCharset));
+                BEString trackerUrl = (BEString) get(root, ANNOUNCE_KEY, BEType.STRING, true);
+                announceKey = new AnnounceKey(trackerUrl.getValue(defaultCharset));
             }
 
             if (announceKey != null) {
                 torrent.setAnnounceKey(announceKey);
             }
 
+            torrent.setTorrentId(TorrentId.fromBytes(CryptoUtil.getSha1Digest(infoDictionary.getContent())));
+
+        } catch (SchemaViolationException e) {
+            throw e;
         } catch (Exception e) {
             throw new BtException("Invalid metainfo format", e);
         }
 
         return torrent;
     }
+
+    private static BEObject<?> get(Map<String, BEObject<?>> map, String key, BEType type, boolean required) {
+        BEObject<?> value = map.get(key);
+        if (value == null) {
+            if (required) {
+                throw SchemaViolationException.INSTANCE;
+            }
+            return null;
+        }
+        if (value.getType() != type) {
+            throw SchemaViolationException.INSTANCE;
+        }
+        return value;
+    }
+
+    private static <T extends BEObject<?>> T cast(BEObject<?> object, BEType type, Class<T> objectClass) {
+        if (object.getType() != type) {
+            throw SchemaViolationException.INSTANCE;
+        }
+        return objectClass.cast(object);
+    }
+
+    /**
+     * Signals that the document does not conform to the schema; carries no details and no stack trace,
+     * because the details are provided by the generic models.
+     */
+    private static class SchemaViolationException extends RuntimeException {
+
+        static final SchemaViolationException INSTANCE = new SchemaViolationException();
+
+        private SchemaViolationException() {
+            super("Document does not conform to the metainfo schema", null, false, false);
+        }
+    }
 }
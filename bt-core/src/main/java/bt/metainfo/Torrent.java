@@ -18,6 +18,7 @@ package bt.metainfo;
 
 import bt.tracker.AnnounceKey;
 
+import java.io.ByteArrayOutputStream;
 import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
@@ -62,6 +63,22 @@ public interface Torrent {
      */
     Iterable<byte[]> getChunkHashes();
 
+    /**
+     * Get SHA-1 hashes of all chunks in this torrent as a single array,
+     * so that it could be shared by all users of the hashes, instead of being copied.
+     * Hence, the returned array must not be modified.
+     *
+     * @return Concatenated SHA-1 hashes of all chunks in this torrent, in the order of chunks.
+     * @since 1.8
+     */
+    default byte[] getConcatenatedChunkHashes() {
+        ByteArrayOutputStream hashes = new ByteArrayOutputStream();
+        for (byte[] chunkHash : getChunkHashes()) {
+            hashes.write(chunkHash, 0, chunkHash.length);
+        }
+        return hashes.toByteArray();
+    }
+
     /**
      * @return Total size of all chunks in this torrent, in bytes.
      * @since 1.0
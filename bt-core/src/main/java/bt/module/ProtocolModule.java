@@ -19,6 +19,7 @@ package bt.module;
 import bt.magnet.UtMetadataMessageHandler;
 import bt.net.BitfieldConnectionHandler;
 import bt.net.ConnectionHandlerFactory;
+import bt.net.FastExtensionHandshakeHandler;
 import bt.net.HandshakeHandler;
 import bt.net.IConnectionHandlerFactory;
 import bt.net.extended.ExtendedProtocolHandshakeHandler;
@@ -138,6 +139,10 @@ public class ProtocolModule implements Module {
                                                                      Config config) {
         List<HandshakeHandler> handshakeHandlers = new ArrayList<>(boundHandshakeHandlers);
         // add default handshake handlers to the beginning of the connection handling chain
+        if (config.isFastExtensionEnabled()) {
+            // should precede the bitfield handler, that relies on the negotiated extension
+            handshakeHandlers.add(new FastExtensionHandshakeHandler());
+        }
         handshakeHandlers.add(new BitfieldConnectionHandler(torrentRegistry));
         handshakeHandlers.add(new ExtendedProtocolHandshakeHandler(extendedHandshakeFactory));
 
@@ -47,6 +47,7 @@ import bt.net.pipeline.IChannelPipelineFactory;
 import bt.peer.IPeerCache;
 import bt.peer.IPeerRegistry;
 import bt.peer.PeerCache;
+import bt.peer.PeerCacheStorage;
 import bt.peer.PeerRegistry;
 import bt.peer.PeerSourceFactory;
 import bt.processor.ProcessorFactory;
@@ -163,6 +164,7 @@ public class ServiceModule implements Module {
         binder.bind(IConnectionSource.class).to(ConnectionSource.class).asEagerSingleton();
         binder.bind(IPeerConnectionPool.class).to(PeerConnectionPool.class).asEagerSingleton();
         binder.bind(IPeerRegistry.class).to(PeerRegistry.class).asEagerSingleton();
+        binder.bind(PeerCacheStorage.class).asEagerSingleton();
         binder.bind(DataReceiver.class).to(DataReceivingLoop.class).asEagerSingleton();
 
         // other services
@@ -210,9 +212,12 @@ public class ServiceModule implements Module {
     @Singleton
     public IDataWorkerFactory provideDataWorkerFactory(
             IRuntimeLifecycleBinder lifecycleBinder,
+            EventSource eventSource,
             ChunkVerifier verifier,
+            Digester digester,
             Config config) {
-        return new DataWorkerFactory(lifecycleBinder, verifier, config.getMaxIOQueueSize());
+        return new DataWorkerFactory(lifecycleBinder, eventSource, verifier, digester, config.getMaxIOQueueSize(),
+                config.getReadCacheSize(), config.getWriteCacheSize());
     }
 
     @Provides
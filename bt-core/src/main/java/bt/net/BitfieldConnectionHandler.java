@@ -18,6 +18,9 @@ package bt.net;
 
 import bt.data.Bitfield;
 import bt.protocol.Handshake;
+import bt.protocol.HaveAll;
+import bt.protocol.HaveNone;
+import bt.protocol.Message;
 import bt.protocol.Protocols;
 import bt.torrent.TorrentDescriptor;
 import bt.torrent.TorrentRegistry;
@@ -50,10 +53,21 @@ public class BitfieldConnectionHandler implements HandshakeHandler {
 
             final BitSet completeVerified = bitfield.getCompleteVerified();
             connection.setPublishedPieces(completeVerified);
-            if (completeVerified.cardinality() > 0) {
-                Peer peer = connection.getRemotePeer();
-                bt.protocol.Bitfield bitfieldMessage =
+            Message bitfieldMessage = null;
+            if (connection.isFastExtensionEnabled()) {
+                // BEP-6: exactly one of Bitfield, Have All or Have None must be sent
+                if (completeVerified.cardinality() == bitfield.getPiecesTotal()) {
+                    bitfieldMessage = HaveAll.instance();
+                } else if (completeVerified.cardinality() == 0) {
+                    bitfieldMessage = HaveNone.instance();
+                }
+            }
+            if (bitfieldMessage == null && completeVerified.cardinality() > 0) {
+                bitfieldMessage =
                         new bt.protocol.Bitfield(Protocols.toByteArray(completeVerified, bitfield.getPiecesTotal()));
+            }
+            if (bitfieldMessage != null) {
+                Peer peer = connection.getRemotePeer();
                 try {
                     connection.postMessage(bitfieldMessage);
                 } catch (IOException e) {
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.net;
+
+import bt.protocol.Handshake;
+
+/**
+ * Negotiates support for BEP-6: Fast Extension.
+ *
+ * @since 1.8
+ */
+public class FastExtensionHandshakeHandler implements HandshakeHandler {
+
+    private static final int FAST_EXTENSION_FLAG_BIT_INDEX = 61;
+
+    @Override
+    public void processIncomingHandshake(PeerConnection connection, Handshake peerHandshake) {
+        if (peerHandshake.isReservedBitSet(FAST_EXTENSION_FLAG_BIT_INDEX)) {
+            connection.setFastExtensionEnabled(true);
+        }
+    }
+
+    @Override
+    public void processOutgoingHandshake(Handshake handshake) {
+        handshake.setReservedBit(FAST_EXTENSION_FLAG_BIT_INDEX);
+    }
+}
@@ -29,6 +29,7 @@ import java.util.function.Supplier;
 public class InetPeer implements Peer {
 
     private Supplier<InetSocketAddress> addressSupplier;
+    private volatile Optional<PeerAddress> peerAddress;
     private Optional<PeerId> peerId;
 
     private final PeerOptions options;
@@ -117,6 +118,27 @@ public class InetPeer implements Peer {
         this(addressHolder::getAddress, peerId, options);
     }
 
+    /**
+     * Create a peer from a compact address.
+     * Instances of {@link InetSocketAddress} are created only when requested.
+     *
+     * @since 1.8
+     */
+    public InetPeer(PeerAddress address, PeerOptions options) {
+        this(new Supplier<InetSocketAddress>() {
+            private volatile InetSocketAddress inetAddress;
+
+            @Override
+            public InetSocketAddress get() {
+                if (inetAddress == null) {
+                    inetAddress = address.toInetSocketAddress();
+                }
+                return inetAddress;
+            }
+        }, null, options);
+        this.peerAddress = Optional.of(address);
+    }
+
     private InetPeer(Supplier<InetSocketAddress> addressSupplier, PeerId peerId, PeerOptions options) {
         this.addressSupplier = addressSupplier;
         this.peerId = Optional.ofNullable(peerId);
@@ -158,9 +180,24 @@ public class InetPeer implements Peer {
         return options;
     }
 
+    @Override
+    public Optional<PeerAddress> getPeerAddress() {
+        Optional<PeerAddress> peerAddress = this.peerAddress;
+        if (peerAddress == null) {
+            InetSocketAddress address = addressSupplier.get();
+            if (address.isUnresolved()) {
+                // may be resolved later, don't cache
+                return Optional.empty();
+            }
+            this.peerAddress = peerAddress = Optional.of(PeerAddress.of(address));
+        }
+        return peerAddress;
+    }
+
     @Override
     public int hashCode() {
-        return addressSupplier.get().hashCode();
+        Optional<PeerAddress> peerAddress = getPeerAddress();
+        return peerAddress.isPresent() ? peerAddress.get().hashCode() : addressSupplier.get().hashCode();
     }
 
     /**
@@ -177,6 +214,13 @@ public class InetPeer implements Peer {
         }
 
         Peer that = (Peer) object;
+        Optional<PeerAddress> peerAddress = getPeerAddress();
+        if (peerAddress.isPresent()) {
+            Optional<PeerAddress> thatAddress = that.getPeerAddress();
+            if (thatAddress != null && thatAddress.isPresent()) {
+                return peerAddress.get().equals(thatAddress.get());
+            }
+        }
         return addressSupplier.get().equals(that.getInetSocketAddress());
     }
 
@@ -57,4 +57,14 @@ public interface Peer {
      * @since 1.2
      */
     PeerOptions getOptions();
+
+    /**
+     * @return Compact representation of this peer's address,
+     *         or {@link Optional#empty()} if the address is unresolved
+     * @since 1.8
+     */
+    default Optional<PeerAddress> getPeerAddress() {
+        InetSocketAddress address = getInetSocketAddress();
+        return address.isUnresolved() ? Optional.empty() : Optional.of(PeerAddress.of(address));
+    }
 }
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.net;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Compact, immutable representation of a peer's socket address.
+ * Both IPv4 and IPv6 addresses are packed into a pair of longs (IPv4 addresses are stored in IPv4-mapped form),
+ * so that equality checks and hashing do not involve any auxiliary objects.
+ * Conversion to {@link InetSocketAddress} is performed only on demand.
+ *
+ * @since 1.8
+ */
+public final class PeerAddress {
+
+    private static final long IPV4_MAPPED_PREFIX = 0xFFFFL << 32;
+
+    private final long high;
+    private final long low;
+    private final int port;
+    private final int hashCode;
+
+    private PeerAddress(long high, long low, int port) {
+        if (port < 0 || port > 0xFFFF) {
+            throw new IllegalArgumentException("Invalid port: " + port);
+        }
+        this.high = high;
+        this.low = low;
+        this.port = port;
+        this.hashCode = hash(high, low, port);
+    }
+
+    /**
+     * @param address Resolved socket address
+     * @throws IllegalArgumentException if the address is unresolved
+     * @since 1.8
+     */
+    public static PeerAddress of(InetSocketAddress address) {
+        if (address.isUnresolved()) {
+            throw new IllegalArgumentException("Address is unresolved: " + address);
+        }
+        return of(address.getAddress(), address.getPort());
+    }
+
+    /**
+     * @since 1.8
+     */
+    public static PeerAddress of(InetAddress address, int port) {
+        byte[] bytes = address.getAddress();
+        return of(bytes, 0, bytes.length, port);
+    }
+
+    /**
+     * Create an address from its binary (network byte order) representation.
+     *
+     * @param bytes Buffer, containing the address
+     * @param offset Offset of the address in the buffer
+     * @param length Length of the address: 4 for IPv4 and 16 for IPv6
+     * @param port Port number
+     * @since 1.8
+     */
+    public static PeerAddress of(byte[] bytes, int offset, int length, int port) {
+        switch (length) {
+            case 4: {
+                return new PeerAddress(0, IPV4_MAPPED_PREFIX | (readLong(bytes, offset, 4) & 0xFFFFFFFFL), port);
+            }
+            case 16: {
+                return new PeerAddress(readLong(bytes, offset, 8), readLong(bytes, offset + 8, 8), port);
+            }
+            default: {
+                throw new IllegalArgumentException("Unexpected address length: " + length);
+            }
+        }
+    }
+
+    private static long readLong(byte[] bytes, int offset, int length) {
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            value = (value << 8) | (bytes[i] & 0xFF);
+        }
+        return value;
+    }
+
+    static int hash(long high, long low, int port) {
+        long h = high * 0x9E3779B97F4A7C15L + low;
+        h = (h ^ port) * 0xBF58476D1CE4E5B9L;
+        h ^= (h >>> 31);
+        return (int) (h ^ (h >>> 32));
+    }
+
+    long getHigh() {
+        return high;
+    }
+
+    long getLow() {
+        return low;
+    }
+
+    /**
+     * @return true if this is an IPv4 address
+     * @since 1.8
+     */
+    public boolean isIPv4() {
+        return high == 0 && (low & 0xFFFFFFFF00000000L) == IPV4_MAPPED_PREFIX;
+    }
+
+    /**
+     * @since 1.8
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * @return Binary representation of the address: 4 bytes for IPv4 and 16 bytes for IPv6
+     * @since 1.8
+     */
+    public byte[] getAddressBytes() {
+        byte[] bytes;
+        if (isIPv4()) {
+            bytes = new byte[4];
+            writeLong(bytes, 0, 4, low);
+        } else {
+            bytes = new byte[16];
+            writeLong(bytes, 0, 8, high);
+            writeLong(bytes, 8, 8, low);
+        }
+        return bytes;
+    }
+
+    private static void writeLong(byte[] bytes, int offset, int length, long value) {
+        for (int i = offset + length - 1; i >= offset; i--) {
+            bytes[i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    /**
+     * @since 1.8
+     */
+    public InetAddress toInetAddress() {
+        try {
+            return InetAddress.getByAddress(getAddressBytes());
+        } catch (UnknownHostException e) {
+            // never happens, address length is always valid
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @since 1.8
+     */
+    public InetSocketAddress toInetSocketAddress() {
+        return new InetSocketAddress(toInetAddress(), port);
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (this == object) {
+            return true;
+        }
+        if (object == null || getClass() != object.getClass()) {
+            return false;
+        }
+
+        PeerAddress that = (PeerAddress) object;
+        return low == that.low && high == that.high && port == that.port;
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        InetAddress address = toInetAddress();
+        String host = address.getHostAddress();
+        return (address instanceof Inet4Address ? host : "[" + host + "]") + ":" + port;
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.net;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Open-addressing hash map, keyed by {@link PeerAddress}.
+ * Keys are stored as primitives in parallel arrays, so lookups do not involve
+ * any per-entry objects or pointer chasing besides the value itself.
+ * This class is not thread-safe.
+ *
+ * @param <V> Value type
+ * @since 1.8
+ */
+public class PeerAddressMap<V> {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] highs;
+    private long[] lows;
+    private int[] ports;
+    private Object[] values;
+    private int mask;
+    private int size;
+
+    /**
+     * @since 1.8
+     */
+    public PeerAddressMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize Expected number of entries
+     * @since 1.8
+     */
+    public PeerAddressMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    private static int capacityFor(int size) {
+        int capacity = MIN_CAPACITY;
+        // keep load factor at or below 0.5
+        while (capacity < size * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private void allocate(int capacity) {
+        highs = new long[capacity];
+        lows = new long[capacity];
+        ports = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * @since 1.8
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @since 1.8
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @since 1.8
+     */
+    public boolean containsKey(PeerAddress key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * @return Value, mapped to the key, or null if there is no mapping
+     * @since 1.8
+     */
+    @SuppressWarnings("unchecked")
+    public V get(PeerAddress key) {
+        int index = indexOf(key);
+        return index < 0 ? null : (V) values[index];
+    }
+
+    /**
+     * @return Previous value, mapped to the key, or null if there was no mapping
+     * @since 1.8
+     */
+    @SuppressWarnings("unchecked")
+    public V put(PeerAddress key, V value) {
+        if (value == null) {
+            throw new NullPointerException("Null values are not supported");
+        }
+        long high = key.getHigh(), low = key.getLow();
+        int port = key.getPort();
+        int i = key.hashCode() & mask;
+        while (values[i] != null) {
+            if (lows[i] == low && highs[i] == high && ports[i] == port) {
+                V previous = (V) values[i];
+                values[i] = value;
+                return previous;
+            }
+            i = (i + 1) & mask;
+        }
+        highs[i] = high;
+        lows[i] = low;
+        ports[i] = port;
+        values[i] = value;
+        if (++size * 2 > values.length) {
+            rehash(values.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * @return Removed value, or null if there was no mapping
+     * @since 1.8
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(PeerAddress key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        V removed = (V) values[index];
+        shiftBack(index);
+        size--;
+        return removed;
+    }
+
+    /**
+     * Remove all entries.
+     *
+     * @since 1.8
+     */
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Perform an action for each value in this map.
+     *
+     * @since 1.8
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<? super V> action) {
+        for (Object value : values) {
+            if (value != null) {
+                action.accept((V) value);
+            }
+        }
+    }
+
+    private int indexOf(PeerAddress key) {
+        long high = key.getHigh(), low = key.getLow();
+        int port = key.getPort();
+        int i = key.hashCode() & mask;
+        while (values[i] != null) {
+            if (lows[i] == low && highs[i] == high && ports[i] == port) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    // backward-shift deletion: move subsequent entries of the same probe chain into the freed slot,
+    // so that lookups never need tombstones
+    private void shiftBack(int freed) {
+        int i = freed;
+        while (true) {
+            i = (i + 1) & mask;
+            if (values[i] == null) {
+                break;
+            }
+            int home = hashOf(i) & mask;
+            // entry may be moved only if its home slot is not within (freed, i]
+            boolean movable = (freed <= i) ? (home <= freed || home > i) : (home <= freed && home > i);
+            if (movable) {
+                highs[freed] = highs[i];
+                lows[freed] = lows[i];
+                ports[freed] = ports[i];
+                values[freed] = values[i];
+                freed = i;
+            }
+        }
+        values[freed] = null;
+    }
+
+    private int hashOf(int index) {
+        return PeerAddress.hash(highs[index], lows[index], ports[index]);
+    }
+
+    private void rehash(int capacity) {
+        long[] oldHighs = highs, oldLows = lows;
+        int[] oldPorts = ports;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int j = 0; j < oldValues.length; j++) {
+            if (oldValues[j] != null) {
+                int i = PeerAddress.hash(oldHighs[j], oldLows[j], oldPorts[j]) & mask;
+                while (values[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                highs[i] = oldHighs[j];
+                lows[i] = oldLows[j];
+                ports[i] = oldPorts[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+}
@@ -75,6 +75,18 @@ public interface PeerConnection extends Closeable {
      */
     void setPublishedPieces(BitSet publishedPieces);
 
+    /**
+     * @return true if both the local client and the remote peer support BEP-6: Fast Extension
+     * @since 1.8
+     */
+    boolean isFastExtensionEnabled();
+
+    /**
+     * @see #isFastExtensionEnabled()
+     * @since 1.8
+     */
+    void setFastExtensionEnabled(boolean fastExtensionEnabled);
+
     /**
      * Attempt to read an incoming message.
      *
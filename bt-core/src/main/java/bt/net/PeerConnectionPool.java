@@ -161,7 +161,8 @@ public class PeerConnectionPool implements IPeerConnectionPool {
                     newConnection.getRemotePeer(),
                     newConnection.isIncoming(),
                     newConnection.getId(),
-                    newConnection.getPublishedPieces()
+                    newConnection.getPublishedPieces(),
+                    newConnection.isFastExtensionEnabled()
             );
         }
         return added;
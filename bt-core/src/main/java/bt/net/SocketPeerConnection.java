@@ -48,6 +48,7 @@ public class SocketPeerConnection implements PeerConnection {
     private final ChannelHandler handler;
 
     private BitSet publishedPieces;
+    private volatile boolean fastExtensionEnabled;
 
     private final AtomicLong lastActive;
 
@@ -130,6 +131,16 @@ public class SocketPeerConnection implements PeerConnection {
         this.publishedPieces = (BitSet) requireNonNull(publishedPieces).clone();
     }
 
+    @Override
+    public boolean isFastExtensionEnabled() {
+        return fastExtensionEnabled;
+    }
+
+    @Override
+    public void setFastExtensionEnabled(boolean fastExtensionEnabled) {
+        this.fastExtensionEnabled = fastExtensionEnabled;
+    }
+
     @Override
     public synchronized Message readMessageNow() throws IOException {
         Message message = handler.receive();
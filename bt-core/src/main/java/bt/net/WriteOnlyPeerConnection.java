@@ -69,6 +69,16 @@ class WriteOnlyPeerConnection implements PeerConnection {
         delegate.setPublishedPieces(publishedPieces);
     }
 
+    @Override
+    public boolean isFastExtensionEnabled() {
+        return delegate.isFastExtensionEnabled();
+    }
+
+    @Override
+    public void setFastExtensionEnabled(boolean fastExtensionEnabled) {
+        delegate.setFastExtensionEnabled(fastExtensionEnabled);
+    }
+
     @Override
     public Message readMessageNow() throws IOException {
         throw new UnsupportedOperationException("Connection is write-only");
@@ -18,68 +18,143 @@ package bt.peer;
 
 import bt.net.InetPeer;
 import bt.net.Peer;
+import bt.net.PeerAddress;
 import bt.net.PeerId;
+import bt.runtime.Config;
+import com.google.inject.Inject;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Bounded cache of known peers.
+ *
+ * <p>When the number of peers exceeds the limit, least recently used peers are evicted in batches,
+ * so that the cost of eviction is amortized over many inserts.
+ *
+ * <p><b>Note that this class implements a service.
+ * Hence, is not a part of the public API and is a subject to change.</b></p>
+ */
 public class PeerCache implements IPeerCache {
+
+    // fraction of the max size, that is kept after eviction
+    private static final double EVICTION_THRESHOLD = 0.9;
+
     // all known peers (lookup by inet address)
     private final ConcurrentMap<InetSocketAddress, UpdatablePeer> knownPeers;
-    private final ReentrantLock peerLock;
+    private final int maxSize;
+    private final AtomicBoolean evicting;
+
+    @Inject
+    public PeerCache(Config config) {
+        this(config.getMaxPeerCacheSize());
+    }
 
-    PeerCache() {
+    PeerCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Invalid max size: " + maxSize);
+        }
         this.knownPeers = new ConcurrentHashMap<>();
-        this.peerLock = new ReentrantLock();
+        this.maxSize = maxSize;
+        this.evicting = new AtomicBoolean(false);
     }
 
-    // need to do this atomically:
-    // - concurrent call to getPeerForAddress(InetSocketAddress)
-    //   might coincide with querying peer sources (overwriting options, etc)
+    // concurrent call to getPeerForAddress(InetSocketAddress) might coincide with querying peer sources;
+    // whichever entry ends up in the cache, it will have the options of the most recently stored peer
     @Override
     public Peer store(Peer peer) {
-        peerLock.lock();
-        try {
-            UpdatablePeer newPeer = new UpdatablePeer(peer);
-            UpdatablePeer existing = knownPeers.putIfAbsent(peer.getInetSocketAddress(), newPeer);
-            if (existing != null) {
-                existing.setOptions(peer.getOptions());
-            }
-            return (existing == null) ? newPeer : existing;
-        } finally {
-            peerLock.unlock();
+        UpdatablePeer newPeer = new UpdatablePeer(peer);
+        UpdatablePeer existing = knownPeers.putIfAbsent(peer.getInetSocketAddress(), newPeer);
+        if (existing != null) {
+            existing.setOptions(peer.getOptions());
+            existing.touch();
+            return existing;
         }
+        evictIfNeeded();
+        return newPeer;
     }
 
     @Override
     public Peer getPeerForAddress(InetSocketAddress address) {
-        Peer existing = knownPeers.get(address);
+        UpdatablePeer existing = knownPeers.get(address);
         if (existing == null) {
-            peerLock.lock();
+            UpdatablePeer newPeer = new UpdatablePeer(new InetPeer(address));
+            existing = knownPeers.putIfAbsent(address, newPeer);
+            if (existing == null) {
+                evictIfNeeded();
+                return newPeer;
+            }
+        }
+        existing.touch();
+        return existing;
+    }
+
+    /**
+     * @return Number of peers in the cache
+     */
+    int size() {
+        return knownPeers.size();
+    }
+
+    private void evictIfNeeded() {
+        // only one thread performs eviction at a time, others just proceed
+        if (knownPeers.size() > maxSize && evicting.compareAndSet(false, true)) {
             try {
-                existing = knownPeers.get(address);
-                if (existing == null) {
-                    existing = store(new InetPeer(address));
-                }
+                evict();
             } finally {
-                peerLock.unlock();
+                evicting.set(false);
+            }
+        }
+    }
+
+    private void evict() {
+        int targetSize = (int) (maxSize * EVICTION_THRESHOLD);
+
+        long[] accessTimes = new long[knownPeers.size()];
+        int count = 0;
+        for (UpdatablePeer peer : knownPeers.values()) {
+            if (count == accessTimes.length) {
+                break;
+            }
+            accessTimes[count++] = peer.lastAccessed;
+        }
+
+        int toEvict = count - targetSize;
+        if (toEvict <= 0) {
+            return;
+        }
+        Arrays.sort(accessTimes, 0, count);
+        long cutoff = accessTimes[toEvict - 1];
+
+        Iterator<UpdatablePeer> iter = knownPeers.values().iterator();
+        while (iter.hasNext() && toEvict > 0) {
+            if (iter.next().lastAccessed <= cutoff) {
+                iter.remove();
+                toEvict--;
             }
         }
-        return existing;
     }
 
     private static class UpdatablePeer implements Peer {
-    private final Peer delegate;
-    private volatile PeerOptions options;
+        private final Peer delegate;
+        private volatile PeerOptions options;
+        private volatile long lastAccessed;
 
-    UpdatablePeer(Peer delegate) {
+        UpdatablePeer(Peer delegate) {
             super();
             this.delegate = delegate;
             this.options = delegate.getOptions();
+            this.lastAccessed = System.nanoTime();
+        }
+
+        void touch() {
+            lastAccessed = System.nanoTime();
         }
 
         @Override
@@ -102,6 +177,11 @@ public class PeerCache implements IPeerCache {
             return delegate.getPeerId();
         }
 
+        @Override
+        public Optional<PeerAddress> getPeerAddress() {
+            return delegate.getPeerAddress();
+        }
+
         @Override
         public PeerOptions getOptions() {
             return options;
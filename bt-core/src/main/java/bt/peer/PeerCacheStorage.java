@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.peer;
+
+import bt.event.EventSource;
+import bt.event.PeerSourceType;
+import bt.event.PeerConnectedEvent;
+import bt.event.TorrentStartedEvent;
+import bt.event.TorrentStoppedEvent;
+import bt.metainfo.TorrentId;
+import bt.net.InetPeer;
+import bt.runtime.Config;
+import bt.service.IRuntimeLifecycleBinder;
+import com.google.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Saves addresses of peers, that the client has successfully connected to (outgoing connections only),
+ * in a separate file per torrent, and adds these peers to the peer registry, when the torrent is started again.
+ * This way the client can reconnect to the swarm right after restart,
+ * without waiting for trackers or other peer sources.
+ *
+ * <p>Peers are saved when the torrent is stopped and when the runtime is shut down.
+ * Does nothing, if {@link Config#getPeerCacheStorageDirectory()} is not set.
+ *
+ * <p><b>Note that this class implements a service.
+ * Hence, is not a part of the public API and is a subject to change.</b></p>
+ *
+ * @since 1.8
+ */
+public class PeerCacheStorage {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PeerCacheStorage.class);
+
+    private static final int MAX_PEERS_PER_TORRENT = 100;
+    private static final String FILE_EXTENSION = ".peers";
+
+    private final Path directory;
+    private final IPeerRegistry peerRegistry;
+    // most recently connected peers go last
+    private final Map<TorrentId, Set<InetSocketAddress>> goodPeers;
+
+    @Inject
+    public PeerCacheStorage(Config config,
+                            IPeerRegistry peerRegistry,
+                            EventSource eventSource,
+                            IRuntimeLifecycleBinder lifecycleBinder) {
+        this.directory = config.getPeerCacheStorageDirectory();
+        this.peerRegistry = peerRegistry;
+        this.goodPeers = new ConcurrentHashMap<>();
+
+        if (directory != null) {
+            eventSource.onPeerConnected(this::onPeerConnected);
+            eventSource.onTorrentStarted(this::onTorrentStarted);
+            eventSource.onTorrentStopped(this::onTorrentStopped);
+            lifecycleBinder.onShutdown("Save good peers for all torrents", this::saveAll);
+        }
+    }
+
+    private void onPeerConnected(PeerConnectedEvent event) {
+        if (event.isIncoming()) {
+            // remote port of an incoming connection is ephemeral, so the peer can't be reached at this address later
+            return;
+        }
+        Set<InetSocketAddress> peers = goodPeers.computeIfAbsent(event.getTorrentId(), id -> new LinkedHashSet<>());
+        InetSocketAddress address = event.getPeer().getInetSocketAddress();
+        synchronized (peers) {
+            peers.remove(address);
+            peers.add(address);
+            if (peers.size() > MAX_PEERS_PER_TORRENT) {
+                Iterator<InetSocketAddress> iter = peers.iterator();
+                iter.next();
+                iter.remove();
+            }
+        }
+    }
+
+    private void onTorrentStarted(TorrentStartedEvent event) {
+        TorrentId torrentId = event.getTorrentId();
+        Collection<InetSocketAddress> peers;
+        try {
+            peers = load(torrentId);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to load saved peers for torrent: " + torrentId, e);
+            return;
+        }
+
+        if (!peers.isEmpty()) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Adding {} saved peers for torrent: {}", peers.size(), torrentId);
+            }
+            // keep the saved peers, so that they are not lost if none of them is reachable this time
+            Set<InetSocketAddress> known = goodPeers.computeIfAbsent(torrentId, id -> new LinkedHashSet<>());
+            synchronized (known) {
+                for (InetSocketAddress peer : peers) {
+                    if (known.size() < MAX_PEERS_PER_TORRENT) {
+                        known.add(peer);
+                    }
+                }
+            }
+            peers.forEach(address -> peerRegistry.addPeer(torrentId, new InetPeer(address), PeerSourceType.MANUAL));
+        }
+    }
+
+    private void onTorrentStopped(TorrentStoppedEvent event) {
+        // peers are loaded from the file again, if the torrent is re-started
+        Set<InetSocketAddress> peers = goodPeers.remove(event.getTorrentId());
+        if (peers != null) {
+            save(event.getTorrentId(), peers);
+        }
+    }
+
+    private void saveAll() {
+        goodPeers.forEach(this::save);
+    }
+
+    /**
+     * @return Snapshot of good peers for a torrent, that is currently tracked by this storage
+     */
+    Collection<InetSocketAddress> getGoodPeers(TorrentId torrentId) {
+        Set<InetSocketAddress> peers = goodPeers.get(torrentId);
+        if (peers == null) {
+            return Collections.emptyList();
+        }
+        synchronized (peers) {
+            return new ArrayList<>(peers);
+        }
+    }
+
+    private void save(TorrentId torrentId, Set<InetSocketAddress> peers) {
+        List<InetSocketAddress> snapshot;
+        synchronized (peers) {
+            snapshot = new ArrayList<>(peers);
+        }
+
+        Path tempFile = null;
+        try {
+            Files.createDirectories(directory);
+            tempFile = Files.createTempFile(directory, torrentId.toString(), FILE_EXTENSION + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tempFile)) {
+                write(snapshot, out);
+            }
+            // replace the previous file atomically, so that it's not corrupted if the process is killed
+            try {
+                Files.move(tempFile, getFile(torrentId), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, getFile(torrentId), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to save peers for torrent: " + torrentId, e);
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException e1) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private Collection<InetSocketAddress> load(TorrentId torrentId) throws IOException {
+        Path file = getFile(torrentId);
+        if (!Files.exists(file)) {
+            return Collections.emptyList();
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            return read(in);
+        }
+    }
+
+    private Path getFile(TorrentId torrentId) {
+        return directory.resolve(torrentId.toString() + FILE_EXTENSION);
+    }
+
+    /**
+     * Each peer is written as: address length (1 byte), address (4 or 16 bytes), port (2 bytes).
+     */
+    static void write(Collection<InetSocketAddress> peers, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        for (InetSocketAddress peer : peers) {
+            InetAddress address = peer.getAddress();
+            if (address == null) {
+                // unresolved
+                continue;
+            }
+            byte[] bytes = address.getAddress();
+            data.writeByte(bytes.length);
+            data.write(bytes);
+            data.writeShort(peer.getPort());
+        }
+        data.flush();
+    }
+
+    static List<InetSocketAddress> read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        List<InetSocketAddress> peers = new ArrayList<>();
+        int length;
+        while ((length = data.read()) >= 0) {
+            if (length != 4 && length != 16) {
+                throw new IOException("Invalid address length: " + length);
+            }
+            byte[] bytes = new byte[length];
+            try {
+                data.readFully(bytes);
+                int port = data.readUnsignedShort();
+                peers.add(new InetSocketAddress(InetAddress.getByAddress(bytes), port));
+            } catch (EOFException e) {
+                throw new IOException("Unexpected end of file", e);
+            }
+        }
+        return peers;
+    }
+}
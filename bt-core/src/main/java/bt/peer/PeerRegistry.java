@@ -88,7 +88,7 @@ public class PeerRegistry implements IPeerRegistry {
         this.trackerService = trackerService;
         this.eventSink = eventSink;
         this.trackerPeerSourceFactory = new TrackerPeerSourceFactory(trackerService, torrentRegistry,
-                lifecycleBinder, config.getTrackerQueryInterval());
+                lifecycleBinder, config.getTrackerQueryInterval(), config.getMaxConcurrentTrackerRequests());
         this.extraPeerSourceFactories = extraPeerSourceFactories;
 
         this.extraAnnounceKeys = new ConcurrentHashMap<>();
@@ -0,0 +1,405 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.peer;
+
+import bt.data.DataDescriptor;
+import bt.metainfo.TorrentId;
+import bt.net.Peer;
+import bt.service.IRuntimeLifecycleBinder;
+import bt.torrent.TorrentDescriptor;
+import bt.torrent.TorrentRegistry;
+import bt.tracker.AnnounceKey;
+import bt.tracker.ITrackerService;
+import bt.tracker.Tracker;
+import bt.tracker.TrackerResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Schedules periodic tracker queries for all torrents in a single thread.
+ *
+ * <p>Each (torrent, announce key) pair is queried no more often than the tracker asks it to
+ * (i.e. the {@code interval} and {@code min interval} from the tracker's response are honored),
+ * and the next query is delayed by a random jitter, so that queries to the same tracker are spread over time.
+ * Responses to "started" and "completed" events, that are announced outside of the scheduler,
+ * are treated as if they were responses to the scheduler's own queries.
+ * Failed queries are retried with exponential back-off. Queries, that have not completed in time, are considered failed,
+ * so that unresponsive trackers do not hold the slots of other queries.
+ *
+ * <p>The number of simultaneous queries is limited. When there are more due queries than can be executed,
+ * torrents, that have not received any peers from the tracker yet, go first, followed by incomplete torrents,
+ * followed by seeding torrents.
+ *
+ * @since 1.8
+ */
+class TrackerAnnounceScheduler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TrackerAnnounceScheduler.class);
+
+    // generous, because multi-trackers may try several trackers in turn, and each request is timed out separately
+    private static final Duration DEFAULT_MAX_QUERY_DURATION = Duration.ofMinutes(5);
+    private static final Duration BASE_RETRY_INTERVAL = Duration.ofSeconds(30);
+    private static final int MAX_RETRY_EXPONENT = 16;
+    private static final double MAX_JITTER = 0.1;
+
+    private static final int PRIORITY_NOT_ANNOUNCED = 0;
+    private static final int PRIORITY_INCOMPLETE = 1;
+    private static final int PRIORITY_COMPLETE = 2;
+
+    private enum State {
+        IDLE, SCHEDULED, IN_FLIGHT, COMPLETING
+    }
+
+    private final TorrentRegistry torrentRegistry;
+    private final ITrackerService trackerService;
+    private final Duration trackerQueryInterval;
+    private final int maxConcurrentQueries;
+    private final long maxQueryDuration;
+
+    private final ReentrantLock lock;
+    private final Condition changed;
+    // entries, that are waiting for their due time
+    private final PriorityQueue<Entry> scheduled;
+    // entries, that are due, but are waiting for a free slot
+    private final PriorityQueue<Entry> ready;
+    // entries, whose queries are in progress, ordered by deadline
+    private final PriorityQueue<Entry> running;
+    private int inFlight;
+
+    private final Thread thread;
+    private volatile boolean started;
+    private volatile boolean shutdown;
+
+    TrackerAnnounceScheduler(TorrentRegistry torrentRegistry,
+                             ITrackerService trackerService,
+                             IRuntimeLifecycleBinder lifecycleBinder,
+                             Duration trackerQueryInterval,
+                             int maxConcurrentQueries) {
+        this(torrentRegistry, trackerService, lifecycleBinder, trackerQueryInterval, maxConcurrentQueries,
+                DEFAULT_MAX_QUERY_DURATION);
+    }
+
+    TrackerAnnounceScheduler(TorrentRegistry torrentRegistry,
+                             ITrackerService trackerService,
+                             IRuntimeLifecycleBinder lifecycleBinder,
+                             Duration trackerQueryInterval,
+                             int maxConcurrentQueries,
+                             Duration maxQueryDuration) {
+        this.torrentRegistry = torrentRegistry;
+        this.trackerService = trackerService;
+        this.trackerQueryInterval = trackerQueryInterval;
+        this.maxConcurrentQueries = maxConcurrentQueries;
+        this.maxQueryDuration = maxQueryDuration.toMillis();
+
+        this.lock = new ReentrantLock();
+        this.changed = lock.newCondition();
+        this.scheduled = new PriorityQueue<>(Comparator.comparingLong(entry -> entry.dueTime));
+        this.ready = new PriorityQueue<>(Comparator.<Entry>comparingInt(entry -> entry.priority)
+                .thenComparingLong(entry -> entry.dueTime));
+        this.running = new PriorityQueue<>(Comparator.comparingLong(entry -> entry.deadline));
+
+        this.thread = new Thread(this::run, "bt.peer.tracker-announce-scheduler");
+        this.thread.setDaemon(true);
+        lifecycleBinder.onShutdown("Shutdown tracker announce scheduler", this::shutdown);
+    }
+
+    /**
+     * @param tracker Tracker, that was created for the given announce key
+     * @param peerConsumer Receives peers from successful tracker responses
+     * @return Entry, that can be used to request tracker queries for the given torrent
+     */
+    Entry register(Tracker tracker, AnnounceKey announceKey, TorrentId torrentId, Consumer<Peer> peerConsumer) {
+        return new Entry(tracker, announceKey, torrentId, peerConsumer);
+    }
+
+    private void schedule(Entry entry) {
+        ensureStarted();
+        TrackerResponse announceResponse = trackerService.getLastAnnounceResponse(entry.announceKey, entry.torrentId)
+                .orElse(null);
+        boolean announced = false;
+        lock.lock();
+        try {
+            if (announceResponse != null && announceResponse != entry.lastAnnounceResponse) {
+                // the torrent has just been announced, so the tracker should not be queried again before the interval
+                entry.lastAnnounceResponse = announceResponse;
+                entry.announced = true;
+                entry.failures = 0;
+                entry.nextAllowedTime = Math.max(entry.nextAllowedTime,
+                        System.currentTimeMillis() + withJitter(getAnnounceInterval(announceResponse)));
+                if (entry.state == State.SCHEDULED && (scheduled.remove(entry) || ready.remove(entry))) {
+                    entry.state = State.IDLE;
+                }
+                announced = true;
+            }
+            if (entry.state == State.IDLE && !shutdown) {
+                entry.state = State.SCHEDULED;
+                entry.dueTime = Math.max(System.currentTimeMillis(), entry.nextAllowedTime);
+                scheduled.add(entry);
+                if (scheduled.peek() == entry) {
+                    changed.signal();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (announced) {
+            consumePeers(entry, announceResponse);
+        }
+    }
+
+    private void ensureStarted() {
+        if (!started) {
+            synchronized (thread) {
+                if (!started) {
+                    thread.start();
+                    started = true;
+                }
+            }
+        }
+    }
+
+    private void run() {
+        List<Entry> dispatched = new ArrayList<>();
+        List<Entry> expired = new ArrayList<>();
+        while (!shutdown) {
+            lock.lock();
+            try {
+                long now = System.currentTimeMillis();
+                Entry entry;
+                while ((entry = running.peek()) != null && entry.deadline <= now) {
+                    running.poll();
+                    expired.add(entry);
+                }
+                while ((entry = scheduled.peek()) != null && entry.dueTime <= now) {
+                    scheduled.poll();
+                    entry.priority = getPriority(entry);
+                    ready.add(entry);
+                }
+                while (inFlight < maxConcurrentQueries && (entry = ready.poll()) != null) {
+                    entry.state = State.IN_FLIGHT;
+                    entry.query++;
+                    entry.deadline = now + maxQueryDuration;
+                    running.add(entry);
+                    inFlight++;
+                    dispatched.add(entry);
+                }
+
+                if (dispatched.isEmpty() && expired.isEmpty()) {
+                    // wait until something is scheduled, some of the queries complete or time out
+                    long wakeUpTime = Long.MAX_VALUE;
+                    Entry next = scheduled.peek();
+                    if (next != null && ready.isEmpty()) {
+                        wakeUpTime = next.dueTime;
+                    }
+                    Entry oldest = running.peek();
+                    if (oldest != null) {
+                        wakeUpTime = Math.min(wakeUpTime, oldest.deadline);
+                    }
+                    if (wakeUpTime == Long.MAX_VALUE) {
+                        changed.await();
+                    } else {
+                        changed.await(wakeUpTime - now, TimeUnit.MILLISECONDS);
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            // query numbers are modified only by this thread, so reading them without the lock is safe
+            expired.forEach(entry -> onComplete(entry, entry.query, null, new TimeoutException(
+                    "Tracker query has not completed in " + maxQueryDuration + " ms")));
+            expired.clear();
+            dispatched.forEach(this::dispatch);
+            dispatched.clear();
+        }
+    }
+
+    private int getPriority(Entry entry) {
+        if (!entry.announced) {
+            return PRIORITY_NOT_ANNOUNCED;
+        }
+        Optional<TorrentDescriptor> descriptor = torrentRegistry.getDescriptor(entry.torrentId);
+        if (descriptor.isPresent()) {
+            DataDescriptor dataDescriptor = descriptor.get().getDataDescriptor();
+            if (dataDescriptor != null && dataDescriptor.getBitfield().getPiecesRemaining() == 0) {
+                return PRIORITY_COMPLETE;
+            }
+        }
+        return PRIORITY_INCOMPLETE;
+    }
+
+    private void dispatch(Entry entry) {
+        long query = entry.query;
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("Querying tracker {} for torrent id: {}", entry.tracker, entry.torrentId);
+        }
+        CompletableFuture<TrackerResponse> future;
+        try {
+            // TODO: report stats
+            future = entry.tracker.request(entry.torrentId).queryAsync();
+        } catch (Exception e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        future.whenComplete((response, e) -> onComplete(entry, query, response, e));
+    }
+
+    private void onComplete(Entry entry, long query, TrackerResponse response, Throwable error) {
+        if (!claim(entry, query)) {
+            // the query has already timed out, and the late response is ignored (or vice versa)
+            return;
+        }
+
+        boolean success = false;
+        if (error != null) {
+            LOGGER.error("Failed to get peers for torrent: " + entry.torrentId + ", tracker: " + entry.tracker, error);
+        } else if (response.isSuccess()) {
+            success = true;
+            consumePeers(entry, response);
+        } else if (response.getError().isPresent()) {
+            LOGGER.error("Failed to get peers for torrent: " + entry.torrentId + ", tracker: " + entry.tracker,
+                    response.getError().get());
+        } else {
+            LOGGER.error("Failed to get peers for torrent: " + entry.torrentId + ", tracker: " + entry.tracker +
+                    " -- unexpected error during interaction with the tracker; message: " + response.getErrorMessage());
+        }
+
+        lock.lock();
+        try {
+            long interval;
+            if (success) {
+                entry.announced = true;
+                entry.failures = 0;
+                interval = getAnnounceInterval(response);
+            } else {
+                entry.failures++;
+                interval = getRetryInterval(entry.failures);
+            }
+            entry.nextAllowedTime = System.currentTimeMillis() + withJitter(interval);
+            entry.state = State.IDLE;
+            inFlight--;
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void consumePeers(Entry entry, TrackerResponse response) {
+        try {
+            response.getPeers().forEach(entry.peerConsumer);
+        } catch (Exception e) {
+            LOGGER.error("Failed to process peers for torrent: " + entry.torrentId + ", tracker: " + entry.tracker, e);
+        }
+    }
+
+    /**
+     * @return true, if the caller is the first to complete the given query
+     */
+    private boolean claim(Entry entry, long query) {
+        lock.lock();
+        try {
+            if (entry.state != State.IN_FLIGHT || entry.query != query) {
+                return false;
+            }
+            // any other attempt to complete the same query will fail
+            entry.state = State.COMPLETING;
+            running.remove(entry);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long getAnnounceInterval(TrackerResponse response) {
+        long interval = trackerQueryInterval.toMillis();
+        interval = Math.max(interval, TimeUnit.SECONDS.toMillis(response.getInterval()));
+        interval = Math.max(interval, TimeUnit.SECONDS.toMillis(response.getMinInterval()));
+        return interval;
+    }
+
+    private long getRetryInterval(int failures) {
+        long interval = BASE_RETRY_INTERVAL.toMillis() << Math.min(failures - 1, MAX_RETRY_EXPONENT);
+        return Math.min(interval, trackerQueryInterval.toMillis());
+    }
+
+    private static long withJitter(long interval) {
+        return interval + (long) (ThreadLocalRandom.current().nextDouble() * MAX_JITTER * interval);
+    }
+
+    private void shutdown() {
+        shutdown = true;
+        thread.interrupt();
+    }
+
+    /**
+     * Scheduling state of a single (torrent, tracker) pair. All mutable fields are guarded by the scheduler's lock.
+     */
+    class Entry {
+
+        private final Tracker tracker;
+        private final AnnounceKey announceKey;
+        private final TorrentId torrentId;
+        private final Consumer<Peer> peerConsumer;
+
+        private State state;
+        private long dueTime;
+        private long nextAllowedTime;
+        private long deadline;
+        private long query;
+        private int priority;
+        private int failures;
+        private boolean announced;
+        private TrackerResponse lastAnnounceResponse;
+
+        private Entry(Tracker tracker, AnnounceKey announceKey, TorrentId torrentId, Consumer<Peer> peerConsumer) {
+            this.tracker = tracker;
+            this.announceKey = announceKey;
+            this.torrentId = torrentId;
+            this.peerConsumer = peerConsumer;
+            this.state = State.IDLE;
+        }
+
+        /**
+         * Request a tracker query. The query will be executed as soon as the tracker allows it,
+         * unless it has already been scheduled or is in progress.
+         */
+        void requestAnnounce() {
+            schedule(this);
+        }
+
+        Tracker getTracker() {
+            return tracker;
+        }
+    }
+}
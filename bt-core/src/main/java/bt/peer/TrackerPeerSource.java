@@ -16,65 +16,48 @@
 
 package bt.peer;
 
-import bt.BtException;
+import bt.event.PeerSourceType;
 import bt.metainfo.TorrentId;
 import bt.net.Peer;
-import bt.event.PeerSourceType;
+import bt.tracker.AnnounceKey;
 import bt.tracker.Tracker;
-import bt.tracker.TrackerResponse;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
-import java.time.Duration;
-import java.util.concurrent.ExecutorService;
-import java.util.function.Consumer;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.LinkedBlockingQueue;
 
-class TrackerPeerSource extends ScheduledPeerSource {
+/**
+ * Tracker queries are executed by the scheduler, which is shared by all tracker peer sources.
+ * Each call to {@link #update()} only requests a query, that will be executed as soon as the tracker allows it.
+ */
+class TrackerPeerSource implements PeerSource {
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(TrackerPeerSource.class);
+    private final TrackerAnnounceScheduler.Entry announceEntry;
+    private final Queue<Peer> peers;
 
-    private Tracker tracker;
-    private TorrentId torrentId;
-    private Duration trackerQueryInterval;
+    TrackerPeerSource(TrackerAnnounceScheduler scheduler, Tracker tracker, AnnounceKey announceKey, TorrentId torrentId) {
+        this.peers = new LinkedBlockingQueue<>();
+        this.announceEntry = scheduler.register(tracker, announceKey, torrentId, peers::add);
+    }
 
-    private volatile long lastRefreshed;
-    private volatile Duration trackerPreferredInterval;
+    @Override
+    public PeerSourceType getPeerSourceType() {
+        return PeerSourceType.TRACKER;
+    }
 
-    TrackerPeerSource(ExecutorService executor, Tracker tracker, TorrentId torrentId, Duration trackerQueryInterval) {
-        super(PeerSourceType.TRACKER, executor);
-        this.tracker = tracker;
-        this.torrentId = torrentId;
-        this.trackerQueryInterval = trackerQueryInterval;
-        this.trackerPreferredInterval = trackerQueryInterval;
+    @Override
+    public boolean update() {
+        announceEntry.requestAnnounce();
+        return !peers.isEmpty();
     }
 
     @Override
-    protected void collectPeers(Consumer<Peer> peerConsumer) {
-        final long interval = System.currentTimeMillis() - lastRefreshed;
-        if (interval >= trackerQueryInterval.toMillis() && interval >= trackerPreferredInterval.toMillis()) {
-            TrackerResponse response;
-            try {
-                // TODO: report stats
-                response = tracker.request(torrentId).query();
-            } finally {
-                lastRefreshed = System.currentTimeMillis();
-            }
-            if (response.isSuccess()) {
-                trackerPreferredInterval = Duration.ofSeconds(response.getInterval());
-                response.getPeers().forEach(peerConsumer::accept);
-            } else {
-                if (response.getError().isPresent()) {
-                    throw new BtException("Failed to get peers for torrent", response.getError().get());
-                } else {
-                    LOGGER.error("Failed to get peers for torrent -- " +
-                            "unexpected error during interaction with the tracker; message: " + response.getErrorMessage());
-                }
-            }
-        }
+    public Collection<Peer> getPeers() {
+        return peers;
     }
 
     @Override
     public String toString() {
-        return "TrackerPeerSource {" + tracker + "}";
+        return "TrackerPeerSource {" + announceEntry.getTracker() + "}";
     }
 }
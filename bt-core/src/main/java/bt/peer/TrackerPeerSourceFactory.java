@@ -31,38 +31,25 @@ import java.util.Collections;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.atomic.AtomicInteger;
 
 class TrackerPeerSourceFactory implements PeerSourceFactory {
 
     private ITrackerService trackerService;
     private TorrentRegistry torrentRegistry;
-    private Duration trackerQueryInterval;
     private ConcurrentMap<TorrentId, ConcurrentMap<AnnounceKey, TrackerPeerSource>> peerSources;
 
-    private ExecutorService executor;
+    private TrackerAnnounceScheduler scheduler;
 
     public TrackerPeerSourceFactory(ITrackerService trackerService,
                                     TorrentRegistry torrentRegistry,
                                     IRuntimeLifecycleBinder lifecycleBinder,
-                                    Duration trackerQueryInterval) {
+                                    Duration trackerQueryInterval,
+                                    int maxConcurrentQueries) {
         this.trackerService = trackerService;
         this.torrentRegistry = torrentRegistry;
-        this.trackerQueryInterval = trackerQueryInterval;
         this.peerSources = new ConcurrentHashMap<>();
-
-        this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
-            AtomicInteger i = new AtomicInteger();
-
-            @Override
-            public Thread newThread(Runnable r) {
-                return new Thread(r, "bt.peer.tracker-peer-source-" + i.incrementAndGet());
-            }
-        });
-        lifecycleBinder.onShutdown("Shutdown tracker peer sources", executor::shutdownNow);
+        this.scheduler = new TrackerAnnounceScheduler(torrentRegistry, trackerService, lifecycleBinder,
+                trackerQueryInterval, maxConcurrentQueries);
     }
 
     @Override
@@ -115,7 +102,7 @@ class TrackerPeerSourceFactory implements PeerSourceFactory {
     }
 
     private TrackerPeerSource createTrackerPeerSource(TorrentId torrentId, AnnounceKey announceKey) {
-        return new TrackerPeerSource(executor, trackerService.getTracker(announceKey), torrentId, trackerQueryInterval);
+        return new TrackerPeerSource(scheduler, trackerService.getTracker(announceKey), announceKey, torrentId);
     }
 
     private static final PeerSource noopSource = new PeerSource() {
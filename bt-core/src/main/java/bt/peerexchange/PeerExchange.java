@@ -17,6 +17,7 @@
 package bt.peerexchange;
 
 import bt.BtException;
+import bt.bencoding.BEEncoder;
 import bt.bencoding.model.BEMap;
 import bt.bencoding.model.BEObject;
 import bt.bencoding.model.BEString;
@@ -30,6 +31,7 @@ import bt.tracker.CompactPeerInfo.AddressType;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -117,7 +119,18 @@ class PeerExchange extends ExtendedMessage {
     }
 
     void writeTo(OutputStream out) throws IOException {
+        getMessage().writeTo(out);
+    }
+
+    /**
+     * @return true if the message has been written, false if the buffer does not have enough space
+     * @since 1.8
+     */
+    boolean writeTo(ByteBuffer buffer) {
+        return BEEncoder.encoder().encode(getMessage(), buffer);
+    }
 
+    private BEMap getMessage() {
         if (message == null) {
             message = new BEMap(null, new HashMap<String, BEObject<?>>() {{
                 Collection<Peer> inet4Peers = filterByAddressType(added, AddressType.IPV4);
@@ -132,7 +145,7 @@ class PeerExchange extends ExtendedMessage {
                 put(DROPPED_IPV6_KEY, encodePeers(filterByAddressType(dropped, AddressType.IPV6)));
             }});
         }
-        message.writeTo(out);
+        return message;
     }
 
     private static Collection<Peer> filterByAddressType(Collection<Peer> peers, AddressType addressType) {
@@ -22,8 +22,6 @@ import bt.protocol.DecodingContext;
 import bt.protocol.EncodingContext;
 import bt.protocol.handler.MessageHandler;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.Collections;
@@ -49,31 +47,18 @@ class PeerExchangeMessageHandler implements MessageHandler<PeerExchange> {
     @Override
     public int decode(DecodingContext context, ByteBuffer buffer) {
 
-        byte[] payload = new byte[buffer.remaining()];
-        buffer.get(payload);
-        try (BEParser parser = new BEParser(payload)) {
+        // parse in place: the message copies everything it needs, so the parsed map may refer to the buffer
+        try (BEParser parser = new BEParser(buffer)) {
             BEMap messageContent = parser.readMap();
             PeerExchange message = PeerExchange.parse(messageContent);
             context.setMessage(message);
-            return messageContent.getContent().length;
+            buffer.position(buffer.limit());
+            return parser.getRootObjectLength();
         }
     }
 
     @Override
     public boolean encode(EncodingContext context, PeerExchange message, ByteBuffer buffer) {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        try {
-            message.writeTo(bos);
-        } catch (IOException e) {
-            // can't happen
-        }
-
-        byte[] payload = bos.toByteArray();
-        if (buffer.remaining() < payload.length) {
-            return false;
-        }
-
-        buffer.put(payload);
-        return true;
+        return message.writeTo(buffer);
     }
 }
@@ -136,6 +136,11 @@ public class FetchMetadataStage extends TerminateOnErrorProcessingStage<MagnetCo
                     return delegate.getChunkHashes();
                 }
 
+                @Override
+                public byte[] getConcatenatedChunkHashes() {
+                    return delegate.getConcatenatedChunkHashes();
+                }
+
                 @Override
                 public long getSize() {
                     return delegate.getSize();
@@ -93,6 +93,31 @@ public class InitializeMagnetTorrentProcessingStage extends InitializeTorrentPro
                 LOGGER.warn("Error happened when processing peer's bitfield", e);
             }
         });
+        // Fast extension's replacements for bitfields
+        context.getBitfieldConsumer().getHaveAll().forEach(peer -> {
+            if (statistics.getPieces(peer).isPresent()) {
+                return;
+            }
+            try {
+                peersUpdated.add(peer);
+                BitSet pieces = new BitSet(statistics.getPiecesTotal());
+                pieces.set(0, statistics.getPiecesTotal());
+                statistics.addPieces(peer, pieces);
+            } catch (Exception e) {
+                LOGGER.warn("Error happened when processing peer's have all", e);
+            }
+        });
+        context.getBitfieldConsumer().getHaveNone().forEach(peer -> {
+            if (statistics.getPieces(peer).isPresent()) {
+                return;
+            }
+            try {
+                peersUpdated.add(peer);
+                statistics.addPieces(peer, new BitSet(statistics.getPiecesTotal()));
+            } catch (Exception e) {
+                LOGGER.warn("Error happened when processing peer's have none", e);
+            }
+        });
         context.getBitfieldConsumer().getHaves().forEach((peer, pieces) -> {
             try {
                 peersUpdated.add(peer);
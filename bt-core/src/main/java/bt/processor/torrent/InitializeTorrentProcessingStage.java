@@ -36,6 +36,7 @@ import bt.torrent.TorrentDescriptor;
 import bt.torrent.TorrentRegistry;
 import bt.torrent.data.DataWorker;
 import bt.torrent.data.IDataWorkerFactory;
+import bt.torrent.messaging.AllowedFastProducer;
 import bt.torrent.messaging.Assignments;
 import bt.torrent.messaging.BitfieldConsumer;
 import bt.torrent.messaging.GenericConsumer;
@@ -46,6 +47,7 @@ import bt.torrent.messaging.PeerRequestConsumer;
 import bt.torrent.messaging.PeerWorkerFactory;
 import bt.torrent.messaging.PieceConsumer;
 import bt.torrent.messaging.RequestProducer;
+import bt.torrent.messaging.SuggestPieceProducer;
 import bt.torrent.messaging.TorrentWorker;
 import bt.torrent.order.PieceOrder;
 
@@ -96,7 +98,7 @@ public class InitializeTorrentProcessingStage<C extends TorrentContext> extends
         PiecesStatistics pieceStatistics = new PiecesStatistics(bitfield.getPiecesTotal());
         final PieceOrder pieceOrder = context.getPieceOrder();
 
-        DataWorker dataWorker = createDataWorker(descriptor);
+        DataWorker dataWorker = createDataWorker(torrentId, descriptor);
         Assignments assignments = new Assignments(bitfield, pieceOrder, pieceStatistics, config);
 
         IPeerWorkerFactory peerWorkerFactory = new PeerWorkerFactory(context.getRouter(), transferAmountStatistic);
@@ -128,10 +130,14 @@ public class InitializeTorrentProcessingStage<C extends TorrentContext> extends
 
 
         context.getRouter().registerMessagingAgent(GenericConsumer.consumer());
-        context.getRouter().registerMessagingAgent(new BitfieldConsumer(peerManager));
+        context.getRouter().registerMessagingAgent(new BitfieldConsumer(peerManager, bitfield.getPiecesTotal()));
         context.getRouter().registerMessagingAgent(new PieceConsumer(descriptor.getDataDescriptor(), dataWorker));
         context.getRouter().registerMessagingAgent(new PeerRequestConsumer(dataWorker));
-        context.getRouter().registerMessagingAgent(new RequestProducer(descriptor.getDataDescriptor(), dataWorker));
+        context.getRouter().registerMessagingAgent(new RequestProducer(descriptor.getDataDescriptor(), dataWorker, config));
+        if (config.isFastExtensionEnabled()) {
+            context.getRouter().registerMessagingAgent(new AllowedFastProducer(bitfield, config));
+            context.getRouter().registerMessagingAgent(new SuggestPieceProducer(dataWorker, peerManager));
+        }
         context.getRouter().registerMessagingAgent(new MetadataProducer(() -> context.getTorrent().orElse(null), config));
 
         context.setBitfield(bitfield);
@@ -139,8 +145,8 @@ public class InitializeTorrentProcessingStage<C extends TorrentContext> extends
         context.setPieceStatistics(pieceStatistics);
     }
 
-    private DataWorker createDataWorker(TorrentDescriptor descriptor) {
-        return dataWorkerFactory.createWorker(descriptor.getDataDescriptor());
+    private DataWorker createDataWorker(TorrentId torrentId, TorrentDescriptor descriptor) {
+        return dataWorkerFactory.createWorker(torrentId, descriptor.getDataDescriptor());
     }
 
     @Override
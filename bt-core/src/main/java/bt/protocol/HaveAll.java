@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.protocol;
+
+/**
+ * @since 1.8
+ */
+public final class HaveAll implements Message {
+
+    private HaveAll() {
+    }
+
+    private static final HaveAll instance = new HaveAll();
+
+    /**
+     * @since 1.8
+     */
+    public static HaveAll instance() {
+        return instance;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + this.getClass().getSimpleName() + "]";
+    }
+
+    @Override
+    public Integer getMessageId() {
+        return StandardBittorrentProtocol.HAVE_ALL_ID;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.protocol;
+
+/**
+ * @since 1.8
+ */
+public final class RejectRequest implements Message {
+
+    private int pieceIndex;
+    private int offset;
+    private int length;
+
+    /**
+     * @since 1.8
+     */
+    public RejectRequest(int pieceIndex, int offset, int length) throws InvalidMessageException {
+
+        if (pieceIndex < 0 || offset < 0 || length <= 0) {
+            throw new InvalidMessageException("Illegal arguments: piece index (" +
+                    pieceIndex + "), offset (" + offset + "), length (" + length + ")");
+        }
+
+        this.pieceIndex = pieceIndex;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * @since 1.8
+     */
+    public int getPieceIndex() {
+        return pieceIndex;
+    }
+
+    /**
+     * @since 1.8
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @since 1.8
+     */
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + this.getClass().getSimpleName() + "] piece index {" + pieceIndex + "}, offset {" + offset +
+                "}, length {" + length + "}";
+    }
+
+    @Override
+    public Integer getMessageId() {
+        return StandardBittorrentProtocol.REJECT_REQUEST_ID;
+    }
+}
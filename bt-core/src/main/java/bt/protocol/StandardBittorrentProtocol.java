@@ -20,15 +20,20 @@ import bt.BtException;
 import bt.metainfo.TorrentId;
 import bt.module.MessageHandlers;
 import bt.net.PeerId;
+import bt.protocol.handler.AllowedFastHandler;
 import bt.protocol.handler.BitfieldHandler;
 import bt.protocol.handler.CancelHandler;
 import bt.protocol.handler.ChokeHandler;
+import bt.protocol.handler.HaveAllHandler;
 import bt.protocol.handler.HaveHandler;
+import bt.protocol.handler.HaveNoneHandler;
 import bt.protocol.handler.InterestedHandler;
 import bt.protocol.handler.MessageHandler;
 import bt.protocol.handler.NotInterestedHandler;
 import bt.protocol.handler.PieceHandler;
+import bt.protocol.handler.RejectRequestHandler;
 import bt.protocol.handler.RequestHandler;
+import bt.protocol.handler.SuggestPieceHandler;
 import bt.protocol.handler.UnchokeHandler;
 import com.google.inject.Inject;
 
@@ -109,6 +114,41 @@ public class StandardBittorrentProtocol implements MessageHandler<Message> {
      */
     public static final int CANCEL_ID = 8;
 
+    /**
+     * BEP-6: Fast Extension
+     *
+     * @since 1.8
+     */
+    public static final int SUGGEST_PIECE_ID = 13;
+
+    /**
+     * BEP-6: Fast Extension
+     *
+     * @since 1.8
+     */
+    public static final int HAVE_ALL_ID = 14;
+
+    /**
+     * BEP-6: Fast Extension
+     *
+     * @since 1.8
+     */
+    public static final int HAVE_NONE_ID = 15;
+
+    /**
+     * BEP-6: Fast Extension
+     *
+     * @since 1.8
+     */
+    public static final int REJECT_REQUEST_ID = 16;
+
+    /**
+     * BEP-6: Fast Extension
+     *
+     * @since 1.8
+     */
+    public static final int ALLOWED_FAST_ID = 17;
+
     private static final String PROTOCOL_NAME = "BitTorrent protocol";
 
     private static final byte[] PROTOCOL_NAME_BYTES;
@@ -148,6 +188,11 @@ public class StandardBittorrentProtocol implements MessageHandler<Message> {
         handlers.put(REQUEST_ID, new RequestHandler());
         handlers.put(PIECE_ID, new PieceHandler());
         handlers.put(CANCEL_ID, new CancelHandler());
+        handlers.put(SUGGEST_PIECE_ID, new SuggestPieceHandler());
+        handlers.put(HAVE_ALL_ID, new HaveAllHandler());
+        handlers.put(HAVE_NONE_ID, new HaveNoneHandler());
+        handlers.put(REJECT_REQUEST_ID, new RejectRequestHandler());
+        handlers.put(ALLOWED_FAST_ID, new AllowedFastHandler());
 
         extraHandlers.forEach((messageId, handler) -> {
             if (handlers.containsKey(messageId)) {
@@ -17,6 +17,7 @@
 package bt.protocol.extended;
 
 import bt.BtException;
+import bt.bencoding.BEEncoder;
 import bt.bencoding.BEParser;
 import bt.bencoding.BEType;
 import bt.bencoding.model.BEInteger;
@@ -28,8 +29,6 @@ import bt.protocol.InvalidMessageException;
 import bt.protocol.DecodingContext;
 import bt.protocol.handler.MessageHandler;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.Collections;
@@ -114,6 +113,7 @@ class ExtendedHandshakeMessageHandler implements MessageHandler<ExtendedHandshak
     @Override
     public int decode(DecodingContext context, ByteBuffer buffer) {
 
+        // the handshake keeps the parsed values, so they must not refer to the (reusable) buffer
         byte[] payload = new byte[buffer.remaining()];
         buffer.get(payload);
         try (BEParser parser = new BEParser(payload)) {
@@ -122,7 +122,7 @@ class ExtendedHandshakeMessageHandler implements MessageHandler<ExtendedHandshak
             Map<String, BEObject<?>> value = message.getValue();
             processTypeMapping(context.getPeer(), value.get(ExtendedHandshake.MESSAGE_TYPE_MAPPING_KEY));
             context.setMessage(new ExtendedHandshake(value));
-            return message.getContent().length;
+            return parser.getRootObjectLength();
         } catch (Exception e) {
             // TODO: parser should be configurable to return null instead of throwing an exception;
             // otherwise need to treat exceptions differently depending on their type
@@ -134,19 +134,6 @@ class ExtendedHandshakeMessageHandler implements MessageHandler<ExtendedHandshak
     @Override
     public boolean encode(EncodingContext context, ExtendedHandshake message, ByteBuffer buffer) {
 
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        try {
-            new BEMap(null, message.getData()).writeTo(out);
-        } catch (IOException e) {
-            // can't happen
-        }
-
-        byte[] payload = out.toByteArray();
-        if (buffer.remaining() < payload.length) {
-            return false;
-        }
-
-        buffer.put(payload);
-        return true;
+        return BEEncoder.encoder().encode(new BEMap(null, message.getData()), buffer);
     }
 }
@@ -20,6 +20,7 @@ import bt.protocol.crypto.EncryptionPolicy;
 import bt.service.NetworkUtil;
 
 import java.net.InetAddress;
+import java.nio.file.Path;
 import java.time.Duration;
 
 /**
@@ -47,6 +48,7 @@ public class Config {
     private int numOfHashingThreads;
     private int maxConcurrentlyActivePeerConnectionsPerTorrent;
     private Duration maxPieceReceivingTime;
+    private Duration minBlockRequestTimeout;
     private Duration maxMessageProcessingInterval;
     private Duration unreachablePeerBanDuration;
     private int maxPendingConnectionRequests;
@@ -56,6 +58,17 @@ public class Config {
     private int metadataExchangeMaxSize;
     private int msePrivateKeySize;
     private int numberOfPeersToRequestFromTracker;
+    private boolean fastExtensionEnabled;
+    private int allowedFastSetSize;
+    private long readCacheSize;
+    private long writeCacheSize;
+    private boolean inOrderBlockRequestsEnabled;
+    private int maxConcurrentTrackerRequests;
+    private Duration trackerScrapeResultTtl;
+    private int maxConcurrentTrackerRequestsPerHost;
+    private Duration trackerRequestTimeout;
+    private int maxPeerCacheSize;
+    private Path peerCacheStorageDirectory;
 
     /**
      * Create a config with default parameters.
@@ -80,6 +93,7 @@ public class Config {
         this.numOfHashingThreads = 1; // do not parallelize by default
         this.maxConcurrentlyActivePeerConnectionsPerTorrent = 20;
         this.maxPieceReceivingTime = Duration.ofSeconds(60);
+        this.minBlockRequestTimeout = Duration.ofSeconds(10);
         this.maxMessageProcessingInterval = Duration.ofMillis(100);
         this.unreachablePeerBanDuration = Duration.ofSeconds(30);
         this.maxPendingConnectionRequests = 50;
@@ -89,6 +103,17 @@ public class Config {
         this.metadataExchangeMaxSize = 2 * 1024 * 1024; // 2 MB
         this.msePrivateKeySize = 20; // 20 bytes
         this.numberOfPeersToRequestFromTracker = 50;
+        this.fastExtensionEnabled = true;
+        this.allowedFastSetSize = 10;
+        this.readCacheSize = 64 * 1024 * 1024; // 64 MB
+        this.writeCacheSize = 64 * 1024 * 1024; // 64 MB
+        this.inOrderBlockRequestsEnabled = false;
+        this.maxConcurrentTrackerRequests = 16;
+        this.trackerScrapeResultTtl = Duration.ofMinutes(30);
+        this.maxConcurrentTrackerRequestsPerHost = 4;
+        this.trackerRequestTimeout = Duration.ofSeconds(60);
+        this.maxPeerCacheSize = 100000;
+        this.peerCacheStorageDirectory = null;
     }
 
     /**
@@ -116,6 +141,7 @@ public class Config {
         this.numOfHashingThreads = config.getNumOfHashingThreads();
         this.maxConcurrentlyActivePeerConnectionsPerTorrent = config.getMaxConcurrentlyActivePeerConnectionsPerTorrent();
         this.maxPieceReceivingTime = config.getMaxPieceReceivingTime();
+        this.minBlockRequestTimeout = config.getMinBlockRequestTimeout();
         this.maxMessageProcessingInterval = config.getMaxMessageProcessingInterval();
         this.unreachablePeerBanDuration = config.getUnreachablePeerBanDuration();
         this.maxPendingConnectionRequests = config.getMaxPendingConnectionRequests();
@@ -125,6 +151,17 @@ public class Config {
         this.metadataExchangeMaxSize = config.getMetadataExchangeMaxSize();
         this.msePrivateKeySize = config.getMsePrivateKeySize();
         this.numberOfPeersToRequestFromTracker = config.getNumberOfPeersToRequestFromTracker();
+        this.fastExtensionEnabled = config.isFastExtensionEnabled();
+        this.allowedFastSetSize = config.getAllowedFastSetSize();
+        this.readCacheSize = config.getReadCacheSize();
+        this.writeCacheSize = config.getWriteCacheSize();
+        this.inOrderBlockRequestsEnabled = config.isInOrderBlockRequestsEnabled();
+        this.maxConcurrentTrackerRequests = config.getMaxConcurrentTrackerRequests();
+        this.trackerScrapeResultTtl = config.getTrackerScrapeResultTtl();
+        this.maxConcurrentTrackerRequestsPerHost = config.getMaxConcurrentTrackerRequestsPerHost();
+        this.trackerRequestTimeout = config.getTrackerRequestTimeout();
+        this.maxPeerCacheSize = config.getMaxPeerCacheSize();
+        this.peerCacheStorageDirectory = config.getPeerCacheStorageDirectory();
     }
 
     /**
@@ -417,6 +454,27 @@ public class Config {
         return maxPieceReceivingTime;
     }
 
+    /**
+     * Block request is considered late, when it's been pending for longer than a peer-specific timeout,
+     * that is derived from the peer's average block receiving time and is bounded by this value from below
+     * and by {@link #getMaxPieceReceivingTime()} from above. When a peer has late requests, it's considered
+     * snubbed, and its' current piece is released, so that the missing blocks could be requested from other peers.
+     *
+     * @param minBlockRequestTimeout Lower bound on the amount of time to wait for a requested block
+     * @see #setMaxPieceReceivingTime(Duration)
+     * @since 1.8
+     */
+    public void setMinBlockRequestTimeout(Duration minBlockRequestTimeout) {
+        this.minBlockRequestTimeout = minBlockRequestTimeout;
+    }
+
+    /**
+     * @since 1.8
+     */
+    public Duration getMinBlockRequestTimeout() {
+        return minBlockRequestTimeout;
+    }
+
     /**
      * This option is related to the adaptive message processing interval feature in the message dispatcher.
      * The lower this value the higher the ingoing/outgoing message processing rate but also higher the CPU load.
@@ -565,4 +623,189 @@ public class Config {
     public int getNumberOfPeersToRequestFromTracker() {
         return numberOfPeersToRequestFromTracker;
     }
+
+    /**
+     * @param fastExtensionEnabled Advertise support for BEP-6: Fast Extension
+     *                             (Have All/Have None, Reject Request, Allowed Fast, Suggest Piece)
+     * @since 1.8
+     */
+    public void setFastExtensionEnabled(boolean fastExtensionEnabled) {
+        this.fastExtensionEnabled = fastExtensionEnabled;
+    }
+
+    /**
+     * @since 1.8
+     */
+    public boolean isFastExtensionEnabled() {
+        return fastExtensionEnabled;
+    }
+
+    /**
+     * @param allowedFastSetSize Number of pieces, that a peer with BEP-6: Fast Extension support
+     *                           is allowed to request while being choked. Zero disables Allowed Fast messages.
+     * @since 1.8
+     */
+    public void setAllowedFastSetSize(int allowedFastSetSize) {
+        this.allowedFastSetSize = allowedFastSetSize;
+    }
+
+    /**
+     * @since 1.8
+     */
+    public int getAllowedFastSetSize() {
+        return allowedFastSetSize;
+    }
+
+    /**
+     * @param readCacheSize Maximum total size of pieces (in bytes), that are kept in memory
+     *                      for serving block requests from peers. The cache is shared by all torrents in a runtime
+     *                      and is allocated outside of the heap (see -XX:MaxDirectMemorySize).
+     *                      Zero disables caching.
+     * @since 1.8
+     */
+    public void setReadCacheSize(long readCacheSize) {
+        this.readCacheSize = readCacheSize;
+    }
+
+    /**
+     * @since 1.8
+     */
+    public long getReadCacheSize() {
+        return readCacheSize;
+    }
+
+    /**
+     * @param writeCacheSize Maximum total size of in-progress pieces (in bytes), that are buffered in memory
+     *                       until they are complete and verified, and then written to the storage in one go.
+     *                       The cache is shared by all torrents in a runtime. When it's full,
+     *                       blocks of new pieces are written to the storage as soon as they are received.
+     *                       Zero disables buffering.
+     * @since 1.8
+     */
+    public void setWriteCacheSize(long writeCacheSize) {
+        this.writeCacheSize = writeCacheSize;
+    }
+
+    /**
+     * @since 1.8
+     */
+    public long getWriteCacheSize() {
+        return writeCacheSize;
+    }
+
+    /**
+     * @param inOrderBlockRequestsEnabled Request blocks of a piece in the order of their offsets
+     *                                    instead of a random order. Blocks, that arrive in order,
+     *                                    are hashed as soon as they are received,
+     *                                    so that the piece can be verified without re-reading it.
+     * @since 1.8
+     */
+    public void setInOrderBlockRequestsEnabled(boolean inOrderBlockRequestsEnabled) {
+        this.inOrderBlockRequestsEnabled = inOrderBlockRequestsEnabled;
+    }
+
+    /**
+     * @since 1.8
+     */
+    public boolean isInOrderBlockRequestsEnabled() {
+        return inOrderBlockRequestsEnabled;
+    }
+
+    /**
+     * @param maxConcurrentTrackerRequests Maximum number of tracker requests, that can be executed concurrently
+     *                                     (applies to asynchronous requests)
+     * @since 1.8
+     */
+    public void setMaxConcurrentTrackerRequests(int maxConcurrentTrackerRequests) {
+        this.maxConcurrentTrackerRequests = maxConcurrentTrackerRequests;
+    }
+
+    /**
+     * @since 1.8
+     */
+    public int getMaxConcurrentTrackerRequests() {
+        return maxConcurrentTrackerRequests;
+    }
+
+    /**
+     * @param trackerScrapeResultTtl Time to keep swarm statistics, that were received from trackers in response to scrape requests.
+     *                               Scrape requests for torrents with fresh statistics are not sent to trackers again.
+     * @since 1.8
+     */
+    public void setTrackerScrapeResultTtl(Duration trackerScrapeResultTtl) {
+        this.trackerScrapeResultTtl = trackerScrapeResultTtl;
+    }
+
+    /**
+     * @since 1.8
+     */
+    public Duration getTrackerScrapeResultTtl() {
+        return trackerScrapeResultTtl;
+    }
+
+    /**
+     * @param maxConcurrentTrackerRequestsPerHost Max number of simultaneous requests to trackers on the same host.
+     *                                            Excess requests are queued until some of the previous requests to that host complete.
+     * @since 1.8
+     */
+    public void setMaxConcurrentTrackerRequestsPerHost(int maxConcurrentTrackerRequestsPerHost) {
+        this.maxConcurrentTrackerRequestsPerHost = maxConcurrentTrackerRequestsPerHost;
+    }
+
+    /**
+     * @since 1.8
+     */
+    public int getMaxConcurrentTrackerRequestsPerHost() {
+        return maxConcurrentTrackerRequestsPerHost;
+    }
+
+    /**
+     * @param trackerRequestTimeout Max duration of an asynchronous tracker request.
+     *                              Requests, that take longer, fail and free their slots for other requests.
+     *                              Also used as the connect and read timeouts of HTTP tracker requests.
+     * @since 1.8
+     */
+    public void setTrackerRequestTimeout(Duration trackerRequestTimeout) {
+        this.trackerRequestTimeout = trackerRequestTimeout;
+    }
+
+    /**
+     * @since 1.8
+     */
+    public Duration getTrackerRequestTimeout() {
+        return trackerRequestTimeout;
+    }
+
+    /**
+     * @param maxPeerCacheSize Max number of known peers to keep in memory.
+     *                         When this limit is exceeded, least recently used peers are evicted.
+     * @since 1.8
+     */
+    public void setMaxPeerCacheSize(int maxPeerCacheSize) {
+        this.maxPeerCacheSize = maxPeerCacheSize;
+    }
+
+    /**
+     * @since 1.8
+     */
+    public int getMaxPeerCacheSize() {
+        return maxPeerCacheSize;
+    }
+
+    /**
+     * @param peerCacheStorageDirectory Directory to save the addresses of peers, that the client has successfully connected to.
+     *                                  Peers are saved per torrent and are used right away, when the torrent is started again.
+     *                                  If null (default), peers are not saved.
+     * @since 1.8
+     */
+    public void setPeerCacheStorageDirectory(Path peerCacheStorageDirectory) {
+        this.peerCacheStorageDirectory = peerCacheStorageDirectory;
+    }
+
+    /**
+     * @since 1.8
+     */
+    public Path getPeerCacheStorageDirectory() {
+        return peerCacheStorageDirectory;
+    }
 }
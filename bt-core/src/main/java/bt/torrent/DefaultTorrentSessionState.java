@@ -217,7 +217,7 @@ public class DefaultTorrentSessionState implements TorrentSessionState {
             final long blockSize = chunkDescriptor.blockSize();
             final long chunkSize = chunkDescriptor.getData().length();
             for (int blockIndex = 0; blockIndex < chunkDescriptor.blockCount(); blockIndex++) {
-                if (!chunkDescriptor.isPresent(blockIndex)) {
+                if (!chunkDescriptor.isPresent(blockIndex) && !dataWorker.isBlockPending(pieceIndex, blockIndex)) {
                     final long offset = blockIndex * blockSize;
                     final long length = Math.min(blockSize, chunkSize - offset);
                     amount.addAndGet(length);
@@ -18,12 +18,12 @@ package bt.torrent;
 
 import bt.data.Bitfield;
 import bt.net.Peer;
+import bt.net.PeerAddress;
+import bt.net.PeerAddressMap;
 import bt.torrent.order.PieceOrder;
 
 import java.util.BitSet;
-import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Acts as a storage for peers' bitfields and provides aggregate piece statistics.
@@ -33,7 +33,8 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class PiecesStatistics {
 
-    private final Map<Peer, BitSet> peerPiecesMap;
+    // guarded by accumulator
+    private final PeerAddressMap<BitSet> peerPiecesMap;
     private final BitSetAccumulator accumulator;
 
     /**
@@ -42,7 +43,7 @@ public class PiecesStatistics {
      * @since 0.0
      */
     public PiecesStatistics(int piecesTotal) {
-        this.peerPiecesMap = new ConcurrentHashMap<>();
+        this.peerPiecesMap = new PeerAddressMap<>();
         this.accumulator = new BitSetAccumulator(piecesTotal);
     }
 
@@ -58,7 +59,7 @@ public class PiecesStatistics {
     private void addPieces0(Peer peer, BitSet pieces) {
         validateLength(pieces.length());
         synchronized (accumulator) {
-            final BitSet previous = peerPiecesMap.put(peer, pieces);
+            final BitSet previous = peerPiecesMap.put(keyOf(peer), pieces);
             if (previous != null) { //todo is it ok?
                 remove0(previous);
             }
@@ -72,11 +73,9 @@ public class PiecesStatistics {
      * @since 0.0
      */
     public void removePieces(Peer peer) {
-        if (!peerPiecesMap.containsKey(peer)) {
-            return;
-        }
+        PeerAddress key = keyOf(peer);
         synchronized (accumulator) {
-            final BitSet previous = peerPiecesMap.remove(peer);
+            final BitSet previous = peerPiecesMap.remove(key);
             if (previous != null) {
                 remove0(previous);
             }
@@ -88,7 +87,7 @@ public class PiecesStatistics {
         if (remainder.cardinality() > 0) {
             assert false;
             accumulator.clear();
-            peerPiecesMap.values().forEach(accumulator::add);
+            peerPiecesMap.forEachValue(accumulator::add);
         }
     }
 
@@ -107,10 +106,11 @@ public class PiecesStatistics {
     public void addPiece(Peer peer, int pieceIndex) {
         validateLength(pieceIndex);
         synchronized (accumulator) {
-            BitSet pieces = peerPiecesMap.get(peer);
+            PeerAddress key = keyOf(peer);
+            BitSet pieces = peerPiecesMap.get(key);
             if (pieces == null) {
                 pieces = new BitSet(accumulator.getLength());
-                final BitSet previous = peerPiecesMap.put(peer, pieces);
+                final BitSet previous = peerPiecesMap.put(key, pieces);
                 assert previous == null;
             }
             if (!pieces.get(pieceIndex)) {
@@ -126,11 +126,11 @@ public class PiecesStatistics {
      * @since 0.0
      */
     public Optional<BitSet> getPieces(Peer peer) {
-        return Optional.ofNullable(peerPiecesMap.get(peer)).flatMap(pieces -> {
-            synchronized (accumulator) {
-                return Optional.of(copyOf(pieces));
-            }
-        });
+        PeerAddress key = keyOf(peer);
+        synchronized (accumulator) {
+            final BitSet pieces = peerPiecesMap.get(key);
+            return (pieces == null) ? Optional.empty() : Optional.of(copyOf(pieces));
+        }
     }
 
     public int getPiecesTotal() {
@@ -148,11 +148,9 @@ public class PiecesStatistics {
 
 
     public int next(PieceOrder pieceOrder, BitSet mask, Peer peer) {
-        if (!peerPiecesMap.containsKey(peer)) {
-            return -1;
-        }
+        PeerAddress key = keyOf(peer);
         synchronized (accumulator) {
-            final BitSet pieces = peerPiecesMap.get(peer);
+            final BitSet pieces = peerPiecesMap.get(key);
             if (pieces == null) {
                 return -1;
             }
@@ -162,6 +160,11 @@ public class PiecesStatistics {
         }
     }
 
+    private static PeerAddress keyOf(Peer peer) {
+        return peer.getPeerAddress().orElseThrow(() ->
+                new IllegalArgumentException("Address of peer is unresolved: " + peer));
+    }
+
     private BitSet copyOf(BitSet bitSet) {
         return (BitSet) bitSet.clone();
     }
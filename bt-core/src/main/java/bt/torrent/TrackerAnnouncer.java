@@ -75,7 +75,7 @@ public class TrackerAnnouncer {
     public void start() {
         trackerOptional.ifPresent(tracker -> {
             try {
-                processResponse(Event.start, tracker, prepareAnnounce(tracker).start());
+                processResponse(Event.start, tracker, prepareAnnounce(tracker).startAsync().join());
             } catch (Exception e) {
                 logTrackerError(Event.start, tracker, Optional.of(e), Optional.empty());
             }
@@ -85,7 +85,7 @@ public class TrackerAnnouncer {
     public void stop() {
         trackerOptional.ifPresent(tracker -> {
             try {
-                processResponse(Event.stop, tracker, prepareAnnounce(tracker).stop());
+                processResponse(Event.stop, tracker, prepareAnnounce(tracker).stopAsync().join());
             } catch (Exception e) {
                 logTrackerError(Event.stop, tracker, Optional.of(e), Optional.empty());
             }
@@ -95,13 +95,15 @@ public class TrackerAnnouncer {
     public void complete() {
         trackerOptional.ifPresent(tracker -> {
             try {
-                processResponse(Event.complete, tracker, prepareAnnounce(tracker).complete());
+                processResponse(Event.complete, tracker, prepareAnnounce(tracker).completeAsync().join());
             } catch (Exception e) {
                 logTrackerError(Event.complete, tracker, Optional.of(e), Optional.empty());
             }
         });
     }
 
+    // asynchronous API is used, so that multi-trackers could announce to all trackers in a tier concurrently;
+    // still waiting for the response to preserve the order of events
     private TrackerRequestBuilder prepareAnnounce(Tracker tracker) {
         return tracker.request(torrent.getTorrentId())
                 .downloaded(sessionState.getDownloaded())
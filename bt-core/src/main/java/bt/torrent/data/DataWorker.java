@@ -18,6 +18,7 @@ package bt.torrent.data;
 
 import bt.net.Peer;
 
+import java.util.BitSet;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -51,8 +52,33 @@ public interface DataWorker {
      */
     CompletableFuture<BlockWrite> addBlock(Peer peer, int pieceIndex, int offset, byte[] block);
 
+    /**
+     * Check if a block has been received, but is still held in memory and has not been written to the storage yet.
+     * Such blocks should be treated as present, i.e. they should not be requested again.
+     * Workers, that write blocks to the storage right away, don't need to override this method.
+     *
+     * @param pieceIndex Index of the piece (0-based)
+     * @param blockIndex Index of the block in the piece (0-based)
+     * @return true if the block is pending to be written
+     * @since 1.8
+     */
+    default boolean isBlockPending(int pieceIndex, int blockIndex) {
+        return false;
+    }
+
     /**
      * @since 0.0
      */
     boolean isOverload();
+
+    /**
+     * Get pieces, that are currently held in the read cache
+     * and can be served to peers without accessing the storage.
+     *
+     * @return Snapshot of the cached pieces; empty by default
+     * @since 1.8
+     */
+    default BitSet getCachedPieces() {
+        return new BitSet();
+    }
 }
@@ -18,8 +18,15 @@ package bt.torrent.data;
 
 import bt.data.ChunkVerifier;
 import bt.data.DataDescriptor;
+import bt.data.digest.Digester;
+import bt.event.EventSource;
+import bt.event.TorrentStoppedEvent;
+import bt.metainfo.TorrentId;
 import bt.service.IRuntimeLifecycleBinder;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
  *<p><b>Note that this class implements a service.
  * Hence, is not a part of the public API and is a subject to change.</b></p>
@@ -28,16 +35,48 @@ public class DataWorkerFactory implements IDataWorkerFactory {
 
     private IRuntimeLifecycleBinder lifecycleBinder;
     private ChunkVerifier verifier;
+    private Digester digester;
     private int maxIOQueueSize;
+    private PieceCache cache;
+    private WriteCache writeCache;
+    private ConcurrentMap<TorrentId, DefaultDataWorker> workers;
 
-    public DataWorkerFactory(IRuntimeLifecycleBinder lifecycleBinder, ChunkVerifier verifier, int maxIOQueueSize) {
+    public DataWorkerFactory(IRuntimeLifecycleBinder lifecycleBinder,
+                             EventSource eventSource,
+                             ChunkVerifier verifier,
+                             Digester digester,
+                             int maxIOQueueSize,
+                             long readCacheSize,
+                             long writeCacheSize) {
         this.lifecycleBinder = lifecycleBinder;
         this.verifier = verifier;
+        this.digester = digester;
         this.maxIOQueueSize = maxIOQueueSize;
+        this.cache = new PieceCache(readCacheSize);
+        this.writeCache = new WriteCache(writeCacheSize);
+        this.workers = new ConcurrentHashMap<>();
+
+        eventSource.onTorrentStopped(this::onTorrentStopped);
     }
 
     @Override
     public DataWorker createWorker(DataDescriptor dataDescriptor) {
-        return new DefaultDataWorker(lifecycleBinder, dataDescriptor, verifier, maxIOQueueSize);
+        return new DefaultDataWorker(lifecycleBinder, dataDescriptor, verifier, digester, maxIOQueueSize, cache, writeCache);
+    }
+
+    @Override
+    public DataWorker createWorker(TorrentId torrentId, DataDescriptor dataDescriptor) {
+        DefaultDataWorker worker = new DefaultDataWorker(lifecycleBinder, dataDescriptor, verifier, digester,
+                maxIOQueueSize, cache, writeCache);
+        workers.put(torrentId, worker);
+        return worker;
+    }
+
+    private void onTorrentStopped(TorrentStoppedEvent event) {
+        // a new worker is created, if the torrent is started again
+        DefaultDataWorker worker = workers.remove(event.getTorrentId());
+        if (worker != null) {
+            worker.flushPendingPieces();
+        }
     }
 }
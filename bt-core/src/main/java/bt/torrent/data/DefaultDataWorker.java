@@ -19,35 +19,75 @@ package bt.torrent.data;
 import bt.data.ChunkDescriptor;
 import bt.data.ChunkVerifier;
 import bt.data.DataDescriptor;
+import bt.data.digest.Digester;
 import bt.net.Peer;
 import bt.service.IRuntimeLifecycleBinder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 class DefaultDataWorker implements DataWorker {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultDataWorker.class);
 
+    /**
+     * Buffered pieces, that have not received any blocks for this long, are written to the storage,
+     * when the write cache is full.
+     */
+    private static final long STALE_PIECE_TIMEOUT_MILLIS = Duration.ofSeconds(30).toMillis();
+
     private DataDescriptor data;
     private ChunkVerifier verifier;
+    private Digester digester;
 
     private final ExecutorService executor;
     private final int maxPendingTasks;
     private final AtomicInteger pendingTasksCount;
 
+    private final PieceCache cache;
+    private final BitSet cachedPieces;
+    private final Deque<ReadRequest> pendingReads;
+
+    private final WriteCache writeCache;
+    private final Map<Integer, PendingPiece> pendingPieces;
+    // updated only from the worker thread, cleared on shutdown
+    private final Map<Integer, PieceDigest> pieceDigests;
+    private final Runnable reclaimer;
+    private final AtomicBoolean reclaimScheduled;
+
     public DefaultDataWorker(IRuntimeLifecycleBinder lifecycleBinder,
                              DataDescriptor data,
                              ChunkVerifier verifier,
-                             int maxQueueLength) {
+                             Digester digester,
+                             int maxQueueLength,
+                             PieceCache cache,
+                             WriteCache writeCache) {
 
         this.data = data;
         this.verifier = verifier;
+        this.digester = digester;
+        this.cache = cache;
+        this.cachedPieces = new BitSet();
+        this.pendingReads = new LinkedList<>();
+        this.writeCache = writeCache;
+        this.pendingPieces = new ConcurrentHashMap<>();
+        this.pieceDigests = new ConcurrentHashMap<>();
         this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
 
             private AtomicInteger i = new AtomicInteger();
@@ -59,8 +99,93 @@ class DefaultDataWorker implements DataWorker {
         });
         this.maxPendingTasks = maxQueueLength;
         this.pendingTasksCount = new AtomicInteger();
+        this.reclaimScheduled = new AtomicBoolean();
+        this.reclaimer = this::scheduleReclaim;
+
+        lifecycleBinder.onShutdown("Shutdown data worker for descriptor: " + data, this::shutdown);
+    }
+
+    private void shutdown() {
+        executor.shutdownNow();
+        writeCache.removeReclaimer(reclaimer);
+        pieceDigests.clear();
+        // storage may already be closed at this point, so buffered blocks are just dropped
+        pendingPieces.forEach((pieceIndex, pendingPiece) -> {
+            if (pendingPieces.remove(pieceIndex, pendingPiece)) {
+                writeCache.release(pendingPiece.getData());
+            }
+        });
+    }
 
-        lifecycleBinder.onShutdown("Shutdown data worker for descriptor: " + data, this.executor::shutdownNow);
+    /**
+     * Write all incomplete buffered pieces to the storage and return their buffers to the write cache.
+     * Invoked, when the torrent is stopped.
+     */
+    void flushPendingPieces() {
+        writeCache.removeReclaimer(reclaimer);
+        try {
+            executor.execute(() -> {
+                flushPendingPieces(Long.MAX_VALUE);
+                // hashing contexts of abandoned pieces will be re-created from the storage, if needed
+                pieceDigests.clear();
+            });
+        } catch (RejectedExecutionException e) {
+            // already shut down
+        }
+    }
+
+    private void scheduleReclaim() {
+        if (reclaimScheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(() -> {
+                    reclaimScheduled.set(false);
+                    flushPendingPieces(STALE_PIECE_TIMEOUT_MILLIS);
+                });
+            } catch (RejectedExecutionException e) {
+                // already shut down
+            }
+        }
+    }
+
+    /**
+     * Complete pieces are left alone, because they are about to be verified and flushed anyway.
+     *
+     * @param minIdleMillis Only pieces, that have not received new blocks for at least this long, are flushed
+     */
+    private void flushPendingPieces(long minIdleMillis) {
+        long now = System.currentTimeMillis();
+        pendingPieces.forEach((pieceIndex, pendingPiece) -> {
+            boolean idle = minIdleMillis == Long.MAX_VALUE || now - pendingPiece.getLastUpdated() >= minIdleMillis;
+            if (idle && !pendingPiece.isComplete()) {
+                flushPendingPiece(pieceIndex, pendingPiece);
+            }
+        });
+    }
+
+    /**
+     * Write the blocks of an incomplete piece to the storage, so that the rest of the piece is written through.
+     */
+    private void flushPendingPiece(int pieceIndex, PendingPiece pendingPiece) {
+        if (!pendingPieces.remove(pieceIndex, pendingPiece)) {
+            return;
+        }
+        byte[] piece = pendingPiece.getData();
+        try {
+            ChunkDescriptor chunk = data.getChunkDescriptors().get(pieceIndex);
+            long blockSize = pendingPiece.getBlockSize();
+            for (int i = 0; i < pendingPiece.getBlockCount(); i++) {
+                if (pendingPiece.isPresent(i)) {
+                    int offset = (int) (i * blockSize);
+                    int length = (int) Math.min(blockSize, piece.length - offset);
+                    chunk.getData().getSubrange(offset).putBytes(Arrays.copyOfRange(piece, offset, offset + length));
+                }
+            }
+        } catch (Exception e) {
+            // blocks, that have not been written, will be requested again
+            LOGGER.warn("Failed to write buffered blocks of piece " + pieceIndex + " to the storage", e);
+        } finally {
+            writeCache.release(piece);
+        }
     }
 
     @Override
@@ -70,17 +195,90 @@ class DefaultDataWorker implements DataWorker {
             return CompletableFuture.completedFuture(BlockRead.rejected(peer, pieceIndex, offset));
         } else {
             pendingTasksCount.incrementAndGet();
-            return CompletableFuture.supplyAsync(() -> {
-                try {
-                    ChunkDescriptor chunk = data.getChunkDescriptors().get(pieceIndex);
-                    byte[] block = chunk.getData().getSubrange(offset, length).getBytes();
-                    return BlockRead.complete(peer, pieceIndex, offset, block);
-                } catch (Throwable e) {
-                    return BlockRead.exceptional(peer, e, pieceIndex, offset);
-                } finally {
-                    pendingTasksCount.decrementAndGet();
+            ReadRequest request = new ReadRequest(peer, pieceIndex, offset, length);
+            synchronized (pendingReads) {
+                pendingReads.add(request);
+            }
+            // requests are not necessarily processed in the order of arrival, see nextRead()
+            executor.execute(this::processNextRead);
+            return request.future;
+        }
+    }
+
+    private void processNextRead() {
+        try {
+            ReadRequest request = nextRead();
+            if (request != null) {
+                request.future.complete(read(request));
+            }
+        } finally {
+            pendingTasksCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * Requests for cached pieces are served first, so that a piece is read from disk only once
+     * even if it's being requested by many peers at the same time,
+     * and the number of disk seeks is reduced.
+     */
+    private ReadRequest nextRead() {
+        synchronized (pendingReads) {
+            Iterator<ReadRequest> iter = pendingReads.iterator();
+            while (iter.hasNext()) {
+                ReadRequest request = iter.next();
+                if (isCached(request.pieceIndex)) {
+                    iter.remove();
+                    return request;
                 }
-            }, executor);
+            }
+            return pendingReads.poll();
+        }
+    }
+
+    private BlockRead read(ReadRequest request) {
+        try {
+            byte[] block = readBlock(request.pieceIndex, request.offset, request.length);
+            return BlockRead.complete(request.peer, request.pieceIndex, request.offset, block);
+        } catch (Throwable e) {
+            return BlockRead.exceptional(request.peer, e, request.pieceIndex, request.offset);
+        }
+    }
+
+    private byte[] readBlock(int pieceIndex, int offset, int length) {
+        ChunkDescriptor chunk = data.getChunkDescriptors().get(pieceIndex);
+        byte[] block = cache.getBlock(chunk, offset, length);
+        if (block != null) {
+            return block;
+        }
+
+        long pieceSize = chunk.getData().length();
+        // only verified pieces can be cached, because contents of incomplete pieces may change
+        if (!cache.accepts(pieceSize) || !data.getBitfield().isCompleteVerified(pieceIndex)) {
+            return chunk.getData().getSubrange(offset, length).getBytes();
+        }
+        if (offset < 0 || length < 0 || offset + length > pieceSize) {
+            throw new IllegalArgumentException("Invalid block: piece index {" + pieceIndex +
+                    "}, offset {" + offset + "}, length {" + length + "}, piece size {" + pieceSize + "}");
+        }
+
+        // coalesce block reads into a single read of the whole piece
+        byte[] piece = chunk.getData().getBytes();
+        synchronized (cachedPieces) {
+            cachedPieces.set(pieceIndex);
+        }
+        cache.put(chunk, piece, () -> onEvicted(pieceIndex));
+        return Arrays.copyOfRange(piece, offset, offset + length);
+    }
+
+    private boolean isCached(int pieceIndex) {
+        synchronized (cachedPieces) {
+            return cachedPieces.get(pieceIndex);
+        }
+    }
+
+    private void onEvicted(int pieceIndex) {
+        synchronized (cachedPieces) {
+            cachedPieces.clear(pieceIndex);
         }
     }
 
@@ -92,11 +290,12 @@ class DefaultDataWorker implements DataWorker {
         pendingTasksCount.incrementAndGet();
         return CompletableFuture.supplyAsync(() -> {
             try {
-                if (data.getBitfield().isCompleteVerified(pieceIndex)) {
+                // late copies of blocks are expected, because blocks may be requested from several peers;
+                // a piece is complete, when it's either verified or about to be verified
+                if (data.getBitfield().isComplete(pieceIndex)) {
                     if (LOGGER.isTraceEnabled()) {
                         LOGGER.trace(
-                                "Rejecting request to write block because the chunk is already complete and verified: "
-                                        +
+                                "Rejecting request to write block because the chunk is already complete: " +
                                         "piece index {" + pieceIndex + "}, offset {" + offset + "}, length {"
                                         + block.length + "}");
                     }
@@ -104,19 +303,43 @@ class DefaultDataWorker implements DataWorker {
                 }
 
                 ChunkDescriptor chunk = data.getChunkDescriptors().get(pieceIndex);
-                chunk.getData().getSubrange(offset).putBytes(block);
+                PendingPiece pendingPiece = getOrCreatePendingPiece(pieceIndex, chunk);
+                boolean complete;
+                if (pendingPiece != null) {
+                    if (!pendingPiece.putBlock(offset, block)) {
+                        if (LOGGER.isTraceEnabled()) {
+                            LOGGER.trace("Rejecting request to write block because it has already been received: " +
+                                    "piece index {" + pieceIndex + "}, offset {" + offset + "}, length {"
+                                    + block.length + "}");
+                        }
+                        return BlockWrite.rejected(peer, pieceIndex, offset, block);
+                    }
+                    complete = pendingPiece.isComplete();
+                } else {
+                    // blocks of pieces, that failed verification, are written again
+                    boolean rewritten = chunk.isPresent((int) (offset / chunk.blockSize()));
+                    chunk.getData().getSubrange(offset).putBytes(block);
+                    complete = chunk.isComplete();
+                    if (rewritten) {
+                        // contents, that have already been hashed, may have changed
+                        pieceDigests.remove(pieceIndex);
+                    }
+                }
+                updateDigest(pieceIndex, chunk, pendingPiece, offset, block);
                 if (LOGGER.isTraceEnabled()) {
                     LOGGER.trace("Successfully processed block: " +
                             "piece index {" + pieceIndex + "}, offset {" + offset + "}, length {" + block.length + "}");
                 }
 
                 CompletableFuture<Boolean> verificationFuture = null;
-                if (chunk.isComplete()) {
+                if (complete) {
                     pendingTasksCount.incrementAndGet();
                     data.getBitfield().markComplete(pieceIndex);
+                    byte[] digest = completeDigest(pieceIndex, chunk);
                     verificationFuture = CompletableFuture.supplyAsync(() -> {
                         try {
-                            final boolean correct = verifier.verify(chunk);
+                            final boolean correct = (pendingPiece == null) ?
+                                    verify(chunk, digest) : verifyAndFlush(pieceIndex, chunk, pendingPiece, digest);
                             if (LOGGER.isTraceEnabled()) {
                                 LOGGER.trace("Chunk verification result: {}, piece index {{}}", correct, pieceIndex);
                             }
@@ -137,8 +360,133 @@ class DefaultDataWorker implements DataWorker {
         }, executor);
     }
 
+    /**
+     * Blocks of a piece are buffered in memory only if none of them have been written to the storage yet
+     * and the write cache has enough free space; otherwise they are written through.
+     */
+    private PendingPiece getOrCreatePendingPiece(int pieceIndex, ChunkDescriptor chunk) {
+        PendingPiece pendingPiece = pendingPieces.get(pieceIndex);
+        if (pendingPiece == null && chunk.isEmpty()) {
+            byte[] buffer = writeCache.allocate((int) chunk.getData().length());
+            if (buffer != null) {
+                pendingPiece = new PendingPiece(buffer, chunk.blockSize(), chunk.blockCount());
+                pendingPieces.put(pieceIndex, pendingPiece);
+                writeCache.addReclaimer(reclaimer);
+            }
+        }
+        return pendingPiece;
+    }
+
+    /**
+     * Feed the contiguous prefix of the piece, that has been received so far, to the piece's hashing context.
+     * If blocks are received in order, each block is hashed right after it's been written,
+     * and there's no need to read the piece again, when it's complete.
+     * Must be invoked only for blocks, that have been newly written.
+     */
+    private void updateDigest(int pieceIndex, ChunkDescriptor chunk, PendingPiece pendingPiece,
+                              int offset, byte[] block) {
+        PieceDigest digest = pieceDigests.get(pieceIndex);
+        if (digest == null) {
+            MessageDigest messageDigest = digester.createDigest();
+            if (messageDigest == null) {
+                // incremental hashing is not supported, piece will be verified when it's complete
+                return;
+            }
+            digest = new PieceDigest(messageDigest);
+            pieceDigests.put(pieceIndex, digest);
+        }
+
+        long pieceSize = chunk.getData().length();
+        long blockSize = chunk.blockSize();
+        long position;
+        while ((position = digest.getPosition()) < pieceSize) {
+            int blockIndex = (int) (position / blockSize);
+            int length = (int) Math.min(blockSize, pieceSize - position);
+            if (position == offset && block.length == length) {
+                digest.update(block, 0, length);
+            } else if (pendingPiece != null && pendingPiece.isPresent(blockIndex)) {
+                digest.update(pendingPiece.getData(), (int) position, length);
+            } else if (pendingPiece == null && chunk.isPresent(blockIndex)) {
+                // block has been received out of order and is already in the storage
+                digest.update(chunk.getData().getSubrange(position, length).getBytes(), 0, length);
+            } else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return Hash of the complete piece or null, if the piece has not been hashed incrementally
+     */
+    private byte[] completeDigest(int pieceIndex, ChunkDescriptor chunk) {
+        PieceDigest digest = pieceDigests.remove(pieceIndex);
+        if (digest == null || digest.getPosition() != chunk.getData().length()) {
+            return null;
+        }
+        return digest.digest();
+    }
+
+    private boolean verify(ChunkDescriptor chunk, byte[] digest) {
+        return (digest == null) ? verifier.verify(chunk) : Arrays.equals(chunk.getChecksum(), digest);
+    }
+
+    /**
+     * Verify the piece from memory and write it to the storage in one go, if it's correct.
+     * Incorrect pieces are discarded without touching the storage.
+     */
+    private boolean verifyAndFlush(int pieceIndex, ChunkDescriptor chunk, PendingPiece pendingPiece, byte[] digest) {
+        byte[] piece = pendingPiece.getData();
+        try {
+            boolean correct = (digest == null) ?
+                    verifier.verify(chunk, piece) : Arrays.equals(chunk.getChecksum(), digest);
+            if (correct) {
+                chunk.getData().putBytes(piece);
+                // freshly downloaded pieces are likely to be requested by other peers
+                synchronized (cachedPieces) {
+                    cachedPieces.set(pieceIndex);
+                }
+                cache.put(chunk, piece, () -> onEvicted(pieceIndex));
+            }
+            return correct;
+        } finally {
+            if (pendingPieces.remove(pieceIndex, pendingPiece)) {
+                writeCache.release(piece);
+            }
+        }
+    }
+
+    @Override
+    public boolean isBlockPending(int pieceIndex, int blockIndex) {
+        PendingPiece pendingPiece = pendingPieces.get(pieceIndex);
+        return pendingPiece != null && pendingPiece.isPresent(blockIndex);
+    }
+
     @Override
     public boolean isOverload() {
         return pendingTasksCount.get() >= maxPendingTasks;
     }
+
+    @Override
+    public BitSet getCachedPieces() {
+        synchronized (cachedPieces) {
+            return (BitSet) cachedPieces.clone();
+        }
+    }
+
+    private static class ReadRequest {
+
+        private final Peer peer;
+        private final int pieceIndex;
+        private final int offset;
+        private final int length;
+        private final CompletableFuture<BlockRead> future;
+
+        ReadRequest(Peer peer, int pieceIndex, int offset, int length) {
+            this.peer = peer;
+            this.pieceIndex = pieceIndex;
+            this.offset = offset;
+            this.length = length;
+            this.future = new CompletableFuture<>();
+        }
+    }
 }
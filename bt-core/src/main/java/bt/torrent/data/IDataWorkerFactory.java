@@ -17,6 +17,7 @@
 package bt.torrent.data;
 
 import bt.data.DataDescriptor;
+import bt.metainfo.TorrentId;
 
 /**
  * Factory of data workers.
@@ -31,4 +32,15 @@ public interface IDataWorkerFactory {
      * @since 1.0
      */
     DataWorker createWorker(DataDescriptor dataDescriptor);
+
+    /**
+     * Create a data worker for a given torrent.
+     * Unlike {@link #createWorker(DataDescriptor)}, allows the worker to release its resources,
+     * when the torrent is stopped.
+     *
+     * @since 1.8
+     */
+    default DataWorker createWorker(TorrentId torrentId, DataDescriptor dataDescriptor) {
+        return createWorker(dataDescriptor);
+    }
 }
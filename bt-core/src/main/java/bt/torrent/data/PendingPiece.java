@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.torrent.data;
+
+import java.util.BitSet;
+
+/**
+ * In-memory buffer for blocks of a piece, that has not been completed yet.
+ *
+ * @since 1.8
+ */
+class PendingPiece {
+
+    private final byte[] data;
+    private final long blockSize;
+    private final int blockCount;
+    private final BitSet blocks;
+    private volatile long lastUpdated;
+
+    PendingPiece(byte[] data, long blockSize, int blockCount) {
+        this.data = data;
+        this.blockSize = blockSize;
+        this.blockCount = blockCount;
+        this.blocks = new BitSet(blockCount);
+        this.lastUpdated = System.currentTimeMillis();
+    }
+
+    /**
+     * @return false, if the block has already been received, in which case the piece is not modified
+     */
+    synchronized boolean putBlock(int offset, byte[] block) {
+        if (offset < 0 || offset % blockSize != 0 || offset + block.length > data.length) {
+            throw new IllegalArgumentException("Invalid block: offset {" + offset + "}, length {" + block.length +
+                    "}, block size {" + blockSize + "}, piece size {" + data.length + "}");
+        }
+        int blockIndex = (int) (offset / blockSize);
+        if (blocks.get(blockIndex)) {
+            return false;
+        }
+        System.arraycopy(block, 0, data, offset, block.length);
+        blocks.set(blockIndex);
+        lastUpdated = System.currentTimeMillis();
+        return true;
+    }
+
+    synchronized boolean isPresent(int blockIndex) {
+        return blocks.get(blockIndex);
+    }
+
+    /**
+     * @return Time, when the last block has been received, in millis
+     */
+    long getLastUpdated() {
+        return lastUpdated;
+    }
+
+    long getBlockSize() {
+        return blockSize;
+    }
+
+    int getBlockCount() {
+        return blockCount;
+    }
+
+    synchronized boolean isComplete() {
+        return blocks.cardinality() == blockCount;
+    }
+
+    /**
+     * @return Piece's data; must not be modified after the piece is complete
+     */
+    byte[] getData() {
+        return data;
+    }
+}
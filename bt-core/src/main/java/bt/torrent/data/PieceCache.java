@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.torrent.data;
+
+import bt.data.ChunkDescriptor;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of whole pieces, that is shared by all data workers in a runtime.
+ *
+ * <p>Pieces are stored in direct (off-heap) buffers,
+ * so that the size of the cache does not affect the size of the heap and GC pauses.
+ * When the total size of cached pieces exceeds the configured limit,
+ * least recently used pieces are evicted.
+ *
+ * @since 1.8
+ */
+class PieceCache {
+
+    private final long maxSize;
+    private final LinkedHashMap<ChunkDescriptor, Entry> entries;
+    private long size;
+
+    /**
+     * @param maxSize Maximum total size of cached pieces, in bytes; zero disables caching
+     * @since 1.8
+     */
+    PieceCache(long maxSize) {
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @return true if pieces of the given size can be cached
+     * @since 1.8
+     */
+    boolean accepts(long pieceSize) {
+        return pieceSize > 0 && pieceSize <= maxSize;
+    }
+
+    /**
+     * @return true if the chunk is currently cached
+     * @since 1.8
+     */
+    synchronized boolean contains(ChunkDescriptor chunk) {
+        return entries.containsKey(chunk);
+    }
+
+    /**
+     * Read a block from the cached chunk.
+     *
+     * @return Block of data or null, if the chunk is not in the cache
+     * @since 1.8
+     */
+    synchronized byte[] getBlock(ChunkDescriptor chunk, int offset, int length) {
+        Entry entry = entries.get(chunk);
+        if (entry == null) {
+            return null;
+        }
+        ByteBuffer buffer = entry.data.duplicate();
+        buffer.position(offset);
+        byte[] block = new byte[length];
+        buffer.get(block);
+        return block;
+    }
+
+    /**
+     * Put the chunk's data in the cache, evicting least recently used chunks if needed.
+     *
+     * @param chunk Chunk
+     * @param data Chunk's data (whole piece)
+     * @param evictionListener Will be invoked, when the chunk is evicted from the cache
+     * @since 1.8
+     */
+    synchronized void put(ChunkDescriptor chunk, byte[] data, Runnable evictionListener) {
+        if (!accepts(data.length)) {
+            return;
+        }
+
+        Entry previous = entries.remove(chunk);
+        if (previous != null) {
+            size -= previous.data.capacity();
+        }
+        evict(data.length);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+        buffer.put(data);
+        buffer.flip();
+        entries.put(chunk, new Entry(buffer.asReadOnlyBuffer(), evictionListener));
+        size += data.length;
+    }
+
+    private void evict(long required) {
+        Iterator<Map.Entry<ChunkDescriptor, Entry>> iter = entries.entrySet().iterator();
+        while (size + required > maxSize && iter.hasNext()) {
+            Entry evicted = iter.next().getValue();
+            iter.remove();
+            size -= evicted.data.capacity();
+            evicted.evictionListener.run();
+        }
+    }
+
+    private static class Entry {
+
+        private final ByteBuffer data;
+        private final Runnable evictionListener;
+
+        Entry(ByteBuffer data, Runnable evictionListener) {
+            this.data = data;
+            this.evictionListener = evictionListener;
+        }
+    }
+}
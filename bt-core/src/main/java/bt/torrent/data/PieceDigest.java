@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.torrent.data;
+
+import java.security.MessageDigest;
+
+/**
+ * Hashing context of a piece, that is being downloaded.
+ * Contains hash of the contiguous prefix of the piece, that has been received so far.
+ *
+ * @since 1.8
+ */
+class PieceDigest {
+
+    private final MessageDigest digest;
+    private long position;
+
+    PieceDigest(MessageDigest digest) {
+        this.digest = digest;
+    }
+
+    /**
+     * @return Length of the prefix, that has been hashed so far
+     */
+    long getPosition() {
+        return position;
+    }
+
+    void update(byte[] data, int offset, int length) {
+        digest.update(data, offset, length);
+        position += length;
+    }
+
+    byte[] digest() {
+        return digest.digest();
+    }
+}
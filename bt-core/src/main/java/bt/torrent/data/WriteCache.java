@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.torrent.data;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memory budget for buffering blocks of in-progress pieces, that is shared by all data workers in a runtime.
+ *
+ * <p>When the budget is exhausted, new pieces are not buffered
+ * and their blocks are written to the storage as soon as they are received (write-through).
+ *
+ * @since 1.8
+ */
+class WriteCache {
+
+    private final long maxSize;
+    private final AtomicLong size;
+    private final Set<Runnable> reclaimers;
+
+    /**
+     * @param maxSize Maximum total size of buffered pieces, in bytes; zero disables buffering
+     * @since 1.8
+     */
+    WriteCache(long maxSize) {
+        this.maxSize = maxSize;
+        this.size = new AtomicLong();
+        this.reclaimers = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * Allocate a buffer for a piece.
+     *
+     * @param pieceSize Size of the piece
+     * @return Buffer or null, if the budget does not allow to buffer the piece
+     * @since 1.8
+     */
+    byte[] allocate(int pieceSize) {
+        long current;
+        do {
+            current = size.get();
+            if (pieceSize <= 0 || current + pieceSize > maxSize) {
+                if (pieceSize > 0 && pieceSize <= maxSize) {
+                    // the budget is shared between all torrents, so ask each of them to give up idle buffers
+                    reclaimers.forEach(Runnable::run);
+                }
+                return null;
+            }
+        } while (!size.compareAndSet(current, current + pieceSize));
+        return new byte[pieceSize];
+    }
+
+    /**
+     * Return a previously allocated buffer to the budget.
+     *
+     * @since 1.8
+     */
+    void release(byte[] buffer) {
+        size.addAndGet(-buffer.length);
+    }
+
+    /**
+     * Register an action, that is invoked, when a buffer can't be allocated, because the budget is exhausted.
+     * The action should release the buffers, that are not likely to be used soon, and must not block.
+     *
+     * @since 1.8
+     */
+    void addReclaimer(Runnable reclaimer) {
+        reclaimers.add(reclaimer);
+    }
+
+    /**
+     * @since 1.8
+     */
+    void removeReclaimer(Runnable reclaimer) {
+        reclaimers.remove(reclaimer);
+    }
+
+    /**
+     * @return Total size of currently allocated buffers, in bytes
+     * @since 1.8
+     */
+    long getAllocatedSize() {
+        return size.get();
+    }
+}
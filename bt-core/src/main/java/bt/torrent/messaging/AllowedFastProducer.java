@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.torrent.messaging;
+
+import bt.BtException;
+import bt.data.Bitfield;
+import bt.metainfo.TorrentId;
+import bt.protocol.AllowedFast;
+import bt.protocol.Message;
+import bt.runtime.Config;
+import bt.torrent.annotation.Produces;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.BitSet;
+import java.util.function.Consumer;
+
+/**
+ * Produces Allowed Fast messages for peers, that support BEP-6: Fast Extension.
+ *
+ * <p>Allowed fast set lets a newly connected peer to bootstrap
+ * by downloading a few pieces before it gets unchoked.
+ *
+ * @since 1.8
+ */
+public class AllowedFastProducer {
+
+    private final Bitfield bitfield;
+    private final int allowedFastSetSize;
+
+    public AllowedFastProducer(Bitfield bitfield, Config config) {
+        this.bitfield = bitfield;
+        this.allowedFastSetSize = config.getAllowedFastSetSize();
+    }
+
+    @Produces
+    public void produce(Consumer<Message> messageConsumer, MessageContext context) {
+        ConnectionState connectionState = context.getConnectionState();
+        if (!connectionState.isFastExtensionEnabled() || connectionState.isAllowedFastAnnounced()) {
+            return;
+        }
+        connectionState.setAllowedFastAnnounced(true);
+
+        TorrentId torrentId = context.getTorrentId().orElse(null);
+        InetAddress address = context.getPeer().getInetAddress();
+        if (torrentId == null || !(address instanceof Inet4Address)) {
+            // allowed fast set is defined only for IPv4 peers
+            return;
+        }
+
+        BitSet allowedFastPieces = generateAllowedFastSet(
+                address.getAddress(), torrentId.getBytes(), bitfield.getPiecesTotal(), allowedFastSetSize);
+        connectionState.getPeerAllowedFastPieces().or(allowedFastPieces);
+
+        // do not advertise pieces that we don't have
+        BitSet announced = bitfield.getCompleteVerified();
+        announced.and(allowedFastPieces);
+        for (int i = announced.nextSetBit(0); i >= 0; i = announced.nextSetBit(i + 1)) {
+            messageConsumer.accept(new AllowedFast(i));
+        }
+    }
+
+    /**
+     * Canonical allowed fast set generation algorithm, as described in BEP-6.
+     *
+     * @param address IPv4 address of the peer (4 bytes)
+     * @param infoHash Torrent's info hash
+     * @param piecesTotal Total number of pieces in the torrent
+     * @param size Desired size of the allowed fast set
+     * @return Allowed fast set
+     * @since 1.8
+     */
+    static BitSet generateAllowedFastSet(byte[] address, byte[] infoHash, int piecesTotal, int size) {
+        BitSet allowedFastSet = new BitSet(piecesTotal);
+        int k = Math.min(size, piecesTotal);
+        if (k <= 0) {
+            return allowedFastSet;
+        }
+
+        // x = 0xFFFFFF00 & ip; x.append(infohash)
+        byte[] x = new byte[address.length + infoHash.length];
+        System.arraycopy(address, 0, x, 0, 3);
+        System.arraycopy(infoHash, 0, x, address.length, infoHash.length);
+
+        MessageDigest digest = getDigest();
+        while (allowedFastSet.cardinality() < k) {
+            x = digest.digest(x);
+            ByteBuffer buffer = ByteBuffer.wrap(x);
+            for (int i = 0; i < 5 && allowedFastSet.cardinality() < k; i++) {
+                long y = Integer.toUnsignedLong(buffer.getInt());
+                allowedFastSet.set((int) (y % piecesTotal));
+            }
+        }
+        return allowedFastSet;
+    }
+
+    private static MessageDigest getDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new BtException("SHA-1 is not supported", e);
+        }
+    }
+}
@@ -89,10 +89,23 @@ public class Assignments {
     }
 
     public Optional<Assignment> assign(Peer peer) {
+        return assign(peer, null, null);
+    }
+
+    /**
+     * @param allowedPieces If not null, only these pieces may be assigned
+     *                      (e.g. allowed fast set, when the peer is choking)
+     * @param suggestedPieces If not null, these pieces are preferred over the others
+     * @since 1.8
+     */
+    public Optional<Assignment> assign(Peer peer, BitSet allowedPieces, BitSet suggestedPieces) {
         final boolean endgame = isEndgame();
         final PieceOrder pieceOrder = endgame ? this.endgamePieceOrder : this.pieceOrder;
         final BitSet mask = getMask(endgame);
-        final int next = pieceStatistics.next(pieceOrder, mask, peer);
+        if (allowedPieces != null) {
+            mask.and(allowedPieces);
+        }
+        final int next = next(pieceOrder, mask, suggestedPieces, peer);
         final Optional<Integer> selectedPiece = next == -1 ? Optional.empty() : Optional.of(next);
 
         if (LOGGER.isDebugEnabled()) {
@@ -118,6 +131,20 @@ public class Assignments {
         return selectedPiece.isPresent() ? Optional.of(assign(peer, selectedPiece.get())) : Optional.empty();
     }
 
+    private int next(PieceOrder pieceOrder, BitSet mask, BitSet suggestedPieces, Peer peer) {
+        if (suggestedPieces != null && !suggestedPieces.isEmpty()) {
+            final BitSet suggestedMask = (BitSet) mask.clone();
+            suggestedMask.and(suggestedPieces);
+            if (!suggestedMask.isEmpty()) {
+                final int next = pieceStatistics.next(pieceOrder, suggestedMask, peer);
+                if (next != -1) {
+                    return next;
+                }
+            }
+        }
+        return pieceStatistics.next(pieceOrder, mask, peer);
+    }
+
     private boolean isEndgame() {
         final BitSet remaining = getRemaining();
         // if all remaining pieces are requested,
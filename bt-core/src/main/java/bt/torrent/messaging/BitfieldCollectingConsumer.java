@@ -19,6 +19,8 @@ package bt.torrent.messaging;
 import bt.net.Peer;
 import bt.protocol.Bitfield;
 import bt.protocol.Have;
+import bt.protocol.HaveAll;
+import bt.protocol.HaveNone;
 import bt.torrent.annotation.Consumes;
 
 import java.util.Map;
@@ -36,10 +38,14 @@ public class BitfieldCollectingConsumer {
 
     private ConcurrentMap<Peer, byte[]> bitfields;
     private ConcurrentMap<Peer, Set<Integer>> haves;
+    private Set<Peer> haveAll;
+    private Set<Peer> haveNone;
 
     public BitfieldCollectingConsumer() {
         this.bitfields = new ConcurrentHashMap<>();
         this.haves = new ConcurrentHashMap<>();
+        this.haveAll = ConcurrentHashMap.newKeySet();
+        this.haveNone = ConcurrentHashMap.newKeySet();
     }
 
     @Consumes
@@ -47,6 +53,22 @@ public class BitfieldCollectingConsumer {
         bitfields.put(context.getPeer(), bitfieldMessage.getBitfield());
     }
 
+    /**
+     * @since 1.8
+     */
+    @Consumes
+    public void consume(HaveAll haveAll, MessageContext context) {
+        this.haveAll.add(context.getPeer());
+    }
+
+    /**
+     * @since 1.8
+     */
+    @Consumes
+    public void consume(HaveNone haveNone, MessageContext context) {
+        this.haveNone.add(context.getPeer());
+    }
+
     @Consumes
     public void consume(Have have, MessageContext context) {
         Peer peer = context.getPeer();
@@ -65,4 +87,20 @@ public class BitfieldCollectingConsumer {
     public Map<Peer, Set<Integer>> getHaves() {
         return haves;
     }
+
+    /**
+     * @return Peers, that have sent a Fast extension's HaveAll message instead of a bitfield
+     * @since 1.8
+     */
+    public Set<Peer> getHaveAll() {
+        return haveAll;
+    }
+
+    /**
+     * @return Peers, that have sent a Fast extension's HaveNone message instead of a bitfield
+     * @since 1.8
+     */
+    public Set<Peer> getHaveNone() {
+        return haveNone;
+    }
 }
@@ -19,6 +19,8 @@ package bt.torrent.messaging;
 import bt.net.Peer;
 import bt.protocol.Bitfield;
 import bt.protocol.Have;
+import bt.protocol.HaveAll;
+import bt.protocol.HaveNone;
 import bt.torrent.annotation.Consumes;
 
 import java.util.BitSet;
@@ -34,9 +36,11 @@ import java.util.BitSet;
  */
 public class BitfieldConsumer {
     private PeerManager peerManager;
+    private final int piecesTotal;
 
-    public BitfieldConsumer(PeerManager peerManager) {
+    public BitfieldConsumer(PeerManager peerManager, int piecesTotal) {
         this.peerManager = peerManager;
+        this.piecesTotal = piecesTotal;
     }
 
     @Consumes
@@ -51,4 +55,18 @@ public class BitfieldConsumer {
         Peer peer = context.getPeer();
         peerManager.addPiece(peer, have.getPieceIndex());
     }
+
+    @Consumes
+    public void consume(HaveAll haveAll, MessageContext context) {
+        Peer peer = context.getPeer();
+        final BitSet pieces = new BitSet(piecesTotal);
+        pieces.set(0, piecesTotal);
+        peerManager.addPieces(peer, pieces);
+    }
+
+    @Consumes
+    public void consume(HaveNone haveNone, MessageContext context) {
+        Peer peer = context.getPeer();
+        peerManager.addPieces(peer, new BitSet(piecesTotal));
+    }
 }
@@ -21,6 +21,7 @@ import bt.protocol.Request;
 import bt.statistic.TransferAmountHandler;
 import bt.torrent.data.BlockWrite;
 
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -57,6 +58,16 @@ public class ConnectionState {
     private boolean initializedRequestQueue;
     private Optional<Assignment> assignment;
 
+    private long averageBlockReceivingTime;
+    private volatile boolean snubbed;
+
+    private volatile boolean fastExtensionEnabled;
+    private final BitSet allowedFastPieces;
+    private final BitSet peerAllowedFastPieces;
+    private final BitSet suggestedPieces;
+    private final BitSet peerSuggestedPieces;
+    private boolean allowedFastAnnounced;
+
     ConnectionState(TransferAmountHandler transferAmountHandler) {
         this.transferAmountHandler = transferAmountHandler;
         this.choking = true;
@@ -69,6 +80,11 @@ public class ConnectionState {
         this.requestQueue = new LinkedBlockingQueue<>();
 
         this.assignment = Optional.empty();
+
+        this.allowedFastPieces = new BitSet();
+        this.peerAllowedFastPieces = new BitSet();
+        this.suggestedPieces = new BitSet();
+        this.peerSuggestedPieces = new BitSet();
     }
 
     /**
@@ -231,6 +247,86 @@ public class ConnectionState {
         return pendingWrites;
     }
 
+    /**
+     * @return Exponentially weighted moving average of the amount of time (in millis)
+     *         between sending a block request to the remote peer and receiving the requested block,
+     *         or 0 if no blocks have been received yet
+     * @since 1.8
+     */
+    public long getAverageBlockReceivingTime() {
+        return averageBlockReceivingTime;
+    }
+
+    /**
+     * Signal that a previously requested block has been received from the remote peer.
+     * Clears the snubbed status of the connection.
+     *
+     * @param elapsed Amount of time (in millis) since the block has been requested
+     * @since 1.8
+     */
+    public void onBlockReceived(long elapsed) {
+        if (averageBlockReceivingTime == 0) {
+            averageBlockReceivingTime = elapsed;
+        } else {
+            // same smoothing factor as in TCP's SRTT estimation (RFC 6298)
+            averageBlockReceivingTime += (elapsed - averageBlockReceivingTime) / 8;
+        }
+        snubbed = false;
+    }
+
+    /**
+     * @return true if the remote peer has stopped delivering requested blocks in time
+     *         and should be given new pieces only when there are no better candidates
+     * @since 1.8
+     */
+    public boolean isSnubbed() {
+        return snubbed;
+    }
+
+    /**
+     * @return true if both the local client and the remote peer support BEP-6: Fast Extension
+     * @since 1.8
+     */
+    public boolean isFastExtensionEnabled() {
+        return fastExtensionEnabled;
+    }
+
+    /**
+     * Get pieces, that the remote peer allows the local client to request even when choking.
+     *
+     * @return Pieces, announced by the remote peer via Allowed Fast messages
+     * @since 1.8
+     */
+    public BitSet getAllowedFastPieces() {
+        return allowedFastPieces;
+    }
+
+    /**
+     * Get pieces, that the local client allows the remote peer to request even when choking.
+     *
+     * @return Allowed fast set, generated for the remote peer
+     * @since 1.8
+     */
+    public BitSet getPeerAllowedFastPieces() {
+        return peerAllowedFastPieces;
+    }
+
+    /**
+     * @return Pieces, that the remote peer has suggested to download via Suggest Piece messages
+     * @since 1.8
+     */
+    public BitSet getSuggestedPieces() {
+        return suggestedPieces;
+    }
+
+    /**
+     * @return Pieces, that the local client has suggested to the remote peer via Suggest Piece messages
+     * @since 1.8
+     */
+    public BitSet getPeerSuggestedPieces() {
+        return peerSuggestedPieces;
+    }
+
     /**************************************************/
     // Methods below are not a part of the public API //
     /**************************************************/
@@ -259,6 +355,22 @@ public class ConnectionState {
         this.assignment = Optional.of(assignment);
     }
 
+    void setFastExtensionEnabled(boolean fastExtensionEnabled) {
+        this.fastExtensionEnabled = fastExtensionEnabled;
+    }
+
+    boolean isAllowedFastAnnounced() {
+        return allowedFastAnnounced;
+    }
+
+    void setAllowedFastAnnounced(boolean allowedFastAnnounced) {
+        this.allowedFastAnnounced = allowedFastAnnounced;
+    }
+
+    void setSnubbed(boolean snubbed) {
+        this.snubbed = snubbed;
+    }
+
     void removeAssignment() {
         this.assignment = Optional.empty();
     }
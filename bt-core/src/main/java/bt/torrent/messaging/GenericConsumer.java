@@ -16,14 +16,19 @@
 
 package bt.torrent.messaging;
 
+import bt.protocol.AllowedFast;
 import bt.protocol.Cancel;
 import bt.protocol.Choke;
 import bt.protocol.Interested;
 import bt.protocol.KeepAlive;
 import bt.protocol.NotInterested;
+import bt.protocol.RejectRequest;
+import bt.protocol.SuggestPiece;
 import bt.protocol.Unchoke;
 import bt.torrent.annotation.Consumes;
 
+import static bt.torrent.messaging.BlockKey.buildBlockKey;
+
 /**
  * Consumer that is responsible for processing
  * some of the very basic messages.
@@ -67,4 +72,21 @@ public class GenericConsumer {
     public void consume(Cancel cancel, MessageContext context) {
         context.getConnectionState().onCancel(cancel);
     }
+
+    @Consumes
+    public void consume(RejectRequest rejectRequest, MessageContext context) {
+        // missing blocks will be requested again, when the piece is re-assigned
+        context.getConnectionState().getPendingRequests().remove(buildBlockKey(
+                rejectRequest.getPieceIndex(), rejectRequest.getOffset(), rejectRequest.getLength()));
+    }
+
+    @Consumes
+    public void consume(AllowedFast allowedFast, MessageContext context) {
+        context.getConnectionState().getAllowedFastPieces().set(allowedFast.getPieceIndex());
+    }
+
+    @Consumes
+    public void consume(SuggestPiece suggestPiece, MessageContext context) {
+        context.getConnectionState().getSuggestedPieces().set(suggestPiece.getPieceIndex());
+    }
 }
@@ -107,7 +107,8 @@ public class PeerManager {
                         e.getPeer(),
                         e.isIncoming(),
                         e.getConnectionId(),
-                        e.getPublishedPieces()
+                        e.getPublishedPieces(),
+                        e.isFastExtensionEnabled()
                 );
             }
         });
@@ -199,7 +200,8 @@ public class PeerManager {
                                               Peer peer,
                                               boolean incoming,
                                               long connectionId,
-                                              BitSet publishedPieces) {
+                                              BitSet publishedPieces,
+                                              boolean fastExtensionEnabled) {
         final PeerInfo peerInfo;
         if (incoming) {
             peerInfo = getPeerInfo(peer, INCOMING);
@@ -226,7 +228,7 @@ public class PeerManager {
 
         connectedPeerInfoMap.putIfAbsent(peer, peerInfo);
 
-        torrentWorker.addPeer(peer, publishedPieces);
+        torrentWorker.addPeer(peer, publishedPieces, fastExtensionEnabled);
     }
 
     private synchronized void onPeerDisconnected(long timestamp, Peer peer, long connectionId) {
@@ -21,6 +21,7 @@ import bt.net.Peer;
 import bt.protocol.InvalidMessageException;
 import bt.protocol.Message;
 import bt.protocol.Piece;
+import bt.protocol.RejectRequest;
 import bt.protocol.Request;
 import bt.torrent.annotation.Consumes;
 import bt.torrent.annotation.Produces;
@@ -47,16 +48,18 @@ public class PeerRequestConsumer {
 
     private DataWorker dataWorker;
     private Map<Peer, Queue<BlockRead>> completedRequests;
+    private Map<Peer, Queue<RejectRequest>> rejectedRequests;
 
     public PeerRequestConsumer(DataWorker dataWorker) {
         this.dataWorker = dataWorker;
         this.completedRequests = new ConcurrentHashMap<>();
+        this.rejectedRequests = new ConcurrentHashMap<>();
     }
 
     @Consumes
     public void consume(Request request, MessageContext context) {
         ConnectionState connectionState = context.getConnectionState();
-        if (!connectionState.isChoking()) {
+        if (!connectionState.isChoking() || isAllowedFast(connectionState, request)) {
             addBlockRequest(context.getPeer(), request).whenComplete((block, error) -> {
                 if (error != null) {
                     throw new RuntimeException("Failed to perform request to read block", error);
@@ -69,10 +72,26 @@ public class PeerRequestConsumer {
                     }
                     // called in the same thread, no sync needed
                     connectionState.setShouldChoke(true);
+                    reject(context.getPeer(), connectionState, request);
                 } else {
                     getCompletedRequestsForPeer(context.getPeer()).add(block);
                 }
             });
+        } else {
+            // BEP-6: requests should be explicitly rejected instead of being silently dropped
+            reject(context.getPeer(), connectionState, request);
+        }
+    }
+
+    private boolean isAllowedFast(ConnectionState connectionState, Request request) {
+        return connectionState.isFastExtensionEnabled()
+                && connectionState.getPeerAllowedFastPieces().get(request.getPieceIndex());
+    }
+
+    private void reject(Peer peer, ConnectionState connectionState, Request request) {
+        if (connectionState.isFastExtensionEnabled()) {
+            getRejectedRequestsForPeer(peer).add(
+                    new RejectRequest(request.getPieceIndex(), request.getOffset(), request.getLength()));
         }
     }
 
@@ -81,10 +100,18 @@ public class PeerRequestConsumer {
     }
 
     private Queue<BlockRead> getCompletedRequestsForPeer(Peer peer) {
-        Queue<BlockRead> queue = completedRequests.get(peer);
+        return getQueueForPeer(completedRequests, peer);
+    }
+
+    private Queue<RejectRequest> getRejectedRequestsForPeer(Peer peer) {
+        return getQueueForPeer(rejectedRequests, peer);
+    }
+
+    private static <T> Queue<T> getQueueForPeer(Map<Peer, Queue<T>> queues, Peer peer) {
+        Queue<T> queue = queues.get(peer);
         if (queue == null) {
             queue = new ConcurrentLinkedQueue<>();
-            Queue<BlockRead> existing = completedRequests.putIfAbsent(peer, queue);
+            Queue<T> existing = queues.putIfAbsent(peer, queue);
             if (existing != null) {
                 queue = existing;
             }
@@ -95,6 +122,12 @@ public class PeerRequestConsumer {
     @Produces
     public void produce(Consumer<Message> messageConsumer, MessageContext context) {
         Peer peer = context.getPeer();
+        Queue<RejectRequest> rejected = getRejectedRequestsForPeer(peer);
+        RejectRequest rejectRequest;
+        while ((rejectRequest = rejected.poll()) != null) {
+            messageConsumer.accept(rejectRequest);
+        }
+
         Queue<BlockRead> queue = getCompletedRequestsForPeer(peer);
         BlockRead block;
         while ((block = queue.poll()) != null) {
@@ -80,7 +80,7 @@ public class PieceConsumer {
                         piece.getBlock().length
                 );
             }
-            //todo: use 'elapsed' for control peer's queue (re-request abnormally delayed blocks).
+            connectionState.onBlockReceived(elapsed);
         }
 
         if (connectionState.getCurrentAssignment().isPresent()) {
@@ -106,7 +106,7 @@ public class PieceConsumer {
         final long blockSize = chunk.blockSize();
         assert piece.getOffset() % blockSize == 0;
         final int blockIndex = (int) (piece.getOffset() / blockSize);
-        if (chunk.isPresent(blockIndex)) {
+        if (chunk.isPresent(blockIndex) || dataWorker.isBlockPending(piece.getPieceIndex(), blockIndex)) {
             if (LOGGER.isTraceEnabled()) {
                 LOGGER.trace("Discarding received block because the chunk is already contains that block: " +
                         "piece index {" + piece.getPieceIndex() + "}, " +
@@ -25,6 +25,7 @@ import bt.protocol.Cancel;
 import bt.protocol.InvalidMessageException;
 import bt.protocol.Message;
 import bt.protocol.Request;
+import bt.runtime.Config;
 import bt.torrent.annotation.Produces;
 import bt.torrent.data.DataWorker;
 import org.slf4j.Logger;
@@ -33,6 +34,7 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.function.Consumer;
 
@@ -49,14 +51,22 @@ public class RequestProducer {
 
     private static final int MAX_PENDING_REQUESTS = 5;
 
+    /**
+     * Block request is considered late, when it's pending for longer than
+     * the peer's average block receiving time multiplied by this factor.
+     */
+    private static final int BLOCK_REQUEST_TIMEOUT_FACTOR = 4;
+
     private Bitfield bitfield;
     private List<ChunkDescriptor> chunks;
     private final DataWorker dataWorker;
+    private final Config config;
 
-    public RequestProducer(DataDescriptor dataDescriptor, DataWorker dataWorker) {
+    public RequestProducer(DataDescriptor dataDescriptor, DataWorker dataWorker, Config config) {
         this.dataWorker = dataWorker;
         this.bitfield = dataDescriptor.getBitfield();
         this.chunks = dataDescriptor.getChunkDescriptors();
+        this.config = config;
     }
 
     @Produces
@@ -79,6 +89,17 @@ public class RequestProducer {
                 LOGGER.trace("Finished downloading piece #{}", currentPiece);
             }
             return;
+        } else if (hasLateRequests(connectionState)) {
+            // peer has stopped delivering blocks in time;
+            // release the piece, so that the missing blocks could be requested from other peers
+            connectionState.setSnubbed(true);
+            assignment.abort();
+            resetConnection(connectionState, messageConsumer);
+            if (LOGGER.isTraceEnabled()) {
+                LOGGER.trace("Aborted downloading piece #{} from snubbed peer: {}. Average block receiving time: {} ms",
+                        currentPiece, peer, connectionState.getAverageBlockReceivingTime());
+            }
+            return;
         } else if (!connectionState.initializedRequestQueue()) {
             connectionState.getPendingWrites().clear();
             initializeRequestQueue(connectionState, currentPiece);
@@ -102,7 +123,7 @@ public class RequestProducer {
             ChunkDescriptor chunk = chunks.get(request.getPieceIndex());
             assert request.getOffset() % chunk.blockSize() == 0;
             final int blockIndex = (int) (request.getOffset() / chunk.blockSize());
-            if (chunk.isPresent(blockIndex)) {
+            if (chunk.isPresent(blockIndex) || dataWorker.isBlockPending(request.getPieceIndex(), blockIndex)) {
                 if (LOGGER.isTraceEnabled()) {
                     LOGGER.trace("Rejecting request to remote peer because the chunk block is already present: " +
                             "piece index {" + request.getPieceIndex() + "}, offset {" + request.getOffset()
@@ -134,12 +155,40 @@ public class RequestProducer {
         connectionState.getPendingRequests().clear();
     }
 
+    private boolean hasLateRequests(ConnectionState connectionState) {
+        Map<BlockKey, Long> pendingRequests = connectionState.getPendingRequests();
+        if (pendingRequests.isEmpty()) {
+            return false;
+        }
+        long deadline = System.currentTimeMillis() - getBlockRequestTimeout(connectionState);
+        for (Long requestedAt : pendingRequests.values()) {
+            if (requestedAt < deadline) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long getBlockRequestTimeout(ConnectionState connectionState) {
+        long maxTimeout = config.getMaxPieceReceivingTime().toMillis();
+        long averageBlockReceivingTime = connectionState.getAverageBlockReceivingTime();
+        if (averageBlockReceivingTime == 0) {
+            // no measurements yet; rely on the assignment's timeout
+            return maxTimeout;
+        }
+        long timeout = Math.max(config.getMinBlockRequestTimeout().toMillis(),
+                averageBlockReceivingTime * BLOCK_REQUEST_TIMEOUT_FACTOR);
+        return Math.min(timeout, maxTimeout);
+    }
+
     private void initializeRequestQueue(ConnectionState connectionState, int pieceIndex) {
         assert connectionState.getRequestQueue().isEmpty();
         assert connectionState.getPendingRequests().isEmpty();
         assert connectionState.getPendingWrites().isEmpty();
         List<Request> requests = buildRequests(pieceIndex);
-        Collections.shuffle(requests);
+        if (!config.isInOrderBlockRequestsEnabled()) {
+            Collections.shuffle(requests);
+        }
         connectionState.getRequestQueue().addAll(requests);
         connectionState.setInitializedRequestQueue(true);
     }
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.torrent.messaging;
+
+import bt.protocol.Message;
+import bt.protocol.SuggestPiece;
+import bt.torrent.annotation.Produces;
+import bt.torrent.data.DataWorker;
+
+import java.util.BitSet;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Produces Suggest Piece messages for peers, that support BEP-6: Fast Extension.
+ *
+ * <p>Interested peers are advised to download pieces, that are currently in the read cache,
+ * which lets the local client serve them without accessing the storage.
+ *
+ * @since 1.8
+ */
+public class SuggestPieceProducer {
+
+    private static final int MAX_SUGGESTIONS_PER_ROUND = 2;
+
+    private final DataWorker dataWorker;
+    private final PeerManager peerManager;
+
+    public SuggestPieceProducer(DataWorker dataWorker, PeerManager peerManager) {
+        this.dataWorker = dataWorker;
+        this.peerManager = peerManager;
+    }
+
+    @Produces
+    public void produce(Consumer<Message> messageConsumer, MessageContext context) {
+        ConnectionState connectionState = context.getConnectionState();
+        if (!connectionState.isFastExtensionEnabled() || !connectionState.isPeerInterested()) {
+            return;
+        }
+
+        Optional<BitSet> peerPieces = peerManager.getPieces(context.getPeer());
+        if (!peerPieces.isPresent()) {
+            return;
+        }
+
+        BitSet suggested = connectionState.getPeerSuggestedPieces();
+        BitSet candidates = dataWorker.getCachedPieces();
+        candidates.andNot(peerPieces.get());
+        candidates.andNot(suggested);
+
+        int count = 0;
+        for (int i = candidates.nextSetBit(0); i >= 0 && count < MAX_SUGGESTIONS_PER_ROUND;
+             i = candidates.nextSetBit(i + 1)) {
+            messageConsumer.accept(new SuggestPiece(i));
+            suggested.set(i);
+            count++;
+        }
+    }
+}
@@ -65,6 +65,7 @@ public class TorrentWorker {
     private Queue<PeerEvent> peerEvents;
     private Map<Peer, Message> interestUpdates;
     private long lastUpdatedAssignments;
+    private volatile int idleUnsnubbedPeers;
 
     private Bitfield bitfield;
     private Assignments assignments;
@@ -105,8 +106,8 @@ public class TorrentWorker {
      *
      * @since 1.0
      */
-    void addPeer(Peer peer, BitSet publishedPieces) {
-        peerEvents.add(new PeerEvent.ConnectedPeerEvent(peer, publishedPieces));
+    void addPeer(Peer peer, BitSet publishedPieces, boolean fastExtensionEnabled) {
+        peerEvents.add(new PeerEvent.ConnectedPeerEvent(peer, publishedPieces, fastExtensionEnabled));
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("Queued connection addition for peer: " + peer);
         }
@@ -116,6 +117,7 @@ public class TorrentWorker {
         final Peer peer = peerEvent.getPeer();
         final BitSet publishedPieces = peerEvent.getPublishedPieces();
         final PeerWorker worker = createPeerWorker(peer, publishedPieces);
+        worker.getConnectionState().setFastExtensionEnabled(peerEvent.isFastExtensionEnabled());
         assert !peerMap.containsKey(peer);
         assert !timeoutedPeers.containsKey(peer);
         final PeerWorker existing = peerMap.putIfAbsent(peer, worker);
@@ -197,15 +199,26 @@ public class TorrentWorker {
         }
 
         if (connectionState.isPeerChoking()) {
-            if (assignment != null) {
+            // BEP-6: pieces from the allowed fast set can be requested even when choked
+            final BitSet allowedFastPieces = connectionState.getAllowedFastPieces();
+            if (assignment != null && !allowedFastPieces.get(assignment.getPiece())) {
                 assignments.remove(assignment);
                 if (LOGGER.isTraceEnabled()) {
                     LOGGER.trace("Peer assignment removed due to CHOKING: {}", assignment);
                 }
+            } else if (shouldAssign && !allowedFastPieces.isEmpty()) {
+                if (mightCreateMoreAssignments(assignments) && !shouldDeprioritize(connectionState)) {
+                    Optional<Assignment> newAssignment =
+                            assignments.assign(peer, allowedFastPieces, connectionState.getSuggestedPieces());
+                    if (newAssignment.isPresent()) {
+                        newAssignment.get().start(connectionState);
+                    }
+                }
             }
         } else if (shouldAssign) {
-            if (mightCreateMoreAssignments(assignments)) {
-                Optional<Assignment> newAssignment = assignments.assign(peer);
+            if (mightCreateMoreAssignments(assignments) && !shouldDeprioritize(connectionState)) {
+                Optional<Assignment> newAssignment =
+                        assignments.assign(peer, null, connectionState.getSuggestedPieces());
                 if (newAssignment.isPresent()) {
                     newAssignment.get().start(connectionState);
                 }
@@ -227,6 +240,11 @@ public class TorrentWorker {
         return assignments.count() < MAX_CONCURRENT_ACTIVE_CONNECTIONS;
     }
 
+    private boolean shouldDeprioritize(ConnectionState connectionState) {
+        // snubbed peers get new pieces only when there are no idle peers, that deliver blocks in time
+        return connectionState.isSnubbed() && idleUnsnubbedPeers > 0;
+    }
+
     private long timeSinceLastUpdated() {
         return System.currentTimeMillis() - lastUpdatedAssignments;
     }
@@ -298,6 +316,17 @@ public class TorrentWorker {
 
         Set<Peer> interesting = assignments.getInteresting(ready, choking);
 
+        int idleUnsnubbedPeers = 0;
+        for (Peer peer : ready) {
+            if (interesting.contains(peer) && assignments.get(peer) == null) {
+                PeerWorker worker = peerMap.get(peer);
+                if (worker != null && !worker.getConnectionState().isSnubbed()) {
+                    idleUnsnubbedPeers++;
+                }
+            }
+        }
+        this.idleUnsnubbedPeers = idleUnsnubbedPeers;
+
         ready.stream().filter(peer -> !interesting.contains(peer)).forEach(peer -> {
             getWorker(peer).ifPresent(worker -> {
                 ConnectionState connectionState = worker.getConnectionState();
@@ -392,15 +421,21 @@ public class TorrentWorker {
 
         private static class ConnectedPeerEvent extends PeerEvent {
             private final BitSet publishedPieces;
+            private final boolean fastExtensionEnabled;
 
-            public ConnectedPeerEvent(Peer peer, BitSet publishedPieces) {
+            public ConnectedPeerEvent(Peer peer, BitSet publishedPieces, boolean fastExtensionEnabled) {
                 super(peer);
                 this.publishedPieces = requireNonNull(publishedPieces);
+                this.fastExtensionEnabled = fastExtensionEnabled;
             }
 
             public BitSet getPublishedPieces() {
                 return publishedPieces;
             }
+
+            public boolean isFastExtensionEnabled() {
+                return fastExtensionEnabled;
+            }
         }
 
         private static class DisconnectedPeerEvent extends PeerEvent {
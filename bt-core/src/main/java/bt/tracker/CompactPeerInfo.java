@@ -16,17 +16,13 @@
 
 package bt.tracker;
 
-import bt.BtException;
 import bt.net.InetPeer;
 import bt.net.Peer;
+import bt.net.PeerAddress;
 import bt.peer.PeerOptions;
 import bt.protocol.crypto.EncryptionPolicy;
 
-import java.net.InetAddress;
-import java.net.InetSocketAddress;
-import java.net.UnknownHostException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -149,29 +145,18 @@ public class CompactPeerInfo implements Iterable<Peer> {
                     throw new NoSuchElementException("No more peers left");
                 }
 
-                int from, to;
-                InetAddress inetAddress;
-                int port;
+                int from = pos;
+                pos += addressLength;
+                int port = ((peers[pos] & 0xFF) << 8) | (peers[pos + 1] & 0xFF);
+                pos += PORT_LENGTH;
 
-                from = pos;
-                to = pos = pos + addressLength;
-                try {
-                    inetAddress = InetAddress.getByAddress(Arrays.copyOfRange(peers, from, to));
-                } catch (UnknownHostException e) {
-                    throw new BtException("Failed to get next peer", e);
-                }
-
-                from = to;
-                to = pos = pos + PORT_LENGTH;
-                port = (((peers[from] << 8) & 0xFF00) + (peers[to - 1] & 0x00FF));
-
-                InetSocketAddress addr = new InetSocketAddress(inetAddress, port);
+                PeerAddress address = PeerAddress.of(peers, from, addressLength, port);
                 PeerOptions options = PeerOptions.defaultOptions();
                 boolean requiresEncryption = cryptoFlags.isPresent() && cryptoFlags.get()[index] == 1;
                 if (requiresEncryption) {
                     options = options.withEncryptionPolicy(EncryptionPolicy.PREFER_ENCRYPTED);
                 }
-                Peer peer = new InetPeer(addr, options);
+                Peer peer = new InetPeer(address, options);
                 peerList.add(peer);
                 index++;
 
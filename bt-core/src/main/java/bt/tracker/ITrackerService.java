@@ -16,6 +16,13 @@
 
 package bt.tracker;
 
+import bt.metainfo.TorrentId;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * This service acts a factory of trackers.
  *
@@ -49,4 +56,44 @@ public interface ITrackerService {
      * @since 1.0
      */
     Tracker getTracker(AnnounceKey announceKey);
+
+    /**
+     * Request swarm statistics for a number of torrents from the tracker(s) with a given announce key.
+     *
+     * @param announceKey Announce key
+     * @param torrentIds Torrent IDs
+     * @return Future swarm statistics, mapped by torrent ID
+     * @see Tracker#scrape(Collection)
+     * @since 1.8
+     */
+    default CompletableFuture<Map<TorrentId, ScrapeData>> scrape(AnnounceKey announceKey, Collection<TorrentId> torrentIds) {
+        return getTracker(announceKey).scrape(torrentIds);
+    }
+
+    /**
+     * Get the most recent swarm statistics for a torrent, if it has not expired yet.
+     *
+     * @param torrentId Torrent ID
+     * @return Swarm statistics or empty, if there is no fresh data for this torrent
+     * @see #scrape(AnnounceKey, Collection)
+     * @since 1.8
+     */
+    default Optional<ScrapeData> getScrapeData(TorrentId torrentId) {
+        return Optional.empty();
+    }
+
+    /**
+     * Get the most recent successful response to a "started" or "completed" event,
+     * that has been announced for a torrent to the tracker(s) with a given announce key.
+     * Periodic tracker queries should take its' peers and announce interval into account.
+     *
+     * @param announceKey Announce key
+     * @param torrentId Torrent ID
+     * @return Tracker response or empty, if no such event has been announced
+     *         or a "stopped" event has been announced since
+     * @since 1.8
+     */
+    default Optional<TrackerResponse> getLastAnnounceResponse(AnnounceKey announceKey, TorrentId torrentId) {
+        return Optional.empty();
+    }
 }
@@ -22,10 +22,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 class MultiTracker implements Tracker {
 
@@ -90,6 +98,26 @@ class MultiTracker implements Tracker {
                 return tryForAllTrackers(tracker -> getDelegate(tracker, torrentId).query());
             }
 
+            @Override
+            public CompletableFuture<TrackerResponse> startAsync() {
+                return tryForAllTrackersAsync(tracker -> getDelegate(tracker, torrentId).startAsync());
+            }
+
+            @Override
+            public CompletableFuture<TrackerResponse> stopAsync() {
+                return tryForAllTrackersAsync(tracker -> getDelegate(tracker, torrentId).stopAsync());
+            }
+
+            @Override
+            public CompletableFuture<TrackerResponse> completeAsync() {
+                return tryForAllTrackersAsync(tracker -> getDelegate(tracker, torrentId).completeAsync());
+            }
+
+            @Override
+            public CompletableFuture<TrackerResponse> queryAsync() {
+                return tryForAllTrackersAsync(tracker -> getDelegate(tracker, torrentId).queryAsync());
+            }
+
             private TrackerRequestBuilder getDelegate(Tracker tracker, TorrentId torrentId) {
                 TrackerRequestBuilder delegate = tracker.request(torrentId);
 
@@ -108,6 +136,11 @@ class MultiTracker implements Tracker {
                     delegate.left(left);
                 }
 
+                Executor executor = getExecutor();
+                if (executor != null) {
+                    delegate.executor(executor);
+                }
+
                 return delegate;
             }
 
@@ -118,35 +151,163 @@ class MultiTracker implements Tracker {
                 for (List<Tracker> trackerTier : trackerTiers) {
 
                     TrackerResponse response;
-                    Tracker currentTracker;
 
-                    for (int i = 0; i < trackerTier.size(); i++) {
-                        currentTracker = trackerTier.get(i);
+                    for (Tracker currentTracker : snapshot(trackerTier)) {
                         response = func.apply(currentTracker);
                         responses.add(response);
 
                         if (response.isSuccess()) {
-                            if (trackerTier.size() > 1
-                                    && i != 0) {
-                                trackerTier.remove(i);
-                                trackerTier.add(0, currentTracker);
-                            }
+                            promote(trackerTier, currentTracker);
                             return response;
-                        } else if (response.getError().isPresent()) {
-                            Throwable e = response.getError().get();
-                            LOGGER.warn("Unexpected error during interaction with the tracker: " + currentTracker, e);
                         } else {
-                            LOGGER.warn("Unexpected error during interaction with the tracker: " + currentTracker +
-                                    "; message: " + response.getErrorMessage());
+                            logFailure(currentTracker, response);
                         }
                     }
                 }
 
                 throw new BtException("All trackers failed; responses (in chrono order): " + responses);
             }
+
+            /**
+             * Trackers within a tier are queried concurrently, and the first successful response wins
+             * (the corresponding tracker is moved to the head of the tier, like in the synchronous case).
+             * The next tier is tried only after all trackers in the current tier have failed.
+             */
+            private CompletableFuture<TrackerResponse> tryForAllTrackersAsync(
+                    Function<Tracker, CompletableFuture<TrackerResponse>> func) {
+
+                CompletableFuture<TrackerResponse> result = new CompletableFuture<>();
+                List<TrackerResponse> responses = Collections.synchronizedList(new ArrayList<>());
+                tryTierAsync(0, func, responses, result);
+                return result;
+            }
+
+            private void tryTierAsync(int tierIndex,
+                                      Function<Tracker, CompletableFuture<TrackerResponse>> func,
+                                      List<TrackerResponse> responses,
+                                      CompletableFuture<TrackerResponse> result) {
+
+                if (tierIndex >= trackerTiers.size()) {
+                    result.completeExceptionally(
+                            new BtException("All trackers failed; responses (in chrono order): " + responses));
+                    return;
+                }
+
+                List<Tracker> trackerTier = trackerTiers.get(tierIndex);
+                List<Tracker> trackers = snapshot(trackerTier);
+                if (trackers.isEmpty()) {
+                    tryTierAsync(tierIndex + 1, func, responses, result);
+                    return;
+                }
+
+                AtomicInteger remaining = new AtomicInteger(trackers.size());
+                AtomicBoolean succeeded = new AtomicBoolean(false);
+
+                for (Tracker tracker : trackers) {
+                    CompletableFuture<TrackerResponse> future;
+                    try {
+                        future = func.apply(tracker);
+                    } catch (Exception e) {
+                        future = new CompletableFuture<>();
+                        future.completeExceptionally(e);
+                    }
+
+                    future.whenComplete((response, e) -> {
+                        if (e != null) {
+                            response = TrackerResponse.exceptional(e);
+                        }
+                        responses.add(response);
+
+                        if (response.isSuccess()) {
+                            if (succeeded.compareAndSet(false, true)) {
+                                promote(trackerTier, tracker);
+                                result.complete(response);
+                            }
+                        } else {
+                            logFailure(tracker, response);
+                        }
+
+                        if (remaining.decrementAndGet() == 0 && !succeeded.get()) {
+                            tryTierAsync(tierIndex + 1, func, responses, result);
+                        }
+                    });
+                }
+            }
         };
     }
 
+    @Override
+    public boolean isScrapeSupported() {
+        return trackerTiers.stream()
+                .flatMap(tier -> snapshot(tier).stream())
+                .anyMatch(Tracker::isScrapeSupported);
+    }
+
+    /**
+     * Trackers, that support scrape, are tried one by one in the same order as for announces,
+     * until some tracker returns a successful response.
+     */
+    @Override
+    public CompletableFuture<Map<TorrentId, ScrapeData>> scrape(Collection<TorrentId> torrentIds) {
+        List<Tracker> trackers = trackerTiers.stream()
+                .flatMap(tier -> snapshot(tier).stream())
+                .filter(Tracker::isScrapeSupported)
+                .collect(Collectors.toList());
+
+        if (trackers.isEmpty()) {
+            return Tracker.super.scrape(torrentIds);
+        }
+        return tryScrape(trackers.iterator(), torrentIds);
+    }
+
+    private static CompletableFuture<Map<TorrentId, ScrapeData>> tryScrape(Iterator<Tracker> trackers,
+                                                                           Collection<TorrentId> torrentIds) {
+        Tracker tracker = trackers.next();
+        CompletableFuture<Map<TorrentId, ScrapeData>> future;
+        try {
+            future = tracker.scrape(torrentIds);
+        } catch (Exception e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+
+        if (!trackers.hasNext()) {
+            return future;
+        }
+        return future.handle((result, e) -> {
+            if (e == null) {
+                return CompletableFuture.completedFuture(result);
+            }
+            LOGGER.warn("Scrape request failed for tracker: " + tracker, e);
+            return tryScrape(trackers, torrentIds);
+        }).thenCompose(Function.identity());
+    }
+
+    private static List<Tracker> snapshot(List<Tracker> trackerTier) {
+        synchronized (trackerTier) {
+            return new ArrayList<>(trackerTier);
+        }
+    }
+
+    private static void promote(List<Tracker> trackerTier, Tracker tracker) {
+        synchronized (trackerTier) {
+            if (trackerTier.size() > 1 && trackerTier.get(0) != tracker) {
+                trackerTier.remove(tracker);
+                trackerTier.add(0, tracker);
+            }
+        }
+    }
+
+    private static void logFailure(Tracker tracker, TrackerResponse response) {
+        if (response.getError().isPresent()) {
+            Throwable e = response.getError().get();
+            LOGGER.warn("Unexpected error during interaction with the tracker: " + tracker, e);
+        } else {
+            LOGGER.warn("Unexpected error during interaction with the tracker: " + tracker +
+                    "; message: " + response.getErrorMessage());
+        }
+    }
+
     private static class LazyTracker implements Tracker {
 
         private volatile Tracker delegate;
@@ -163,6 +324,16 @@ class MultiTracker implements Tracker {
             return getDelegate().request(torrentId);
         }
 
+        @Override
+        public boolean isScrapeSupported() {
+            return getDelegate().isScrapeSupported();
+        }
+
+        @Override
+        public CompletableFuture<Map<TorrentId, ScrapeData>> scrape(Collection<TorrentId> torrentIds) {
+            return getDelegate().scrape(torrentIds);
+        }
+
         private Tracker getDelegate() {
 
             if (delegate == null) {
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.tracker;
+
+/**
+ * Swarm statistics for a single torrent, as reported by a tracker in response to a scrape request.
+ *
+ * @since 1.8
+ */
+public class ScrapeData {
+
+    private final int seederCount;
+    private final int completedCount;
+    private final int leecherCount;
+
+    /**
+     * @param seederCount Number of active peers, that have completed downloading
+     * @param completedCount Number of peers, that have ever completed downloading
+     * @param leecherCount Number of active peers, that have not completed downloading
+     * @since 1.8
+     */
+    public ScrapeData(int seederCount, int completedCount, int leecherCount) {
+        this.seederCount = seederCount;
+        this.completedCount = completedCount;
+        this.leecherCount = leecherCount;
+    }
+
+    /**
+     * @return Number of active peers, that have completed downloading
+     * @since 1.8
+     */
+    public int getSeederCount() {
+        return seederCount;
+    }
+
+    /**
+     * @return Number of peers, that have ever completed downloading
+     * @since 1.8
+     */
+    public int getCompletedCount() {
+        return completedCount;
+    }
+
+    /**
+     * @return Number of active peers, that have not completed downloading
+     * @since 1.8
+     */
+    public int getLeecherCount() {
+        return leecherCount;
+    }
+
+    @Override
+    public String toString() {
+        return "ScrapeData{" +
+                "seeders=" + seederCount +
+                ", completed=" + completedCount +
+                ", leechers=" + leecherCount +
+                '}';
+    }
+}
@@ -19,6 +19,10 @@ package bt.tracker;
 import bt.metainfo.Torrent;
 import bt.metainfo.TorrentId;
 
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Generic tracker interface.
  *
@@ -46,4 +50,31 @@ public interface Tracker {
      * @since 1.3
      */
     TrackerRequestBuilder request(TorrentId torrentId);
+
+    /**
+     * Check if this tracker supports scrape requests.
+     *
+     * @return true if this tracker supports scrape requests
+     * @since 1.8
+     */
+    default boolean isScrapeSupported() {
+        return false;
+    }
+
+    /**
+     * Request swarm statistics for a number of torrents.
+     * Implementations split large requests into several batches in accordance with protocol limitations.
+     *
+     * @param torrentIds Torrent IDs
+     * @return Future swarm statistics, mapped by torrent ID.
+     *         Torrents, that the tracker did not report any data for, are absent from the resulting map.
+     *         If the tracker does not support scrape requests, the future completes exceptionally
+     *         with {@link UnsupportedOperationException}
+     * @since 1.8
+     */
+    default CompletableFuture<Map<TorrentId, ScrapeData>> scrape(Collection<TorrentId> torrentIds) {
+        CompletableFuture<Map<TorrentId, ScrapeData>> future = new CompletableFuture<>();
+        future.completeExceptionally(new UnsupportedOperationException("Scrape is not supported by tracker: " + this));
+        return future;
+    }
 }
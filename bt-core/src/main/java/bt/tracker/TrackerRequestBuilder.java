@@ -20,6 +20,9 @@ import bt.BtException;
 import bt.metainfo.TorrentId;
 
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
 /**
  * Base class for tracker request builders.
@@ -33,6 +36,7 @@ public abstract class TrackerRequestBuilder {
     private long uploaded;
     private long downloaded;
     private long left;
+    private Executor executor;
 
     /**
      * Create a tracker request builder for a given torrent ID
@@ -75,6 +79,83 @@ public abstract class TrackerRequestBuilder {
      */
     public abstract TrackerResponse query();
 
+    /**
+     * Asynchronously announce to tracker, that the client is starting a torrent session.
+     *
+     * @return Future tracker response
+     * @see #executor(Executor)
+     * @since 1.8
+     */
+    public CompletableFuture<TrackerResponse> startAsync() {
+        return supplyAsync(this::start);
+    }
+
+    /**
+     * Asynchronously announce to tracker, that the client is stopping a torrent session.
+     *
+     * @return Future tracker response
+     * @see #executor(Executor)
+     * @since 1.8
+     */
+    public CompletableFuture<TrackerResponse> stopAsync() {
+        return supplyAsync(this::stop);
+    }
+
+    /**
+     * Asynchronously announce to tracker, that the client has completed downloading the torrent.
+     *
+     * @return Future tracker response
+     * @see #executor(Executor)
+     * @since 1.8
+     */
+    public CompletableFuture<TrackerResponse> completeAsync() {
+        return supplyAsync(this::complete);
+    }
+
+    /**
+     * Asynchronously query tracker for active peers.
+     *
+     * @return Future tracker response
+     * @see #executor(Executor)
+     * @since 1.8
+     */
+    public CompletableFuture<TrackerResponse> queryAsync() {
+        return supplyAsync(this::query);
+    }
+
+    /**
+     * Execute a blocking request in this builder's executor.
+     * Subclasses may override this method (or the public asynchronous methods) to provide non-blocking implementations.
+     *
+     * @since 1.8
+     */
+    protected CompletableFuture<TrackerResponse> supplyAsync(Supplier<TrackerResponse> request) {
+        if (executor == null) {
+            // no executor is set -- execute in the calling thread
+            try {
+                return CompletableFuture.completedFuture(request.get());
+            } catch (Exception e) {
+                CompletableFuture<TrackerResponse> future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+                return future;
+            }
+        }
+        return CompletableFuture.supplyAsync(request, executor);
+    }
+
+    /**
+     * Optionally set the executor for asynchronous requests.
+     * If the executor is not set, then asynchronous requests are executed in the calling thread.
+     *
+     * @param executor Executor for asynchronous requests
+     * @return Builder
+     * @since 1.8
+     */
+    public TrackerRequestBuilder executor(Executor executor) {
+        this.executor = Objects.requireNonNull(executor);
+        return this;
+    }
+
     /**
      * Optionally set the amount of data uploaded during the current session.
      *
@@ -147,4 +228,12 @@ public abstract class TrackerRequestBuilder {
     public long getLeft() {
         return left;
     }
+
+    /**
+     * @return Executor for asynchronous requests or null, if it's not set
+     * @since 1.8
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
 }
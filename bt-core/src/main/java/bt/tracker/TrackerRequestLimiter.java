@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.tracker;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Limits the number of simultaneous asynchronous requests to trackers on the same host.
+ * Requests, that exceed the limit, are queued (in FIFO order) and started when some of the previous requests complete.
+ * Requests, that have not completed in time, fail and free their slot, even if the tracker never responds.
+ *
+ * @since 1.8
+ */
+class TrackerRequestLimiter {
+
+    private final int maxRequestsPerHost;
+    private final Executor executor;
+    private final ScheduledExecutorService timer;
+    private final Duration requestTimeout;
+    private final ConcurrentMap<String, Host> hosts;
+
+    /**
+     * Create a limiter, that does not time out requests.
+     *
+     * @param executor Executor for starting queued requests
+     */
+    TrackerRequestLimiter(int maxRequestsPerHost, Executor executor) {
+        this(maxRequestsPerHost, executor, null, null);
+    }
+
+    /**
+     * @param executor Executor for starting queued requests
+     * @param timer Executor for timing out requests
+     * @param requestTimeout Max duration of a request, counting from the moment it's started
+     */
+    TrackerRequestLimiter(int maxRequestsPerHost, Executor executor,
+                          ScheduledExecutorService timer, Duration requestTimeout) {
+        if (maxRequestsPerHost <= 0) {
+            throw new IllegalArgumentException("Invalid max number of requests per host: " + maxRequestsPerHost);
+        }
+        this.maxRequestsPerHost = maxRequestsPerHost;
+        this.executor = executor;
+        this.timer = timer;
+        this.requestTimeout = requestTimeout;
+        this.hosts = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @return Host name to use as the key for limiting requests to the tracker with a given URL
+     */
+    static String getHost(String trackerUrl) {
+        try {
+            String host = URI.create(trackerUrl).getHost();
+            if (host != null) {
+                return host.toLowerCase();
+            }
+        } catch (IllegalArgumentException e) {
+            // fall through
+        }
+        return trackerUrl;
+    }
+
+    /**
+     * Start a request in the calling thread, if the limit for the host has not been reached yet,
+     * or queue it otherwise.
+     */
+    <T> CompletableFuture<T> submit(String host, Supplier<CompletableFuture<T>> request) {
+        Host h = hosts.computeIfAbsent(host, k -> new Host());
+        PendingRequest<T> pendingRequest = new PendingRequest<>(host, h, request);
+
+        boolean startNow;
+        synchronized (h) {
+            startNow = h.inFlight < maxRequestsPerHost;
+            if (startNow) {
+                h.inFlight++;
+            } else {
+                h.pending.add(pendingRequest);
+            }
+        }
+        if (startNow) {
+            pendingRequest.run();
+        }
+        return pendingRequest.result;
+    }
+
+    private void release(Host host) {
+        PendingRequest<?> next;
+        do {
+            synchronized (host) {
+                next = host.pending.poll();
+                if (next == null) {
+                    host.inFlight--;
+                    return;
+                }
+            }
+            // the slot is passed on to the next request;
+            // don't start it in the current thread, which may be some I/O thread
+            try {
+                executor.execute(next);
+                return;
+            } catch (RejectedExecutionException e) {
+                // shutting down
+                next.result.completeExceptionally(e);
+            }
+        } while (true);
+    }
+
+    private class PendingRequest<T> implements Runnable {
+
+        private final String hostName;
+        private final Host host;
+        private final Supplier<CompletableFuture<T>> request;
+        private final CompletableFuture<T> result;
+        private final AtomicBoolean finished;
+
+        PendingRequest(String hostName, Host host, Supplier<CompletableFuture<T>> request) {
+            this.hostName = hostName;
+            this.host = host;
+            this.request = request;
+            this.result = new CompletableFuture<>();
+            this.finished = new AtomicBoolean();
+        }
+
+        @Override
+        public void run() {
+            CompletableFuture<T> future;
+            try {
+                future = request.get();
+            } catch (Exception e) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+            }
+            ScheduledFuture<?> timeout = scheduleTimeout(future);
+            future.whenComplete((response, e) -> {
+                if (timeout != null) {
+                    timeout.cancel(false);
+                }
+                finish(response, e);
+            });
+        }
+
+        private ScheduledFuture<?> scheduleTimeout(CompletableFuture<T> future) {
+            if (timer == null || future.isDone()) {
+                return null;
+            }
+            try {
+                return timer.schedule(() -> {
+                    finish(null, new TimeoutException("Request to tracker host " + hostName +
+                            " has not completed in " + requestTimeout.toMillis() + " ms"));
+                    future.cancel(true);
+                }, requestTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // shutting down
+                return null;
+            }
+        }
+
+        private void finish(T response, Throwable e) {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            // release the slot before completing the result, so that dependent actions may issue new requests
+            release(host);
+            if (e != null) {
+                result.completeExceptionally(e);
+            } else {
+                result.complete(response);
+            }
+        }
+    }
+
+    private static class Host {
+        private int inFlight;
+        private final Queue<PendingRequest<?>> pending = new ArrayDeque<>();
+    }
+}
@@ -17,12 +17,28 @@
 package bt.tracker;
 
 import bt.BtException;
+import bt.metainfo.TorrentId;
 import bt.module.TrackerFactories;
+import bt.runtime.Config;
+import bt.service.IRuntimeLifecycleBinder;
 import com.google.inject.Inject;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  *<p><b>Note that this class implements a service.
@@ -32,11 +48,46 @@ public class TrackerService implements ITrackerService {
 
     private Map<String, TrackerFactory> trackerFactories;
     private ConcurrentMap<String, Tracker> knownTrackers;
+    private ExecutorService executor;
+    private ScheduledExecutorService timeoutExecutor;
+    private TrackerRequestLimiter limiter;
+
+    // last successful responses to "started" and "completed" events, mapped by tracker URL
+    private ConcurrentMap<TorrentId, ConcurrentMap<String, TrackerResponse>> announceResponses;
+
+    private ConcurrentMap<TorrentId, CachedScrapeData> scrapeCache;
+    private Duration scrapeResultTtl;
+    private volatile long lastScrapeCachePurge;
 
     @Inject
-    public TrackerService(@TrackerFactories Map<String, TrackerFactory> trackerFactories) {
+    public TrackerService(@TrackerFactories Map<String, TrackerFactory> trackerFactories,
+                          Config config,
+                          IRuntimeLifecycleBinder lifecycleBinder) {
         this.trackerFactories = trackerFactories;
         this.knownTrackers = new ConcurrentHashMap<>();
+
+        // asynchronous requests to all trackers are executed in a shared bounded pool
+        AtomicInteger threadId = new AtomicInteger(1);
+        this.executor = Executors.newFixedThreadPool(config.getMaxConcurrentTrackerRequests(), r -> {
+            Thread t = new Thread(r, "bt.tracker.request-worker-" + threadId.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        lifecycleBinder.onShutdown("Shutdown tracker request executor", executor::shutdownNow);
+
+        // requests to unresponsive trackers are failed, so that they don't hold the per-host slots forever
+        this.timeoutExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "bt.tracker.request-timeout");
+            t.setDaemon(true);
+            return t;
+        });
+        lifecycleBinder.onShutdown("Shutdown tracker request timeout executor", timeoutExecutor::shutdownNow);
+        this.limiter = new TrackerRequestLimiter(config.getMaxConcurrentTrackerRequestsPerHost(), executor,
+                timeoutExecutor, config.getTrackerRequestTimeout());
+
+        this.announceResponses = new ConcurrentHashMap<>();
+        this.scrapeCache = new ConcurrentHashMap<>();
+        this.scrapeResultTtl = config.getTrackerScrapeResultTtl();
     }
 
     @Override
@@ -58,6 +109,97 @@ public class TrackerService implements ITrackerService {
         }
     }
 
+    /**
+     * Torrents with fresh cached statistics are not requested from the tracker again.
+     */
+    @Override
+    public CompletableFuture<Map<TorrentId, ScrapeData>> scrape(AnnounceKey announceKey, Collection<TorrentId> torrentIds) {
+        long now = System.currentTimeMillis();
+        purgeScrapeCache(now);
+
+        Map<TorrentId, ScrapeData> result = new HashMap<>();
+        List<TorrentId> missing = new ArrayList<>();
+        for (TorrentId torrentId : torrentIds) {
+            CachedScrapeData cached = getFreshScrapeData(torrentId, now);
+            if (cached == null) {
+                missing.add(torrentId);
+            } else {
+                result.put(torrentId, cached.data);
+            }
+        }
+
+        if (missing.isEmpty()) {
+            return CompletableFuture.completedFuture(result);
+        }
+        return getTracker(announceKey).scrape(missing).thenApply(received -> {
+            long timestamp = System.currentTimeMillis();
+            received.forEach((torrentId, data) -> scrapeCache.put(torrentId, new CachedScrapeData(data, timestamp)));
+            result.putAll(received);
+            return result;
+        });
+    }
+
+    @Override
+    public Optional<ScrapeData> getScrapeData(TorrentId torrentId) {
+        CachedScrapeData cached = getFreshScrapeData(torrentId, System.currentTimeMillis());
+        return (cached == null) ? Optional.empty() : Optional.of(cached.data);
+    }
+
+    @Override
+    public Optional<TrackerResponse> getLastAnnounceResponse(AnnounceKey announceKey, TorrentId torrentId) {
+        Map<String, TrackerResponse> responses = announceResponses.get(torrentId);
+        if (responses == null) {
+            return Optional.empty();
+        }
+        if (!announceKey.isMultiKey()) {
+            return Optional.ofNullable(responses.get(announceKey.getTrackerUrl()));
+        }
+        // multi-tracker announces to the first tracker in the list, that responds
+        for (List<String> tier : announceKey.getTrackerUrls()) {
+            for (String trackerUrl : tier) {
+                TrackerResponse response = responses.get(trackerUrl);
+                if (response != null) {
+                    return Optional.of(response);
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    private void onAnnounced(TorrentId torrentId, String trackerUrl, TrackerResponse response) {
+        if (response.isSuccess()) {
+            announceResponses.computeIfAbsent(torrentId, k -> new ConcurrentHashMap<>()).put(trackerUrl, response);
+        }
+    }
+
+    private void onStopped(TorrentId torrentId, String trackerUrl) {
+        announceResponses.computeIfPresent(torrentId, (k, responses) -> {
+            responses.remove(trackerUrl);
+            return responses.isEmpty() ? null : responses;
+        });
+    }
+
+    private CachedScrapeData getFreshScrapeData(TorrentId torrentId, long now) {
+        CachedScrapeData cached = scrapeCache.get(torrentId);
+        if (cached != null && isExpired(cached, now)) {
+            scrapeCache.remove(torrentId, cached);
+            cached = null;
+        }
+        return cached;
+    }
+
+    // expired entries are removed on access, but there might be entries for torrents, that are not requested anymore
+    private void purgeScrapeCache(long now) {
+        if (now - lastScrapeCachePurge >= scrapeResultTtl.toMillis()) {
+            lastScrapeCachePurge = now;
+            scrapeCache.values().removeIf(cached -> isExpired(cached, now));
+        }
+    }
+
+    private boolean isExpired(CachedScrapeData cached, long now) {
+        return now - cached.timestamp >= scrapeResultTtl.toMillis();
+    }
+
     private Tracker getOrCreateTracker(String trackerUrl) {
         Tracker tracker = knownTrackers.get(trackerUrl);
         if (tracker == null) {
@@ -76,7 +218,7 @@ public class TrackerService implements ITrackerService {
         if (factory == null) {
             throw new BtException("Unsupported tracker protocol: " + protocol);
         }
-        return factory.getTracker(trackerUrl);
+        return new ManagedTracker(factory.getTracker(trackerUrl), trackerUrl);
     }
 
     private static String getProtocol(String url) {
@@ -86,4 +228,130 @@ public class TrackerService implements ITrackerService {
         }
         return url.substring(0, schemaDelimiterIndex);
     }
+
+    /**
+     * Makes asynchronous requests of the delegate tracker to be executed in the shared executor
+     * (unless some other executor is set explicitly) and limits the number of simultaneous
+     * asynchronous requests to the tracker's host.
+     */
+    private class ManagedTracker implements Tracker {
+
+        private final Tracker delegate;
+        private final String trackerUrl;
+        private final String host;
+
+        ManagedTracker(Tracker delegate, String trackerUrl) {
+            this.delegate = delegate;
+            this.trackerUrl = trackerUrl;
+            this.host = TrackerRequestLimiter.getHost(trackerUrl);
+        }
+
+        @Override
+        public TrackerRequestBuilder request(TorrentId torrentId) {
+            return new LimitedRequestBuilder(delegate.request(torrentId), trackerUrl, host).executor(executor);
+        }
+
+        @Override
+        public boolean isScrapeSupported() {
+            return delegate.isScrapeSupported();
+        }
+
+        @Override
+        public CompletableFuture<Map<TorrentId, ScrapeData>> scrape(Collection<TorrentId> torrentIds) {
+            // the delegate may block while sending requests,
+            // and its' future may be completed in some I/O thread, that should not run dependent actions
+            Supplier<CompletableFuture<Map<TorrentId, ScrapeData>>> request = () ->
+                    CompletableFuture.supplyAsync(() -> delegate.scrape(torrentIds), executor)
+                            .thenCompose(Function.identity());
+            return limiter.submit(host, request).thenApplyAsync(Function.identity(), executor);
+        }
+
+        @Override
+        public String toString() {
+            return delegate.toString();
+        }
+    }
+
+    /**
+     * Synchronous requests are passed to the delegate as is, because they are not used internally.
+     * Responses to asynchronous announces are remembered, so that periodic tracker queries could take them into account.
+     */
+    private class LimitedRequestBuilder extends TrackerRequestBuilder {
+
+        private final TrackerRequestBuilder delegate;
+        private final String trackerUrl;
+        private final String host;
+
+        LimitedRequestBuilder(TrackerRequestBuilder delegate, String trackerUrl, String host) {
+            super(delegate.getTorrentId());
+            this.delegate = delegate;
+            this.trackerUrl = trackerUrl;
+            this.host = host;
+        }
+
+        @Override
+        public TrackerResponse start() {
+            return getDelegate().start();
+        }
+
+        @Override
+        public TrackerResponse stop() {
+            return getDelegate().stop();
+        }
+
+        @Override
+        public TrackerResponse complete() {
+            return getDelegate().complete();
+        }
+
+        @Override
+        public TrackerResponse query() {
+            return getDelegate().query();
+        }
+
+        @Override
+        public CompletableFuture<TrackerResponse> startAsync() {
+            return limiter.submit(host, () -> getDelegate().startAsync()).thenApply(this::onAnnounced);
+        }
+
+        @Override
+        public CompletableFuture<TrackerResponse> stopAsync() {
+            onStopped(getTorrentId(), trackerUrl);
+            return limiter.submit(host, () -> getDelegate().stopAsync());
+        }
+
+        @Override
+        public CompletableFuture<TrackerResponse> completeAsync() {
+            return limiter.submit(host, () -> getDelegate().completeAsync()).thenApply(this::onAnnounced);
+        }
+
+        @Override
+        public CompletableFuture<TrackerResponse> queryAsync() {
+            return limiter.submit(host, () -> getDelegate().queryAsync());
+        }
+
+        private TrackerResponse onAnnounced(TrackerResponse response) {
+            TrackerService.this.onAnnounced(getTorrentId(), trackerUrl, response);
+            return response;
+        }
+
+        private TrackerRequestBuilder getDelegate() {
+            delegate.uploaded(getUploaded());
+            delegate.downloaded(getDownloaded());
+            delegate.left(getLeft());
+            delegate.executor(getExecutor());
+            return delegate;
+        }
+    }
+
+    private static class CachedScrapeData {
+
+        private final ScrapeData data;
+        private final long timestamp;
+
+        CachedScrapeData(ScrapeData data, long timestamp) {
+            this.data = data;
+            this.timestamp = timestamp;
+        }
+    }
 }
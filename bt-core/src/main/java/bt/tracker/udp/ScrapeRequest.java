@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.tracker.udp;
+
+import bt.metainfo.TorrentId;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+class ScrapeRequest extends UdpTrackerMessage {
+
+    private static final int SCRAPE_TYPE_ID = 2;
+
+    /**
+     * Max number of info hashes in a single request, as specified in BEP-15
+     */
+    static final int MAX_TORRENTS_PER_REQUEST = 74;
+
+    private final List<TorrentId> torrentIds;
+
+    public ScrapeRequest(List<TorrentId> torrentIds) {
+        super(SCRAPE_TYPE_ID);
+        if (torrentIds.isEmpty() || torrentIds.size() > MAX_TORRENTS_PER_REQUEST) {
+            throw new IllegalArgumentException("Invalid number of torrents: " + torrentIds.size() +
+                    " (expected 1.." + MAX_TORRENTS_PER_REQUEST + ")");
+        }
+        this.torrentIds = torrentIds;
+    }
+
+    public List<TorrentId> getTorrentIds() {
+        return torrentIds;
+    }
+
+    @Override
+    protected void writeBodyTo(OutputStream out) throws IOException {
+        for (TorrentId torrentId : torrentIds) {
+            out.write(torrentId.getBytes());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ScrapeRequest{" +
+                "id=" + getId() +
+                ", torrentIds=" + torrentIds +
+                '}';
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.tracker.udp;
+
+import bt.BtException;
+import bt.metainfo.TorrentId;
+import bt.protocol.Protocols;
+import bt.tracker.ScrapeData;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads (seeders, completed, leechers) triples,
+ * that are returned by the tracker in the same order as the requested info hashes.
+ */
+class ScrapeResponseHandler implements UdpTrackerResponseHandler<Map<TorrentId, ScrapeData>> {
+
+    private static final int ENTRY_LENGTH = 12;
+
+    private final List<TorrentId> torrentIds;
+
+    ScrapeResponseHandler(List<TorrentId> torrentIds) {
+        this.torrentIds = torrentIds;
+    }
+
+    @Override
+    public Map<TorrentId, ScrapeData> onSuccess(byte[] data) {
+        // tolerate truncated responses: just skip the torrents, that are missing
+        int count = Math.min(torrentIds.size(), data.length / ENTRY_LENGTH);
+        Map<TorrentId, ScrapeData> result = new HashMap<>((int) (count / 0.75f) + 1);
+        for (int i = 0, offset = 0; i < count; i++, offset += ENTRY_LENGTH) {
+            int seeders = Protocols.readInt(data, offset);
+            int completed = Protocols.readInt(data, offset + 4);
+            int leechers = Protocols.readInt(data, offset + 8);
+            result.put(torrentIds.get(i), new ScrapeData(seeders, completed, leechers));
+        }
+        return result;
+    }
+
+    @Override
+    public Map<TorrentId, ScrapeData> onError(String message) {
+        throw new BtException("Tracker returned error: " + message);
+    }
+}
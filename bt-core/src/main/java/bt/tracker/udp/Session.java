@@ -37,7 +37,15 @@ class Session {
     }
 
     public boolean isExpired() {
-        return (System.currentTimeMillis() - createdOn) >= SESSION_DURATION.toMillis();
+        return isExpired(SESSION_DURATION);
+    }
+
+    /**
+     * @param duration Max age of the connection ID
+     * @since 1.8
+     */
+    public boolean isExpired(Duration duration) {
+        return (System.currentTimeMillis() - createdOn) >= duration.toMillis();
     }
 
     public long getId() {
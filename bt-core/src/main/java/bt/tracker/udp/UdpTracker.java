@@ -19,6 +19,7 @@ package bt.tracker.udp;
 import bt.metainfo.TorrentId;
 import bt.service.IRuntimeLifecycleBinder;
 import bt.service.IdentityService;
+import bt.tracker.ScrapeData;
 import bt.tracker.Tracker;
 import bt.tracker.TrackerRequestBuilder;
 import bt.tracker.TrackerResponse;
@@ -31,8 +32,20 @@ import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.net.SocketAddress;
 import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 
 /**
  * Simple implementation of a UDP tracker client
@@ -43,6 +56,11 @@ class UdpTracker implements Tracker {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(UdpTracker.class);
 
+    private static final Duration ANNOUNCE_TIMEOUT = Duration.ofSeconds(45);
+    // stop announce is sent, when the torrent is being stopped or the client is shutting down,
+    // so it's not worth waiting for unresponsive trackers for long
+    private static final Duration STOP_ANNOUNCE_TIMEOUT = Duration.ofSeconds(5);
+
     private IdentityService idService;
     private int listeningPort;
     private int numberOfPeersToRequestFromTracker;
@@ -63,11 +81,28 @@ class UdpTracker implements Tracker {
         this.idService = idService;
         this.listeningPort = listeningPort;
         this.numberOfPeersToRequestFromTracker = numberOfPeersToRequestFromTracker;
-        // TODO: one UDP socket for all outgoing tracker connections
         this.trackerUrl = toUrl(trackerUrl);
         this.worker = new UdpMessageWorker(new InetSocketAddress(localAddress, 0), getSocketAddress(this.trackerUrl), lifecycleBinder);
     }
 
+    /**
+     * @param engine Shared UDP tracker engine
+     * @param trackerUrl String representation of the tracker's URL.
+     *                   Must start with "udp://" pseudo-protocol.
+     * @since 1.8
+     */
+    public UdpTracker(IdentityService idService,
+                      UdpTrackerEngine engine,
+                      int listeningPort,
+                      int numberOfPeersToRequestFromTracker,
+                      String trackerUrl) {
+        this.idService = idService;
+        this.listeningPort = listeningPort;
+        this.numberOfPeersToRequestFromTracker = numberOfPeersToRequestFromTracker;
+        this.trackerUrl = toUrl(trackerUrl);
+        this.worker = new UdpMessageWorker(engine, getSocketAddress(this.trackerUrl));
+    }
+
     private URL toUrl(String s) {
         if (!s.startsWith("udp://")) {
             throw new IllegalArgumentException("Unexpected URL format: " + s);
@@ -122,7 +157,57 @@ class UdpTracker implements Tracker {
                 return announceEvent(EventType.QUERY);
             }
 
+            @Override
+            public CompletableFuture<TrackerResponse> startAsync() {
+                return announceEventAsync(EventType.START);
+            }
+
+            @Override
+            public CompletableFuture<TrackerResponse> stopAsync() {
+                return announceEventAsync(EventType.STOP);
+            }
+
+            @Override
+            public CompletableFuture<TrackerResponse> completeAsync() {
+                return announceEventAsync(EventType.COMPLETE);
+            }
+
+            @Override
+            public CompletableFuture<TrackerResponse> queryAsync() {
+                return announceEventAsync(EventType.QUERY);
+            }
+
             private TrackerResponse announceEvent(EventType eventType) {
+                try {
+                    return worker.sendMessage(buildRequest(eventType), AnnounceResponseHandler.handler(),
+                            getAnnounceTimeout(eventType));
+                } catch (Exception e) {
+                    return TrackerResponse.exceptional(e);
+                }
+            }
+
+            // does not block, because requests to all UDP trackers are multiplexed by a single engine
+            private CompletableFuture<TrackerResponse> announceEventAsync(EventType eventType) {
+                CompletableFuture<TrackerResponse> future;
+                try {
+                    future = worker.sendMessageAsync(buildRequest(eventType), AnnounceResponseHandler.handler(),
+                            getAnnounceTimeout(eventType));
+                } catch (Exception e) {
+                    return CompletableFuture.completedFuture(TrackerResponse.exceptional(e));
+                }
+                future = future.exceptionally(e ->
+                        TrackerResponse.exceptional((e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e));
+
+                // don't run dependent actions in the engine's I/O thread
+                Executor executor = getExecutor();
+                return (executor == null) ? future : future.thenApplyAsync(Function.identity(), executor);
+            }
+
+            private Duration getAnnounceTimeout(EventType eventType) {
+                return (eventType == EventType.STOP) ? STOP_ANNOUNCE_TIMEOUT : ANNOUNCE_TIMEOUT;
+            }
+
+            private AnnounceRequest buildRequest(EventType eventType) {
                 AnnounceRequest request = new AnnounceRequest();
                 request.setTorrentId(getTorrentId());
                 request.setPeerId(idService.getLocalPeerId());
@@ -138,15 +223,59 @@ class UdpTracker implements Tracker {
                 if (LOGGER.isDebugEnabled()) {
                     LOGGER.debug("Executing tracker UDP request of type {}: {}", eventType.name(), request);
                 }
-                try {
-                    return worker.sendMessage(request, AnnounceResponseHandler.handler());
-                } catch (Exception e) {
-                    return TrackerResponse.exceptional(e);
-                }
+                return request;
             }
         };
     }
 
+    @Override
+    public boolean isScrapeSupported() {
+        return true;
+    }
+
+    /**
+     * Torrents are split into batches of at most {@value ScrapeRequest#MAX_TORRENTS_PER_REQUEST},
+     * which are sent concurrently. Failed batches are skipped,
+     * and the resulting future completes exceptionally only if all batches have failed.
+     */
+    @Override
+    public CompletableFuture<Map<TorrentId, ScrapeData>> scrape(Collection<TorrentId> torrentIds) {
+        List<TorrentId> ids = new ArrayList<>(new LinkedHashSet<>(torrentIds));
+        if (ids.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptyMap());
+        }
+
+        List<CompletableFuture<Map<TorrentId, ScrapeData>>> batches = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += ScrapeRequest.MAX_TORRENTS_PER_REQUEST) {
+            List<TorrentId> batch = ids.subList(from, Math.min(ids.size(), from + ScrapeRequest.MAX_TORRENTS_PER_REQUEST));
+            ScrapeRequest request = new ScrapeRequest(batch);
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Executing tracker UDP scrape request: {}", request);
+            }
+            batches.add(worker.sendMessageAsync(request, new ScrapeResponseHandler(batch)));
+        }
+
+        return CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[batches.size()]))
+                .handle((nothing, e) -> {
+                    Map<TorrentId, ScrapeData> result = new HashMap<>();
+                    Throwable error = null;
+                    int failed = 0;
+                    for (CompletableFuture<Map<TorrentId, ScrapeData>> batch : batches) {
+                        try {
+                            result.putAll(batch.join());
+                        } catch (CompletionException ex) {
+                            error = (ex.getCause() == null) ? ex : ex.getCause();
+                            failed++;
+                            LOGGER.warn("Scrape request failed for tracker: " + this, error);
+                        }
+                    }
+                    if (failed == batches.size()) {
+                        throw new CompletionException(error);
+                    }
+                    return result;
+                });
+    }
+
     private Optional<String> getRequestString(URL url) {
         String result = url.getPath();
         if (url.getQuery() != null) {
@@ -0,0 +1,546 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.tracker.udp;
+
+import bt.BtException;
+import bt.protocol.Protocols;
+import bt.service.IRuntimeLifecycleBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Shared UDP tracker client.
+ *
+ * <p>All requests to all UDP trackers are sent from a single non-blocking channel
+ * and are multiplexed by transaction ID. Connection IDs are cached per tracker address
+ * and are re-used by all requests to the same tracker until they expire.
+ * Lost requests are re-transmitted in accordance with BEP-15.
+ *
+ * <p>The channel and the I/O thread are created lazily, upon sending the first request.
+ *
+ * @since 1.8
+ */
+class UdpTrackerEngine {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UdpTrackerEngine.class);
+
+    private static final int MIN_MESSAGE_LENGTH = 16;
+    private static final int MESSAGE_TYPE_OFFSET = 0;
+    private static final int MESSAGE_ID_OFFSET = 4;
+    private static final int ERROR_MESSAGE_TYPE = 3;
+    private static final int DATA_OFFSET = 8;
+    private static final int MAX_DATAGRAM_SIZE = 65536;
+
+    // BEP-15: wait for 15 * 2 ^ n seconds before re-transmitting the request;
+    // the spec allows to go up to n = 8 (i.e. more than an hour in total),
+    // but we give up much earlier, so that announces don't get stuck for so long
+    private static final Duration BASE_TIMEOUT = Duration.ofSeconds(15);
+    private static final int MAX_ATTEMPTS = 3;
+    // BEP-15: connection ID may be used for one minute after it's been received
+    private static final Duration SESSION_DURATION = Duration.ofMinutes(1);
+    // total time for obtaining a connection ID and receiving the response, including all re-transmissions
+    static final Duration DEFAULT_MAX_REQUEST_TIME = Duration.ofSeconds(60);
+
+    private static final long MAX_SELECT_TIMEOUT_MILLIS = 1000;
+
+    private final SocketAddress localAddress;
+    private final long baseTimeoutMillis;
+    private final int maxAttempts;
+    private final Duration sessionDuration;
+
+    private final ConcurrentMap<Integer, Transaction<?>> transactions;
+    private final ConcurrentMap<SocketAddress, CompletableFuture<Session>> sessions;
+    private final ConcurrentMap<CompletableFuture<?>, Deadline> deadlines;
+    private final Queue<Transaction<?>> outgoing;
+
+    private volatile DatagramChannel channel;
+    private volatile Selector selector;
+    private volatile boolean shutdown;
+    private final Object lock;
+
+    /**
+     * @param localAddress Local address to bind the channel to
+     * @since 1.8
+     */
+    UdpTrackerEngine(SocketAddress localAddress, IRuntimeLifecycleBinder lifecycleBinder) {
+        this(localAddress, lifecycleBinder, BASE_TIMEOUT, MAX_ATTEMPTS, SESSION_DURATION);
+    }
+
+    /**
+     * @param baseTimeout Time to wait for the response before the first re-transmission
+     *                    (doubled with each subsequent re-transmission)
+     * @param maxAttempts Max number of times a request is sent, including the first one
+     * @param sessionDuration Time, during which a connection ID may be re-used
+     * @since 1.8
+     */
+    UdpTrackerEngine(SocketAddress localAddress,
+                     IRuntimeLifecycleBinder lifecycleBinder,
+                     Duration baseTimeout,
+                     int maxAttempts,
+                     Duration sessionDuration) {
+        this.localAddress = localAddress;
+        this.baseTimeoutMillis = baseTimeout.toMillis();
+        this.maxAttempts = maxAttempts;
+        this.sessionDuration = sessionDuration;
+        this.transactions = new ConcurrentHashMap<>();
+        this.sessions = new ConcurrentHashMap<>();
+        this.deadlines = new ConcurrentHashMap<>();
+        this.outgoing = new ConcurrentLinkedQueue<>();
+        this.lock = new Object();
+
+        lifecycleBinder.onShutdown("Shutdown UDP tracker engine", this::shutdown);
+    }
+
+    /**
+     * Send a message to the tracker, obtaining a new connection ID beforehand, if needed.
+     *
+     * @return Future result, produced by the response handler
+     * @since 1.8
+     */
+    <T> CompletableFuture<T> sendMessage(SocketAddress remoteAddress,
+                                         UdpTrackerMessage message,
+                                         UdpTrackerResponseHandler<T> responseHandler) {
+        return sendMessage(remoteAddress, message, responseHandler, DEFAULT_MAX_REQUEST_TIME);
+    }
+
+    /**
+     * Send a message to the tracker, obtaining a new connection ID beforehand, if needed.
+     *
+     * @param maxRequestTime Total time for obtaining a connection ID and receiving the response,
+     *                       including all re-transmissions; the request fails, if it takes longer
+     * @return Future result, produced by the response handler
+     * @since 1.8
+     */
+    <T> CompletableFuture<T> sendMessage(SocketAddress remoteAddress,
+                                         UdpTrackerMessage message,
+                                         UdpTrackerResponseHandler<T> responseHandler,
+                                         Duration maxRequestTime) {
+        long expiresAt = System.currentTimeMillis() + maxRequestTime.toMillis();
+        CompletableFuture<T> future = getSession(remoteAddress)
+                .thenCompose(session -> send(remoteAddress, message, session, responseHandler, expiresAt));
+
+        // connect request is shared by all requests to the same tracker,
+        // so the time spent waiting for it is limited separately for each request
+        if (!future.isDone()) {
+            deadlines.put(future, new Deadline(remoteAddress, expiresAt));
+            future.whenComplete((result, e) -> deadlines.remove(future));
+            Selector selector = this.selector;
+            if (selector != null) {
+                selector.wakeup();
+            }
+        }
+        return future;
+    }
+
+    private CompletableFuture<Session> getSession(SocketAddress remoteAddress) {
+        while (true) {
+            CompletableFuture<Session> existing = sessions.get(remoteAddress);
+            if (existing != null && isUsable(existing)) {
+                return existing;
+            }
+
+            CompletableFuture<Session> future = new CompletableFuture<>();
+            boolean replaced = (existing == null) ? sessions.putIfAbsent(remoteAddress, future) == null
+                    : sessions.replace(remoteAddress, existing, future);
+            if (replaced) {
+                // all requests to the same tracker wait for a single connect request
+                send(remoteAddress, new ConnectRequest(), Session.noSession(), ConnectResponseHandler.handler())
+                        .whenComplete((session, e) -> {
+                            if (e != null) {
+                                future.completeExceptionally(e);
+                            } else {
+                                future.complete(session);
+                            }
+                        });
+                return future;
+            }
+        }
+    }
+
+    private boolean isUsable(CompletableFuture<Session> session) {
+        if (!session.isDone()) {
+            return true;
+        }
+        return !session.isCompletedExceptionally() && !session.join().isExpired(sessionDuration);
+    }
+
+    private <T> CompletableFuture<T> send(SocketAddress remoteAddress,
+                                         UdpTrackerMessage message,
+                                         Session session,
+                                         UdpTrackerResponseHandler<T> responseHandler) {
+        return send(remoteAddress, message, session, responseHandler, Long.MAX_VALUE);
+    }
+
+    private <T> CompletableFuture<T> send(SocketAddress remoteAddress,
+                                         UdpTrackerMessage message,
+                                         Session session,
+                                         UdpTrackerResponseHandler<T> responseHandler,
+                                         long expiresAt) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        send(new Transaction<>(remoteAddress, message, responseHandler, future, expiresAt), session);
+        return future;
+    }
+
+    private void send(Transaction<?> transaction, Session session) {
+        UdpTrackerMessage message = transaction.message;
+        try {
+            ensureStarted();
+            transaction.setSession(session, serialize(message, session));
+        } catch (Exception e) {
+            transaction.future.completeExceptionally(e);
+            return;
+        }
+
+        transaction.scheduleTimeout(System.currentTimeMillis(), baseTimeoutMillis);
+        if (transactions.putIfAbsent(message.getId(), transaction) != null) {
+            transaction.future.completeExceptionally(new BtException("Duplicate transaction ID: " + message.getId()));
+            return;
+        }
+
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("[Session {}] Sending message {} to remote address: {}",
+                    session.getId(), message, transaction.remoteAddress);
+        }
+        outgoing.add(transaction);
+        selector.wakeup();
+    }
+
+    /**
+     * Obtain a new connection ID and send the request again.
+     */
+    private void resend(Transaction<?> transaction) {
+        getSession(transaction.remoteAddress).whenComplete((session, e) -> {
+            if (e != null) {
+                transaction.future.completeExceptionally(e);
+            } else {
+                send(transaction, session);
+            }
+        });
+    }
+
+    private static byte[] serialize(UdpTrackerMessage message, Session session) {
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            out.write(Protocols.getLongBytes(session.getId()));
+            message.writeTo(out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new BtException("Failed to serialize message", e);
+        }
+    }
+
+    private void ensureStarted() {
+        if (shutdown) {
+            throw new IllegalStateException("Engine is shutdown");
+        }
+        if (channel == null) {
+            synchronized (lock) {
+                if (shutdown) {
+                    throw new IllegalStateException("Engine is shutdown");
+                }
+                if (channel == null) {
+                    if (LOGGER.isDebugEnabled()) {
+                        LOGGER.debug("Creating UDP channel {localAddress=" + localAddress + "}");
+                    }
+                    try {
+                        Selector selector = Selector.open();
+                        DatagramChannel channel = DatagramChannel.open();
+                        channel.bind(localAddress);
+                        channel.configureBlocking(false);
+                        channel.register(selector, SelectionKey.OP_READ);
+                        this.selector = selector;
+                        this.channel = channel;
+                    } catch (IOException e) {
+                        throw new BtException("Failed to create channel {localAddress=" + localAddress + "}", e);
+                    }
+                    Thread thread = new Thread(this::run, "bt.tracker.udp.engine");
+                    thread.setDaemon(true);
+                    thread.start();
+                }
+            }
+        }
+    }
+
+    private void run() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+        while (!shutdown) {
+            try {
+                long timeout = processTimeouts(System.currentTimeMillis());
+                if (!outgoing.isEmpty()) {
+                    timeout = 1;
+                }
+                selector.select(Math.max(1, timeout));
+                selector.selectedKeys().clear();
+                receive(buffer);
+                flush();
+            } catch (ClosedSelectorException e) {
+                break;
+            } catch (Exception e) {
+                if (!shutdown) {
+                    LOGGER.error("Unexpected error in UDP tracker engine", e);
+                }
+            }
+        }
+        failAll(new IllegalStateException("Engine is shutdown"));
+    }
+
+    private void flush() throws IOException {
+        Transaction<?> transaction;
+        while ((transaction = outgoing.peek()) != null) {
+            if (transaction.future.isDone()) {
+                outgoing.poll();
+                continue;
+            }
+            if (channel.send(ByteBuffer.wrap(transaction.data), transaction.remoteAddress) == 0) {
+                // no space in the socket buffer, try again later
+                return;
+            }
+            outgoing.poll();
+        }
+    }
+
+    private void receive(ByteBuffer buffer) throws IOException {
+        SocketAddress sender;
+        while (true) {
+            buffer.clear();
+            try {
+                sender = channel.receive(buffer);
+            } catch (IOException e) {
+                // ICMP port unreachable and alike; the corresponding request will time out
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Failed to receive datagram", e);
+                }
+                continue;
+            }
+            if (sender == null) {
+                return;
+            }
+            buffer.flip();
+            processResponse(sender, buffer);
+        }
+    }
+
+    private void processResponse(SocketAddress sender, ByteBuffer buffer) {
+        int length = buffer.remaining();
+        if (length < MIN_MESSAGE_LENGTH) {
+            if (LOGGER.isTraceEnabled()) {
+                LOGGER.trace("Received message with incorrect size from remote address: {};" +
+                        " expected: at least {} bytes, actual: {} bytes", sender, MIN_MESSAGE_LENGTH, length);
+            }
+            return;
+        }
+
+        int messageType = buffer.getInt(MESSAGE_TYPE_OFFSET);
+        int messageId = buffer.getInt(MESSAGE_ID_OFFSET);
+
+        Transaction<?> transaction = transactions.get(messageId);
+        if (transaction == null || !transaction.remoteAddress.equals(sender)) {
+            // ignore unsolicited packets and packets received from unexpected senders
+            if (LOGGER.isTraceEnabled()) {
+                LOGGER.trace("Received unexpected datagram packet from remote address: {}; message ID: {}",
+                        sender, messageId);
+            }
+            return;
+        }
+
+        byte[] data = new byte[length - DATA_OFFSET];
+        buffer.position(DATA_OFFSET);
+        buffer.get(data);
+
+        if (messageType == ERROR_MESSAGE_TYPE) {
+            String error = new String(data, StandardCharsets.US_ASCII);
+            if (LOGGER.isTraceEnabled()) {
+                LOGGER.trace("Received error from remote address: {}; message ID: {}, error: {}",
+                        sender, messageId, error);
+            }
+            if (transactions.remove(messageId, transaction)) {
+                transaction.completeWithError(error);
+            }
+        } else if (messageType != transaction.messageType) {
+            // ignore messages with incorrect type
+            if (LOGGER.isTraceEnabled()) {
+                LOGGER.trace("Received message with incorrect type from remote address: {}; expected: {}, actual: {}",
+                        sender, transaction.messageType, messageType);
+            }
+        } else if (transactions.remove(messageId, transaction)) {
+            transaction.complete(data);
+        }
+    }
+
+    /**
+     * @return Time until the next timeout, in millis
+     */
+    private long processTimeouts(long now) {
+        long nextTimeout = now + MAX_SELECT_TIMEOUT_MILLIS;
+        Iterator<Transaction<?>> iter = transactions.values().iterator();
+        while (iter.hasNext()) {
+            Transaction<?> transaction = iter.next();
+            if (transaction.deadline <= now) {
+                if (transaction.attempt + 1 < maxAttempts && now < transaction.expiresAt) {
+                    transaction.attempt++;
+                    if (transaction.session != Session.noSession() && transaction.session.isExpired(sessionDuration)) {
+                        // tracker would reject the request anyway
+                        iter.remove();
+                        resend(transaction);
+                        continue;
+                    }
+                    transaction.scheduleTimeout(now, baseTimeoutMillis);
+                    outgoing.add(transaction);
+                } else {
+                    iter.remove();
+                    transaction.future.completeExceptionally(timeout(transaction.remoteAddress));
+                    continue;
+                }
+            }
+            nextTimeout = Math.min(nextTimeout, transaction.deadline);
+        }
+
+        Iterator<Map.Entry<CompletableFuture<?>, Deadline>> deadlineIter = deadlines.entrySet().iterator();
+        while (deadlineIter.hasNext()) {
+            Map.Entry<CompletableFuture<?>, Deadline> e = deadlineIter.next();
+            Deadline deadline = e.getValue();
+            if (deadline.expiresAt <= now) {
+                deadlineIter.remove();
+                e.getKey().completeExceptionally(timeout(deadline.remoteAddress));
+            } else {
+                nextTimeout = Math.min(nextTimeout, deadline.expiresAt);
+            }
+        }
+        return nextTimeout - now;
+    }
+
+    private static BtException timeout(SocketAddress remoteAddress) {
+        return new BtException("Failed to receive response from the tracker" +
+                " {remoteAddress=" + remoteAddress + "}", new TimeoutException());
+    }
+
+    private void failAll(Exception e) {
+        transactions.values().forEach(transaction -> transaction.future.completeExceptionally(e));
+        transactions.clear();
+        deadlines.keySet().forEach(future -> future.completeExceptionally(e));
+        deadlines.clear();
+        outgoing.clear();
+    }
+
+    /**
+     * @since 1.8
+     */
+    void shutdown() {
+        synchronized (lock) {
+            if (!shutdown) {
+                shutdown = true;
+                try {
+                    if (selector != null) {
+                        selector.close();
+                    }
+                    if (channel != null) {
+                        channel.close();
+                    }
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to close UDP channel", e);
+                } finally {
+                    failAll(new IllegalStateException("Engine is shutdown"));
+                }
+            }
+        }
+    }
+
+    private static class Deadline {
+
+        private final SocketAddress remoteAddress;
+        private final long expiresAt;
+
+        Deadline(SocketAddress remoteAddress, long expiresAt) {
+            this.remoteAddress = remoteAddress;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static class Transaction<T> {
+
+        private final SocketAddress remoteAddress;
+        private final UdpTrackerMessage message;
+        private final int messageType;
+        private final UdpTrackerResponseHandler<T> responseHandler;
+        private final CompletableFuture<T> future;
+        private final long expiresAt;
+
+        // accessed only by the I/O thread (except for the initial scheduling)
+        private volatile Session session;
+        private volatile byte[] data;
+        private volatile int attempt;
+        private volatile long deadline;
+
+        Transaction(SocketAddress remoteAddress,
+                    UdpTrackerMessage message,
+                    UdpTrackerResponseHandler<T> responseHandler,
+                    CompletableFuture<T> future,
+                    long expiresAt) {
+            this.remoteAddress = remoteAddress;
+            this.message = message;
+            this.messageType = message.getMessageType();
+            this.responseHandler = responseHandler;
+            this.future = future;
+            this.expiresAt = expiresAt;
+        }
+
+        void setSession(Session session, byte[] data) {
+            this.session = session;
+            this.data = data;
+        }
+
+        void scheduleTimeout(long now, long baseTimeoutMillis) {
+            long timeout = baseTimeoutMillis << attempt;
+            // don't wait past the total request time
+            deadline = (expiresAt - now <= timeout) ? expiresAt : now + timeout;
+        }
+
+        void complete(byte[] data) {
+            try {
+                future.complete(responseHandler.onSuccess(data));
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        }
+
+        void completeWithError(String error) {
+            try {
+                future.complete(responseHandler.onError(error));
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
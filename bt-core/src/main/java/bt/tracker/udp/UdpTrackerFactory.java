@@ -23,6 +23,8 @@ import bt.tracker.Tracker;
 import bt.tracker.TrackerFactory;
 import com.google.inject.Inject;
 
+import java.net.InetSocketAddress;
+
 /**
  * Creates UDP tracker clients.
  *
@@ -31,19 +33,20 @@ import com.google.inject.Inject;
 public class UdpTrackerFactory implements TrackerFactory {
 
     private IdentityService idService;
-    private IRuntimeLifecycleBinder lifecycleBinder;
     private Config config;
+    private UdpTrackerEngine engine;
 
     @Inject
     public UdpTrackerFactory(IdentityService idService, IRuntimeLifecycleBinder lifecycleBinder, Config config) {
         this.idService = idService;
-        this.lifecycleBinder = lifecycleBinder;
         this.config = config;
+        // single socket and I/O thread for all UDP trackers
+        this.engine = new UdpTrackerEngine(new InetSocketAddress(config.getAcceptorAddress(), 0), lifecycleBinder);
     }
 
     @Override
     public Tracker getTracker(String trackerUrl) {
-        return new UdpTracker(idService, lifecycleBinder, config.getAcceptorAddress(), config.getAcceptorPort(),
+        return new UdpTracker(idService, engine, config.getAcceptorPort(),
                 config.getNumberOfPeersToRequestFromTracker(), trackerUrl);
     }
 }
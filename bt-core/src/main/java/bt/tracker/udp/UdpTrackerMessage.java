@@ -20,7 +20,7 @@ import bt.protocol.Protocols;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 abstract class UdpTrackerMessage {
 
@@ -29,7 +29,8 @@ abstract class UdpTrackerMessage {
 
     public UdpTrackerMessage(int messageType) {
         this.messageType = messageType;
-        this.id = new Random(System.currentTimeMillis()).nextInt();
+        // transaction IDs are used to match responses to requests, so they need to be unique
+        this.id = ThreadLocalRandom.current().nextInt();
     }
 
     public int getId() {
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.dht;
+
+import bt.data.DataDescriptor;
+import bt.event.EventSource;
+import bt.event.TorrentStartedEvent;
+import bt.event.TorrentStoppedEvent;
+import bt.metainfo.Torrent;
+import bt.metainfo.TorrentId;
+import bt.service.IRuntimeLifecycleBinder;
+import bt.torrent.TorrentDescriptor;
+import bt.torrent.TorrentRegistry;
+import com.google.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Periodically announces active torrents in the DHT, so that the local peer can be found by other peers.
+ * Announces for all torrents are executed in a single queue, ordered by the time of the next announce,
+ * and are started at a fixed maximum rate, so that large numbers of torrents are spread over time
+ * instead of being announced all at once. Private torrents are never announced.
+ * Torrents, which metadata has not been fetched yet (i.e. when downloading from a magnet link),
+ * are not announced until it becomes known whether they are private.
+ *
+ * @since 1.8
+ */
+public class DHTAnnouncer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DHTAnnouncer.class);
+
+    private static final Duration INITIAL_ANNOUNCE_SPREAD = Duration.ofMinutes(1);
+    private static final Duration RETRY_INTERVAL = Duration.ofMinutes(5);
+    private static final Duration METADATA_RECHECK_INTERVAL = Duration.ofSeconds(30);
+
+    private final DHTService dhtService;
+    private final Predicate<TorrentId> hasMetadata;
+    private final Predicate<TorrentId> isPrivate;
+    private final Predicate<TorrentId> isSeed;
+    private final Duration announceInterval;
+    private final LongSupplier clock;
+
+    private final ConcurrentMap<TorrentId, ScheduledAnnounce> announces;
+    // guarded by itself
+    private final PriorityQueue<ScheduledAnnounce> queue;
+    private final ScheduledExecutorService executor;
+
+    @Inject
+    public DHTAnnouncer(DHTService dhtService,
+                        DHTConfig config,
+                        TorrentRegistry torrentRegistry,
+                        EventSource eventSource,
+                        IRuntimeLifecycleBinder lifecycleBinder) {
+        this(dhtService, config, torrentId -> torrentRegistry.getTorrent(torrentId).isPresent(),
+                torrentId -> isPrivate(torrentRegistry, torrentId),
+                torrentId -> isSeed(torrentRegistry, torrentId), eventSource, lifecycleBinder,
+                Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, "bt.dht.announcer");
+                    t.setDaemon(true);
+                    return t;
+                }), System::currentTimeMillis);
+    }
+
+    /**
+     * @param hasMetadata Torrents without metadata are not announced, until it's available
+     * @param isPrivate Private torrents are never announced
+     * @param isSeed Determines, if the local peer is a seed for a torrent
+     * @param executor Executor, that triggers announces at the configured rate
+     */
+    DHTAnnouncer(DHTService dhtService,
+                 DHTConfig config,
+                 Predicate<TorrentId> hasMetadata,
+                 Predicate<TorrentId> isPrivate,
+                 Predicate<TorrentId> isSeed,
+                 EventSource eventSource,
+                 IRuntimeLifecycleBinder lifecycleBinder,
+                 ScheduledExecutorService executor,
+                 LongSupplier clock) {
+        this.dhtService = dhtService;
+        this.hasMetadata = hasMetadata;
+        this.isPrivate = isPrivate;
+        this.isSeed = isSeed;
+        this.announceInterval = config.getAnnounceInterval();
+        this.clock = clock;
+        this.announces = new ConcurrentHashMap<>();
+        this.queue = new PriorityQueue<>();
+        this.executor = executor;
+
+        if (config.shouldAnnounce()) {
+            eventSource.onTorrentStarted(this::onTorrentStarted);
+            eventSource.onTorrentStopped(this::onTorrentStopped);
+
+            long delayMillis = Math.max(1, 1000 / Math.max(1, config.getMaxAnnouncesPerSecond()));
+            executor.scheduleWithFixedDelay(this::announceNext, delayMillis, delayMillis, TimeUnit.MILLISECONDS);
+        }
+        lifecycleBinder.onShutdown("Shutdown DHT announcer", executor::shutdownNow);
+    }
+
+    private void onTorrentStarted(TorrentStartedEvent event) {
+        TorrentId torrentId = event.getTorrentId();
+        ScheduledAnnounce announce = new ScheduledAnnounce(torrentId);
+        if (announces.putIfAbsent(torrentId, announce) == null) {
+            long delay = ThreadLocalRandom.current().nextLong(INITIAL_ANNOUNCE_SPREAD.toMillis());
+            schedule(announce, delay);
+        }
+    }
+
+    private void onTorrentStopped(TorrentStoppedEvent event) {
+        // entry will be discarded, when it's taken from the queue
+        announces.remove(event.getTorrentId());
+    }
+
+    private void schedule(ScheduledAnnounce announce, long delayMillis) {
+        announce.dueTime = clock.getAsLong() + delayMillis;
+        synchronized (queue) {
+            queue.add(announce);
+        }
+    }
+
+    private void announceNext() {
+        ScheduledAnnounce announce;
+        long now = clock.getAsLong();
+        synchronized (queue) {
+            do {
+                announce = queue.peek();
+                if (announce == null || announce.dueTime > now) {
+                    return;
+                }
+                queue.poll();
+            } while (announces.get(announce.torrentId) != announce);
+        }
+
+        TorrentId torrentId = announce.torrentId;
+        if (!hasMetadata.test(torrentId)) {
+            // it's unknown yet, if the torrent is private
+            schedule(announce, METADATA_RECHECK_INTERVAL.toMillis());
+            return;
+        }
+        if (isPrivate.test(torrentId)) {
+            announces.remove(torrentId, announce);
+            return;
+        }
+
+        ScheduledAnnounce scheduled = announce;
+        try {
+            dhtService.announce(torrentId, isSeed.test(torrentId)).whenComplete((result, e) -> {
+                long delay;
+                if (e == null) {
+                    // +/- 10% jitter to prevent announces of simultaneously started torrents from clumping together
+                    long jitter = announceInterval.toMillis() / 10;
+                    delay = announceInterval.toMillis() + ThreadLocalRandom.current().nextLong(-jitter, jitter + 1);
+                } else {
+                    if (LOGGER.isDebugEnabled()) {
+                        LOGGER.debug("Failed to announce torrent in DHT: " + torrentId, e);
+                    }
+                    delay = Math.min(RETRY_INTERVAL.toMillis(), announceInterval.toMillis());
+                }
+                if (announces.get(torrentId) == scheduled) {
+                    schedule(scheduled, delay);
+                }
+            });
+        } catch (Exception e) {
+            LOGGER.error("Unexpected error when announcing torrent in DHT: " + torrentId, e);
+            schedule(scheduled, RETRY_INTERVAL.toMillis());
+        }
+    }
+
+    private static boolean isPrivate(TorrentRegistry torrentRegistry, TorrentId torrentId) {
+        Optional<Torrent> torrent = torrentRegistry.getTorrent(torrentId);
+        return torrent.isPresent() && torrent.get().isPrivate();
+    }
+
+    private static boolean isSeed(TorrentRegistry torrentRegistry, TorrentId torrentId) {
+        Optional<TorrentDescriptor> descriptor = torrentRegistry.getDescriptor(torrentId);
+        if (descriptor.isPresent()) {
+            DataDescriptor dataDescriptor = descriptor.get().getDataDescriptor();
+            return dataDescriptor != null && dataDescriptor.getBitfield().getPiecesRemaining() == 0;
+        }
+        return false;
+    }
+
+    private static class ScheduledAnnounce implements Comparable<ScheduledAnnounce> {
+
+        private final TorrentId torrentId;
+        private volatile long dueTime;
+
+        ScheduledAnnounce(TorrentId torrentId) {
+            this.torrentId = torrentId;
+        }
+
+        @Override
+        public int compareTo(ScheduledAnnounce that) {
+            return Long.compare(dueTime, that.dueTime);
+        }
+    }
+}
@@ -18,6 +18,8 @@ package bt.dht;
 
 import bt.net.InetPeerAddress;
 
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -32,7 +34,18 @@ public class DHTConfig {
     private int listeningPort;
     private boolean useRouterBootstrap;
     private boolean useIPv6;
+    private boolean useDualStack;
+    private boolean useMultiHoming;
     private Collection<InetPeerAddress> bootstrapNodes;
+    private Path storageDirectory;
+    private int maxConcurrentLookups;
+    private int maxCachedLookups;
+    private Duration lookupCacheTtl;
+    private boolean announce;
+    private Duration announceInterval;
+    private int maxAnnouncesPerSecond;
+    private int crawlConcurrency;
+    private int maxCrawledInfoHashesPerSecond;
 
     private final Collection<InetPeerAddress> publicBootstrapNodes;
 
@@ -43,7 +56,18 @@ public class DHTConfig {
         this.listeningPort = 49001;
         this.useRouterBootstrap = false;
         this.useIPv6 = false;
+        this.useDualStack = false;
+        this.useMultiHoming = false;
         this.bootstrapNodes = Collections.emptyList();
+        this.storageDirectory = null;
+        this.maxConcurrentLookups = 16;
+        this.maxCachedLookups = 1000;
+        this.lookupCacheTtl = Duration.ofMinutes(2);
+        this.announce = true;
+        this.announceInterval = Duration.ofMinutes(15);
+        this.maxAnnouncesPerSecond = 5;
+        this.crawlConcurrency = 2;
+        this.maxCrawledInfoHashesPerSecond = 20;
 
         this.publicBootstrapNodes = Arrays.asList(
             new InetPeerAddress("router.bittorrent.com", 6881),
@@ -101,6 +125,44 @@ public class DHTConfig {
         this.useIPv6 = useIPv6;
     }
 
+    /**
+     * @see #setShouldUseDualStack(boolean)
+     * @since 1.8
+     */
+    public boolean shouldUseDualStack() {
+        return useDualStack;
+    }
+
+    /**
+     * @param useDualStack Indicates whether separate IPv4 and IPv6 DHT nodes should be run side by side.
+     *                     Peer lookups and announces are then executed in both networks simultaneously.
+     *                     If true, {@link #shouldUseIPv6()} is ignored.
+     * @since 1.8
+     */
+    public void setShouldUseDualStack(boolean useDualStack) {
+        this.useDualStack = useDualStack;
+    }
+
+    /**
+     * @see #setShouldUseMultiHoming(boolean)
+     * @since 1.8
+     */
+    public boolean shouldUseMultiHoming() {
+        return useMultiHoming;
+    }
+
+    /**
+     * @param useMultiHoming Indicates whether a separate DHT server should be bound to each
+     *                       globally routable address of the local host (instead of just the default route).
+     *                       Mostly useful for servers with several public IP addresses.
+     *                       Addresses are still filtered by {@link bt.runtime.Config#getAcceptorAddress()},
+     *                       unless the latter is a wildcard address.
+     * @since 1.8
+     */
+    public void setShouldUseMultiHoming(boolean useMultiHoming) {
+        this.useMultiHoming = useMultiHoming;
+    }
+
     /**
      * @see #setBootstrapNodes(Collection)
      * @since 1.3
@@ -117,6 +179,166 @@ public class DHTConfig {
         this.bootstrapNodes = bootstrapNodes;
     }
 
+    /**
+     * @see #setStorageDirectory(Path)
+     * @since 1.8
+     */
+    public Path getStorageDirectory() {
+        return storageDirectory;
+    }
+
+    /**
+     * @param storageDirectory Directory to keep the DHT state in between restarts,
+     *                         i.e. the local node ID and the routing table.
+     *                         Upon startup, the saved routing table is used to warm-start the DHT node
+     *                         instead of bootstrapping from scratch.
+     *                         Will be created, if it does not exist.
+     *                         If null (the default), the state is kept in a temporary directory
+     *                         and a new node ID is generated on each startup.
+     * @since 1.8
+     */
+    public void setStorageDirectory(Path storageDirectory) {
+        this.storageDirectory = storageDirectory;
+    }
+
+    /**
+     * @see #setMaxConcurrentLookups(int)
+     * @since 1.8
+     */
+    public int getMaxConcurrentLookups() {
+        return maxConcurrentLookups;
+    }
+
+    /**
+     * @param maxConcurrentLookups Maximum number of peer lookups, that can be executed simultaneously.
+     *                             Further lookups are queued until one of the running lookups is finished.
+     * @since 1.8
+     */
+    public void setMaxConcurrentLookups(int maxConcurrentLookups) {
+        this.maxConcurrentLookups = maxConcurrentLookups;
+    }
+
+    /**
+     * @see #setMaxCachedLookups(int)
+     * @since 1.8
+     */
+    public int getMaxCachedLookups() {
+        return maxCachedLookups;
+    }
+
+    /**
+     * @param maxCachedLookups Maximum number of torrents, for which the results of recent peer lookups are kept.
+     *                         0 disables caching, so that each lookup is executed in the DHT.
+     * @since 1.8
+     */
+    public void setMaxCachedLookups(int maxCachedLookups) {
+        this.maxCachedLookups = maxCachedLookups;
+    }
+
+    /**
+     * @see #setLookupCacheTtl(Duration)
+     * @since 1.8
+     */
+    public Duration getLookupCacheTtl() {
+        return lookupCacheTtl;
+    }
+
+    /**
+     * @param lookupCacheTtl Time, during which peers found by a completed lookup are returned to subsequent
+     *                       lookups for the same torrent, instead of querying the DHT again
+     * @since 1.8
+     */
+    public void setLookupCacheTtl(Duration lookupCacheTtl) {
+        this.lookupCacheTtl = lookupCacheTtl;
+    }
+
+    /**
+     * @see #setShouldAnnounce(boolean)
+     * @since 1.8
+     */
+    public boolean shouldAnnounce() {
+        return announce;
+    }
+
+    /**
+     * @param announce Indicates whether active non-private torrents should be announced in the DHT,
+     *                 so that the local peer can be found by other peers
+     * @since 1.8
+     */
+    public void setShouldAnnounce(boolean announce) {
+        this.announce = announce;
+    }
+
+    /**
+     * @see #setAnnounceInterval(Duration)
+     * @since 1.8
+     */
+    public Duration getAnnounceInterval() {
+        return announceInterval;
+    }
+
+    /**
+     * @param announceInterval Interval between consecutive announces of the same torrent
+     * @since 1.8
+     */
+    public void setAnnounceInterval(Duration announceInterval) {
+        this.announceInterval = announceInterval;
+    }
+
+    /**
+     * @see #setMaxAnnouncesPerSecond(int)
+     * @since 1.8
+     */
+    public int getMaxAnnouncesPerSecond() {
+        return maxAnnouncesPerSecond;
+    }
+
+    /**
+     * @param maxAnnouncesPerSecond Maximum number of announces, that can be started in one second (for all torrents).
+     *                              When there are more torrents, than can be announced in {@link #getAnnounceInterval()}
+     *                              at this rate, the actual interval between announces of each torrent becomes longer.
+     * @since 1.8
+     */
+    public void setMaxAnnouncesPerSecond(int maxAnnouncesPerSecond) {
+        this.maxAnnouncesPerSecond = maxAnnouncesPerSecond;
+    }
+
+    /**
+     * @see #setCrawlConcurrency(int)
+     * @since 1.8
+     */
+    public int getCrawlConcurrency() {
+        return crawlConcurrency;
+    }
+
+    /**
+     * @param crawlConcurrency Maximum number of keyspace ranges, that are sampled simultaneously
+     *                         during an info hash crawl (see {@link DHTService#crawlInfoHashes(java.util.function.Consumer)}).
+     *                         Higher values make the crawl faster, at the cost of more DHT traffic.
+     * @since 1.8
+     */
+    public void setCrawlConcurrency(int crawlConcurrency) {
+        this.crawlConcurrency = crawlConcurrency;
+    }
+
+    /**
+     * @see #setMaxCrawledInfoHashesPerSecond(int)
+     * @since 1.8
+     */
+    public int getMaxCrawledInfoHashesPerSecond() {
+        return maxCrawledInfoHashesPerSecond;
+    }
+
+    /**
+     * @param maxCrawledInfoHashesPerSecond Maximum number of info hashes, that are delivered to the consumer
+     *                                      of an info hash crawl per second. Should be set according to
+     *                                      how fast the consumer can process them, e.g. fetch the torrent metadata.
+     * @since 1.8
+     */
+    public void setMaxCrawledInfoHashesPerSecond(int maxCrawledInfoHashesPerSecond) {
+        this.maxCrawledInfoHashesPerSecond = maxCrawledInfoHashesPerSecond;
+    }
+
     /***************** NOT PUBLIC ******************/
 
     /**
@@ -53,5 +53,6 @@ public class DHTModule implements Module {
 
         // this service contributes startup lifecycle bindings and should be instantiated eagerly
         binder.bind(DHTService.class).to(MldhtService.class).asEagerSingleton();
+        binder.bind(DHTAnnouncer.class).asEagerSingleton();
     }
 }
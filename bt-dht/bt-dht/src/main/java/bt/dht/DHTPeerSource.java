@@ -16,55 +16,93 @@
 
 package bt.dht;
 
+import bt.event.PeerSourceType;
 import bt.metainfo.TorrentId;
 import bt.net.Peer;
-import bt.event.PeerSourceType;
-import bt.peer.ScheduledPeerSource;
+import bt.peer.PeerSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
-import java.util.concurrent.ExecutorService;
-import java.util.function.Consumer;
-import java.util.stream.Stream;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
+ * Peer lookups are executed asynchronously by the DHT service,
+ * so calls to {@link #update()} never block and do not occupy a thread while the lookup is in progress.
+ *
  * @since 1.1
  */
-public class DHTPeerSource extends ScheduledPeerSource {
+public class DHTPeerSource implements PeerSource {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DHTPeerSource.class);
 
-    private static final int MAX_PEERS_PER_COLLECTION = 50;
-
     private final TorrentId torrentId;
     private final DHTService dhtService;
     private final Duration queryInterval;
+    private final Queue<Peer> peers;
+    private final AtomicReference<CompletableFuture<?>> currentLookup;
 
     private volatile long lastRefreshed;
 
-    DHTPeerSource(TorrentId torrentId, DHTService dhtService, ExecutorService executor) {
-        super(PeerSourceType.DHT, executor);
+    DHTPeerSource(TorrentId torrentId, DHTService dhtService) {
         this.torrentId = torrentId;
         this.dhtService = dhtService;
         this.queryInterval = Duration.ofMinutes(5);
+        this.peers = new LinkedBlockingQueue<>();
+        this.currentLookup = new AtomicReference<>();
+    }
+
+    @Override
+    public PeerSourceType getPeerSourceType() {
+        return PeerSourceType.DHT;
     }
 
     @Override
-    protected void collectPeers(Consumer<Peer> peerConsumer) {
-        final long interval = System.currentTimeMillis() - lastRefreshed;
-        if (interval >= queryInterval.toMillis()) {
-            Stream<Peer> peerStream = dhtService.getPeers(torrentId)/*.limit(MAX_PEERS_PER_COLLECTION)*/;
-            peerStream.forEach(peer -> {
-                peerConsumer.accept(peer);
-                if (LOGGER.isTraceEnabled()) {
-                    LOGGER.trace(String.format("Collected new peer (torrent ID: %s, peer: %s)", torrentId, peer));
-                }
-            });
+    public boolean update() {
+        if (peers.isEmpty()) {
+            startLookup();
+        }
+        return !peers.isEmpty();
+    }
+
+    private void startLookup() {
+        CompletableFuture<?> lookup = currentLookup.get();
+        if (lookup != null && !lookup.isDone()) {
+            return;
+        }
+        if (System.currentTimeMillis() - lastRefreshed < queryInterval.toMillis()) {
+            return;
+        }
+
+        CompletableFuture<Void> finished = new CompletableFuture<>();
+        if (!currentLookup.compareAndSet(lookup, finished)) {
+            // lookup has just been started by another thread
+            return;
+        }
+        dhtService.lookupPeers(torrentId, this::onPeersFound).whenComplete((result, e) -> {
             lastRefreshed = System.currentTimeMillis();
-            if (LOGGER.isTraceEnabled()) {
-                LOGGER.info("Peer collection finished for torrent ID: " + torrentId);
+            if (e != null) {
+                LOGGER.warn("Peer lookup finished with exception for torrent ID: " + torrentId, e);
+            } else if (LOGGER.isTraceEnabled()) {
+                LOGGER.trace("Peer collection finished for torrent ID: " + torrentId);
             }
+            finished.complete(null);
+        });
+    }
+
+    private void onPeersFound(Collection<Peer> batch) {
+        peers.addAll(batch);
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace(String.format("Collected new peers (torrent ID: %s, peers: %s)", torrentId, batch));
         }
     }
+
+    @Override
+    public Collection<Peer> getPeers() {
+        return peers;
+    }
 }
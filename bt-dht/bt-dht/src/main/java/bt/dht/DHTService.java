@@ -20,6 +20,12 @@ import bt.metainfo.Torrent;
 import bt.metainfo.TorrentId;
 import bt.net.Peer;
 
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 /**
@@ -52,6 +58,60 @@ public interface DHTService {
      */
     Stream<Peer> getPeers(TorrentId torrentId);
 
+    /**
+     * Creates an asynchronous peer lookup for a given torrent.
+     * Does not block the caller thread.
+     * Peers are delivered to the consumer in batches, as soon as they are received from the DHT nodes.
+     * Each peer is delivered at most once per lookup.
+     * The consumer may be invoked from the DHT's internal threads and hence must not block.
+     *
+     * @param consumer Consumer of found peers
+     * @return Future, that is completed when the lookup is exhausted.
+     *         Cancelling the future stops the delivery of peers to the consumer.
+     * @since 1.8
+     */
+    default CompletableFuture<Void> lookupPeers(TorrentId torrentId, Consumer<Collection<Peer>> consumer) {
+        return CompletableFuture.runAsync(() ->
+                getPeers(torrentId).forEach(peer -> consumer.accept(Collections.singletonList(peer))));
+    }
+
+    /**
+     * Announce the local peer as a peer of a given torrent.
+     * Does not block the caller thread.
+     *
+     * @param seed Indicates whether the local peer has the complete torrent data
+     * @return Future, that is completed when the announce is finished
+     * @since 1.8
+     */
+    default CompletableFuture<Void> announce(TorrentId torrentId, boolean seed) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        future.completeExceptionally(new UnsupportedOperationException("Announces are not supported"));
+        return future;
+    }
+
+    /**
+     * Crawl the whole DHT keyspace for info hashes of torrents, that are present in the DHT,
+     * using BEP-51 {@code sample_infohashes} requests.
+     * Does not block the caller thread.
+     * Info hashes are de-duplicated on a best-effort basis and are delivered to the consumer at a limited rate
+     * (see {@link DHTConfig#getMaxCrawledInfoHashesPerSecond()}), so the consumer may start fetching
+     * the torrent metadata for each of them, e.g. by creating a magnet link client.
+     * The consumer is invoked from a dedicated thread and should not block for long.
+     * <p>This is an expensive, long-running operation, that causes considerable amounts of DHT traffic.
+     *
+     * @param consumer Consumer of discovered info hashes
+     * @return Future, that is completed when the whole keyspace has been crawled.
+     *         Cancelling the future stops the crawl. The crawl may be resumed by invoking this method again,
+     *         in which case the parts of the keyspace, that have already been crawled, are skipped.
+     *         Only one crawl may be in progress at a time.
+     * @since 1.8
+     */
+    default CompletableFuture<Void> crawlInfoHashes(Consumer<TorrentId> consumer) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        future.completeExceptionally(new UnsupportedOperationException("Info hash crawls are not supported"));
+        return future;
+    }
+
     /**
      * Add a DHT node.
      *
@@ -59,4 +119,13 @@ public interface DHTService {
      * @since 1.1
      */
     void addNode(Peer node);
+
+    /**
+     * @return Time between the startup of DHT services and the moment, when the first peer was found,
+     *         or {@link Optional#empty()} if no peers have been found yet
+     * @since 1.8
+     */
+    default Optional<Duration> getTimeToFirstPeer() {
+        return Optional.empty();
+    }
 }
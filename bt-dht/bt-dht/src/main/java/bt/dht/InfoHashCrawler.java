@@ -0,0 +1,367 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.dht;
+
+import bt.BtException;
+import bt.metainfo.TorrentId;
+import lbms.plugins.mldht.indexer.utils.RotatingBloomFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Crawls the DHT keyspace for info hashes (BEP 51).
+ *
+ * <ul>
+ *     <li>The keyspace is divided into a fixed number of ranges, which are sampled independently,
+ *     at most a fixed number at a time.</li>
+ *     <li>Progress is tracked per range, so that a stopped crawl is resumed from the ranges, that have not been
+ *     sampled yet. If a state file is provided, progress is also kept in between restarts.</li>
+ *     <li>Discovered info hashes are de-duplicated with a rotating Bloom filter and delivered to the consumer
+ *     at a bounded rate. While many info hashes are waiting for delivery, no new ranges are started.
+ *     If the queue overflows nevertheless, new info hashes are dropped, and the range is sampled again later.</li>
+ *     <li>Info hashes, that are still waiting for delivery, when the crawl is stopped, are discarded.</li>
+ * </ul>
+ */
+class InfoHashCrawler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InfoHashCrawler.class);
+
+    /**
+     * Samples a range of the keyspace.
+     */
+    interface RangeSampler {
+
+        /**
+         * @param range Index of the range in the keyspace, from 0 (inclusive) to {@code rangeCount} (exclusive).
+         *              Ranges are formed by the leading bits of the key, i.e. each range is a key prefix.
+         * @param rangeCount Total number of ranges (power of 2)
+         * @param results Consumer of discovered info hashes
+         * @param onFinished Invoked with null on normal completion, or with an error
+         * @return Action, that stops the sampling
+         */
+        Runnable sample(int range, int rangeCount, Consumer<TorrentId> results, Consumer<Throwable> onFinished);
+    }
+
+    static final int RANGE_COUNT = 256;
+
+    private static final int MAX_PENDING_INFO_HASHES = 10_000;
+    // leaves room for the results of the ranges, that are being sampled
+    private static final int PENDING_HIGH_WATER_MARK = MAX_PENDING_INFO_HASHES / 2;
+    private static final long DELIVERY_INTERVAL_MILLIS = 100;
+    // ~2% false positives for the last 1M..2M info hashes, 2 MB total
+    private static final int FILTER_TARGET_SIZE = 1 << 20;
+    private static final int FILTER_BITS = 1 << 23;
+
+    private final RangeSampler sampler;
+    private final int maxConcurrentRanges;
+    private final Path stateFile;
+    private final double infoHashesPerDelivery;
+
+    // guarded by this
+    private final BitSet completedRanges;
+    private Crawl currentCrawl;
+
+    // guarded by itself
+    private final RotatingBloomFilter filter;
+    private final BlockingQueue<TorrentId> pendingInfoHashes;
+
+    private final ScheduledExecutorService executor;
+
+    /**
+     * @param maxConcurrentRanges Maximum number of ranges, that are sampled simultaneously
+     * @param maxInfoHashesPerSecond Maximum number of info hashes, that are delivered to the consumer per second
+     * @param stateFile File to keep the crawl progress in, or null if the progress should not be saved
+     */
+    InfoHashCrawler(RangeSampler sampler, int maxConcurrentRanges, int maxInfoHashesPerSecond, Path stateFile) {
+        if (maxConcurrentRanges <= 0) {
+            throw new IllegalArgumentException("Invalid number of concurrent ranges: " + maxConcurrentRanges);
+        } else if (maxInfoHashesPerSecond <= 0) {
+            throw new IllegalArgumentException("Invalid number of info hashes per second: " + maxInfoHashesPerSecond);
+        }
+        this.sampler = sampler;
+        this.maxConcurrentRanges = maxConcurrentRanges;
+        this.stateFile = stateFile;
+        this.infoHashesPerDelivery = maxInfoHashesPerSecond * DELIVERY_INTERVAL_MILLIS / 1000d;
+
+        this.completedRanges = loadState(stateFile);
+        this.filter = new RotatingBloomFilter(FILTER_TARGET_SIZE, FILTER_BITS);
+        this.filter.setAutoRotate(true);
+        this.pendingInfoHashes = new ArrayBlockingQueue<>(MAX_PENDING_INFO_HASHES);
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "bt.dht.crawler");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * @see DHTService#crawlInfoHashes(Consumer)
+     */
+    synchronized CompletableFuture<Void> crawl(Consumer<TorrentId> consumer) {
+        if (currentCrawl != null) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(new BtException("Info hash crawl is already in progress"));
+            return future;
+        }
+
+        Crawl crawl = new Crawl(consumer);
+        currentCrawl = crawl;
+        crawl.future.whenComplete((result, e) -> {
+            if (crawl.future.isCancelled()) {
+                stop(crawl, null);
+            }
+        });
+        crawl.delivery = executor.scheduleWithFixedDelay(() -> deliver(crawl),
+                DELIVERY_INTERVAL_MILLIS, DELIVERY_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        startRanges(crawl);
+        return crawl.future;
+    }
+
+    /**
+     * @return Number of ranges, that have been sampled in the current pass over the keyspace
+     */
+    synchronized int getCompletedRangesCount() {
+        return completedRanges.cardinality();
+    }
+
+    /**
+     * @return Number of info hashes, that are waiting for delivery
+     */
+    int getPendingInfoHashesCount() {
+        return pendingInfoHashes.size();
+    }
+
+    /**
+     * Stop the current crawl and release resources.
+     */
+    void shutdown() {
+        Crawl crawl;
+        synchronized (this) {
+            crawl = currentCrawl;
+        }
+        if (crawl != null) {
+            stop(crawl, null);
+        }
+        executor.shutdownNow();
+    }
+
+    // guarded by this
+    private void startRanges(Crawl crawl) {
+        if (crawl.sampled) {
+            return;
+        }
+        // don't sample faster, than the consumer is able to process the results
+        while (crawl.runningRanges.size() < maxConcurrentRanges
+                && pendingInfoHashes.size() < PENDING_HIGH_WATER_MARK) {
+            int range = nextRange(crawl);
+            if (range >= RANGE_COUNT) {
+                break;
+            }
+            crawl.nextRange = range + 1;
+            try {
+                Runnable stopAction = sampler.sample(range, RANGE_COUNT, torrentId -> {
+                    if (!offer(torrentId)) {
+                        crawl.lossyRanges.add(range);
+                    }
+                }, error -> executor.execute(() -> onRangeFinished(crawl, range, error)));
+                crawl.runningRanges.put(range, stopAction);
+            } catch (Exception e) {
+                fail(crawl, e);
+                return;
+            }
+        }
+        if (crawl.runningRanges.isEmpty() && nextRange(crawl) >= RANGE_COUNT) {
+            // whole keyspace has been sampled; next crawl will start from the beginning
+            crawl.sampled = true;
+            completedRanges.clear();
+            saveState();
+        }
+    }
+
+    // guarded by this
+    private int nextRange(Crawl crawl) {
+        int range = completedRanges.nextClearBit(crawl.nextRange);
+        while (range < RANGE_COUNT && crawl.runningRanges.containsKey(range)) {
+            range = completedRanges.nextClearBit(range + 1);
+        }
+        return range;
+    }
+
+    private synchronized void onRangeFinished(Crawl crawl, int range, Throwable error) {
+        if (currentCrawl != crawl || crawl.runningRanges.remove(range) == null) {
+            return;
+        }
+        if (error != null) {
+            fail(crawl, error);
+            return;
+        }
+        if (crawl.lossyRanges.remove(range)) {
+            // some of the info hashes have been dropped; sample the range again, when the queue has been drained
+            crawl.nextRange = Math.min(crawl.nextRange, range);
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Dropped some of the info hashes in keyspace range {} of {}, will sample it again",
+                        range + 1, RANGE_COUNT);
+            }
+        } else {
+            completedRanges.set(range);
+            saveState();
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Finished sampling keyspace range {} of {}", range + 1, RANGE_COUNT);
+            }
+        }
+        startRanges(crawl);
+    }
+
+    private void fail(Crawl crawl, Throwable error) {
+        LOGGER.warn("Info hash crawl failed", error);
+        stop(crawl, error);
+    }
+
+    private void stop(Crawl crawl, Throwable error) {
+        List<Runnable> stopActions;
+        synchronized (this) {
+            if (currentCrawl != crawl) {
+                return;
+            }
+            currentCrawl = null;
+            crawl.delivery.cancel(false);
+            stopActions = new ArrayList<>(crawl.runningRanges.values());
+            crawl.runningRanges.clear();
+        }
+        // ranges, that are being sampled, will be sampled again by the next crawl
+        stopActions.forEach(Runnable::run);
+        pendingInfoHashes.clear();
+        if (error != null) {
+            crawl.future.completeExceptionally(error);
+        }
+    }
+
+    /**
+     * @return false, if the info hash has been dropped, because too many info hashes are waiting for delivery
+     */
+    private boolean offer(TorrentId torrentId) {
+        byte[] bytes = torrentId.getBytes();
+        synchronized (filter) {
+            if (filter.contains(ByteBuffer.wrap(bytes))) {
+                return true;
+            } else if (!pendingInfoHashes.offer(torrentId)) {
+                return false;
+            }
+            filter.insert(ByteBuffer.wrap(bytes));
+            return true;
+        }
+    }
+
+    private void deliver(Crawl crawl) {
+        // fractional part of the rate is carried over to the next delivery, unused budget is not
+        crawl.deliveryBudget += infoHashesPerDelivery;
+        int limit = (int) crawl.deliveryBudget;
+        crawl.deliveryBudget -= limit;
+
+        TorrentId torrentId;
+        for (int i = 0; i < limit && (torrentId = pendingInfoHashes.poll()) != null; i++) {
+            try {
+                crawl.consumer.accept(torrentId);
+            } catch (Exception e) {
+                LOGGER.error("Unexpected error in info hash consumer", e);
+            }
+        }
+
+        boolean finished = false;
+        synchronized (this) {
+            if (currentCrawl == crawl) {
+                // resume sampling, if it has been throttled
+                startRanges(crawl);
+            }
+            if (currentCrawl == crawl && crawl.sampled && pendingInfoHashes.isEmpty()) {
+                currentCrawl = null;
+                crawl.delivery.cancel(false);
+                finished = true;
+            }
+        }
+        if (finished) {
+            crawl.future.complete(null);
+        }
+    }
+
+    private static BitSet loadState(Path stateFile) {
+        if (stateFile != null && Files.exists(stateFile)) {
+            try {
+                return BitSet.valueOf(Files.readAllBytes(stateFile)).get(0, RANGE_COUNT);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to read info hash crawl state from file: " + stateFile, e);
+            }
+        }
+        return new BitSet(RANGE_COUNT);
+    }
+
+    // guarded by this
+    private void saveState() {
+        if (stateFile == null) {
+            return;
+        }
+        try {
+            Files.write(stateFile, completedRanges.toByteArray());
+        } catch (IOException e) {
+            LOGGER.warn("Failed to save info hash crawl state to file: " + stateFile, e);
+        }
+    }
+
+    private static class Crawl {
+
+        private final Consumer<TorrentId> consumer;
+        private final CompletableFuture<Void> future;
+
+        // all guarded by InfoHashCrawler.this
+        private final Map<Integer, Runnable> runningRanges;
+        private int nextRange;
+        private boolean sampled;
+        private ScheduledFuture<?> delivery;
+
+        // ranges, in which some of the info hashes have been dropped
+        private final Set<Integer> lossyRanges;
+        // accessed only from the delivery thread
+        private double deliveryBudget;
+
+        Crawl(Consumer<TorrentId> consumer) {
+            this.consumer = consumer;
+            this.future = new CompletableFuture<>();
+            this.runningRanges = new HashMap<>();
+            this.lossyRanges = ConcurrentHashMap.newKeySet();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.dht;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Joins lookups, that are executed in parallel in different address families.
+ * The whole operation is finished, when the last of the lookups is finished.
+ * Thread-safe.
+ *
+ * @param <C> Nodes, that have returned write tokens during a single lookup
+ */
+class LookupGroup<C> {
+
+    private final List<C> candidates;
+    private final AtomicInteger remaining;
+    private final Consumer<List<C>> onFinished;
+
+    /**
+     * @param size Number of lookups in the group
+     * @param onFinished Receives the merged candidates of all lookups, is called exactly once
+     */
+    LookupGroup(int size, Consumer<List<C>> onFinished) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Invalid number of lookups: " + size);
+        }
+        this.candidates = new ArrayList<>(size);
+        this.remaining = new AtomicInteger(size);
+        this.onFinished = onFinished;
+    }
+
+    /**
+     * Should be called once per each lookup in the group. Subsequent calls are ignored.
+     *
+     * @param candidates Nodes, that have returned write tokens, or null, if there are none
+     */
+    void finished(C candidates) {
+        List<C> merged;
+        synchronized (this.candidates) {
+            if (remaining.get() == 0) {
+                return;
+            }
+            if (candidates != null) {
+                this.candidates.add(candidates);
+            }
+            if (remaining.decrementAndGet() > 0) {
+                return;
+            }
+            merged = new ArrayList<>(this.candidates);
+        }
+        onFinished.accept(merged);
+    }
+}
@@ -23,28 +23,52 @@ import bt.metainfo.TorrentId;
 import bt.net.InetPeer;
 import bt.net.InetPeerAddress;
 import bt.net.Peer;
+import bt.net.PeerAddress;
+import bt.peer.PeerOptions;
 import bt.runtime.Config;
 import bt.service.IRuntimeLifecycleBinder;
 import bt.service.LifecycleBinding;
-import com.google.common.io.Files;
 import com.google.inject.Inject;
 import lbms.plugins.mldht.DHTConfiguration;
 import lbms.plugins.mldht.kad.DHT;
 import lbms.plugins.mldht.kad.DHT.DHTtype;
 import lbms.plugins.mldht.kad.DHT.LogLevel;
 import lbms.plugins.mldht.kad.DHTLogger;
+import lbms.plugins.mldht.kad.KBucketEntry;
+import lbms.plugins.mldht.kad.Key;
+import lbms.plugins.mldht.kad.PeerAddressDBItem;
+import lbms.plugins.mldht.kad.Prefix;
+import lbms.plugins.mldht.kad.RPCServer;
+import lbms.plugins.mldht.kad.tasks.AnnounceTask;
+import lbms.plugins.mldht.kad.tasks.KeyspaceSampler;
+import lbms.plugins.mldht.kad.tasks.NodeLookup;
 import lbms.plugins.mldht.kad.tasks.PeerLookupTask;
+import lbms.plugins.mldht.kad.tasks.Task;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.net.InetAddress;
 import java.net.SocketException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
 
@@ -52,6 +76,8 @@ public class MldhtService implements DHTService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MldhtService.class);
     private static final DHTLogger DHT_LOGGER = createLogger();
+    // write tokens are valid for at least 5 minutes in most implementations
+    private static final Duration WRITE_TOKEN_TTL = Duration.ofMinutes(4);
 
     static {
         try {
@@ -78,38 +104,79 @@ public class MldhtService implements DHTService {
     }
 
     private DHTConfiguration config;
-    private DHT dht;
+    private List<DHT> dhts;
 
     private InetAddress localAddress;
     private boolean useRouterBootstrap;
     private Collection<InetPeerAddress> publicBootstrapNodes;
     private Collection<InetPeerAddress> bootstrapNodes;
 
+    private volatile long startedAt;
+    private volatile Duration timeToFirstPeer;
+    private final AtomicBoolean firstPeerFound;
+
+    private final PeerLookupDispatcher lookupDispatcher;
+    private final InfoHashCrawler crawler;
+
+    /**
+     * Announces to the nodes, that have returned write tokens during recent lookups
+     * (one entry per each DHT, that took part in the lookup).
+     */
+    private final WriteTokenAnnouncer<AnnounceCandidates> announcer;
+    private final int acceptorPort;
+
     @Inject
     public MldhtService(IRuntimeLifecycleBinder lifecycleBinder, Config config, DHTConfig dhtConfig) {
-        this.dht = new DHT(dhtConfig.shouldUseIPv6()? DHTtype.IPV6_DHT : DHTtype.IPV4_DHT);
+        this.dhts = createDHTs(dhtConfig);
         this.config = toMldhtConfig(dhtConfig);
         this.localAddress = config.getAcceptorAddress();
         this.useRouterBootstrap = dhtConfig.shouldUseRouterBootstrap();
         this.publicBootstrapNodes = dhtConfig.getPublicBootstrapNodes();
         this.bootstrapNodes = dhtConfig.getBootstrapNodes();
+        this.firstPeerFound = new AtomicBoolean(false);
+        this.lookupDispatcher = new PeerLookupDispatcher(this::startLookup, dhtConfig.getMaxConcurrentLookups(),
+                new PeerLookupCache(dhtConfig.getMaxCachedLookups(), dhtConfig.getLookupCacheTtl()));
+        this.crawler = new InfoHashCrawler(this::sampleRange, dhtConfig.getCrawlConcurrency(),
+                dhtConfig.getMaxCrawledInfoHashesPerSecond(),
+                (dhtConfig.getStorageDirectory() == null) ? null : this.config.getStoragePath().resolve("crawl.state"));
+        // lookup for the same torrent may already be in progress, in which case it will be reused;
+        // cached results can't be used, because they don't provide fresh write tokens
+        this.announcer = new WriteTokenAnnouncer<>(torrentId -> lookupDispatcher.lookupPeers(torrentId, peers -> {}, false),
+                this::announce, WRITE_TOKEN_TTL, System::currentTimeMillis);
+        this.acceptorPort = config.getAcceptorPort();
 
         lifecycleBinder.onStartup(LifecycleBinding.bind(this::start).description("Initialize DHT facilities").async().build());
         lifecycleBinder.onShutdown("Shutdown DHT facilities", this::shutdown);
     }
 
+    private static List<DHT> createDHTs(DHTConfig config) {
+        List<DHT> dhts = new ArrayList<>();
+        if (config.shouldUseDualStack()) {
+            dhts.add(new DHT(DHTtype.IPV4_DHT));
+            dhts.add(new DHT(DHTtype.IPV6_DHT));
+        } else {
+            dhts.add(new DHT(config.shouldUseIPv6()? DHTtype.IPV6_DHT : DHTtype.IPV4_DHT));
+        }
+        // siblings share bootstrap info and exchange nodes of the other address family
+        dhts.forEach(dht -> dht.addSiblings(dhts));
+        return Collections.unmodifiableList(dhts);
+    }
+
     private DHTConfiguration toMldhtConfig(DHTConfig config) {
+        boolean persistent = (config.getStorageDirectory() != null);
+        Path storagePath = createStorageDirectory(config.getStorageDirectory());
+
         return new DHTConfiguration() {
             private final ConcurrentMap<InetAddress, Boolean> couldUseCacheMap = new ConcurrentHashMap<>();
 
             @Override
             public boolean isPersistingID() {
-                return false;
+                return persistent;
             }
 
             @Override
             public Path getStoragePath() {
-                return Files.createTempDir().toPath();
+                return storagePath;
             }
 
             @Override
@@ -124,7 +191,7 @@ public class MldhtService implements DHTService {
 
             @Override
             public boolean allowMultiHoming() {
-                return false;
+                return config.shouldUseMultiHoming();
             }
 
             @Override
@@ -146,22 +213,72 @@ public class MldhtService implements DHTService {
         };
     }
 
+    private static Path createStorageDirectory(Path storageDirectory) {
+        try {
+            if (storageDirectory == null) {
+                return Files.createTempDirectory("bt-dht");
+            }
+            return Files.createDirectories(storageDirectory);
+        } catch (IOException e) {
+            throw new BtException("Failed to create DHT storage directory: " + storageDirectory, e);
+        }
+    }
+
     private void start() {
-        if (!dht.isRunning()) {
-            try {
-                dht.start(config);
-                if (useRouterBootstrap) {
-                    publicBootstrapNodes.forEach(this::addNode);
+        startedAt = System.nanoTime();
+        for (DHT dht : dhts) {
+            if (dhts.size() > 1 && !localAddress.isAnyLocalAddress()
+                    && !dht.getType().PREFERRED_ADDRESS_TYPE.isInstance(localAddress)) {
+                LOGGER.warn("Dual stack DHT is enabled, but {} DHT will not be able to bind to acceptor address {}" +
+                        " of a different address family", dht.getType(), localAddress);
+            }
+            if (!dht.isRunning()) {
+                try {
+                    dht.start(config);
+                    if (LOGGER.isDebugEnabled()) {
+                        LOGGER.debug("Started {} DHT with node ID {} and {} entries in routing table (storage path: {})",
+                                dht.getType(), dht.getNode().getRootID(), dht.getNode().getNumEntriesInRoutingTable(),
+                                config.getStoragePath());
+                    }
+                } catch (SocketException e) {
+                    throw new BtException("Failed to start " + dht.getType() + " DHT", e);
                 }
-                bootstrapNodes.forEach(this::addNode);
-            } catch (SocketException e) {
-                throw new BtException("Failed to start DHT", e);
             }
         }
+        if (useRouterBootstrap) {
+            publicBootstrapNodes.forEach(this::addNode);
+        }
+        bootstrapNodes.forEach(this::addNode);
     }
 
     private void shutdown() {
-        dht.stop();
+        lookupDispatcher.shutdown();
+        crawler.shutdown();
+        dhts.forEach(DHT::stop);
+        if (!config.isPersistingID()) {
+            deleteStorageDirectory(config.getStoragePath());
+        }
+    }
+
+    /**
+     * Delete the temporary directory, that has been created, because no storage directory was configured.
+     */
+    private static void deleteStorageDirectory(Path storagePath) {
+        try (Stream<Path> paths = Files.walk(storagePath)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to delete file: " + path, e);
+                }
+            });
+        } catch (IOException e) {
+            LOGGER.warn("Failed to delete DHT storage directory: " + storagePath, e);
+        }
+    }
+
+    List<DHT> getDHTs() {
+        return dhts;
     }
 
     @Override
@@ -171,25 +288,230 @@ public class MldhtService implements DHTService {
 
     @Override
     public Stream<Peer> getPeers(TorrentId torrentId) {
-        try {
-            dht.getServerManager().awaitActiveServer().get();
-            final PeerLookupTask lookup = dht.createPeerLookup(torrentId.getBytes());
-            final StreamAdapter<Peer> streamAdapter = new StreamAdapter<>();
-            lookup.setResultHandler((k, p) -> {
-                Peer peer = new InetPeer(p.getInetAddress(), p.getPort());
-                streamAdapter.addItem(peer);
-            });
-            lookup.addListener(t -> streamAdapter.finishStream());
-            dht.getTaskManager().addTask(lookup);
-            return streamAdapter.stream();
-        } catch (Throwable e) {
-            LOGGER.error(String.format("Unexpected error in peer lookup: %s. See DHT log file for diagnostic information.",
-                    e.getMessage()), e);
-            BtException btex = new BtException(String.format("Unexpected error in peer lookup: %s. Diagnostics:\n%s",
-                    e.getMessage(), getDiagnostics()), e);
-            DHT_LOGGER.log(btex, LogLevel.Error);
-            throw btex;
+        StreamAdapter<Peer> streamAdapter = new StreamAdapter<>();
+        lookupPeers(torrentId, peers -> peers.forEach(streamAdapter::addItem))
+                .whenComplete((result, e) -> streamAdapter.finishStream());
+        return streamAdapter.stream();
+    }
+
+    @Override
+    public CompletableFuture<Void> lookupPeers(TorrentId torrentId, Consumer<Collection<Peer>> consumer) {
+        return lookupDispatcher.lookupPeers(torrentId, consumer);
+    }
+
+    private Runnable startLookup(TorrentId torrentId, Consumer<Collection<Peer>> results, Consumer<Throwable> onFinished) {
+        List<PeerLookupTask> tasks = new ArrayList<>();
+        AtomicBoolean stopped = new AtomicBoolean(false);
+
+        awaitActiveDHTs().whenComplete((active, error) -> {
+            if (error != null) {
+                onFinished.accept(error);
+                return;
+            } else if (stopped.get()) {
+                onFinished.accept(null);
+                return;
+            }
+
+            try {
+                List<PeerLookupTask> lookups = new ArrayList<>(active.size());
+                for (DHT dht : active) {
+                    PeerLookupTask lookup = dht.createPeerLookup(torrentId.getBytes());
+                    if (lookup != null) {
+                        lookups.add(lookup);
+                    }
+                }
+                if (lookups.isEmpty()) {
+                    throw new IllegalStateException("DHT is not running");
+                }
+
+                LookupGroup<AnnounceCandidates> group = new LookupGroup<>(lookups.size(), candidates -> {
+                    announcer.saveCandidates(torrentId, candidates);
+                    onFinished.accept(null);
+                });
+                for (PeerLookupTask lookup : lookups) {
+                    DHT dht = lookup.getRPC().getDHT();
+                    lookup.setBatchResultHandler(items -> {
+                        onPeerFound();
+                        results.accept(toPeers(items));
+                    });
+                    lookup.addListener(t -> group.finished(lookup.getAnnounceCanidates().isEmpty() ? null
+                            : new AnnounceCandidates(dht, lookup.getRPC(), lookup.getInfoHash(),
+                                    new HashMap<>(lookup.getAnnounceCanidates()))));
+                }
+                synchronized (tasks) {
+                    tasks.addAll(lookups);
+                }
+                lookups.forEach(lookup -> lookup.getRPC().getDHT().getTaskManager().addTask(lookup));
+                if (stopped.get()) {
+                    lookups.forEach(PeerLookupTask::kill);
+                }
+            } catch (Throwable e) {
+                LOGGER.error(String.format("Unexpected error in peer lookup: %s. See DHT log file for diagnostic information.",
+                        e.getMessage()), e);
+                BtException btex = new BtException(String.format("Unexpected error in peer lookup: %s. Diagnostics:\n%s",
+                        e.getMessage(), getDiagnostics()), e);
+                DHT_LOGGER.log(btex, LogLevel.Error);
+                onFinished.accept(btex);
+            }
+        });
+
+        return () -> {
+            stopped.set(true);
+            synchronized (tasks) {
+                tasks.forEach(PeerLookupTask::kill);
+            }
+        };
+    }
+
+    @Override
+    public CompletableFuture<Void> crawlInfoHashes(Consumer<TorrentId> consumer) {
+        return crawler.crawl(consumer);
+    }
+
+    private Runnable sampleRange(int range, int rangeCount, Consumer<TorrentId> results, Consumer<Throwable> onFinished) {
+        List<Task> tasks = new ArrayList<>();
+        AtomicBoolean stopped = new AtomicBoolean(false);
+
+        Prefix prefix = new Prefix();
+        for (int bit = Integer.numberOfTrailingZeros(rangeCount) - 1; bit >= 0; bit--) {
+            prefix = prefix.splitPrefixBranch(((range >>> bit) & 1) != 0);
+        }
+        Prefix rangePrefix = prefix;
+
+        awaitActiveDHTs().whenComplete((active, error) -> {
+            if (error != null) {
+                onFinished.accept(error);
+                return;
+            } else if (stopped.get()) {
+                onFinished.accept(null);
+                return;
+            }
+
+            // range is sampled in all address families in parallel
+            AtomicInteger remaining = new AtomicInteger(active.size());
+            Runnable finishOne = () -> {
+                if (remaining.decrementAndGet() == 0) {
+                    onFinished.accept(null);
+                }
+            };
+            for (DHT dht : active) {
+                RPCServer server = dht.getServerManager().getRandomActiveServer(false);
+                if (server == null) {
+                    finishOne.run();
+                    continue;
+                }
+                // sampler is seeded with the nodes, that are closest to the beginning of the range
+                NodeLookup seed = new NodeLookup(rangePrefix.first(), server, dht.getNode(), false);
+                seed.setInfo("Seed lookup for info hash crawl");
+                seed.addListener(t -> {
+                    if (stopped.get()) {
+                        finishOne.run();
+                        return;
+                    }
+                    KeyspaceSampler sampler = new KeyspaceSampler(server, dht.getNode(), rangePrefix, seed,
+                            (call, infoHash) -> results.accept(TorrentId.fromBytes(infoHash.getHash())));
+                    sampler.setInfo("Info hash crawl");
+                    sampler.addListener(t2 -> finishOne.run());
+                    synchronized (tasks) {
+                        tasks.add(sampler);
+                    }
+                    dht.getTaskManager().addTask(sampler);
+                    if (stopped.get()) {
+                        sampler.kill();
+                    }
+                });
+                synchronized (tasks) {
+                    tasks.add(seed);
+                }
+                dht.getTaskManager().addTask(seed);
+            }
+        });
+
+        return () -> {
+            stopped.set(true);
+            synchronized (tasks) {
+                tasks.forEach(Task::kill);
+            }
+        };
+    }
+
+    /**
+     * @return DHTs, that currently have at least one active server;
+     *         if there are no such DHTs, then the future is completed, as soon as any of the DHTs gets an active server
+     */
+    private CompletableFuture<List<DHT>> awaitActiveDHTs() {
+        List<DHT> active = getActiveDHTs();
+        if (!active.isEmpty()) {
+            return CompletableFuture.completedFuture(active);
         }
+        CompletableFuture<?>[] servers = dhts.stream()
+                .map(dht -> dht.getServerManager().awaitActiveServer())
+                .toArray(CompletableFuture<?>[]::new);
+        return CompletableFuture.anyOf(servers).thenApply(server -> getActiveDHTs());
+    }
+
+    private List<DHT> getActiveDHTs() {
+        List<DHT> active = new ArrayList<>(dhts.size());
+        for (DHT dht : dhts) {
+            if (dht.isRunning() && dht.getServerManager().getActiveServerCount() > 0) {
+                active.add(dht);
+            }
+        }
+        return active;
+    }
+
+    @Override
+    public CompletableFuture<Void> announce(TorrentId torrentId, boolean seed) {
+        return announcer.announce(torrentId, seed);
+    }
+
+    private CompletableFuture<Void> announce(AnnounceCandidates candidates, boolean seed) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        // tokens are bound to the address, from which the lookup has been made, so use the same server
+        AnnounceTask task = new AnnounceTask(candidates.server, candidates.dht.getNode(), candidates.infoHash,
+                acceptorPort, candidates.nodes);
+        task.setSeed(seed);
+        task.addListener(t -> future.complete(null));
+        candidates.dht.getTaskManager().addTask(task);
+        return future;
+    }
+
+    private static class AnnounceCandidates {
+
+        private final DHT dht;
+        private final RPCServer server;
+        private final Key infoHash;
+        private final Map<KBucketEntry, byte[]> nodes;
+
+        AnnounceCandidates(DHT dht, RPCServer server, Key infoHash, Map<KBucketEntry, byte[]> nodes) {
+            this.dht = dht;
+            this.server = server;
+            this.infoHash = infoHash;
+            this.nodes = nodes;
+        }
+    }
+
+    private static Collection<Peer> toPeers(List<PeerAddressDBItem> items) {
+        List<Peer> peers = new ArrayList<>(items.size());
+        for (PeerAddressDBItem item : items) {
+            // compact address is followed by 2 bytes of port
+            byte[] data = item.getData();
+            PeerAddress address = PeerAddress.of(data, 0, data.length - 2, item.getPort());
+            peers.add(new InetPeer(address, PeerOptions.defaultOptions()));
+        }
+        return peers;
+    }
+
+    void onPeerFound() {
+        if (!firstPeerFound.get() && firstPeerFound.compareAndSet(false, true)) {
+            timeToFirstPeer = Duration.ofNanos(System.nanoTime() - startedAt);
+            LOGGER.info("Found first peer in DHT in {} ms after startup", timeToFirstPeer.toMillis());
+        }
+    }
+
+    @Override
+    public Optional<Duration> getTimeToFirstPeer() {
+        return Optional.ofNullable(timeToFirstPeer);
     }
 
     @Override
@@ -202,14 +524,17 @@ public class MldhtService implements DHTService {
     }
 
     private void addNode(String hostname, int port) {
-        dht.addDHTNode(hostname, port);
+        // each DHT ignores addresses of other families
+        dhts.forEach(dht -> dht.addDHTNode(hostname, port));
     }
 
     // TODO: add node by hostname/ipaddr and port ?
 
     private String getDiagnostics() {
         StringWriter sw = new StringWriter();
-        dht.printDiagnostics(new PrintWriter(sw));
+        PrintWriter writer = new PrintWriter(sw);
+        dhts.forEach(dht -> dht.printDiagnostics(writer));
+        writer.flush();
         return sw.toString();
     }
 }
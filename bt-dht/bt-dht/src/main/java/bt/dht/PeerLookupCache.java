@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.dht;
+
+import bt.metainfo.TorrentId;
+import bt.net.Peer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded cache of recent peer lookup results.
+ * Least recently used entries are evicted, when the cache is full.
+ * Thread-safe.
+ */
+class PeerLookupCache {
+
+    private final long ttlMillis;
+    private final LongSupplier clock;
+
+    // guarded by itself
+    private final Map<TorrentId, CachedLookup> entries;
+
+    /**
+     * @param maxEntries Maximum number of cached lookups; 0 disables the cache
+     * @param ttl Time, during which the results of a finished lookup are considered fresh
+     */
+    PeerLookupCache(int maxEntries, Duration ttl) {
+        this(maxEntries, ttl, System::currentTimeMillis);
+    }
+
+    PeerLookupCache(int maxEntries, Duration ttl, LongSupplier clock) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("Invalid number of cached lookups: " + maxEntries);
+        }
+        this.ttlMillis = (maxEntries == 0) ? 0 : ttl.toMillis();
+        this.clock = clock;
+        this.entries = new LinkedHashMap<TorrentId, CachedLookup>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<TorrentId, CachedLookup> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return Peers, that have been found by a recent lookup for this torrent, or null if there are no fresh results
+     */
+    Collection<Peer> get(TorrentId torrentId) {
+        if (ttlMillis <= 0) {
+            return null;
+        }
+        long now = clock.getAsLong();
+        synchronized (entries) {
+            CachedLookup lookup = entries.get(torrentId);
+            if (lookup == null) {
+                return null;
+            } else if (now - lookup.finishedAt >= ttlMillis) {
+                entries.remove(torrentId);
+                return null;
+            }
+            return lookup.peers;
+        }
+    }
+
+    /**
+     * Save the results of a completed lookup.
+     */
+    void put(TorrentId torrentId, Collection<Peer> peers) {
+        if (ttlMillis <= 0) {
+            return;
+        }
+        CachedLookup lookup = new CachedLookup(Collections.unmodifiableList(new ArrayList<>(peers)), clock.getAsLong());
+        synchronized (entries) {
+            entries.put(torrentId, lookup);
+        }
+    }
+
+    private static class CachedLookup {
+
+        private final List<Peer> peers;
+        private final long finishedAt;
+
+        CachedLookup(List<Peer> peers, long finishedAt) {
+            this.peers = peers;
+            this.finishedAt = finishedAt;
+        }
+    }
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.dht;
+
+import bt.metainfo.TorrentId;
+import bt.net.Peer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Coordinates asynchronous peer lookups.
+ *
+ * <ul>
+ *     <li>At most a fixed number of lookups is running at any given time, the rest are queued.</li>
+ *     <li>Concurrent lookups for the same torrent are coalesced into a single lookup,
+ *     late subscribers first receive the peers that have already been found.</li>
+ *     <li>Each peer is delivered at most once per lookup.</li>
+ *     <li>Results of completed lookups are cached for a short time,
+ *     and repeated lookups for the same torrent are served from the cache.</li>
+ * </ul>
+ *
+ * Peers are delivered on the thread, that has received them (or the subscribing thread for already found peers),
+ * so consumers must not block.
+ */
+class PeerLookupDispatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PeerLookupDispatcher.class);
+
+    /**
+     * Starts the actual lookup.
+     */
+    interface LookupStarter {
+
+        /**
+         * @param results Consumer of found peers
+         * @param onFinished Invoked with null on normal completion, or with an error
+         * @return Action, that stops the lookup
+         */
+        Runnable start(TorrentId torrentId, Consumer<Collection<Peer>> results, Consumer<Throwable> onFinished);
+    }
+
+    private final LookupStarter lookupStarter;
+    private final int maxConcurrentLookups;
+    private final PeerLookupCache cache;
+
+    private final ConcurrentMap<TorrentId, Lookup> lookups;
+    private final Queue<Lookup> pendingLookups;
+    private final AtomicInteger activeLookups;
+    private final AtomicInteger drainRequests;
+
+    PeerLookupDispatcher(LookupStarter lookupStarter, int maxConcurrentLookups) {
+        this(lookupStarter, maxConcurrentLookups, new PeerLookupCache(0, Duration.ZERO));
+    }
+
+    PeerLookupDispatcher(LookupStarter lookupStarter, int maxConcurrentLookups, PeerLookupCache cache) {
+        if (maxConcurrentLookups <= 0) {
+            throw new IllegalArgumentException("Invalid number of concurrent lookups: " + maxConcurrentLookups);
+        }
+        this.lookupStarter = lookupStarter;
+        this.maxConcurrentLookups = maxConcurrentLookups;
+        this.cache = cache;
+        this.lookups = new ConcurrentHashMap<>();
+        this.pendingLookups = new ConcurrentLinkedQueue<>();
+        this.activeLookups = new AtomicInteger();
+        this.drainRequests = new AtomicInteger();
+    }
+
+    /**
+     * @see DHTService#lookupPeers(TorrentId, Consumer)
+     */
+    CompletableFuture<Void> lookupPeers(TorrentId torrentId, Consumer<Collection<Peer>> consumer) {
+        return lookupPeers(torrentId, consumer, true);
+    }
+
+    /**
+     * @param allowCached Indicates whether the results of a recently completed lookup may be used
+     *                    instead of executing a new lookup
+     */
+    CompletableFuture<Void> lookupPeers(TorrentId torrentId, Consumer<Collection<Peer>> consumer, boolean allowCached) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        Subscription subscription = new Subscription(consumer, future);
+
+        if (allowCached) {
+            Collection<Peer> cached = cache.get(torrentId);
+            if (cached != null) {
+                if (!cached.isEmpty()) {
+                    subscription.deliver(cached);
+                }
+                subscription.complete(null);
+                return future;
+            }
+        }
+
+        Lookup lookup;
+        do {
+            lookup = lookups.get(torrentId);
+            if (lookup == null) {
+                Lookup created = new Lookup(torrentId);
+                lookup = lookups.putIfAbsent(torrentId, created);
+                if (lookup == null) {
+                    lookup = created;
+                    lookup.subscribe(subscription);
+                    pendingLookups.add(lookup);
+                    startPendingLookups();
+                    break;
+                }
+            }
+        } while (!lookup.subscribe(subscription));
+
+        Lookup subscribed = lookup;
+        future.whenComplete((result, e) -> {
+            if (future.isCancelled()) {
+                subscribed.unsubscribe(subscription);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Stop all lookups and complete all subscriptions.
+     */
+    void shutdown() {
+        pendingLookups.clear();
+        lookups.values().forEach(Lookup::stop);
+    }
+
+    int getActiveLookupsCount() {
+        return activeLookups.get();
+    }
+
+    private void startPendingLookups() {
+        // only one thread at a time is starting lookups, others just indicate that there's more work;
+        // this also prevents unbounded recursion, when lookups finish right upon start
+        if (drainRequests.getAndIncrement() != 0) {
+            return;
+        }
+        int requests = 1;
+        do {
+            Lookup lookup;
+            while (activeLookups.get() < maxConcurrentLookups && (lookup = pendingLookups.poll()) != null) {
+                activeLookups.incrementAndGet();
+                if (!lookup.start()) {
+                    activeLookups.decrementAndGet();
+                }
+            }
+            requests = drainRequests.addAndGet(-requests);
+        } while (requests != 0);
+    }
+
+    private void onLookupFinished() {
+        activeLookups.decrementAndGet();
+        startPendingLookups();
+    }
+
+    private class Lookup {
+
+        private final TorrentId torrentId;
+
+        // all guarded by this
+        private final Set<Peer> foundPeers;
+        private final List<Subscription> subscriptions;
+        private boolean started;
+        private boolean finished;
+        private boolean stopRequested;
+        private Runnable stopAction;
+
+        Lookup(TorrentId torrentId) {
+            this.torrentId = torrentId;
+            this.foundPeers = new HashSet<>();
+            this.subscriptions = new ArrayList<>();
+        }
+
+        synchronized boolean subscribe(Subscription subscription) {
+            if (finished) {
+                return false;
+            }
+            subscriptions.add(subscription);
+            if (!foundPeers.isEmpty()) {
+                subscription.deliver(Collections.unmodifiableList(new ArrayList<>(foundPeers)));
+            }
+            return true;
+        }
+
+        void unsubscribe(Subscription subscription) {
+            synchronized (this) {
+                if (finished || !subscriptions.remove(subscription) || !subscriptions.isEmpty()) {
+                    return;
+                }
+            }
+            // no one is interested in the results anymore
+            stop();
+        }
+
+        /**
+         * @return false, if this lookup has been finished before it could start
+         */
+        boolean start() {
+            synchronized (this) {
+                if (finished) {
+                    return false;
+                }
+                started = true;
+            }
+            try {
+                Runnable stopAction = lookupStarter.start(torrentId, this::onPeersFound, this::finish);
+                boolean stop;
+                synchronized (this) {
+                    this.stopAction = stopAction;
+                    stop = stopRequested;
+                }
+                if (stop) {
+                    stopAction.run();
+                }
+            } catch (Exception e) {
+                finish(e);
+            }
+            return true;
+        }
+
+        void stop() {
+            Runnable stopAction;
+            boolean notStarted;
+            synchronized (this) {
+                stopRequested = true;
+                stopAction = this.stopAction;
+                notStarted = !started;
+            }
+            if (stopAction != null) {
+                // lookup will be finished via callback
+                stopAction.run();
+            }
+            if (notStarted) {
+                finish(null);
+            }
+        }
+
+        private void onPeersFound(Collection<Peer> peers) {
+            List<Peer> newPeers = new ArrayList<>(peers.size());
+            synchronized (this) {
+                if (finished) {
+                    return;
+                }
+                for (Peer peer : peers) {
+                    if (foundPeers.add(peer)) {
+                        newPeers.add(peer);
+                    }
+                }
+                if (!newPeers.isEmpty()) {
+                    Collection<Peer> batch = Collections.unmodifiableList(newPeers);
+                    subscriptions.forEach(subscription -> subscription.deliver(batch));
+                }
+            }
+        }
+
+        private void finish(Throwable error) {
+            List<Subscription> subscriptions;
+            boolean started;
+            synchronized (this) {
+                if (finished) {
+                    return;
+                }
+                finished = true;
+                started = this.started;
+                subscriptions = new ArrayList<>(this.subscriptions);
+                this.subscriptions.clear();
+                // results of stopped or failed lookups are incomplete;
+                // empty results are likely to be caused by a poorly connected routing table
+                if (error == null && started && !stopRequested && !foundPeers.isEmpty()) {
+                    cache.put(torrentId, foundPeers);
+                }
+            }
+            lookups.remove(torrentId, this);
+
+            if (error != null && LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Peer lookup failed for torrent ID: " + torrentId, error);
+            }
+            subscriptions.forEach(subscription -> subscription.complete(error));
+
+            if (started) {
+                onLookupFinished();
+            }
+        }
+    }
+
+    private static class Subscription {
+
+        private final Consumer<Collection<Peer>> consumer;
+        private final CompletableFuture<Void> future;
+
+        Subscription(Consumer<Collection<Peer>> consumer, CompletableFuture<Void> future) {
+            this.consumer = consumer;
+            this.future = future;
+        }
+
+        void deliver(Collection<Peer> peers) {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                consumer.accept(peers);
+            } catch (Exception e) {
+                LOGGER.error("Unexpected error in peer consumer", e);
+            }
+        }
+
+        void complete(Throwable error) {
+            if (error == null) {
+                future.complete(null);
+            } else {
+                future.completeExceptionally(error);
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.dht;
+
+import bt.BtException;
+import bt.metainfo.TorrentId;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Announces torrents to the nodes, that have returned write tokens during recent lookups.
+ * If there are no such nodes, or their tokens may have already expired, then a fresh lookup is executed first.
+ * Thread-safe.
+ *
+ * @param <C> Nodes, that have returned write tokens (usually, one entry per each DHT, that took part in the lookup)
+ */
+class WriteTokenAnnouncer<C> {
+
+    interface Lookup {
+
+        /**
+         * Execute a lookup, that provides fresh write tokens via {@link #saveCandidates(TorrentId, List)}
+         * before the returned future is completed.
+         */
+        CompletableFuture<Void> lookup(TorrentId torrentId);
+    }
+
+    interface Announce<C> {
+
+        CompletableFuture<Void> announce(C candidates, boolean seed);
+    }
+
+    private final Lookup lookup;
+    private final Announce<C> announce;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+
+    private final ConcurrentMap<TorrentId, Candidates<C>> candidates;
+
+    /**
+     * @param ttl Time, during which write tokens are considered valid
+     */
+    WriteTokenAnnouncer(Lookup lookup, Announce<C> announce, Duration ttl, LongSupplier clock) {
+        this.lookup = lookup;
+        this.announce = announce;
+        this.ttlMillis = ttl.toMillis();
+        this.clock = clock;
+        this.candidates = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Remember nodes, that have returned write tokens during a lookup.
+     */
+    void saveCandidates(TorrentId torrentId, List<C> candidates) {
+        purgeExpired();
+        if (!candidates.isEmpty()) {
+            this.candidates.put(torrentId, new Candidates<>(candidates, clock.getAsLong()));
+        }
+    }
+
+    /**
+     * Each write token is used only once.
+     *
+     * @return Future, that is completed, when the torrent has been announced to all candidates
+     */
+    CompletableFuture<Void> announce(TorrentId torrentId, boolean seed) {
+        List<C> saved = takeCandidates(torrentId);
+        if (saved != null) {
+            return announce(saved, seed);
+        }
+        return lookup.lookup(torrentId).thenCompose(result -> {
+            List<C> found = takeCandidates(torrentId);
+            if (found == null) {
+                CompletableFuture<Void> future = new CompletableFuture<>();
+                future.completeExceptionally(new BtException("No nodes to announce to for torrent: " + torrentId));
+                return future;
+            }
+            return announce(found, seed);
+        });
+    }
+
+    private CompletableFuture<Void> announce(List<C> candidates, boolean seed) {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[candidates.size()];
+        for (int i = 0; i < candidates.size(); i++) {
+            futures[i] = announce.announce(candidates.get(i), seed);
+        }
+        return CompletableFuture.allOf(futures);
+    }
+
+    private List<C> takeCandidates(TorrentId torrentId) {
+        purgeExpired();
+        Candidates<C> saved = candidates.remove(torrentId);
+        return (saved == null) ? null : saved.candidates;
+    }
+
+    private void purgeExpired() {
+        long now = clock.getAsLong();
+        candidates.values().removeIf(saved -> now - saved.createdAt >= ttlMillis);
+    }
+
+    private static class Candidates<C> {
+
+        private final List<C> candidates;
+        private final long createdAt;
+
+        Candidates(List<C> candidates, long createdAt) {
+            this.candidates = candidates;
+            this.createdAt = createdAt;
+        }
+    }
+}
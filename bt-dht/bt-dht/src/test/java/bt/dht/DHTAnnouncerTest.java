@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.dht;
+
+import bt.event.EventBus;
+import bt.metainfo.Torrent;
+import bt.metainfo.TorrentId;
+import bt.net.Peer;
+import bt.service.RuntimeLifecycleBinder;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DHTAnnouncerTest {
+
+    private static final Duration ANNOUNCE_INTERVAL = Duration.ofMinutes(10);
+    // initial announces are spread over the first minute
+    private static final long INITIAL_SPREAD_MILLIS = Duration.ofMinutes(1).toMillis();
+
+    /**
+     * Does not run anything by itself; announces are triggered by the test.
+     */
+    private static class ManualExecutor extends ScheduledThreadPoolExecutor {
+        Runnable tick;
+        long delayMillis;
+
+        ManualExecutor() {
+            super(1);
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+            this.tick = command;
+            this.delayMillis = unit.toMillis(delay);
+            return null;
+        }
+    }
+
+    private static class Announce {
+        final TorrentId torrentId;
+        final boolean seed;
+        final CompletableFuture<Void> future;
+
+        Announce(TorrentId torrentId, boolean seed) {
+            this.torrentId = torrentId;
+            this.seed = seed;
+            this.future = new CompletableFuture<>();
+        }
+    }
+
+    private static class FakeDHTService implements DHTService {
+        final List<Announce> announces = new ArrayList<>();
+
+        @Override
+        public CompletableFuture<Void> announce(TorrentId torrentId, boolean seed) {
+            Announce announce = new Announce(torrentId, seed);
+            announces.add(announce);
+            return announce.future;
+        }
+
+        @Override
+        public Stream<Peer> getPeers(Torrent torrent) {
+            return Stream.empty();
+        }
+
+        @Override
+        public Stream<Peer> getPeers(TorrentId torrentId) {
+            return Stream.empty();
+        }
+
+        @Override
+        public void addNode(Peer node) {
+        }
+    }
+
+    private FakeDHTService dhtService;
+    private EventBus eventBus;
+    private ManualExecutor executor;
+    private AtomicLong clock;
+    // torrents, which metadata has not been fetched yet
+    private Set<TorrentId> unknownTorrents;
+    private Set<TorrentId> privateTorrents;
+    private Set<TorrentId> seededTorrents;
+
+    @Before
+    public void setUp() {
+        dhtService = new FakeDHTService();
+        eventBus = new EventBus();
+        executor = new ManualExecutor();
+        clock = new AtomicLong(1_000_000);
+        unknownTorrents = new HashSet<>();
+        privateTorrents = new HashSet<>();
+        seededTorrents = new HashSet<>();
+    }
+
+    private void createAnnouncer(int maxAnnouncesPerSecond) {
+        DHTConfig config = new DHTConfig();
+        config.setAnnounceInterval(ANNOUNCE_INTERVAL);
+        config.setMaxAnnouncesPerSecond(maxAnnouncesPerSecond);
+        new DHTAnnouncer(dhtService, config, torrentId -> !unknownTorrents.contains(torrentId),
+                privateTorrents::contains, seededTorrents::contains, eventBus, new RuntimeLifecycleBinder(), executor, clock::get);
+    }
+
+    @Test
+    public void testAnnounce_RateLimit() {
+        createAnnouncer(4);
+        assertEquals(250, executor.delayMillis);
+
+        eventBus.fireTorrentStarted(torrentId(1));
+        eventBus.fireTorrentStarted(torrentId(2));
+        eventBus.fireTorrentStarted(torrentId(3));
+        clock.addAndGet(INITIAL_SPREAD_MILLIS);
+
+        // at most one announce per tick
+        for (int i = 1; i <= 3; i++) {
+            executor.tick.run();
+            assertEquals(i, dhtService.announces.size());
+        }
+        executor.tick.run();
+        assertEquals(3, dhtService.announces.size());
+
+        Set<TorrentId> announced = new HashSet<>();
+        dhtService.announces.forEach(announce -> announced.add(announce.torrentId));
+        assertEquals(new HashSet<>(Arrays.asList(torrentId(1), torrentId(2), torrentId(3))), announced);
+    }
+
+    @Test
+    public void testAnnounce_RateLimit_MaxRateRoundedToMillis() {
+        createAnnouncer(3000);
+        assertEquals(1, executor.delayMillis);
+    }
+
+    @Test
+    public void testAnnounce_IntervalWithJitter() {
+        createAnnouncer(10);
+        eventBus.fireTorrentStarted(torrentId(1));
+        clock.addAndGet(INITIAL_SPREAD_MILLIS);
+        executor.tick.run();
+        assertEquals(1, dhtService.announces.size());
+
+        long announcedAt = clock.get();
+        dhtService.announces.get(0).future.complete(null);
+
+        // next announce is due in 90% to 110% of the interval
+        long jitter = ANNOUNCE_INTERVAL.toMillis() / 10;
+        clock.set(announcedAt + ANNOUNCE_INTERVAL.toMillis() - jitter - 1);
+        executor.tick.run();
+        assertEquals(1, dhtService.announces.size());
+
+        clock.set(announcedAt + ANNOUNCE_INTERVAL.toMillis() + jitter);
+        executor.tick.run();
+        assertEquals(2, dhtService.announces.size());
+    }
+
+    @Test
+    public void testAnnounce_FailedAnnounceIsRetried() {
+        createAnnouncer(10);
+        eventBus.fireTorrentStarted(torrentId(1));
+        clock.addAndGet(INITIAL_SPREAD_MILLIS);
+        executor.tick.run();
+
+        long announcedAt = clock.get();
+        dhtService.announces.get(0).future.completeExceptionally(new RuntimeException("No nodes"));
+
+        // retry interval is shorter than the announce interval
+        clock.set(announcedAt + Duration.ofMinutes(5).toMillis());
+        executor.tick.run();
+        assertEquals(2, dhtService.announces.size());
+    }
+
+    @Test
+    public void testAnnounce_PrivateTorrentIsSkipped() {
+        createAnnouncer(10);
+        privateTorrents.add(torrentId(1));
+        eventBus.fireTorrentStarted(torrentId(1));
+
+        clock.addAndGet(INITIAL_SPREAD_MILLIS);
+        executor.tick.run();
+        clock.addAndGet(2 * ANNOUNCE_INTERVAL.toMillis());
+        executor.tick.run();
+        assertTrue(dhtService.announces.isEmpty());
+    }
+
+    @Test
+    public void testAnnounce_TorrentWithoutMetadata_PrivateIsSkipped() {
+        createAnnouncer(10);
+        unknownTorrents.add(torrentId(1));
+        eventBus.fireTorrentStarted(torrentId(1));
+
+        clock.addAndGet(INITIAL_SPREAD_MILLIS);
+        executor.tick.run();
+        assertTrue(dhtService.announces.isEmpty());
+
+        // metadata has been fetched, and the torrent turned out to be private
+        unknownTorrents.remove(torrentId(1));
+        privateTorrents.add(torrentId(1));
+        clock.addAndGet(Duration.ofMinutes(1).toMillis());
+        executor.tick.run();
+        assertTrue(dhtService.announces.isEmpty());
+    }
+
+    @Test
+    public void testAnnounce_TorrentWithoutMetadata_AnnouncedWhenFetched() {
+        createAnnouncer(10);
+        unknownTorrents.add(torrentId(1));
+        eventBus.fireTorrentStarted(torrentId(1));
+
+        clock.addAndGet(INITIAL_SPREAD_MILLIS);
+        executor.tick.run();
+        assertTrue(dhtService.announces.isEmpty());
+
+        unknownTorrents.remove(torrentId(1));
+        clock.addAndGet(Duration.ofMinutes(1).toMillis());
+        executor.tick.run();
+        assertEquals(1, dhtService.announces.size());
+    }
+
+    @Test
+    public void testAnnounce_StoppedTorrentIsSkipped() {
+        createAnnouncer(10);
+        eventBus.fireTorrentStarted(torrentId(1));
+        eventBus.fireTorrentStopped(torrentId(1));
+
+        clock.addAndGet(INITIAL_SPREAD_MILLIS);
+        executor.tick.run();
+        assertTrue(dhtService.announces.isEmpty());
+    }
+
+    @Test
+    public void testAnnounce_SeedFlag() {
+        createAnnouncer(10);
+        seededTorrents.add(torrentId(2));
+        eventBus.fireTorrentStarted(torrentId(1));
+        eventBus.fireTorrentStarted(torrentId(2));
+
+        clock.addAndGet(INITIAL_SPREAD_MILLIS);
+        executor.tick.run();
+        executor.tick.run();
+        assertEquals(2, dhtService.announces.size());
+        for (Announce announce : dhtService.announces) {
+            assertEquals(announce.torrentId.equals(torrentId(2)), announce.seed);
+        }
+    }
+
+    @Test
+    public void testAnnounce_Disabled() {
+        DHTConfig config = new DHTConfig();
+        config.setShouldAnnounce(false);
+        new DHTAnnouncer(dhtService, config, torrentId -> !unknownTorrents.contains(torrentId),
+                privateTorrents::contains, seededTorrents::contains, eventBus, new RuntimeLifecycleBinder(), executor, clock::get);
+        eventBus.fireTorrentStarted(torrentId(1));
+
+        assertNull(executor.tick);
+    }
+
+    private static TorrentId torrentId(int i) {
+        byte[] bytes = new byte[TorrentId.length()];
+        bytes[0] = (byte) i;
+        return TorrentId.fromBytes(bytes);
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.dht;
+
+import bt.metainfo.TorrentId;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InfoHashCrawlerTest {
+
+    @Test
+    public void testCrawl_DeduplicatedAndFinished() throws Exception {
+        // each range returns its own info hash and a few popular ones
+        InfoHashCrawler.RangeSampler sampler = (range, rangeCount, results, onFinished) -> {
+            results.accept(torrentId(range, 0));
+            for (int i = 0; i < 3; i++) {
+                results.accept(torrentId(0, i + 1));
+            }
+            onFinished.accept(null);
+            return () -> {};
+        };
+        InfoHashCrawler crawler = new InfoHashCrawler(sampler, 2, 1000, null);
+
+        List<TorrentId> found = Collections.synchronizedList(new ArrayList<>());
+        crawler.crawl(found::add).get(30, TimeUnit.SECONDS);
+
+        assertEquals(InfoHashCrawler.RANGE_COUNT + 3, found.size());
+        assertEquals(found.size(), new HashSet<>(found).size());
+        // next crawl starts from the beginning
+        assertEquals(0, crawler.getCompletedRangesCount());
+        crawler.shutdown();
+    }
+
+    @Test
+    public void testCrawl_Resumed() throws Exception {
+        Path stateFile = Files.createTempFile("bt-dht-crawl", ".state");
+        Files.delete(stateFile);
+        try {
+            // only the first 10 ranges are ever finished
+            List<Integer> started = Collections.synchronizedList(new ArrayList<>());
+            InfoHashCrawler.RangeSampler sampler = (range, rangeCount, results, onFinished) -> {
+                started.add(range);
+                if (range < 10) {
+                    onFinished.accept(null);
+                }
+                return () -> onFinished.accept(null);
+            };
+
+            InfoHashCrawler crawler = new InfoHashCrawler(sampler, 2, 1000, stateFile);
+            CompletableFuture<Void> future = crawler.crawl(torrentId -> {});
+            awaitCompletedRanges(crawler, 10);
+            future.cancel(false);
+
+            started.clear();
+            crawler.crawl(torrentId -> {}).cancel(false);
+            assertEquals(setOf(10, 11), new HashSet<>(started));
+            crawler.shutdown();
+
+            // progress is restored from the state file
+            started.clear();
+            InfoHashCrawler restarted = new InfoHashCrawler(sampler, 2, 1000, stateFile);
+            assertEquals(10, restarted.getCompletedRangesCount());
+            restarted.crawl(torrentId -> {}).cancel(false);
+            assertEquals(setOf(10, 11), new HashSet<>(started));
+            restarted.shutdown();
+        } finally {
+            Files.deleteIfExists(stateFile);
+        }
+    }
+
+    @Test
+    public void testCrawl_OnlyOneAtATime() {
+        InfoHashCrawler.RangeSampler sampler = (range, rangeCount, results, onFinished) -> () -> {};
+        InfoHashCrawler crawler = new InfoHashCrawler(sampler, 1, 1, null);
+
+        Consumer<TorrentId> consumer = torrentId -> {};
+        CompletableFuture<Void> first = crawler.crawl(consumer);
+        assertTrue(crawler.crawl(consumer).isCompletedExceptionally());
+        first.cancel(false);
+        assertTrue(!crawler.crawl(consumer).isDone());
+        crawler.shutdown();
+    }
+
+    @Test
+    public void testCrawl_SamplingThrottledWhileConsumerIsBehind() throws Exception {
+        List<Integer> started = Collections.synchronizedList(new ArrayList<>());
+        InfoHashCrawler.RangeSampler sampler = (range, rangeCount, results, onFinished) -> {
+            started.add(range);
+            for (int i = 0; i < 6_000; i++) {
+                results.accept(torrentId(range, i));
+            }
+            onFinished.accept(null);
+            return () -> {};
+        };
+        InfoHashCrawler crawler = new InfoHashCrawler(sampler, 2, 1, null);
+
+        CompletableFuture<Void> future = crawler.crawl(torrentId -> {});
+        awaitCompletedRanges(crawler, 1);
+        Thread.sleep(300);
+        assertEquals(Collections.singletonList(0), started);
+
+        // undelivered info hashes are discarded
+        future.cancel(false);
+        assertEquals(0, crawler.getPendingInfoHashesCount());
+        crawler.shutdown();
+    }
+
+    @Test
+    public void testCrawl_RangeWithDroppedInfoHashesIsSampledAgain() throws Exception {
+        // range 0 returns more info hashes, than can be queued at once
+        List<Integer> started = Collections.synchronizedList(new ArrayList<>());
+        InfoHashCrawler.RangeSampler sampler = (range, rangeCount, results, onFinished) -> {
+            started.add(range);
+            if (range == 0) {
+                for (int i = 0; i < 12_000; i++) {
+                    results.accept(torrentId(0, i));
+                }
+            }
+            onFinished.accept(null);
+            return () -> {};
+        };
+        InfoHashCrawler crawler = new InfoHashCrawler(sampler, 1, 100_000, null);
+
+        Set<TorrentId> found = Collections.synchronizedSet(new HashSet<>());
+        crawler.crawl(found::add).get(30, TimeUnit.SECONDS);
+
+        assertEquals(12_000, found.size());
+        assertEquals(2, Collections.frequency(started, 0));
+        assertEquals(InfoHashCrawler.RANGE_COUNT + 1, started.size());
+        crawler.shutdown();
+    }
+
+    @Test
+    public void testCrawl_DeliveryRate() throws Exception {
+        InfoHashCrawler.RangeSampler sampler = (range, rangeCount, results, onFinished) -> {
+            for (int i = 0; i < 100; i++) {
+                results.accept(torrentId(range, i));
+            }
+            return () -> {};
+        };
+        // more than 10 per second, but less than 2 per delivery
+        InfoHashCrawler crawler = new InfoHashCrawler(sampler, 1, 15, null);
+
+        AtomicInteger delivered = new AtomicInteger();
+        CompletableFuture<Void> future = crawler.crawl(torrentId -> delivered.incrementAndGet());
+        Thread.sleep(2_000);
+        future.cancel(false);
+        crawler.shutdown();
+
+        assertTrue("Delivered: " + delivered.get(), delivered.get() >= 25 && delivered.get() <= 31);
+    }
+
+    private static void awaitCompletedRanges(InfoHashCrawler crawler, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (crawler.getCompletedRangesCount() < count) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Ranges have not been completed in time");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static Set<Integer> setOf(Integer... values) {
+        Set<Integer> set = new HashSet<>();
+        Collections.addAll(set, values);
+        return set;
+    }
+
+    private static TorrentId torrentId(int i, int j) {
+        byte[] bytes = new byte[TorrentId.length()];
+        bytes[0] = (byte) i;
+        bytes[1] = (byte) (j >> 8);
+        bytes[2] = (byte) j;
+        return TorrentId.fromBytes(bytes);
+    }
+}
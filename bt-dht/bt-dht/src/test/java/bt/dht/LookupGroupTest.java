@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.dht;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LookupGroupTest {
+
+    private final List<List<String>> results = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    public void testFinished_AfterLastLookup() {
+        LookupGroup<String> group = new LookupGroup<>(2, results::add);
+
+        group.finished("ipv4");
+        assertTrue(results.isEmpty());
+
+        group.finished("ipv6");
+        assertEquals(Collections.singletonList(Arrays.asList("ipv4", "ipv6")), results);
+    }
+
+    @Test
+    public void testFinished_LookupsWithoutCandidatesAreSkipped() {
+        LookupGroup<String> group = new LookupGroup<>(2, results::add);
+
+        group.finished(null);
+        group.finished("ipv6");
+        assertEquals(Collections.singletonList(Collections.singletonList("ipv6")), results);
+    }
+
+    @Test
+    public void testFinished_NoCandidates() {
+        LookupGroup<String> group = new LookupGroup<>(2, results::add);
+
+        group.finished(null);
+        group.finished(null);
+        assertEquals(Collections.singletonList(Collections.emptyList()), results);
+    }
+
+    @Test
+    public void testFinished_SingleLookup() {
+        LookupGroup<String> group = new LookupGroup<>(1, results::add);
+
+        group.finished("ipv4");
+        assertEquals(Collections.singletonList(Collections.singletonList("ipv4")), results);
+    }
+
+    @Test
+    public void testFinished_CalledOnlyOnce() {
+        LookupGroup<String> group = new LookupGroup<>(1, results::add);
+
+        group.finished("ipv4");
+        group.finished("ipv4");
+        assertEquals(1, results.size());
+    }
+
+    @Test
+    public void testFinished_Concurrent() throws Exception {
+        int lookups = 100;
+        List<List<Integer>> merged = Collections.synchronizedList(new ArrayList<>());
+        LookupGroup<Integer> group = new LookupGroup<>(lookups, merged::add);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < lookups; i++) {
+                int lookup = i;
+                executor.submit(() -> {
+                    start.await();
+                    group.finished(lookup);
+                    return null;
+                });
+            }
+            start.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, merged.size());
+        assertEquals(lookups, merged.get(0).stream().distinct().count());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCreate_EmptyGroup() {
+        new LookupGroup<String>(0, results::add);
+    }
+}
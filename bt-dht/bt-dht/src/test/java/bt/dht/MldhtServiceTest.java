@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.dht;
+
+import bt.runtime.Config;
+import bt.service.IRuntimeLifecycleBinder.LifecycleEvent;
+import bt.service.RuntimeLifecycleBinder;
+import lbms.plugins.mldht.kad.DHT;
+import lbms.plugins.mldht.kad.KBucketEntry;
+import lbms.plugins.mldht.kad.Key;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MldhtServiceTest {
+
+    private Path storageDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        storageDirectory = Files.createTempDirectory("bt-dht-test");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (Files.exists(storageDirectory)) {
+            try (Stream<Path> paths = Files.walk(storageDirectory)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    public void testStorageDirectory_NodeIdAndRoutingTableSurviveRestart() throws Exception {
+        DHTConfig dhtConfig = createDHTConfig();
+        dhtConfig.setStorageDirectory(storageDirectory);
+
+        RuntimeLifecycleBinder lifecycleBinder = new RuntimeLifecycleBinder();
+        MldhtService service = new MldhtService(lifecycleBinder, new Config(), dhtConfig);
+        run(lifecycleBinder, LifecycleEvent.STARTUP);
+
+        DHT dht = service.getDHTs().get(0);
+        Key nodeId = dht.getNode().getRootID();
+        KBucketEntry entry = new KBucketEntry(
+                new InetSocketAddress(InetAddress.getByName("8.8.8.8"), 6881), Key.createRandomKey());
+        dht.getNode().insertEntry(entry, true);
+        assertEquals(1, dht.getNode().getNumEntriesInRoutingTable());
+        run(lifecycleBinder, LifecycleEvent.SHUTDOWN);
+
+        lifecycleBinder = new RuntimeLifecycleBinder();
+        service = new MldhtService(lifecycleBinder, new Config(), dhtConfig);
+        run(lifecycleBinder, LifecycleEvent.STARTUP);
+        try {
+            dht = service.getDHTs().get(0);
+            assertEquals(nodeId, dht.getNode().getRootID());
+            assertEquals(1, dht.getNode().getNumEntriesInRoutingTable());
+        } finally {
+            run(lifecycleBinder, LifecycleEvent.SHUTDOWN);
+        }
+        assertTrue(Files.isDirectory(storageDirectory));
+    }
+
+    @Test
+    public void testStorageDirectory_TemporaryDirectoryDeletedOnShutdown() {
+        RuntimeLifecycleBinder lifecycleBinder = new RuntimeLifecycleBinder();
+        MldhtService service = new MldhtService(lifecycleBinder, new Config(), createDHTConfig());
+        run(lifecycleBinder, LifecycleEvent.STARTUP);
+
+        Path temporaryDirectory = service.getDHTs().get(0).getConfig().getStoragePath();
+        assertTrue(Files.isDirectory(temporaryDirectory));
+
+        run(lifecycleBinder, LifecycleEvent.SHUTDOWN);
+        assertFalse(Files.exists(temporaryDirectory));
+    }
+
+    @Test
+    public void testTimeToFirstPeer() throws Exception {
+        RuntimeLifecycleBinder lifecycleBinder = new RuntimeLifecycleBinder();
+        MldhtService service = new MldhtService(lifecycleBinder, new Config(), createDHTConfig());
+        run(lifecycleBinder, LifecycleEvent.STARTUP);
+        try {
+            assertFalse(service.getTimeToFirstPeer().isPresent());
+
+            Thread.sleep(20);
+            service.onPeerFound();
+            Duration timeToFirstPeer = service.getTimeToFirstPeer().get();
+            assertTrue(timeToFirstPeer.toMillis() >= 20);
+
+            // only the first peer counts
+            Thread.sleep(20);
+            service.onPeerFound();
+            assertEquals(timeToFirstPeer, service.getTimeToFirstPeer().get());
+        } finally {
+            run(lifecycleBinder, LifecycleEvent.SHUTDOWN);
+        }
+    }
+
+    private static DHTConfig createDHTConfig() {
+        DHTConfig dhtConfig = new DHTConfig();
+        dhtConfig.setListeningPort(0);
+        dhtConfig.setShouldAnnounce(false);
+        return dhtConfig;
+    }
+
+    private static void run(RuntimeLifecycleBinder lifecycleBinder, LifecycleEvent event) {
+        lifecycleBinder.visitBindings(event, binding -> binding.getRunnable().run());
+    }
+}
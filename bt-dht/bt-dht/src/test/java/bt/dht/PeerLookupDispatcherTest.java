@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.dht;
+
+import bt.metainfo.TorrentId;
+import bt.net.InetPeer;
+import bt.net.Peer;
+import bt.net.PeerAddress;
+import bt.peer.PeerOptions;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PeerLookupDispatcherTest {
+
+    private static class ManualLookups implements PeerLookupDispatcher.LookupStarter {
+        final Map<TorrentId, Consumer<Collection<Peer>>> results = new HashMap<>();
+        final Map<TorrentId, Consumer<Throwable>> finishers = new HashMap<>();
+        int started, stopped;
+
+        @Override
+        public Runnable start(TorrentId torrentId, Consumer<Collection<Peer>> results, Consumer<Throwable> onFinished) {
+            started++;
+            this.results.put(torrentId, results);
+            this.finishers.put(torrentId, onFinished);
+            return () -> {
+                stopped++;
+                onFinished.accept(null);
+            };
+        }
+    }
+
+    @Test
+    public void testLookup_CoalescedAndDeduplicated() {
+        ManualLookups lookups = new ManualLookups();
+        PeerLookupDispatcher dispatcher = new PeerLookupDispatcher(lookups, 1);
+        TorrentId torrentId = torrentId(1);
+
+        List<Peer> first = new ArrayList<>(), second = new ArrayList<>();
+        CompletableFuture<Void> firstFuture = dispatcher.lookupPeers(torrentId, first::addAll);
+        lookups.results.get(torrentId).accept(Arrays.asList(peer(1), peer(2)));
+
+        // late subscriber gets the peers, that have been found so far
+        CompletableFuture<Void> secondFuture = dispatcher.lookupPeers(torrentId, second::addAll);
+        lookups.results.get(torrentId).accept(Arrays.asList(peer(2), peer(3)));
+        lookups.finishers.get(torrentId).accept(null);
+
+        assertEquals(1, lookups.started);
+        assertEquals(Arrays.asList(peer(1), peer(2), peer(3)), first);
+        assertEquals(3, second.size());
+        assertTrue(firstFuture.isDone() && secondFuture.isDone());
+        assertEquals(0, dispatcher.getActiveLookupsCount());
+    }
+
+    @Test
+    public void testLookup_ConcurrencyIsBounded() {
+        ManualLookups lookups = new ManualLookups();
+        PeerLookupDispatcher dispatcher = new PeerLookupDispatcher(lookups, 2);
+
+        for (int i = 0; i < 5; i++) {
+            dispatcher.lookupPeers(torrentId(i), peers -> {});
+        }
+        assertEquals(2, lookups.started);
+
+        lookups.finishers.get(torrentId(0)).accept(null);
+        assertEquals(3, lookups.started);
+
+        // the only subscriber of a running lookup has lost interest
+        CompletableFuture<Void> future = dispatcher.lookupPeers(torrentId(1), peers -> {});
+        future.cancel(false);
+        assertEquals(0, lookups.stopped);
+
+        dispatcher.shutdown();
+        assertEquals(2, lookups.stopped);
+        assertEquals(3, lookups.started);
+        assertEquals(0, dispatcher.getActiveLookupsCount());
+    }
+
+    @Test
+    public void testLookup_CancelStopsLookup() {
+        ManualLookups lookups = new ManualLookups();
+        PeerLookupDispatcher dispatcher = new PeerLookupDispatcher(lookups, 1);
+
+        CompletableFuture<Void> running = dispatcher.lookupPeers(torrentId(0), peers -> {});
+        CompletableFuture<Void> pending = dispatcher.lookupPeers(torrentId(1), peers -> {});
+        pending.cancel(false);
+        running.cancel(false);
+
+        assertEquals(1, lookups.started);
+        assertEquals(1, lookups.stopped);
+        assertEquals(0, dispatcher.getActiveLookupsCount());
+        assertFalse(lookups.results.containsKey(torrentId(1)));
+    }
+
+    @Test
+    public void testLookup_CachedResults() {
+        ManualLookups lookups = new ManualLookups();
+        PeerLookupDispatcher dispatcher = createCachingDispatcher(lookups, new AtomicLong());
+
+        dispatcher.lookupPeers(torrentId(0), peers -> {});
+        finish(lookups, torrentId(0), peer(1), peer(2));
+
+        List<Peer> cached = new ArrayList<>();
+        CompletableFuture<Void> future = dispatcher.lookupPeers(torrentId(0), cached::addAll);
+        assertTrue(future.isDone());
+        assertEquals(new HashSet<>(Arrays.asList(peer(1), peer(2))), new HashSet<>(cached));
+        assertEquals(1, lookups.started);
+    }
+
+    @Test
+    public void testLookup_CachedResults_FreshLookupRequired() {
+        ManualLookups lookups = new ManualLookups();
+        PeerLookupDispatcher dispatcher = createCachingDispatcher(lookups, new AtomicLong());
+
+        dispatcher.lookupPeers(torrentId(0), peers -> {});
+        finish(lookups, torrentId(0), peer(1));
+
+        CompletableFuture<Void> future = dispatcher.lookupPeers(torrentId(0), peers -> {}, false);
+        assertFalse(future.isDone());
+        assertEquals(2, lookups.started);
+    }
+
+    @Test
+    public void testLookup_CachedResults_Expired() {
+        ManualLookups lookups = new ManualLookups();
+        AtomicLong clock = new AtomicLong();
+        PeerLookupDispatcher dispatcher = createCachingDispatcher(lookups, clock);
+
+        dispatcher.lookupPeers(torrentId(0), peers -> {});
+        finish(lookups, torrentId(0), peer(1));
+
+        clock.addAndGet(Duration.ofMinutes(1).toMillis());
+        CompletableFuture<Void> future = dispatcher.lookupPeers(torrentId(0), peers -> {});
+        assertFalse(future.isDone());
+        assertEquals(2, lookups.started);
+    }
+
+    @Test
+    public void testLookup_EmptyResultsAreNotCached() {
+        ManualLookups lookups = new ManualLookups();
+        PeerLookupDispatcher dispatcher = createCachingDispatcher(lookups, new AtomicLong());
+
+        dispatcher.lookupPeers(torrentId(0), peers -> {});
+        finish(lookups, torrentId(0));
+
+        CompletableFuture<Void> future = dispatcher.lookupPeers(torrentId(0), peers -> {});
+        assertFalse(future.isDone());
+        assertEquals(2, lookups.started);
+    }
+
+    @Test
+    public void testLookup_FailedLookupsAreNotCached() {
+        ManualLookups lookups = new ManualLookups();
+        PeerLookupDispatcher dispatcher = createCachingDispatcher(lookups, new AtomicLong());
+
+        CompletableFuture<Void> failed = dispatcher.lookupPeers(torrentId(0), peers -> {});
+        lookups.results.get(torrentId(0)).accept(Collections.singletonList(peer(1)));
+        lookups.finishers.get(torrentId(0)).accept(new RuntimeException("DHT is not running"));
+        assertTrue(failed.isCompletedExceptionally());
+
+        dispatcher.lookupPeers(torrentId(0), peers -> {});
+        assertEquals(2, lookups.started);
+    }
+
+    @Test
+    public void testLookup_StoppedLookupsAreNotCached() {
+        ManualLookups lookups = new ManualLookups();
+        PeerLookupDispatcher dispatcher = createCachingDispatcher(lookups, new AtomicLong());
+
+        dispatcher.lookupPeers(torrentId(0), peers -> {});
+        lookups.results.get(torrentId(0)).accept(Collections.singletonList(peer(1)));
+        dispatcher.shutdown();
+        assertEquals(1, lookups.stopped);
+
+        dispatcher.lookupPeers(torrentId(0), peers -> {});
+        assertEquals(2, lookups.started);
+    }
+
+    private static PeerLookupDispatcher createCachingDispatcher(ManualLookups lookups, AtomicLong clock) {
+        PeerLookupCache cache = new PeerLookupCache(1, Duration.ofMinutes(1), clock::get);
+        return new PeerLookupDispatcher(lookups, 1, cache);
+    }
+
+    private static void finish(ManualLookups lookups, TorrentId torrentId, Peer... peers) {
+        if (peers.length > 0) {
+            lookups.results.get(torrentId).accept(Arrays.asList(peers));
+        }
+        lookups.finishers.get(torrentId).accept(null);
+    }
+
+    private static TorrentId torrentId(int i) {
+        byte[] bytes = new byte[TorrentId.length()];
+        bytes[0] = (byte) i;
+        return TorrentId.fromBytes(bytes);
+    }
+
+    private static Peer peer(int i) {
+        return new InetPeer(PeerAddress.of(new byte[]{10, 0, 0, (byte) i}, 0, 4, 6881), PeerOptions.defaultOptions());
+    }
+}
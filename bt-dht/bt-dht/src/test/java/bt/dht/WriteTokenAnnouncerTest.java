@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.dht;
+
+import bt.metainfo.TorrentId;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WriteTokenAnnouncerTest {
+
+    private static final Duration TTL = Duration.ofMinutes(4);
+
+    private AtomicLong clock;
+    private int lookups;
+    // candidates, that will be found by the next lookup
+    private List<String> lookupResult;
+    private List<String> announced;
+    private List<Boolean> seedFlags;
+    private WriteTokenAnnouncer<String> announcer;
+
+    @Before
+    public void setUp() {
+        clock = new AtomicLong(1_000_000);
+        lookupResult = Collections.emptyList();
+        announced = new ArrayList<>();
+        seedFlags = new ArrayList<>();
+        announcer = new WriteTokenAnnouncer<>(torrentId -> {
+            lookups++;
+            announcer.saveCandidates(torrentId, lookupResult);
+            return CompletableFuture.completedFuture(null);
+        }, (candidates, seed) -> {
+            announced.add(candidates);
+            seedFlags.add(seed);
+            return CompletableFuture.completedFuture(null);
+        }, TTL, clock::get);
+    }
+
+    @Test
+    public void testAnnounce_TokensFromRecentLookupAreReused() {
+        TorrentId torrentId = torrentId(1);
+        announcer.saveCandidates(torrentId, Arrays.asList("ipv4", "ipv6"));
+
+        assertTrue(isCompletedNormally(announcer.announce(torrentId, true)));
+        assertEquals(0, lookups);
+        assertEquals(Arrays.asList("ipv4", "ipv6"), announced);
+        assertEquals(Arrays.asList(true, true), seedFlags);
+    }
+
+    @Test
+    public void testAnnounce_TokensAreUsedOnlyOnce() {
+        TorrentId torrentId = torrentId(1);
+        announcer.saveCandidates(torrentId, Collections.singletonList("saved"));
+        announcer.announce(torrentId, false);
+
+        lookupResult = Collections.singletonList("fresh");
+        assertTrue(isCompletedNormally(announcer.announce(torrentId, false)));
+        assertEquals(1, lookups);
+        assertEquals(Arrays.asList("saved", "fresh"), announced);
+    }
+
+    @Test
+    public void testAnnounce_ExpiredTokens_FreshLookup() {
+        TorrentId torrentId = torrentId(1);
+        announcer.saveCandidates(torrentId, Collections.singletonList("saved"));
+        clock.addAndGet(TTL.toMillis());
+
+        lookupResult = Collections.singletonList("fresh");
+        assertTrue(isCompletedNormally(announcer.announce(torrentId, false)));
+        assertEquals(1, lookups);
+        assertEquals(Collections.singletonList("fresh"), announced);
+    }
+
+    @Test
+    public void testAnnounce_NoTokens_FreshLookup() {
+        announcer.saveCandidates(torrentId(2), Collections.singletonList("other torrent"));
+
+        lookupResult = Collections.singletonList("fresh");
+        assertTrue(isCompletedNormally(announcer.announce(torrentId(1), true)));
+        assertEquals(1, lookups);
+        assertEquals(Collections.singletonList("fresh"), announced);
+    }
+
+    @Test
+    public void testAnnounce_LookupFoundNoNodes_Failed() {
+        CompletableFuture<Void> future = announcer.announce(torrentId(1), false);
+        assertTrue(future.isCompletedExceptionally());
+        assertEquals(1, lookups);
+        assertTrue(announced.isEmpty());
+    }
+
+    private static boolean isCompletedNormally(CompletableFuture<?> future) {
+        return future.isDone() && !future.isCompletedExceptionally();
+    }
+
+    private static TorrentId torrentId(int i) {
+        byte[] bytes = new byte[TorrentId.length()];
+        bytes[0] = (byte) i;
+        return TorrentId.fromBytes(bytes);
+    }
+}
@@ -38,4 +38,24 @@ public interface DHTConfiguration {
 	public default Predicate<InetAddress> filterBindAddress() {
 		return (unused) -> true;
 	}
+	
+	/**
+	 * Number of threads that may concurrently receive, decode and handle the packets arriving on a single socket.
+	 * Routing table updates stay serialized regardless of this setting.
+	 * 
+	 * The default implementation uses half of the available processors, up to 4 threads.
+	 */
+	public default int getReceiveThreads() {
+		return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+	}
+	
+	/**
+	 * Upper bound for the number of announced peers kept in memory, across all infohashes.
+	 * When it is exceeded, random peers of the largest swarms are evicted.
+	 * 
+	 * The default implementation allows one peer per KiB of maximum heap size, each stored peer takes a few dozen bytes.
+	 */
+	public default int getMaxStoredPeers() {
+		return (int) Math.min(Integer.MAX_VALUE, Math.max(100_000, Runtime.getRuntime().maxMemory() / 1024));
+	}
 }
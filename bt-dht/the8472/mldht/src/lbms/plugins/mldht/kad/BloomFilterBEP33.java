@@ -42,8 +42,15 @@ public class BloomFilterBEP33 implements Comparable<BloomFilterBEP33>, Cloneable
 	}
 	
     public void insert(InetAddress addr) {
+        insert(addr.getAddress());
+    }
+    
+    /**
+     * @param rawAddress 4 or 16 byte IP address in network byte order
+     */
+    public void insert(byte[] rawAddress) {
         
-        byte[] hash = sha1.digest(addr.getAddress());
+        byte[] hash = sha1.digest(rawAddress);
         
         int index1 = (hash[0]&0xFF) | (hash[1]&0xFF) << 8;
         int index2 = (hash[2]&0xFF) | (hash[3]&0xFF) << 8;
@@ -29,6 +29,14 @@ public class DBItem implements Comparable<DBItem> {
 		this();
 		item = ip_port.clone();
 	}
+	
+	/**
+	 * Takes ownership of the array, used when restoring items from compact storage
+	 */
+	DBItem (final byte[] ip_port, long createdAt) {
+		time_stamp = createdAt;
+		item = ip_port;
+	}
 
 	/// See if the item is expired
 	public boolean expired (final long now) {
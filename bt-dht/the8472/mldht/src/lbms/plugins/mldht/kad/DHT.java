@@ -662,7 +662,7 @@ public class DHT implements DHTBase {
 		unreachableCache = new NonReachableCache();
 
 		serverManager.notifyOnServerAdded(serverListener);
-		db = new Database();
+		db = new Database(config.getMaxStoredPeers());
 		stats.setDbStats(db.getStats());
 		tman = new TaskManager(this);
 		running = true;
@@ -11,14 +11,13 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.PriorityQueue;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import lbms.plugins.mldht.kad.DHT.DHTtype;
@@ -26,17 +25,32 @@ import lbms.plugins.mldht.kad.utils.ByteWrapper;
 import lbms.plugins.mldht.kad.utils.ThreadLocalUtils;
 
 /**
+ * Peer store for announced infohashes.
+ * 
+ * Keys are spread over a fixed number of shards, each guarded by its own lock and holding a share of the overall item limit.
+ * Peers are kept in packed primitive arrays instead of one object per announce,
+ * {@link PeerAddressDBItem}s are only materialized when handing them out.
+ * 
  * @author Damokles
  * 
  */
 public class Database {
-	private ConcurrentMap<Key, PeersSeeds>	items;
+	
+	private static final int SHARD_COUNT = 64;
+	
+	// timestamps are stored as seconds relative to this
+	static final long EPOCH = System.currentTimeMillis();
+	
+	private final Shard[] shards;
 	private AtomicLong timestampCurrent = new AtomicLong();
 	private volatile long timestampPrevious;
 	private volatile byte[] samples = new byte[0];
 	
 	public static final int MAX_SAMPLE_COUNT = 20;
 	
+	// a dirty scrape filter is served as-is until it is this old, then rebuilt on the next request
+	static final long FILTER_REBUILD_INTERVAL = 30 * 1000;
+	
 	private static byte[] sessionSecret = new byte[20];
 	
 	static {
@@ -44,31 +58,99 @@ public class Database {
 	}
 
 	Database() {
-		items = new ConcurrentHashMap<>(3000);
+		this(Integer.MAX_VALUE);
 	}
 	
+	/**
+	 * @param maxItems upper bound for the number of stored peers, random peers of the largest swarms are evicted when it is exceeded
+	 */
+	Database(int maxItems) {
+		shards = new Shard[SHARD_COUNT];
+		for(int i=0;i<shards.length;i++)
+			shards[i] = new Shard(Math.max(1, maxItems / SHARD_COUNT));
+	}
 	
-	public static class PeersSeeds {
-		ItemSet seeds;
-		ItemSet peers;
+	private Shard shardFor(Key key) {
+		return shards[key.hashCode() & (SHARD_COUNT - 1)];
+	}
+	
+	static int toSeconds(long millis) {
+		return (int) TimeUnit.MILLISECONDS.toSeconds(millis - EPOCH);
+	}
+	
+	static final class Shard {
+		final Map<Key, PeersSeeds> items = new HashMap<>();
+		final int maxItems;
+		int itemCount;
 		
-		PeersSeeds(PeerAddressDBItem[] seeds, PeerAddressDBItem[] peers) {
-			this.seeds = new ItemSet(seeds);
-			this.peers = new ItemSet(peers);
+		Shard(int maxItems) {
+			this.maxItems = maxItems;
 		}
 		
+		/**
+		 * Trims the largest swarms until the shard is slightly below its limit, so that eviction doesn't run on every insert.
+		 */
+		void evict() {
+			int toEvict = itemCount - maxItems + Math.max(1, maxItems / 100);
+			if(toEvict <= 0)
+				return;
+			
+			// a single pass over the keys, afterwards only the trimmed swarm is re-ordered
+			PriorityQueue<Map.Entry<Key, PeersSeeds>> largestFirst = new PriorityQueue<>(Math.max(1, items.size()), (a, b) -> Integer.compare(b.getValue().sizeUnlocked(), a.getValue().sizeUnlocked()));
+			largestFirst.addAll(items.entrySet());
+			
+			while(toEvict > 0) {
+				Map.Entry<Key, PeersSeeds> largest = largestFirst.poll();
+				
+				if(largest == null)
+					break;
+				
+				PeersSeeds ps = largest.getValue();
+				ItemSet set = ps.peers.size >= ps.seeds.size ? ps.peers : ps.seeds;
+				int n = Math.min(toEvict, Math.max(1, set.size / 10));
+				// items are kept in random order, dropping from the end picks random victims
+				set.truncate(set.size - n);
+				itemCount -= n;
+				toEvict -= n;
+				
+				if(ps.sizeUnlocked() == 0)
+					items.remove(largest.getKey());
+				else
+					largestFirst.add(largest);
+			}
+		}
+	}
+	
+	
+	public static class PeersSeeds {
+		final Object lock;
+		final ItemSet seeds;
+		final ItemSet peers;
+		
+		PeersSeeds(Object lock) {
+			this.lock = lock;
+			this.seeds = new ItemSet(lock, true);
+			this.peers = new ItemSet(lock, false);
+		}
 		
-		boolean add(PeerAddressDBItem it) {
-			ItemSet removeTarget = it.seed ? peers : seeds;
-			ItemSet insertTarget = it.seed ? seeds : peers;
+		/**
+		 * @return change of the item count
+		 */
+		int add(long high, long low, int port, int time, boolean seed) {
+			ItemSet removeTarget = seed ? peers : seeds;
+			ItemSet insertTarget = seed ? seeds : peers;
 			
-			removeTarget.remove(it);
-			return insertTarget.add(it);
+			int delta = removeTarget.remove(high, low) ? -1 : 0;
+			if(insertTarget.add(high, low, port, time))
+				delta++;
+			return delta;
 		}
 		
-		void expire() {
-			seeds.expire();
-			peers.expire();
+		/**
+		 * @return number of removed items
+		 */
+		int expire(int now) {
+			return seeds.expire(now) + peers.expire(now);
 		}
 		
 		public ItemSet peers() {
@@ -79,104 +161,220 @@ public class Database {
 			return seeds;
 		}
 		
+		int sizeUnlocked() {
+			return peers.size + seeds.size;
+		}
+		
 		public int size() {
-			return peers.size() + seeds.size();
+			synchronized (lock) {
+				return sizeUnlocked();
+			}
 		}
 	}
 
-	
+	/**
+	 * Packed set of peer addresses, unique by IP.
+	 * Each entry takes {@value #STRIDE} longs: the address (IPv4 in mapped form) and a word holding the announce time and port.
+	 * Entries are kept in random order, so that any contiguous range is a random sample.
+	 * 
+	 * All access must be guarded by the lock of the owning shard.
+	 */
 	public static class ItemSet {
-		static final PeerAddressDBItem[] NO_ITEMS = new PeerAddressDBItem[0];
-		
 		
+		private static final int STRIDE = 3;
+		// sets up to this size are searched linearly
+		private static final int INDEX_THRESHOLD = 16;
+		private static final long[] NO_DATA = new long[0];
+		private static final long IPV4_MAPPED_PREFIX = 0xFFFFL << 32;
+		
+		private final Object lock;
+		private final boolean seeds;
+		
+		long[] data = NO_DATA;
+		int size;
+		// open addressing table of entry index + 1, dropped on removals and rebuilt on demand
+		private int[] index;
+		// lower bound for the announce times of all entries
+		private int oldest = Integer.MAX_VALUE;
+		
+		private BloomFilterBEP33 filter;
+		private boolean filterDirty;
+		private long filterBuiltAt;
+		
+		ItemSet(Object lock, boolean seeds) {
+			this.lock = lock;
+			this.seeds = seeds;
+		}
 		
-		private volatile PeerAddressDBItem[] items = NO_ITEMS;
-		private volatile BloomFilterBEP33 filter = null;
-		
-		ItemSet(PeerAddressDBItem[] initial) {
-			this.items = initial;
+		private static int hash(long high, long low) {
+			long h = high * 0x9E3779B97F4A7C15L ^ low;
+			h *= 0x9E3779B97F4A7C15L;
+			return (int) (h ^ (h >>> 32));
 		}
 		
-		private void remove(PeerAddressDBItem it) {
-			synchronized (this) {
-				PeerAddressDBItem[] current = items;
-				
-				if(current.length == 0)
-					return;
-				
-				
-				
-				int idx = Arrays.asList(current).indexOf(it);
-				if(idx < 0) {
-					return;
+		private int find(long high, long low) {
+			if(size <= INDEX_THRESHOLD) {
+				for(int i=0;i<size;i++) {
+					if(data[i*STRIDE] == high && data[i*STRIDE+1] == low)
+						return i;
 				}
-				
-				PeerAddressDBItem[] newItems = Arrays.copyOf(current, current.length - 1);
-				
-				System.arraycopy(current, idx+1, newItems, idx, newItems.length - idx);
-				
-				items = newItems;
-				invalidateFilters();
+				return -1;
+			}
+			
+			if(index == null)
+				rebuildIndex();
+			
+			int mask = index.length - 1;
+			for(int slot = hash(high, low) & mask;;slot = (slot + 1) & mask) {
+				int i = index[slot] - 1;
+				if(i < 0)
+					return -1;
+				if(data[i*STRIDE] == high && data[i*STRIDE+1] == low)
+					return i;
 			}
 		}
 		
+		private void rebuildIndex() {
+			int capacity = Integer.highestOneBit(Math.max(size, INDEX_THRESHOLD) * 4 - 1);
+			index = new int[capacity];
+			for(int i=0;i<size;i++)
+				indexPut(i);
+		}
+		
+		private void indexPut(int i) {
+			int mask = index.length - 1;
+			int slot = hash(data[i*STRIDE], data[i*STRIDE+1]) & mask;
+			while(index[slot] != 0)
+				slot = (slot + 1) & mask;
+			index[slot] = i + 1;
+		}
+		
+		/**
+		 * points the index at the new position of an entry that has already been copied to {@code to}
+		 */
+		private void indexMove(int from, int to) {
+			int mask = index.length - 1;
+			int slot = hash(data[to*STRIDE], data[to*STRIDE+1]) & mask;
+			while(index[slot] != from + 1)
+				slot = (slot + 1) & mask;
+			index[slot] = to + 1;
+		}
+		
+		private boolean remove(long high, long low) {
+			int i = find(high, low);
+			if(i < 0)
+				return false;
+			removeAt(i);
+			return true;
+		}
+		
+		private void removeAt(int i) {
+			int last = size - 1;
+			if(i != last)
+				System.arraycopy(data, last*STRIDE, data, i*STRIDE, STRIDE);
+			size--;
+			index = null;
+			filterDirty = true;
+		}
+		
+		void truncate(int newSize) {
+			if(newSize >= size)
+				return;
+			size = newSize;
+			index = null;
+			filterDirty = true;
+		}
+		
 		/**
 		 * @return true when inserting, false when replacing
 		 */
-		private boolean add(PeerAddressDBItem toAdd) {
-			synchronized (this) {
-				PeerAddressDBItem[] current = items;
-				int idx = Arrays.asList(current).indexOf(toAdd);
-				if(idx >= 0) {
-					current[idx] = toAdd;
-					return false;
-				}
-				
-				PeerAddressDBItem[] newItems = Arrays.copyOf(current, current.length + 1);
-				newItems[newItems.length-1] = toAdd;
-				Collections.shuffle(Arrays.asList(newItems));
-
-				items = newItems;
-				
-				// bloom filter supports adding, only deletions need a rebuild.
-				BloomFilterBEP33 currentFilter = filter;
-				if(currentFilter != null)
-					synchronized (currentFilter) {
-						currentFilter.insert(toAdd.getInetAddress());
-					}
-				
-				
-				return true;
+		private boolean add(long high, long low, int port, int time) {
+			long meta = ((long) time << 32) | port;
+			
+			int existing = find(high, low);
+			if(existing >= 0) {
+				data[existing*STRIDE+2] = meta;
+				return false;
+			}
+			
+			if((size + 1) * STRIDE > data.length)
+				data = Arrays.copyOf(data, Math.max(STRIDE, data.length * 2));
+			
+			// inside-out shuffle: append, then swap with a random position
+			int i = size++;
+			int j = ThreadLocalRandom.current().nextInt(size);
+			if(j != i) {
+				System.arraycopy(data, j*STRIDE, data, i*STRIDE, STRIDE);
+				if(index != null)
+					indexMove(j, i);
 			}
+			data[j*STRIDE] = high;
+			data[j*STRIDE+1] = low;
+			data[j*STRIDE+2] = meta;
+			
+			if(index != null) {
+				if(size * 2 > index.length)
+					index = null;
+				else
+					indexPut(j);
+			}
+			
+			oldest = Math.min(oldest, time);
+			
+			// bloom filter supports adding, only deletions need a rebuild.
+			if(filter != null)
+				filter.insert(rawAddress(j));
+			
+			return true;
 		}
 		
-		PeerAddressDBItem[] snapshot() {
-			return items;
+		private byte[] rawAddress(int i) {
+			long high = data[i*STRIDE];
+			long low = data[i*STRIDE+1];
+			if(high == 0 && (low & 0xFFFFFFFF_00000000L) == IPV4_MAPPED_PREFIX) {
+				return ByteBuffer.allocate(4).putInt((int) low).array();
+			}
+			return ByteBuffer.allocate(16).putLong(high).putLong(low).array();
 		}
 		
-		boolean isEmpty() {
-			return items.length == 0;
+		PeerAddressDBItem item(int i) {
+			byte[] addr = rawAddress(i);
+			long meta = data[i*STRIDE+2];
+			byte[] ipPort = Arrays.copyOf(addr, addr.length + 2);
+			int port = (int) (meta & 0xFFFF);
+			ipPort[addr.length] = (byte) (port >> 8);
+			ipPort[addr.length + 1] = (byte) port;
+			long createdAt = EPOCH + TimeUnit.SECONDS.toMillis(meta >>> 32);
+			return new PeerAddressDBItem(ipPort, seeds, createdAt);
 		}
 		
 		public int size() {
-			return items.length;
+			synchronized (lock) {
+				return size;
+			}
 		}
 		
 		public Stream<PeerAddressDBItem> stream() {
+			PeerAddressDBItem[] items;
+			synchronized (lock) {
+				items = new PeerAddressDBItem[size];
+				for(int i=0;i<size;i++)
+					items[i] = item(i);
+			}
 			return Arrays.stream(items);
 		}
 		
-		private void invalidateFilters() {
-			filter = null;
-		}
-		
-		BloomFilterBEP33 getFilter() {
-			BloomFilterBEP33 f = filter;
-			if(f == null) {
-				f = filter = buildFilter();
+		/**
+		 * @return a copy of the scrape filter, the internal one keeps being updated
+		 */
+		BloomFilterBEP33 getFilter(long now) {
+			if(filter == null || (filterDirty && now - filterBuiltAt >= FILTER_REBUILD_INTERVAL)) {
+				filter = buildFilter();
+				filterDirty = false;
+				filterBuiltAt = now;
 			}
 			
-			return f;
+			return filter.clone();
 		}
 		
 		private BloomFilterBEP33 buildFilter() {
@@ -185,40 +383,45 @@ public class Database {
 			
 			BloomFilterBEP33 filter = new BloomFilterBEP33();
 
-			for (PeerAddressDBItem item : items) {
-				filter.insert(item.getInetAddress());
+			for (int i=0;i<size;i++) {
+				filter.insert(rawAddress(i));
 			}
 			
 			return filter;
 		}
 		
-		void expire() {
-			synchronized (this) {
-				long now = System.currentTimeMillis();
-				
-				PeerAddressDBItem[] items = this.items;
-				PeerAddressDBItem[] newItems = new PeerAddressDBItem[items.length];
-				
-				// don't remove all at once -> smears out new registrations on popular keys over time
-				int toRemove = DHTConstants.MAX_DB_ENTRIES_PER_KEY / 5;
-				
-				int insertPoint = 0;
-				
-				for(int i=0;i<items.length;i++) {
-					PeerAddressDBItem e = items[i];
-					if(toRemove == 0 || !e.expired(now))
-						newItems[insertPoint++] = e;
-					else
-						toRemove--;
-				}
-				
-				if(insertPoint != newItems.length) {
-					this.items = Arrays.copyOf(newItems, insertPoint);
-					invalidateFilters();
+		/**
+		 * @return number of removed items
+		 */
+		int expire(int now) {
+			int maxAge = (int) TimeUnit.MILLISECONDS.toSeconds(DHTConstants.MAX_ITEM_AGE);
+			
+			// cheap check, most sets don't have anything to expire
+			if(now - oldest < maxAge)
+				return 0;
+			
+			// don't remove all at once -> smears out new registrations on popular keys over time
+			int toRemove = DHTConstants.MAX_DB_ENTRIES_PER_KEY / 5;
+			int removed = 0;
+			int newOldest = Integer.MAX_VALUE;
+			
+			for(int i=0;i<size;) {
+				int time = (int) (data[i*STRIDE+2] >>> 32);
+				if(removed < toRemove && now - time >= maxAge) {
+					removeAt(i);
+					removed++;
+					continue;
 				}
-				
+				newOldest = Math.min(newOldest, time);
+				i++;
 			}
 			
+			oldest = newOldest;
+			
+			if(size == 0)
+				data = NO_DATA;
+			
+			return removed;
 		}
 	}
 
@@ -231,18 +434,34 @@ public class Database {
 	 *            The DBItem to store
 	 */
 	public void store(Key key, PeerAddressDBItem dbi) {
+		byte[] raw = dbi.getData();
+		ByteBuffer buf = ByteBuffer.wrap(raw);
+		long high;
+		long low;
+		if(raw.length == DHTtype.IPV4_DHT.ADDRESS_ENTRY_LENGTH) {
+			high = 0;
+			low = ItemSet.IPV4_MAPPED_PREFIX | (buf.getInt() & 0xFFFFFFFFL);
+		} else {
+			high = buf.getLong();
+			low = buf.getLong();
+		}
+		int port = buf.getShort() & 0xFFFF;
+		int now = toSeconds(System.currentTimeMillis());
 		
+		Shard shard = shardFor(key);
 		
-		PeersSeeds keyEntries = null;
-		
-		items.compute(key, (k, v) -> {
-			if(v != null) {
-				v.add(dbi);
-				return v;
+		synchronized (shard) {
+			PeersSeeds keyEntries = shard.items.get(key);
+			if(keyEntries == null) {
+				keyEntries = new PeersSeeds(shard);
+				shard.items.put(key, keyEntries);
 			}
 			
-			return new PeersSeeds(dbi.seed ? new PeerAddressDBItem[] {dbi} : ItemSet.NO_ITEMS , dbi.seed ? ItemSet.NO_ITEMS : new PeerAddressDBItem[] {dbi});
-		});
+			shard.itemCount += keyEntries.add(high, low, port, now, dbi.seed);
+			
+			if(shard.itemCount > shard.maxItems)
+				shard.evict();
+		}
 	}
 
 	/**
@@ -259,62 +478,62 @@ public class Database {
 	 *            The maximum number entries
 	 */
 	List<DBItem> sample(Key key, int max_entries, DHTtype forType, boolean preferPeers) {
-		PeersSeeds keyEntry = null;
-		PeerAddressDBItem[] seedSnapshot = null;
-		PeerAddressDBItem[] peerSnapshot = null;
-
-
-		keyEntry = items.get(key);
-		if(keyEntry == null)
-			return null;
-		
-		seedSnapshot = keyEntry.seeds.snapshot();
-		peerSnapshot = keyEntry.peers.snapshot();
-		
-		int lengthSum = peerSnapshot.length + seedSnapshot.length;
-		
-		if(lengthSum == 0)
-			return null;
-		
-		List<DBItem> peerlist = new ArrayList<>(Math.min(max_entries, lengthSum));
-		
-		preferPeers &= lengthSum > max_entries;
+		Shard shard = shardFor(key);
 		
-		PeerAddressDBItem[] source;
-		
-		if(preferPeers)
-			source = peerSnapshot;
-		else {
-			// proportional sampling
-			source = ThreadLocalRandom.current().nextInt(lengthSum) < peerSnapshot.length ? peerSnapshot : seedSnapshot;
+		synchronized (shard) {
+			PeersSeeds keyEntry = shard.items.get(key);
+			if(keyEntry == null)
+				return null;
+			
+			ItemSet seeds = keyEntry.seeds;
+			ItemSet peers = keyEntry.peers;
+			
+			int lengthSum = peers.size + seeds.size;
+			
+			if(lengthSum == 0)
+				return null;
+			
+			List<DBItem> peerlist = new ArrayList<>(Math.min(max_entries, lengthSum));
+			
+			preferPeers &= lengthSum > max_entries;
+			
+			ItemSet source;
+			
+			if(preferPeers)
+				source = peers;
+			else {
+				// proportional sampling
+				source = ThreadLocalRandom.current().nextInt(lengthSum) < peers.size ? peers : seeds;
+			}
+			
+			fill(peerlist, source, max_entries);
+			
+			source = source == peers ? seeds : peers;
+			
+			fill(peerlist, source, max_entries);
+			
+			return peerlist;
 		}
-		
-		fill(peerlist, source, max_entries);
-		
-		source = source == peerSnapshot ? seedSnapshot : peerSnapshot;
-		
-		fill(peerlist, source, max_entries);
-		
-		return peerlist;
 	}
 	
 	
-	static void fill(List<DBItem> target, PeerAddressDBItem[] source, int max) {
-		if(source.length == 0)
+	static void fill(List<DBItem> target, ItemSet source, int max) {
+		int length = source.size;
+		
+		if(length == 0)
 			return;
 		
-		if(source.length < max - target.size()) {
+		if(length < max - target.size()) {
 			// copy whole
-			for(int i=0;i<source.length;i++) {
-				target.add(source[i]);
+			for(int i=0;i<length;i++) {
+				target.add(source.item(i));
 			}
 		} else {
 			// sample random sublist
-			int offset = ThreadLocalRandom.current().nextInt(source.length);
+			int offset = ThreadLocalRandom.current().nextInt(length);
 			
-			for(int i=0;i<source.length && target.size() < max;i++) {
-				PeerAddressDBItem toInsert = source[(i+offset)%source.length];
-				target.add(toInsert);
+			for(int i=0;i<length && target.size() < max;i++) {
+				target.add(source.item((i+offset)%length));
 			}
 			
 		}
@@ -324,12 +543,18 @@ public class Database {
 	
 	BloomFilterBEP33 createScrapeFilter(Key key, boolean seedFilter)
 	{
-		PeersSeeds dbl = items.get(key);
+		Shard shard = shardFor(key);
 		
-		if (dbl == null)
-			return null;
-		
-		return seedFilter ? dbl.seeds.getFilter() : dbl.peers.getFilter();
+		synchronized (shard) {
+			PeersSeeds dbl = shard.items.get(key);
+			
+			if (dbl == null)
+				return null;
+			
+			long now = System.currentTimeMillis();
+			
+			return seedFilter ? dbl.seeds.getFilter(now) : dbl.peers.getFilter(now);
+		}
 	}
 
 	/**
@@ -340,14 +565,20 @@ public class Database {
 	 *            calculate it once)
 	 */
 	void expire(long now) {
+		int nowSeconds = toSeconds(now);
 		
-		for (PeersSeeds dbl : items.values())
+		for (Shard shard : shards)
 		{
-			dbl.expire();
+			synchronized (shard) {
+				for(Iterator<PeersSeeds> it = shard.items.values().iterator(); it.hasNext();) {
+					PeersSeeds dbl = it.next();
+					shard.itemCount -= dbl.expire(nowSeconds);
+					if(dbl.sizeUnlocked() == 0)
+						it.remove();
+				}
+			}
 		}
 		
-		items.entrySet().removeIf(e -> e.getValue().size() == 0);
-		
 		samples = null;
 		
 	}
@@ -358,17 +589,32 @@ public class Database {
 		if(currentSamples != null)
 			return ByteBuffer.wrap(currentSamples);
 		
-		List<Key> fullSet = items.keySet().stream().collect(Collectors.toCollection(ArrayList::new));
+		// reservoir sampling, avoids copying the whole key set
+		Key[] reservoir = new Key[MAX_SAMPLE_COUNT];
+		int seen = 0;
+		ThreadLocalRandom rnd = ThreadLocalRandom.current();
+		
+		for(Shard shard : shards) {
+			synchronized (shard) {
+				for(Key k : shard.items.keySet()) {
+					int slot = seen < MAX_SAMPLE_COUNT ? seen : rnd.nextInt(seen + 1);
+					if(slot < MAX_SAMPLE_COUNT)
+						reservoir[slot] = k;
+					seen++;
+				}
+			}
+		}
 		
-		Collections.shuffle(fullSet);
+		int size = Math.min(MAX_SAMPLE_COUNT, seen);
 		
-		int size = Math.min(MAX_SAMPLE_COUNT, fullSet.size());
+		List<Key> sampled = Arrays.asList(reservoir).subList(0, size);
+		Collections.shuffle(sampled);
 		
 		byte[] newSamples = new byte[size * 20];
 		
 		ByteBuffer buf = ByteBuffer.wrap(newSamples);
 		
-		fullSet.stream().limit(size).forEach(k -> {
+		sampled.forEach(k -> {
 			k.toBuffer(buf);
 		});
 		buf.flip();
@@ -382,11 +628,16 @@ public class Database {
 	
 	boolean insertForKeyAllowed(Key target)
 	{
-		PeersSeeds entries = items.get(target);
-		if(entries == null)
-			return true;
+		Shard shard = shardFor(target);
+		int size;
 		
-		int size = Math.max(entries.peers.size(), entries.seeds.size());
+		synchronized (shard) {
+			PeersSeeds entries = shard.items.get(target);
+			if(entries == null)
+				return true;
+			
+			size = Math.max(entries.peers.size, entries.seeds.size);
+		}
 
 		if(size < DHTConstants.MAX_DB_ENTRIES_PER_KEY / 5)
 			return true;
@@ -484,7 +735,13 @@ public class Database {
 	}
 	
 	public Map<Key, PeersSeeds> getData() {
-		return new HashMap<>(items);
+		Map<Key, PeersSeeds> data = new HashMap<>();
+		for(Shard shard : shards) {
+			synchronized (shard) {
+				data.putAll(shard.items);
+			}
+		}
+		return data;
 	}
 
 
@@ -498,13 +755,24 @@ public class Database {
 			
 			@Override
 			public int getKeyCount() {
-				// TODO Auto-generated method stub
-				return items.size();
+				int keys = 0;
+				for(Shard shard : shards) {
+					synchronized (shard) {
+						keys += shard.items.size();
+					}
+				}
+				return keys;
 			}
 			
 			@Override
 			public int getItemCount() {
-				return items.values().stream().mapToInt(PeersSeeds::size).sum();
+				int count = 0;
+				for(Shard shard : shards) {
+					synchronized (shard) {
+						count += shard.itemCount;
+					}
+				}
+				return count;
 			}
 		};
 	}
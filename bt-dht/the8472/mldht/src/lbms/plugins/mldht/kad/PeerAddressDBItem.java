@@ -35,6 +35,11 @@ public class PeerAddressDBItem extends DBItem {
 		seed = isSeed;
 	}
 	
+	PeerAddressDBItem(byte[] data, boolean isSeed, long createdAt) {
+		super(data, createdAt);
+		seed = isSeed;
+	}
+	
 	public void setVersion(byte[] ary) {
 		originatorVersion = ary;
 	}
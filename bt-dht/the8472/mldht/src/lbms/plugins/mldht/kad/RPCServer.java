@@ -6,7 +6,6 @@
 package lbms.plugins.mldht.kad;
 
 import static the8472.bencode.Utils.prettyPrint;
-import static the8472.utils.Functional.typedGet;
 
 import the8472.bencode.Tokenizer.BDecodingException;
 import the8472.bencode.Utils;
@@ -35,13 +34,11 @@ import lbms.plugins.mldht.utils.Selectable;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.SocketAddress;
 import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
-import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Collection;
@@ -82,7 +79,8 @@ public class RPCServer {
 	private ConcurrentMap<ByteWrapper, RPCCall>		calls;
 	private Queue<RPCCall>							call_queue;
 	private Queue<EnqueuedSend>						pipeline;
-	private volatile int							numReceived;
+	// incremented by concurrent readers
+	private final AtomicInteger						numReceived = new AtomicInteger();
 	private volatile int							numSent;
 	private int										port;
 	private Instant									startTime;
@@ -331,7 +329,7 @@ public class RPCServer {
 	 * @return the numReceived
 	 */
 	public int getNumReceived () {
-		return numReceived;
+		return numReceived.get();
 	}
 
 	/**
@@ -350,11 +348,12 @@ public class RPCServer {
 	
 	public void checkReachability(long now) {
 		// don't do pings too often if we're not receiving anything (connection might be dead)
-		if(numReceived != numReceivesAtLastCheck)
+		int received = numReceived.get();
+		if(received != numReceivesAtLastCheck)
 		{
 			isReachable = true;
 			timeOfLastReceiveCountChange = now;
-			numReceivesAtLastCheck = numReceived;
+			numReceivesAtLastCheck = received;
 		} else if(now - timeOfLastReceiveCountChange > DHTConstants.REACHABILITY_TIMEOUT)
 		{
 			isReachable = false;
@@ -366,29 +365,25 @@ public class RPCServer {
 		return isReachable;
 	}
 	
-	private void handlePacket (ByteBuffer p, SocketAddress soa) {
-		InetSocketAddress source = (InetSocketAddress) soa;
+	/**
+	 * Decodes a packet in place. Runs on the receiving thread, the buffer may be reused once this method returns.
+	 * 
+	 * @return the decoded message or null if the packet should be dropped
+	 */
+	private MessageBase decodePacket (ByteBuffer p, InetSocketAddress source, MessageDecoder dec) {
 		int rawLength = p.remaining();
 		
-		// ignore port 0, can't respond to them anyway and responses to requests from port 0 will be useless too
-		if(source.getPort() == 0)
-			return;
-
-
-
-		
-		Map<String, Object> bedata = null;
-		MessageBase msg = null;
-		
 		try {
-			bedata = ThreadLocalUtils.getDecoder().decode(p);
-			
 			try {
-				if (DHT.isLogLevelEnabled(LogLevel.Verbose)) {
-					DHT.logVerbose("received: " + Utils.prettyPrint(bedata) + " from: " + source + " length: "+rawLength );
+				return dec.parseMessage(p);
+			} finally {
+				try {
+					if (DHT.isLogLevelEnabled(LogLevel.Verbose)) {
+						DHT.logVerbose("received: " + dec.prettyPrint() + " from: " + source + " length: "+rawLength );
+					}
+				} catch (Exception e) {
+					DHT.log(e, LogLevel.Error);
 				}
-			} catch (Exception e) {
-				DHT.log(e, LogLevel.Error);
 			}
 		} catch(BDecodingException e) {
 			p.rewind();
@@ -396,39 +391,28 @@ public class RPCServer {
 			MessageBase err = new ErrorMessage(new byte[] {0,0,0,0}, ErrorCode.ProtocolError.code,"invalid bencoding: "+e.getMessage());
 			err.setDestination(source);
 			sendMessage(err);
-			return;
-		} catch(Exception e) {
-			DHT.log(e, LogLevel.Error);
-			p.rewind();
-			DHT.logError("unexpected error while bdecoding message  " + Utils.stripToAscii(p) + " (length:"+p.remaining()+") from: " + source + " reason:" + e.getMessage());
-			return;
-		}
-		
-		try {
-			MessageDecoder dec = new MessageDecoder((byte[] mtid) -> {
-				return Optional.ofNullable(findCall(mtid)).map(RPCCall::getMessageMethod);
-			}, dh_table.getType());
-			
-			p.rewind();
-			dec.toDecode(p, bedata);
-			msg = dec.parseMessage();
-		} catch(MessageException e)
-		{
-			byte[] mtid = typedGet(bedata, MessageBase.TRANSACTION_KEY, byte[].class).orElse(new byte[MTID_LENGTH]);
-			Method m = typedGet(bedata, MessageBase.Type.TYPE_KEY, byte[].class).map(b -> new String(b, StandardCharsets.ISO_8859_1)).map(MessageBase.messageMethod::get).orElse(Method.UNKNOWN);
+		} catch(MessageException e) {
+			byte[] mtid = dec.transactionId().orElse(new byte[MTID_LENGTH]);
+			Method m = dec.messageTypeMethod();
 			DHT.log(e.getMessage(), LogLevel.Debug);
 			ErrorMessage err = new ErrorMessage(mtid, e.errorCode.code,e.getMessage());
 			err.setDestination(source);
 			err.setMethod(m);
 			sendMessage(err);
-			return;
 		} catch(IOException e) {
 			DHT.log(e, LogLevel.Error);
+		} catch(Exception e) {
+			DHT.log(e, LogLevel.Error);
+			p.rewind();
+			DHT.logError("unexpected error while bdecoding message  " + Utils.stripToAscii(p) + " (length:"+p.remaining()+") from: " + source + " reason:" + e.getMessage());
+		} finally {
+			dec.reset();
 		}
 		
-		if(msg == null)
-			return;
-		
+		return null;
+	}
+	
+	private void handlePacket (MessageBase msg, InetSocketAddress source, int rawLength) {
 		if(DHT.isLogLevelEnabled(LogLevel.Debug))
 			DHT.logDebug("RPC received message from "+source.getAddress().getHostAddress() + ":" + source.getPort() +" | "+msg.toString()+ " length: "+rawLength );
 		stats.addReceivedMessageToCount(msg);
@@ -621,7 +605,7 @@ public class RPCServer {
 		
 		f.format("%s\tbind: %s consensus: %s%n", getDerivedID(), getBindAddress(), consensusExternalAddress);
 		f.format("rx: %d tx: %d active: %d baseRTT: %d loss: %f  loss (verified): %f uptime: %s%n",
-				numReceived, numSent, getNumActiveRPCCalls(), timeoutFilter.getStallTimeout(), unverifiedLossrate.getAverage(), verifiedEntryLossrate.getAverage() , age());
+				numReceived.get(), numSent, getNumActiveRPCCalls(), timeoutFilter.getStallTimeout(), unverifiedLossrate.getAverage(), verifiedEntryLossrate.getAverage() , age());
 		f.format("RTT stats (%dsamples) %s", timeoutFilter.getSampleCount(), timeoutFilter.getCurrentStats());
 
 		return f.toString();
@@ -647,9 +631,18 @@ public class RPCServer {
 		private static final int WRITE_STATE_AWAITING_NIO_NOTIFICATION = 3;
 		private static final int CLOSED = 4;
 		
+		// packets a worker may read in one go before yielding back to the selector
+		private static final int READ_BATCH_SIZE = 64;
+		
 		private final AtomicInteger writeState = new AtomicInteger(NOT_INITIALIZED);
 		NIOConnectionManager connectionManager;
 		
+		private final AtomicInteger activeReaders = new AtomicInteger();
+		
+		final ThreadLocal<MessageDecoder> decoders = ThreadLocal.withInitial(() -> new MessageDecoder((byte[] mtid) -> {
+			return Optional.ofNullable(findCall(mtid)).map(RPCCall::getMessageMethod);
+		}, dh_table.getType()));
+		
 		public SocketHandler() {
 
 		}
@@ -694,17 +687,56 @@ public class RPCServer {
 				dh_table.getScheduler().execute(this::writeEvent);
 			}
 			if(key.isValid() && key.isReadable())
-				readEvent();
+				dispatchReads();
 				
 		}
 		
+		void dispatchReads() throws IOException {
+			int readers = dh_table.getConfig().getReceiveThreads();
+			
+			if(readers <= 1) {
+				readEvent();
+				return;
+			}
+			
+			// stop selecting for reads while the workers drain the socket, the last one to finish re-enables it
+			if(!activeReaders.compareAndSet(0, readers))
+				return;
+			connectionManager.interestOpsChanged(this);
+			
+			for(int i=0;i<readers;i++)
+				dh_table.getScheduler().execute(this::parallelRead);
+		}
+		
+		void parallelRead() {
+			try {
+				receive(READ_BATCH_SIZE, true);
+			} catch (IOException e) {
+				if(channel.isOpen())
+					DHT.log(e, LogLevel.Error);
+			} finally {
+				if(activeReaders.decrementAndGet() == 0)
+					connectionManager.interestOpsChanged(this);
+			}
+		}
+		
 		void readEvent() throws IOException {
+			receive(Integer.MAX_VALUE, false);
+		}
+		
+		/**
+		 * Receives and decodes packets on the current thread.
+		 * Decoded messages are either handled right away or handed off to the scheduler.
+		 * Concurrent calls are safe, each thread uses its own buffer and decoder.
+		 */
+		void receive(int maxPackets, boolean handleInline) throws IOException {
 			
 			throttle.decay();
 			
 			ByteBuffer readBuffer = RPCServer.readBuffer.get();
+			MessageDecoder decoder = decoders.get();
 			
-			while(true)
+			for(int i=0;i<maxPackets;i++)
 			{
 				readBuffer.clear();
 				InetSocketAddress soa =  (InetSocketAddress) channel.receive(readBuffer);
@@ -720,14 +752,19 @@ public class RPCServer {
 				if(throttle.addAndTest(soa.getAddress()))
 					continue;
 				
-				// copy from the read buffer since we hand off to another thread
+				// decode straight from the read buffer, only the resulting message may be handed off to another thread
 				readBuffer.flip();
-				ByteBuffer buf = ByteBuffer.allocate(readBuffer.limit()).put(readBuffer);
-				buf.flip();
+				int rawLength = readBuffer.limit();
+				numReceived.incrementAndGet();
+				stats.addReceivedBytes(rawLength + dh_table.getType().HEADER_LENGTH);
 				
-				dh_table.getScheduler().execute(() -> {handlePacket(buf, soa);});
-				numReceived++;
-				stats.addReceivedBytes(buf.limit() + dh_table.getType().HEADER_LENGTH);
+				MessageBase msg = decodePacket(readBuffer, soa, decoder);
+				if(msg == null)
+					continue;
+				if(handleInline)
+					handlePacket(msg, soa, rawLength);
+				else
+					dh_table.getScheduler().execute(() -> {handlePacket(msg, soa, rawLength);});
 			}
 		}
 		
@@ -850,7 +887,7 @@ public class RPCServer {
 		}
 		
 		public int calcInterestOps() {
-			int ops = SelectionKey.OP_READ;
+			int ops = activeReaders.get() == 0 ? SelectionKey.OP_READ : 0;
 			if(writeState.get() == WRITE_STATE_AWAITING_NIO_NOTIFICATION)
 				ops |= SelectionKey.OP_WRITE;
 			return ops;
@@ -5,15 +5,10 @@
  ******************************************************************************/
 package lbms.plugins.mldht.kad.messages;
 
-import static the8472.bencode.Utils.prettyPrint;
-import static the8472.utils.Functional.castOrThrow;
-import static the8472.utils.Functional.tap;
-import static the8472.utils.Functional.tapThrow;
-import static the8472.utils.Functional.typedGet;
-
-import the8472.bencode.PathMatcher;
-import the8472.bencode.Tokenizer;
-import the8472.utils.Functional;
+import the8472.bencode.TokenIndex;
+import the8472.bencode.Tokenizer.BDecodingException;
+import the8472.bencode.Tokenizer.TokenType;
+import the8472.bencode.Utils;
 
 import lbms.plugins.mldht.kad.BloomFilterBEP33;
 import lbms.plugins.mldht.kad.DBItem;
@@ -28,63 +23,115 @@ import lbms.plugins.mldht.kad.messages.ErrorMessage.ErrorCode;
 import lbms.plugins.mldht.kad.messages.MessageBase.Method;
 import lbms.plugins.mldht.kad.messages.MessageBase.Type;
 import lbms.plugins.mldht.kad.utils.AddressUtils;
+import lbms.plugins.mldht.kad.utils.ThreadLocalUtils;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.function.Function;
-import java.util.stream.Stream;
 
 /**
+ * Decodes KRPC messages directly from the raw packet, using a flat {@link TokenIndex} instead of an intermediate map.
+ * Only the values that end up in the resulting message are copied out of the packet,
+ * so the packet buffer can be reused once {@link #parseMessage(ByteBuffer)} returns.
+ * 
+ * Instances are reusable but not thread-safe.
+ * 
  * @author Damokles
  * 
  */
 public class MessageDecoder {
 	
+	private static final byte[] TYPE_KEY = key(Type.TYPE_KEY);
+	private static final byte[] TRANSACTION_KEY = key(MessageBase.TRANSACTION_KEY);
+	private static final byte[] VERSION_KEY = key(MessageBase.VERSION_KEY);
+	private static final byte[] EXTERNAL_IP_KEY = key(MessageBase.EXTERNAL_IP_KEY);
+	private static final byte[] REQUEST_METHOD_KEY = key(Type.REQ_MSG.getRPCTypeName());
+	private static final byte[] REQUEST_ARGS_KEY = key(Type.REQ_MSG.innerKey());
+	private static final byte[] RESPONSE_ARGS_KEY = key(Type.RSP_MSG.innerKey());
+	private static final byte[] ERROR_KEY = key(Type.ERR_MSG.innerKey());
+	
+	private static final byte[] REQ_TYPE = key(Type.REQ_MSG.getRPCTypeName());
+	private static final byte[] RSP_TYPE = key(Type.RSP_MSG.getRPCTypeName());
+	private static final byte[] ERR_TYPE = key(Type.ERR_MSG.getRPCTypeName());
+	
+	private static final byte[] ID = key("id");
+	private static final byte[] TARGET = key("target");
+	private static final byte[] INFO_HASH = key("info_hash");
+	private static final byte[] TOKEN = key("token");
+	private static final byte[] NODES = key("nodes");
+	private static final byte[] NODES6 = key("nodes6");
+	private static final byte[] VALUES = key("values");
+	private static final byte[] WANT = key("want");
+	private static final byte[] WANT_N4 = key("n4");
+	private static final byte[] WANT_N6 = key("n6");
+	private static final byte[] NOSEED = key("noseed");
+	private static final byte[] SCRAPE = key("scrape");
+	private static final byte[] PORT = key("port");
+	private static final byte[] SEED = key("seed");
+	private static final byte[] NAME = key("name");
+	private static final byte[] PEER_FILTER = key("BFpe");
+	private static final byte[] SEED_FILTER = key("BFse");
+	private static final byte[] SAMPLES = key("samples");
+	private static final byte[] NUM = key("num");
+	private static final byte[] INTERVAL = key("interval");
+	private static final byte[] VALUE = key("v");
+	private static final byte[] PUBKEY = key("k");
+	private static final byte[] SIGNATURE = key("sig");
+	private static final byte[] SEQ = key("seq");
+	private static final byte[] CAS = key("cas");
+	private static final byte[] SALT = key("salt");
+	
+	private static byte[] key(String key) {
+		return key.getBytes(StandardCharsets.ISO_8859_1);
+	}
+	
 	public MessageDecoder(Function<byte[], Optional<Method>> transactionIdMapper, DHTtype type) {
 		this.transactionIdMapper = transactionIdMapper;
 		this.type = type;
 	}
 	
-	Map<String, Object> rootMap;
-	ByteBuffer raw;
+	final TokenIndex index = new TokenIndex();
 	final Function<byte[], Optional<Method>> transactionIdMapper;
 	final DHTtype type;
+	int root = TokenIndex.NONE;
 	
-	public void toDecode(ByteBuffer rawMessage, Map<String, Object> map) {
-		this.raw = rawMessage;
-		this.rootMap = map;
-	}
-
-	public MessageBase parseMessage() throws MessageException, IOException {
-
+	/**
+	 * @throws BDecodingException if the message is not valid bencoding or not a dictionary
+	 */
+	public MessageBase parseMessage(ByteBuffer rawMessage) throws MessageException, IOException {
+		index.index(rawMessage);
+		root = index.root();
+		if(!index.isType(root, TokenType.DICT)) {
+			index.reset();
+			root = TokenIndex.NONE;
+			throw new BDecodingException("expected dictionary as root object");
+		}
+		
 		try {
-			String msgType = getStringFromBytes((byte[]) rootMap.get(Type.TYPE_KEY), true);
-			if (msgType == null) {
+			int msgType = index.get(root, TYPE_KEY);
+			if (!index.isType(msgType, TokenType.STRING)) {
 				throw new MessageException("message type (y) missing", ErrorCode.ProtocolError);
 			}
 			
-			
-			Optional<byte[]> version = typedGet(rootMap, MessageBase.VERSION_KEY, byte[].class);
+			byte[] version = getBytes(root, VERSION_KEY);
 
 			MessageBase mb = null;
-			if (msgType.equals(Type.REQ_MSG.getRPCTypeName())) {
-				mb = parseRequest(rootMap, transactionIdMapper, type);
-			} else if (msgType.equals(Type.RSP_MSG.getRPCTypeName())) {
-				mb = parseResponse(rootMap, transactionIdMapper);
-			} else if (msgType.equals(Type.ERR_MSG.getRPCTypeName())) {
-				mb = parseError(rootMap, transactionIdMapper);
+			if (index.contentEquals(msgType, REQ_TYPE)) {
+				mb = parseRequest();
+			} else if (index.contentEquals(msgType, RSP_TYPE)) {
+				mb = parseResponse();
+			} else if (index.contentEquals(msgType, ERR_TYPE)) {
+				mb = parseError();
 			} else
-				throw new MessageException("unknown RPC type (y="+msgType+")");
+				throw new MessageException("unknown RPC type (y="+new String(index.bytes(msgType), StandardCharsets.ISO_8859_1)+")");
 
-			if (mb != null) {
-				version.ifPresent(mb::setVersion);
+			if (mb != null && version != null) {
+				mb.setVersion(version);
 			}
 
 			return mb;
@@ -94,87 +141,133 @@ public class MessageDecoder {
 			throw new IOException("could not parse message",e);
 		}
 	}
-
+	
+	/**
+	 * Release the reference to the last decoded packet.
+	 */
+	public void reset() {
+		index.reset();
+		root = TokenIndex.NONE;
+	}
+	
+	/**
+	 * @return transaction ID of the last decoded packet, if present. Useful for replying to messages, that could not be parsed.
+	 */
+	public Optional<byte[]> transactionId() {
+		return Optional.ofNullable(getBytes(root, TRANSACTION_KEY));
+	}
+	
+	/**
+	 * @return method, that corresponds to the message type of the last decoded packet
+	 */
+	public Method messageTypeMethod() {
+		byte[] msgType = getBytes(root, TYPE_KEY);
+		if(msgType == null)
+			return Method.UNKNOWN;
+		return Optional.ofNullable(MessageBase.messageMethod.get(new String(msgType, StandardCharsets.ISO_8859_1))).orElse(Method.UNKNOWN);
+	}
+	
 	/**
-	 * @param map
-	 * @return
+	 * @return human-readable representation of the last decoded packet
 	 */
-	private MessageBase parseError (Map<String, Object> map, Function<byte[], Optional<Method>> transactionIdMapper) {
-		Object error = map.get(Type.ERR_MSG.innerKey());
+	public String prettyPrint() {
+		if(root == TokenIndex.NONE)
+			return "";
+		return Utils.prettyPrint(ThreadLocalUtils.getDecoder().decode(index.encoded(root)));
+	}
+	
+	private byte[] getBytes(int dict, byte[] key) {
+		int value = index.get(dict, key);
+		return index.isType(value, TokenType.STRING) ? index.bytes(value) : null;
+	}
+	
+	private boolean hasKey(int dict, byte[] key) {
+		return index.get(dict, key) != TokenIndex.NONE;
+	}
+	
+	private boolean isOne(int dict, byte[] key) {
+		int value = index.get(dict, key);
+		return index.isType(value, TokenType.LONG) && index.longValue(value) == 1;
+	}
+	
+	private static String typeName(TokenType t) {
+		switch(t) {
+			case DICT:
+				return "HashMap";
+			case LIST:
+				return "ArrayList";
+			case LONG:
+				return "Long";
+			default:
+				return "byte[]";
+		}
+	}
+
+	private MessageBase parseError () {
+		int error = index.get(root, ERROR_KEY);
 		
 		int errorCode = 0;
 		String errorMsg = null;
 		
-		if(error instanceof byte[])
-			errorMsg = getStringFromBytes((byte[])error);
-		else if (error instanceof List<?>)
+		if(index.isType(error, TokenType.STRING))
+			errorMsg = getStringFromBytes(index.bytes(error));
+		else if (index.isType(error, TokenType.LIST))
 		{
-			List<Object> errmap = (List<Object>)error;
-			try
-			{
-				errorCode = ((Long) errmap.get(0)).intValue();
-				errorMsg = getStringFromBytes((byte[]) errmap.get(1));
-			} catch (Exception e)
-			{
-				// do nothing
+			int code = index.firstChild(error);
+			int message = code == TokenIndex.NONE ? TokenIndex.NONE : index.nextSibling(error, code);
+			if(index.isType(code, TokenType.LONG) && index.isType(message, TokenType.STRING)) {
+				errorCode = (int) index.longValue(code);
+				errorMsg = getStringFromBytes(index.bytes(message));
 			}
 		}
 		
-		Object rawMtid = map.get(MessageBase.TRANSACTION_KEY);
+		byte[] mtid = getBytes(root, TRANSACTION_KEY);
 		
-		if (errorMsg == null && (rawMtid == null || !(rawMtid instanceof byte[])))
+		if (errorMsg == null && mtid == null)
 			return null;
-
-		byte[] mtid = (byte[]) rawMtid;
 		
 		ErrorMessage msg = new ErrorMessage(mtid, errorCode,errorMsg);
 		
-		typedGet(map, "id", byte[].class).filter(b -> b.length == Key.SHA1_HASH_LENGTH).ifPresent(h -> msg.setID(new Key(h)));
+		int id = index.get(root, ID);
+		if(index.isType(id, TokenType.STRING) && index.length(id) == Key.SHA1_HASH_LENGTH)
+			msg.setID(new Key(index.bytes(id)));
 		
-		transactionIdMapper.apply(mtid).ifPresent(m -> msg.method = m);
+		if(mtid != null)
+			transactionIdMapper.apply(mtid).ifPresent(m -> msg.method = m);
 
 		return msg;
 	}
 
-	/**
-	 * @param map
-	 * @param srv
-	 * @return
-	 */
-	private MessageBase parseResponse (Map<String, Object> map,  Function<byte[], Optional<Method>> transactionIdMapper) throws MessageException {
+	private MessageBase parseResponse () throws MessageException {
 
-		byte[] mtid = (byte[]) map.get(MessageBase.TRANSACTION_KEY);
+		byte[] mtid = getBytes(root, TRANSACTION_KEY);
 		if (mtid == null || mtid.length < 1)
 			throw new MessageException("missing transaction ID",ErrorCode.ProtocolError);
 		
 		// responses don't have explicit methods, need to match them to a request to figure that one out
 		Method m = transactionIdMapper.apply(mtid).orElse(Method.UNKNOWN);
 
-		return parseResponse(map, m, mtid);
+		return parseResponse(m, mtid);
 	}
 
-	/**
-	 * @param map
-	 * @param msgMethod
-	 * @param mtid
-	 * @return
-	 */
-	private MessageBase parseResponse (Map<String, Object> map,	Method msgMethod, byte[] mtid) throws MessageException {
-		Map<String, Object> args = (Map<String, Object>) map.get(Type.RSP_MSG.innerKey());
-		if (args == null) {
+	private MessageBase parseResponse (Method msgMethod, byte[] mtid) throws MessageException {
+		int args = index.get(root, RESPONSE_ARGS_KEY);
+		if (!index.isType(args, TokenType.DICT)) {
 			throw new MessageException("response did not contain a body",ErrorCode.ProtocolError);
 		}
 
-		byte[] hash = Optional.ofNullable(args.get("id"))
-				.map(castOrThrow(byte[].class, (o) -> new MessageException("expected parameter 'id' to be a byte-string, got "+o.getClass().getSimpleName(), ErrorCode.ProtocolError)))
-				.orElseThrow(() -> new MessageException("mandatory parameter 'id' missing", ErrorCode.ProtocolError));
-		byte[] ip = (byte[]) map.get(MessageBase.EXTERNAL_IP_KEY);
-
-		if (hash.length != Key.SHA1_HASH_LENGTH) {
+		int idToken = index.get(args, ID);
+		if(idToken == TokenIndex.NONE)
+			throw new MessageException("mandatory parameter 'id' missing", ErrorCode.ProtocolError);
+		if(!index.isType(idToken, TokenType.STRING))
+			throw new MessageException("expected parameter 'id' to be a byte-string, got "+typeName(index.type(idToken)), ErrorCode.ProtocolError);
+		if (index.length(idToken) != Key.SHA1_HASH_LENGTH) {
 			throw new MessageException("invalid or missing origin ID",ErrorCode.ProtocolError);
 		}
+		
+		byte[] ip = getBytes(root, EXTERNAL_IP_KEY);
 
-		Key id = new Key(hash);
+		Key id = new Key(index.bytes(idToken));
 		
 		MessageBase msg = null;
 
@@ -189,20 +282,18 @@ public class MessageDecoder {
 			msg = new AnnounceResponse(mtid);
 			break;
 		case FIND_NODE:
-			if (!args.containsKey("nodes") && !args.containsKey("nodes6"))
+			if (!hasKey(args, NODES) && !hasKey(args, NODES6))
 				throw new MessageException("received response to find_node request with neither 'nodes' nor 'nodes6' entry", ErrorCode.ProtocolError);
-				//return null;
 			
-			msg = tapThrow(new FindNodeResponse(mtid), (m) -> {
-				extractNodes(args, "nodes", DHTtype.IPV4_DHT).ifPresent(n -> m.setNodes(n));
-				extractNodes(args, "nodes6", DHTtype.IPV6_DHT).ifPresent(n -> m.setNodes(n));
-			});
+			FindNodeResponse fnr = new FindNodeResponse(mtid);
+			setNodes(fnr, args);
+			msg = fnr;
 			break;
 		case SAMPLE_INFOHASHES:
-			if(!args.containsKey("nodes") && !args.containsKey("nodes6") && !args.containsKey("samples"))
+			if(!hasKey(args, NODES) && !hasKey(args, NODES6) && !hasKey(args, SAMPLES))
 				throw new MessageException("Expected at least one of the following keys to be present: nodes, nodes6, samples", ErrorCode.ProtocolError);
 			
-			byte[] samples = typedGet(args, "samples", byte[].class).orElse(null);
+			byte[] samples = getBytes(args, SAMPLES);
 			
 			if(samples != null && samples.length % 20 != 0)
 				throw new MessageException("samples length must be a multiple of 20", ErrorCode.ProtocolError);
@@ -212,11 +303,14 @@ public class MessageDecoder {
 			if(samples != null)
 				smp.samples = ByteBuffer.wrap(samples);
 			
-			typedGet(args, "num", Long.class).ifPresent(l -> smp.setNum(l.intValue()));
-			typedGet(args, "interval", Long.class).ifPresent(l -> smp.setInterval(l.intValue()));
-
-			extractNodes(args, "nodes", DHTtype.IPV4_DHT).ifPresent(smp::setNodes);
-			extractNodes(args, "nodes6", DHTtype.IPV6_DHT).ifPresent(smp::setNodes);
+			int num = index.get(args, NUM);
+			if(index.isType(num, TokenType.LONG))
+				smp.setNum((int) index.longValue(num));
+			int interval = index.get(args, INTERVAL);
+			if(index.isType(interval, TokenType.LONG))
+				smp.setInterval((int) index.longValue(interval));
+
+			setNodes(smp, args);
 			
 			msg = smp;
 			
@@ -225,61 +319,73 @@ public class MessageDecoder {
 			
 			GetResponse get = new GetResponse(mtid);
 			
-			extractNodes(args, "nodes", DHTtype.IPV4_DHT).ifPresent(get::setNodes);
-			extractNodes(args, "nodes6", DHTtype.IPV6_DHT).ifPresent(get::setNodes);
-			
-			PathMatcher m = new PathMatcher(Type.RSP_MSG.innerKey(),"v");
-			Tokenizer t = new Tokenizer();
-			m.tokenizer(t);
-			ByteBuffer rawVal = m.match(raw);
+			setNodes(get, args);
 			
-			get.setRawValue(rawVal);
-			
-			typedGet(args, "token", byte[].class).ifPresent(get::setToken);;
-			typedGet(args, "k", byte[].class).ifPresent(get::setKey);
-			typedGet(args, "sig", byte[].class).ifPresent(get::setSignature);
-			typedGet(args, "seq", Long.class).ifPresent(get::setSequenceNumber);
+			int rawVal = index.get(args, VALUE);
+			if(rawVal != TokenIndex.NONE) {
+				// copy, the message may outlive the packet buffer
+				ByteBuffer encoded = index.encoded(rawVal);
+				ByteBuffer copy = ByteBuffer.allocate(encoded.remaining());
+				copy.put(encoded);
+				copy.flip();
+				get.setRawValue(copy);
+			}
 			
+			byte[] getToken = getBytes(args, TOKEN);
+			if(getToken != null)
+				get.setToken(getToken);
+			byte[] key = getBytes(args, PUBKEY);
+			if(key != null)
+				get.setKey(key);
+			byte[] sig = getBytes(args, SIGNATURE);
+			if(sig != null)
+				get.setSignature(sig);
+			int seq = index.get(args, SEQ);
+			if(index.isType(seq, TokenType.LONG))
+				get.setSequenceNumber(index.longValue(seq));
 			
 			msg = get;
 			
 			break;
 		case GET_PEERS:
-			byte[] token = Functional.typedGet(args, "token", byte[].class).orElse(null);
-			Optional<NodeList> nodes = extractNodes(args, "nodes", DHTtype.IPV4_DHT);
-			Optional<NodeList> nodes6 = extractNodes(args, "nodes6", DHTtype.IPV6_DHT);
+			byte[] token = getBytes(args, TOKEN);
+			NodeList nodes = extractNodes(args, NODES, DHTtype.IPV4_DHT);
+			NodeList nodes6 = extractNodes(args, NODES6, DHTtype.IPV6_DHT);
 
-			
 			List<DBItem> dbl = null;
 			
-			@SuppressWarnings("unchecked")
-			List<byte[]> vals = Optional.ofNullable(args.get("values"))
-				.map(castOrThrow(List.class, val -> new MessageException("expected 'values' field in get_peers to be list of strings, got "+val.getClass(), ErrorCode.ProtocolError)))
-				.orElse(Collections.EMPTY_LIST);
+			int vals = index.get(args, VALUES);
+			if(vals != TokenIndex.NONE && !index.isType(vals, TokenType.LIST))
+				throw new MessageException("expected 'values' field in get_peers to be list of strings, got class "+typeName(index.type(vals)), ErrorCode.ProtocolError);
 
-			if(vals.size() > 0)
+			if(vals != TokenIndex.NONE && index.firstChild(vals) != TokenIndex.NONE)
 			{
-				dbl = new ArrayList<>(vals.size());
-				for (int i = 0; i < vals.size(); i++)
+				dbl = new ArrayList<>();
+				for (int i = index.firstChild(vals); i != TokenIndex.NONE; i = index.nextSibling(vals, i))
 				{
+					if(!index.isType(i, TokenType.STRING))
+						throw new MessageException("expected 'values' field in get_peers to be list of strings", ErrorCode.ProtocolError);
 					// only accept ipv4 or ipv6 for now
-					if (vals.get(i).length != DHTtype.IPV4_DHT.ADDRESS_ENTRY_LENGTH && vals.get(i).length != DHTtype.IPV6_DHT.ADDRESS_ENTRY_LENGTH)
+					int length = index.length(i);
+					if (length != DHTtype.IPV4_DHT.ADDRESS_ENTRY_LENGTH && length != DHTtype.IPV6_DHT.ADDRESS_ENTRY_LENGTH)
 						continue;
-					dbl.add(new PeerAddressDBItem(vals.get(i), false));
+					dbl.add(new PeerAddressDBItem(index.bytes(i), false));
 				}
 			}
 			
-			byte[] peerFilter = (byte[]) args.get("BFpe");
-			byte[] seedFilter = (byte[]) args.get("BFse");
+			byte[] peerFilter = getBytes(args, PEER_FILTER);
+			byte[] seedFilter = getBytes(args, SEED_FILTER);
 			
 			if((peerFilter != null && peerFilter.length != BloomFilterBEP33.m/8) || (seedFilter != null && seedFilter.length != BloomFilterBEP33.m/8))
 				throw new MessageException("invalid BEP33 filter length", ErrorCode.ProtocolError);
 			
-			if (dbl != null || nodes.isPresent() || nodes6.isPresent())
+			if (dbl != null || nodes != null || nodes6 != null)
 			{
 				GetPeersResponse resp = new GetPeersResponse(mtid);
-				nodes.ifPresent(l -> resp.setNodes(l));
-				nodes6.ifPresent(l -> resp.setNodes(l));
+				if(nodes != null)
+					resp.setNodes(nodes);
+				if(nodes6 != null)
+					resp.setNodes(nodes6);
 				resp.setPeerItems(dbl);
 				resp.setToken(token);
 				resp.setScrapePeers(peerFilter);
@@ -300,7 +406,7 @@ public class MessageDecoder {
 			InetSocketAddress addr = AddressUtils.unpackAddress(ip);
 			msg.setPublicIP(addr);
 			if(addr == null)
-				DHT.logError("could not decode IP: " + prettyPrint(map));
+				DHT.logError("could not decode IP: " + prettyPrint());
 		}
 		
 		msg.setID(id);
@@ -308,36 +414,45 @@ public class MessageDecoder {
 		return msg;
 	}
 	
-	private Optional<NodeList> extractNodes(Map<String, Object> args, String key, DHTtype nodesType) throws MessageException {
-		byte[] raw = typedGet(args, key, byte[].class).orElse(null);
+	private void setNodes(AbstractLookupResponse rsp, int args) throws MessageException {
+		NodeList nodes = extractNodes(args, NODES, DHTtype.IPV4_DHT);
+		if(nodes != null)
+			rsp.setNodes(nodes);
+		NodeList nodes6 = extractNodes(args, NODES6, DHTtype.IPV6_DHT);
+		if(nodes6 != null)
+			rsp.setNodes(nodes6);
+	}
+	
+	private NodeList extractNodes(int args, byte[] key, DHTtype nodesType) throws MessageException {
+		byte[] raw = getBytes(args, key);
 		if(raw == null)
-			return Optional.empty();
+			return null;
 		if(raw.length % nodesType.NODES_ENTRY_LENGTH != 0)
-			throw new MessageException("expected "+key+" length to be a multiple of "+nodesType.NODES_ENTRY_LENGTH+", received "+raw.length, ErrorCode.ProtocolError);
-		return Optional.of(NodeList.fromBuffer(ByteBuffer.wrap(raw), nodesType == DHTtype.IPV4_DHT ? AddressType.V4 : AddressType.V6));
+			throw new MessageException("expected "+new String(key, StandardCharsets.ISO_8859_1)+" length to be a multiple of "+nodesType.NODES_ENTRY_LENGTH+", received "+raw.length, ErrorCode.ProtocolError);
+		return NodeList.fromBuffer(ByteBuffer.wrap(raw), nodesType == DHTtype.IPV4_DHT ? AddressType.V4 : AddressType.V6);
 	}
 	
-	
-	/**
-	 * @param map
-	 * @return
-	 */
-	private MessageBase parseRequest (Map<String, Object> map,  Function<byte[], Optional<Method>> transactionIdMapper, DHTtype type) throws MessageException {
-		Object rawRequestMethod = map.get(Type.REQ_MSG.getRPCTypeName());
-		Map<String, Object> args = typedGet(map, Type.REQ_MSG.innerKey(), Map.class).orElseThrow(() -> new MessageException("expected a bencoded dictionary under key " + Type.REQ_MSG.innerKey(), ErrorCode.ProtocolError));
+	private MessageBase parseRequest () throws MessageException {
+		int rawRequestMethod = index.get(root, REQUEST_METHOD_KEY);
+		int args = index.get(root, REQUEST_ARGS_KEY);
+		if(!index.isType(args, TokenType.DICT))
+			throw new MessageException("expected a bencoded dictionary under key " + Type.REQ_MSG.innerKey(), ErrorCode.ProtocolError);
 		
-		if (rawRequestMethod == null || args == null)
+		if (!index.isType(rawRequestMethod, TokenType.STRING))
 			return null;
 
-		byte[] mtid = Functional.typedGet(map, MessageBase.TRANSACTION_KEY, byte[].class).filter(tid -> tid.length > 0).orElseThrow(() -> new MessageException("missing or zero-length transaction ID in request", ErrorCode.ProtocolError));
-		byte[] hash = Functional.typedGet(args,"id", byte[].class).filter(id -> id.length == Key.SHA1_HASH_LENGTH).orElseThrow(() -> new MessageException("missing or invalid node ID", ErrorCode.ProtocolError));
+		byte[] mtid = getBytes(root, TRANSACTION_KEY);
+		if(mtid == null || mtid.length == 0)
+			throw new MessageException("missing or zero-length transaction ID in request", ErrorCode.ProtocolError);
+		byte[] hash = getBytes(args, ID);
+		if(hash == null || hash.length != Key.SHA1_HASH_LENGTH)
+			throw new MessageException("missing or invalid node ID", ErrorCode.ProtocolError);
 		
 		Key id = new Key(hash);
 
 		MessageBase msg = null;
 
-		String requestMethod = getStringFromBytes((byte[]) rawRequestMethod, true);
-		
+		String requestMethod = getStringFromBytes(index.bytes(rawRequestMethod), true);
 		
 		Method method = Optional.ofNullable(MessageBase.messageMethod.get(requestMethod)).orElse(Method.UNKNOWN);
 		
@@ -351,11 +466,14 @@ public class MessageDecoder {
 			case SAMPLE_INFOHASHES:
 			case UNKNOWN:
 				
-				hash = Stream.of(args.get("target"), args.get("info_hash")).filter(byte[].class::isInstance).findFirst().map(byte[].class::cast).orElseThrow(() -> {
+				hash = getBytes(args, TARGET);
+				if(hash == null)
+					hash = getBytes(args, INFO_HASH);
+				if(hash == null) {
 					if(method == Method.UNKNOWN)
-						return new MessageException("Received unknown Message Type: " + requestMethod,ErrorCode.MethodUnknown);
-					return new MessageException("missing/invalid target key in request",ErrorCode.ProtocolError);
-				});
+						throw new MessageException("Received unknown Message Type: " + requestMethod,ErrorCode.MethodUnknown);
+					throw new MessageException("missing/invalid target key in request",ErrorCode.ProtocolError);
+				}
 				
 				if (hash.length != Key.SHA1_HASH_LENGTH) {
 					throw new MessageException("invalid target key in request",ErrorCode.ProtocolError);
@@ -382,12 +500,18 @@ public class MessageDecoder {
 						req = new UnknownTypeRequest(target);
 				}
 				
-				@SuppressWarnings("unchecked")
-				List<byte[]> explicitWants = Optional.ofNullable(args.get("want")).map(castOrThrow(List.class, w -> new MessageException("invalid 'want' parameter, expected a list of byte-strings"))).orElse(null);
+				int explicitWants = index.get(args, WANT);
+				if(explicitWants != TokenIndex.NONE && !index.isType(explicitWants, TokenType.LIST))
+					throw new MessageException("invalid 'want' parameter, expected a list of byte-strings");
 						
-				if(explicitWants != null)
-					req.decodeWant(explicitWants);
-				else {
+				if(explicitWants != TokenIndex.NONE) {
+					for (int i = index.firstChild(explicitWants); i != TokenIndex.NONE; i = index.nextSibling(explicitWants, i)) {
+						if(index.contentEquals(i, WANT_N4))
+							req.setWant4(true);
+						else if(index.contentEquals(i, WANT_N6))
+							req.setWant6(true);
+					}
+				} else {
 					req.setWant4(type == DHTtype.IPV4_DHT);
 					req.setWant6(type == DHTtype.IPV6_DHT);
 				}
@@ -396,15 +520,15 @@ public class MessageDecoder {
 				if (req instanceof GetPeersRequest)
 				{
 					GetPeersRequest peerReq = (GetPeersRequest) req;
-					peerReq.setNoSeeds(Long.valueOf(1).equals(args.get("noseed")));
-					peerReq.setScrape(Long.valueOf(1).equals(args.get("scrape")));
+					peerReq.setNoSeeds(isOne(args, NOSEED));
+					peerReq.setScrape(isOne(args, SCRAPE));
 				}
 				
 				if(req instanceof GetRequest) {
 					GetRequest getReq = (GetRequest) req;
-					typedGet(args, "seq", Long.class).ifPresent(seq -> {
-						getReq.setSeq(seq);
-					});
+					int seq = index.get(args, SEQ);
+					if(index.isType(seq, TokenType.LONG))
+						getReq.setSeq(index.longValue(seq));
 				}
 				
 				msg = req;
@@ -412,29 +536,35 @@ public class MessageDecoder {
 				break;
 			case PUT:
 				
-				PathMatcher m = new PathMatcher(Type.REQ_MSG.innerKey(),"v");
-				Tokenizer t = new Tokenizer();
-				m.tokenizer(t);
-				ByteBuffer rawVal = m.match(raw);
-				
-				msg = tapThrow(new PutRequest(), put -> {
-					if(rawVal != null)
-						put.setValue(rawVal);
-					put.pubkey = Functional.typedGet(args, "k", byte[].class).orElse(null);
-					put.sequenceNumber = Functional.typedGet(args, "seq", Long.class).orElse(-1L);
-					put.expectedSequenceNumber = Functional.typedGet(args, "cas", Long.class).orElse(-1L);
-					put.salt = Functional.typedGet(args, "salt", byte[].class).filter(b -> b.length > 0).orElse(null);
-					put.signature = Functional.typedGet(args, "sig", byte[].class).orElse(null);
-					put.token = Functional.typedGet(args, "token", byte[].class).filter(b -> b.length > 0).orElseThrow(() -> new MessageException("missing or invalid token in PUT request"));
-					put.validate();
-				});
+				PutRequest put = new PutRequest();
+				int rawVal = index.get(args, VALUE);
+				if(rawVal != TokenIndex.NONE)
+					put.setValue(index.encoded(rawVal));
+				put.pubkey = getBytes(args, PUBKEY);
+				int seq = index.get(args, SEQ);
+				put.sequenceNumber = index.isType(seq, TokenType.LONG) ? index.longValue(seq) : -1L;
+				int cas = index.get(args, CAS);
+				put.expectedSequenceNumber = index.isType(cas, TokenType.LONG) ? index.longValue(cas) : -1L;
+				byte[] salt = getBytes(args, SALT);
+				put.salt = salt != null && salt.length > 0 ? salt : null;
+				put.signature = getBytes(args, SIGNATURE);
+				byte[] putToken = getBytes(args, TOKEN);
+				if(putToken == null || putToken.length == 0)
+					throw new MessageException("missing or invalid token in PUT request");
+				put.token = putToken;
+				put.validate();
+				msg = put;
 				break;
 			case ANNOUNCE_PEER:
 				
-				hash = Functional.typedGet(args, "info_hash", byte[].class).filter(b -> b.length == Key.SHA1_HASH_LENGTH).orElse(null);
-				int port = Functional.typedGet(args, "port", Long.class).filter(p -> p > 0 && p <= 65535).orElse(0L).intValue();
-				byte[] token = Functional.typedGet(args, "token", byte[].class).orElse(null);
-				boolean isSeed = Long.valueOf(1).equals(args.get("seed"));
+				hash = getBytes(args, INFO_HASH);
+				if(hash != null && hash.length != Key.SHA1_HASH_LENGTH)
+					hash = null;
+				int portToken = index.get(args, PORT);
+				long portValue = index.isType(portToken, TokenType.LONG) ? index.longValue(portToken) : 0L;
+				int port = portValue > 0 && portValue <= 65535 ? (int) portValue : 0;
+				byte[] token = getBytes(args, TOKEN);
+				boolean isSeed = isOne(args, SEED);
 				
 				if(hash == null || token == null || port == 0)
 					throw new MessageException("missing or invalid mandatory arguments (info_hash, port, token) for announce", ErrorCode.ProtocolError);
@@ -443,10 +573,12 @@ public class MessageDecoder {
 
 				Key infoHash = new Key(hash);
 
-				msg = tap(new AnnounceRequest(infoHash, port, token), ar -> {
-					ar.setSeed(isSeed);
-					typedGet(args, "name", byte[].class).ifPresent(b -> ar.setName(ByteBuffer.wrap(b)));
-				});
+				AnnounceRequest ar = new AnnounceRequest(infoHash, port, token);
+				ar.setSeed(isSeed);
+				byte[] name = getBytes(args, NAME);
+				if(name != null)
+					ar.setName(ByteBuffer.wrap(name));
+				msg = ar;
 
 				break;
 		}
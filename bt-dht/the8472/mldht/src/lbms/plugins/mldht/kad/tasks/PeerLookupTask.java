@@ -7,6 +7,7 @@ package lbms.plugins.mldht.kad.tasks;
 
 import java.net.InetSocketAddress;
 import java.util.Collection;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -14,6 +15,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static java.lang.Math.min;
@@ -53,6 +55,7 @@ public class PeerLookupTask extends IteratingTask {
 	private Map<KBucketEntry, byte[]>		announceCanidates;
 	private ScrapeResponseHandler			scrapeHandler;
 	BiConsumer<KBucketEntry, PeerAddressDBItem>				resultHandler = (x,y) -> {};
+	Consumer<List<PeerAddressDBItem>>						batchResultHandler = x -> {};
 	
 	private Set<PeerAddressDBItem>			returnedItems;
 	
@@ -87,6 +90,13 @@ public class PeerLookupTask extends IteratingTask {
 		resultHandler = handler;
 	}
 	
+	/**
+	 * handler is invoked once per response with all peers returned by the responding node
+	 */
+	public void setBatchResultHandler(Consumer<List<PeerAddressDBItem>> handler) {
+		batchResultHandler = handler;
+	}
+	
 	public void setNoSeeds(boolean avoidSeeds) {
 		noSeeds = avoidSeeds;
 	}
@@ -148,6 +158,7 @@ public class PeerLookupTask extends IteratingTask {
 		todo.addCandidates(match, returnedNodes);
 		
 		List<DBItem> items = gpr.getPeerItems();
+		List<PeerAddressDBItem> batch = new ArrayList<>(items.size());
 		//if(items.size() > 0)
 		//	System.out.println("unique:"+new HashSet<DBItem>(items).size()+" all:"+items.size()+" ver:"+gpr.getVersion()+" entries:"+items);
 		for (DBItem item : items)
@@ -159,11 +170,15 @@ public class PeerLookupTask extends IteratingTask {
 			if(!AddressUtils.isBogon(it)) {
 				resultHandler.accept(match, it);
 				returnedItems.add(it);
+				batch.add(it);
 			}
 				
 			
 		}
 		
+		if (!batch.isEmpty())
+			batchResultHandler.accept(batch);
+		
 		if(returnedItems.size() > 0 && firstResultTime == 0)
 			firstResultTime = System.currentTimeMillis();
 
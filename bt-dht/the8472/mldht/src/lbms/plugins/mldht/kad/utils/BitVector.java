@@ -52,13 +52,14 @@ public final class BitVector {
 		int byteIdx = bitOffset/8;
 		while(baseShift >= 0)
 		{
-			result |= vector[byteIdx] << baseShift;
+			result |= (vector[byteIdx] & 0xFF) << baseShift;
 			byteIdx++;
 			baseShift -= 8;
 		}
 		
-		if(baseShift < 0)
-			result |= vector[byteIdx] >>> Math.abs(baseShift);
+		// bytes must not be sign-extended, otherwise high bits of the result are smeared with ones
+		if(baseShift < 0 && baseShift > -8)
+			result |= (vector[byteIdx] & 0xFF) >>> Math.abs(baseShift);
 		
 		result &= 0xFFFFFFFF >>> 32 - numOfBits;
 		
@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ ******************************************************************************/
+package the8472.bencode;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import the8472.bencode.Tokenizer.BDecodingException;
+import the8472.bencode.Tokenizer.Token;
+import the8472.bencode.Tokenizer.TokenConsumer;
+import the8472.bencode.Tokenizer.TokenType;
+
+/**
+ * Flat index of all values in a bencoded message, built from {@link Tokenizer} events.
+ * 
+ * Unlike {@link BDecoder} it does not build any intermediate object tree. Values are identified by their index
+ * (in order of appearance) and are read from the input buffer on demand, which must not be modified while the index is in use.
+ * 
+ * Instances are reusable but not thread-safe, after warm-up indexing a message does not allocate.
+ */
+public class TokenIndex implements TokenConsumer {
+	
+	public static final int NONE = -1;
+	
+	private static final TokenType[] TYPES = TokenType.values();
+	
+	private final Tokenizer tokenizer = new Tokenizer();
+	
+	private ByteBuffer buf;
+	private int count;
+	
+	private byte[] types = new byte[64];
+	// for strings start and end delimit the content, encodedStart points to the length prefix
+	private int[] starts = new int[64];
+	private int[] encodedStarts = new int[64];
+	private int[] ends = new int[64];
+	// index of the first token after the subtree rooted at the given token
+	private int[] subtreeEnds = new int[64];
+	private long[] numbers = new long[64];
+	
+	private final int[] stack = new int[256];
+	private int depth;
+	private int prefixStart;
+	
+	public TokenIndex() {
+		tokenizer.consumer(this);
+	}
+	
+	/**
+	 * Index the message, starting at the current position of the buffer.
+	 * 
+	 * @throws BDecodingException if the message is not valid bencoding
+	 */
+	public void index(ByteBuffer buf) {
+		reset();
+		this.buf = buf;
+		try {
+			tokenizer.inputBuffer(buf);
+			tokenizer.tokenize();
+		} catch (RuntimeException e) {
+			reset();
+			throw e;
+		} finally {
+			tokenizer.reset();
+		}
+	}
+	
+	/**
+	 * Release the reference to the input buffer.
+	 */
+	public void reset() {
+		buf = null;
+		count = 0;
+		depth = 0;
+	}
+	
+	@Override
+	public void push(Token st) {
+		TokenType type = st.type();
+		if(type == TokenType.PREFIXED_STRING) {
+			prefixStart = st.start;
+			return;
+		}
+		
+		if(count == types.length)
+			grow();
+		
+		int idx = count++;
+		types[idx] = (byte) type.ordinal();
+		starts[idx] = st.start;
+		encodedStarts[idx] = type == TokenType.STRING ? prefixStart : st.start;
+		stack[depth++] = idx;
+	}
+	
+	@Override
+	public void pop(Token st) {
+		if(st.type() == TokenType.PREFIXED_STRING)
+			return;
+		
+		int idx = stack[--depth];
+		ends[idx] = st.end;
+		subtreeEnds[idx] = count;
+		if(st.type() == TokenType.LONG)
+			numbers[idx] = tokenizer.lastDecodedNum();
+	}
+	
+	private void grow() {
+		int size = types.length * 2;
+		types = Arrays.copyOf(types, size);
+		starts = Arrays.copyOf(starts, size);
+		encodedStarts = Arrays.copyOf(encodedStarts, size);
+		ends = Arrays.copyOf(ends, size);
+		subtreeEnds = Arrays.copyOf(subtreeEnds, size);
+		numbers = Arrays.copyOf(numbers, size);
+	}
+	
+	/**
+	 * @return index of the root value, or {@link #NONE} if nothing has been indexed
+	 */
+	public int root() {
+		return count > 0 ? 0 : NONE;
+	}
+	
+	public TokenType type(int token) {
+		return TYPES[types[token]];
+	}
+	
+	public boolean isType(int token, TokenType type) {
+		return token != NONE && types[token] == type.ordinal();
+	}
+	
+	/**
+	 * @return index of the first element of a list or the first key of a dictionary, {@link #NONE} if it's empty
+	 */
+	public int firstChild(int container) {
+		int child = container + 1;
+		return child < subtreeEnds[container] ? child : NONE;
+	}
+	
+	/**
+	 * @return index of the next element in the same container, {@link #NONE} if there are no more elements
+	 */
+	public int nextSibling(int container, int token) {
+		int next = subtreeEnds[token];
+		return next < subtreeEnds[container] ? next : NONE;
+	}
+	
+	/**
+	 * @return index of the value, that is mapped to the given key in the dictionary, or {@link #NONE} if there is no such key
+	 */
+	public int get(int dict, byte[] key) {
+		if(dict == NONE || types[dict] != TokenType.DICT.ordinal())
+			return NONE;
+		for(int k = firstChild(dict); k != NONE;) {
+			int v = nextSibling(dict, k);
+			if(v == NONE)
+				return NONE;
+			if(contentEquals(k, key))
+				return v;
+			k = nextSibling(dict, v);
+		}
+		return NONE;
+	}
+	
+	/**
+	 * @return true if the token is a string with the given content
+	 */
+	public boolean contentEquals(int token, byte[] value) {
+		if(types[token] != TokenType.STRING.ordinal() || ends[token] - starts[token] != value.length)
+			return false;
+		int offset = starts[token];
+		for(int i=0;i<value.length;i++) {
+			if(buf.get(offset + i) != value[i])
+				return false;
+		}
+		return true;
+	}
+	
+	public long longValue(int token) {
+		return numbers[token];
+	}
+	
+	public int length(int token) {
+		return ends[token] - starts[token];
+	}
+	
+	/**
+	 * @return copy of the string's content
+	 */
+	public byte[] bytes(int token) {
+		byte[] result = new byte[ends[token] - starts[token]];
+		ByteBuffer dup = buf.duplicate();
+		dup.limit(ends[token]).position(starts[token]);
+		dup.get(result);
+		return result;
+	}
+	
+	/**
+	 * @return view of the complete bencoded representation of the value, backed by the input buffer
+	 */
+	public ByteBuffer encoded(int token) {
+		ByteBuffer dup = buf.duplicate();
+		dup.limit(ends[token]).position(encodedStarts[token]);
+		return dup.slice();
+	}
+
+}
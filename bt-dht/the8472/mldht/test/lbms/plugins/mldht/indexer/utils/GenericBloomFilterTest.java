@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ ******************************************************************************/
+package lbms.plugins.mldht.indexer.utils;
+
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class GenericBloomFilterTest {
+	
+	static ByteBuffer key(int i) {
+		// bytes with the high bit set are used as well
+		return ByteBuffer.wrap(new byte[] {(byte) (i >> 24), (byte) (i >> 16), (byte) (i >> 8), (byte) i, (byte) 0xFF});
+	}
+	
+	@Test
+	public void falsePositiveRate() {
+		// k = 6 hashes, ~2% false positives when full
+		GenericBloomFilter filter = new GenericBloomFilter(1 << 16, 1 << 13);
+		
+		for(int i=0;i<1 << 13;i++)
+			filter.insert(key(i));
+		for(int i=0;i<1 << 13;i++)
+			assertTrue(filter.probablyContains(key(i)));
+		
+		int falsePositives = 0;
+		int tests = 20_000;
+		for(int i=0;i<tests;i++) {
+			if(filter.probablyContains(key(Integer.MIN_VALUE + i * 997)))
+				falsePositives++;
+		}
+		
+		assertTrue("false positives: " + falsePositives, falsePositives < tests * 0.04);
+	}
+	
+	@Test
+	public void populationEstimate() {
+		GenericBloomFilter filter = new GenericBloomFilter(1 << 16, 1 << 13);
+		for(int i=0;i<1000;i++)
+			filter.insert(key(i + 0x80_00_00_00));
+		
+		double estimate = filter.populationEstimate();
+		assertTrue("estimate: " + estimate, estimate > 900 && estimate < 1100);
+	}
+
+}
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ ******************************************************************************/
+package lbms.plugins.mldht.kad;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import lbms.plugins.mldht.kad.DHT.DHTtype;
+
+public class DatabaseTest {
+	
+	static PeerAddressDBItem peer(int i, int port, boolean seed) throws Exception {
+		return PeerAddressDBItem.createFromAddress(InetAddress.getByAddress(new byte[] {10, 0, (byte) (i >> 8), (byte) i}), port, seed);
+	}
+	
+	@Test
+	public void storeReplaceAndSample() throws Exception {
+		Database db = new Database();
+		Key k = Key.createRandomKey();
+		
+		for(int i=0;i<100;i++)
+			db.store(k, peer(i, 1000 + i, false));
+		// same IPs re-announce as seeds with a different port -> moved, not duplicated
+		for(int i=0;i<30;i++)
+			db.store(k, peer(i, 2000 + i, true));
+		
+		assertEquals(100, db.getStats().getItemCount());
+		assertEquals(1, db.getStats().getKeyCount());
+		
+		List<DBItem> all = db.sample(k, 200, DHTtype.IPV4_DHT, false);
+		assertEquals(100, all.size());
+		
+		Set<InetAddress> seen = new HashSet<>();
+		for(DBItem it : all) {
+			PeerAddressDBItem item = (PeerAddressDBItem) it;
+			int i = item.getData()[3] & 0xFF;
+			assertTrue(seen.add(item.getInetAddress()));
+			assertEquals(item.isSeed() ? 2000 + i : 1000 + i, item.getPort());
+			assertEquals(i < 30, item.isSeed());
+		}
+		
+		assertEquals(50, db.sample(k, 50, DHTtype.IPV4_DHT, true).size());
+	}
+	
+	@Test
+	public void scrapeFilterMatchesContents() throws Exception {
+		Database db = new Database();
+		Key k = Key.createRandomKey();
+		BloomFilterBEP33 expected = new BloomFilterBEP33();
+		
+		for(int i=0;i<50;i++) {
+			PeerAddressDBItem item = peer(i, 1000, true);
+			db.store(k, item);
+			expected.insert(item.getInetAddress());
+		}
+		
+		assertArrayEquals(expected.serialize(), db.createScrapeFilter(k, true).serialize());
+		
+		// incremental insert into an existing filter
+		PeerAddressDBItem late = peer(500, 1000, true);
+		db.store(k, late);
+		expected.insert(late.getInetAddress());
+		assertArrayEquals(expected.serialize(), db.createScrapeFilter(k, true).serialize());
+	}
+	
+	@Test
+	public void evictsWhenFull() throws Exception {
+		Database db = new Database(64 * 20);
+		
+		for(int i=0;i<50;i++) {
+			Key k = Key.createRandomKey();
+			for(int j=0;j<200;j++)
+				db.store(k, peer(j, 1000, false));
+		}
+		
+		assertTrue(db.getStats().getItemCount() <= 64 * 20);
+		assertTrue(db.getStats().getItemCount() > 0);
+	}
+	
+	@Test
+	public void evictsFromLargestSwarms() throws Exception {
+		Database db = new Database(64 * 20);
+		
+		Key large = Key.createRandomKey();
+		List<Key> small = new ArrayList<>();
+		// keys of the same shard
+		while(small.size() < 10) {
+			Key k = Key.createRandomKey();
+			if((k.hashCode() & 63) == (large.hashCode() & 63))
+				small.add(k);
+		}
+		
+		for(Key k : small)
+			db.store(k, peer(0, 1000, false));
+		for(int i=0;i<200;i++)
+			db.store(large, peer(i, 1000, false));
+		
+		for(Key k : small)
+			assertEquals(1, db.sample(k, 10, DHTtype.IPV4_DHT, false).size());
+		int remaining = db.sample(large, 200, DHTtype.IPV4_DHT, false).size();
+		assertTrue(remaining > 0);
+		assertTrue(remaining <= 20 - small.size());
+	}
+
+}
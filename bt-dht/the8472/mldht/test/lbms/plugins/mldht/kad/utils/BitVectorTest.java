@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ ******************************************************************************/
+package lbms.plugins.mldht.kad.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BitVectorTest {
+	
+	static void assertRangesMatch(byte[] data) {
+		BitVector bv = new BitVector(data.length * 8, data);
+		BigInteger reference = new BigInteger(1, data);
+		
+		for(int numOfBits=1;numOfBits<=32;numOfBits++) {
+			for(int offset=0;offset + numOfBits <= data.length * 8;offset++) {
+				int expected = reference.shiftRight(data.length * 8 - offset - numOfBits).intValue() & (int) ((1L << numOfBits) - 1);
+				assertEquals("offset " + offset + ", bits " + numOfBits, expected, bv.rangeToInt(offset, numOfBits));
+			}
+		}
+	}
+	
+	@Test
+	public void rangeToIntWithHighBitBytes() {
+		byte[] ones = new byte[20];
+		Arrays.fill(ones, (byte) 0xFF);
+		assertRangesMatch(ones);
+		
+		byte[] highBits = new byte[20];
+		Arrays.fill(highBits, (byte) 0x80);
+		assertRangesMatch(highBits);
+		
+		// high bit bytes next to low bit bytes, sign extension would smear ones into the result
+		byte[] alternating = new byte[20];
+		for(int i=0;i<alternating.length;i++)
+			alternating[i] = (byte) (i % 2 == 0 ? 0x01 : 0xF0);
+		assertRangesMatch(alternating);
+	}
+	
+	@Test
+	public void rangeToIntWithRandomBytes() {
+		Random random = new Random(0);
+		for(int i=0;i<10;i++) {
+			byte[] data = new byte[20];
+			random.nextBytes(data);
+			assertRangesMatch(data);
+		}
+	}
+
+}
@@ -10,7 +10,6 @@ import static org.junit.Assert.assertTrue;
 import static the8472.bencode.Utils.hex2ary;
 import static the8472.bencode.Utils.str2ary;
 
-import the8472.bencode.BDecoder;
 
 import lbms.plugins.mldht.kad.DHT.DHTtype;
 import lbms.plugins.mldht.kad.GenericStorage;
@@ -69,10 +68,8 @@ public class Bep44 {
 		req.encode(encoded);
 		
 		// decode
-		Map<String, Object> decoded = new BDecoder().decode(encoded.duplicate());
 		MessageDecoder decoder = new MessageDecoder(null, DHTtype.IPV4_DHT);
-		decoder.toDecode(encoded, decoded);
-		PutRequest roundTripped = (PutRequest) decoder.parseMessage();
+		PutRequest roundTripped = (PutRequest) decoder.parseMessage(encoded);
 		
 		// re-create item from round-tripped message
 		return new StorageItem(roundTripped);
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ ******************************************************************************/
+package the8472.test.bencode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static the8472.bencode.Utils.buf2str;
+import static the8472.bencode.Utils.str2ary;
+import static the8472.bencode.Utils.str2buf;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import the8472.bencode.TokenIndex;
+import the8472.bencode.Tokenizer.TokenType;
+
+public class TokenIndexTest {
+	
+	TokenIndex index;
+	
+	@Before
+	public void setup() {
+		this.index = new TokenIndex();
+	}
+	
+	@Test
+	public void lookupByKey() {
+		index.index(str2buf("d1:ad1:bi-3ee1:cl2:xy1:ze1:d4:abcde"));
+		
+		int root = index.root();
+		assertTrue(index.isType(root, TokenType.DICT));
+		
+		int a = index.get(root, str2ary("a"));
+		assertTrue(index.isType(a, TokenType.DICT));
+		assertEquals(-3L, index.longValue(index.get(a, str2ary("b"))));
+		
+		// keys of nested dictionaries are not visible from the root
+		assertEquals(TokenIndex.NONE, index.get(root, str2ary("b")));
+		
+		int c = index.get(root, str2ary("c"));
+		int first = index.firstChild(c);
+		int second = index.nextSibling(c, first);
+		assertTrue(index.contentEquals(first, str2ary("xy")));
+		assertArrayEquals(str2ary("z"), index.bytes(second));
+		assertEquals(TokenIndex.NONE, index.nextSibling(c, second));
+		
+		assertEquals(4, index.length(index.get(root, str2ary("d"))));
+	}
+	
+	@Test
+	public void encodedValueIncludesPrefix() {
+		index.index(str2buf("d1:v12:Hello World!1:wli1eee"));
+		
+		int root = index.root();
+		ByteBuffer v = index.encoded(index.get(root, str2ary("v")));
+		assertEquals("12:Hello World!", buf2str(v));
+		ByteBuffer w = index.encoded(index.get(root, str2ary("w")));
+		assertEquals("li1ee", buf2str(w));
+	}
+
+}
@@ -22,6 +22,7 @@ import bt.net.Peer;
 import bt.peer.IPeerRegistry;
 import bt.protocol.crypto.EncryptionPolicy;
 import bt.service.IdentityService;
+import bt.tracker.ScrapeData;
 import bt.tracker.SecretKey;
 import bt.tracker.Tracker;
 import bt.tracker.TrackerRequestBuilder;
@@ -39,7 +40,15 @@ import java.net.InetAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -56,7 +65,15 @@ public class HttpTracker implements Tracker {
         START, STOP, COMPLETE, QUERY
     }
 
+    /**
+     * HTTP scrape requests are not limited by the protocol,
+     * but the number of info hashes in a single request should be reasonably small,
+     * so that the length of the request URL does not exceed the limits of most HTTP servers.
+     */
+    private static final int MAX_TORRENTS_PER_SCRAPE_REQUEST = 50;
+
     private URI baseUri;
+    private Optional<String> scrapeUrl;
     private IdentityService idService;
     private IPeerRegistry peerRegistry;
     private EncryptionPolicy encryptionPolicy;
@@ -77,22 +94,69 @@ public class HttpTracker implements Tracker {
                        EncryptionPolicy encryptionPolicy,
                        InetAddress localAddress,
                        int numberOfPeersToRequestFromTracker) {
+        this(trackerUrl, idService, peerRegistry, encryptionPolicy, buildClient(localAddress),
+                numberOfPeersToRequestFromTracker);
+    }
+
+    /**
+     * @param trackerUrl Tracker URL
+     * @param idService Identity service
+     * @param httpClient HTTP client, that may be shared by several trackers
+     *                   (so that connections to the same host can be reused)
+     * @since 1.8
+     */
+    public HttpTracker(String trackerUrl,
+                       IdentityService idService,
+                       IPeerRegistry peerRegistry,
+                       EncryptionPolicy encryptionPolicy,
+                       HttpClient httpClient,
+                       int numberOfPeersToRequestFromTracker) {
         try {
             this.baseUri = new URI(trackerUrl);
         } catch (URISyntaxException e) {
             throw new BtException("Invalid URL: " + trackerUrl, e);
         }
+        this.scrapeUrl = buildScrapeUrl(baseUri);
 
         this.idService = idService;
         this.peerRegistry = peerRegistry;
         this.encryptionPolicy = encryptionPolicy;
         this.numberOfPeersToRequestFromTracker = numberOfPeersToRequestFromTracker;
-        this.httpClient = buildClient(localAddress);
+        this.httpClient = httpClient;
         this.httpResponseHandler = new CommonsHttpResponseHandler(new bt.tracker.http.HttpResponseHandler());
 
         this.trackerIds = new ConcurrentHashMap<>();
     }
 
+    /**
+     * Per BEP-48, scrape URL is derived from the announce URL by replacing "announce"
+     * in the last path segment with "scrape". If the last path segment does not start with "announce",
+     * then the tracker does not support scrape.
+     */
+    private static Optional<String> buildScrapeUrl(URI announceUri) {
+        String path = announceUri.getRawPath();
+        if (path == null) {
+            return Optional.empty();
+        }
+        int lastSegmentIndex = path.lastIndexOf('/') + 1;
+        if (!path.startsWith("announce", lastSegmentIndex)) {
+            return Optional.empty();
+        }
+
+        StringBuilder buf = new StringBuilder();
+        buf.append(announceUri.getScheme());
+        buf.append("://");
+        buf.append(announceUri.getRawAuthority());
+        buf.append(path, 0, lastSegmentIndex);
+        buf.append("scrape");
+        buf.append(path, lastSegmentIndex + "announce".length(), path.length());
+        if (announceUri.getRawQuery() != null) {
+            buf.append("?");
+            buf.append(announceUri.getRawQuery());
+        }
+        return Optional.of(buf.toString());
+    }
+
     private static HttpClient buildClient(InetAddress localAddress) {
         HttpClient client = HttpClients.createMinimal();
         client.getParams().setParameter(ConnRouteParams.LOCAL_ADDRESS, localAddress);
@@ -155,6 +219,72 @@ public class HttpTracker implements Tracker {
         }
     }
 
+    @Override
+    public boolean isScrapeSupported() {
+        return scrapeUrl.isPresent();
+    }
+
+    /**
+     * Batches are executed sequentially in the calling thread. Failed batches are skipped,
+     * and the resulting future completes exceptionally only if all batches have failed.
+     */
+    @Override
+    public CompletableFuture<Map<TorrentId, ScrapeData>> scrape(Collection<TorrentId> torrentIds) {
+        if (!scrapeUrl.isPresent()) {
+            return Tracker.super.scrape(torrentIds);
+        }
+
+        List<TorrentId> ids = new ArrayList<>(new LinkedHashSet<>(torrentIds));
+        if (ids.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptyMap());
+        }
+
+        Map<TorrentId, ScrapeData> result = new HashMap<>();
+        Exception error = null;
+        int batches = 0;
+        int failed = 0;
+        for (int from = 0; from < ids.size(); from += MAX_TORRENTS_PER_SCRAPE_REQUEST) {
+            List<TorrentId> batch = ids.subList(from, Math.min(ids.size(), from + MAX_TORRENTS_PER_SCRAPE_REQUEST));
+            batches++;
+            try {
+                result.putAll(sendScrape(batch));
+            } catch (Exception e) {
+                LOGGER.warn("Scrape request failed for tracker: " + this, e);
+                error = e;
+                failed++;
+            }
+        }
+
+        CompletableFuture<Map<TorrentId, ScrapeData>> future = new CompletableFuture<>();
+        if (failed == batches) {
+            future.completeExceptionally(error);
+        } else {
+            future.complete(result);
+        }
+        return future;
+    }
+
+    private Map<TorrentId, ScrapeData> sendScrape(List<TorrentId> torrentIds) throws IOException {
+        StringBuilder buf = new StringBuilder(scrapeUrl.get());
+        buf.append(baseUri.getRawQuery() == null ? "?" : "&");
+        for (int i = 0; i < torrentIds.size(); i++) {
+            if (i > 0) {
+                buf.append("&");
+            }
+            buf.append("info_hash=");
+            buf.append(urlEncode(torrentIds.get(i).getBytes()));
+        }
+        String requestUri = buf.toString();
+
+        if (LOGGER.isDebugEnabled()) {
+            final String query = baseUri.getQuery();
+            final String maskedRequestUri = query == null ? requestUri : requestUri.replace(query, "{hidden}");
+            LOGGER.debug("Executing tracker HTTP scrape request for " + torrentIds.size() +
+                    " torrents; request URL: " + maskedRequestUri);
+        }
+        return httpClient.execute(new HttpGet(requestUri), new ScrapeResponseHandler(torrentIds));
+    }
+
     private String buildQuery(TrackerRequestType eventType, TrackerRequestBuilder requestBuilder) throws Exception {
         StringBuilder buf = new StringBuilder();
 
@@ -19,12 +19,18 @@ package bt.tracker.http;
 import bt.peer.IPeerRegistry;
 import bt.protocol.crypto.EncryptionPolicy;
 import bt.runtime.Config;
+import bt.service.IRuntimeLifecycleBinder;
 import bt.service.IdentityService;
 import bt.tracker.Tracker;
 import bt.tracker.TrackerFactory;
 import com.google.inject.Inject;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
 
+import java.io.IOException;
 import java.net.InetAddress;
+import java.time.Duration;
 
 /**
  * Creates HTTP tracker clients.
@@ -36,21 +42,50 @@ public class HttpTrackerFactory implements TrackerFactory {
     private IdentityService idService;
     private IPeerRegistry peerRegistry;
     private EncryptionPolicy encryptionPolicy;
-    private InetAddress localAddress;
     private int numberOfPeersToRequestFromTracker;
+    private CloseableHttpClient httpClient;
 
     @Inject
-    public HttpTrackerFactory(IdentityService idService, IPeerRegistry peerRegistry, Config config) {
+    public HttpTrackerFactory(IdentityService idService,
+                              IPeerRegistry peerRegistry,
+                              Config config,
+                              IRuntimeLifecycleBinder lifecycleBinder) {
         this.idService = idService;
         this.peerRegistry = peerRegistry;
         this.encryptionPolicy = config.getEncryptionPolicy();
-        this.localAddress = config.getAcceptorAddress();
         this.numberOfPeersToRequestFromTracker = config.getNumberOfPeersToRequestFromTracker();
+        this.httpClient = buildClient(config.getAcceptorAddress(), config.getMaxConcurrentTrackerRequests(),
+                config.getTrackerRequestTimeout());
+
+        lifecycleBinder.onShutdown("Shutdown HTTP tracker client", () -> {
+            try {
+                httpClient.close();
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to close HTTP client", e);
+            }
+        });
+    }
+
+    // all trackers share a single pooled client, so that connections to the same host are reused;
+    // requests are executed in a bounded pool of threads, so unresponsive trackers must not block them for long
+    private static CloseableHttpClient buildClient(InetAddress localAddress, int maxConnections, Duration timeout) {
+        int timeoutMillis = (int) Math.min(Integer.MAX_VALUE, timeout.toMillis());
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setLocalAddress(localAddress)
+                .setConnectTimeout(timeoutMillis)
+                .setSocketTimeout(timeoutMillis)
+                .setConnectionRequestTimeout(timeoutMillis)
+                .build();
+        return HttpClients.custom()
+                .setDefaultRequestConfig(requestConfig)
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnections)
+                .build();
     }
 
     @Override
     public Tracker getTracker(String trackerUrl) {
-        return new HttpTracker(trackerUrl, idService, peerRegistry, encryptionPolicy, localAddress,
+        return new HttpTracker(trackerUrl, idService, peerRegistry, encryptionPolicy, httpClient,
                 numberOfPeersToRequestFromTracker);
     }
 }
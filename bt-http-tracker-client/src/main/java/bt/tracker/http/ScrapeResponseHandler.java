@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.tracker.http;
+
+import bt.BtException;
+import bt.bencoding.BEParser;
+import bt.bencoding.model.BEInteger;
+import bt.bencoding.model.BEMap;
+import bt.bencoding.model.BEObject;
+import bt.bencoding.model.BEString;
+import bt.metainfo.TorrentId;
+import bt.tracker.ScrapeData;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Handles responses to scrape requests in the format, that is described in BEP-48.
+ *
+ * @since 1.8
+ */
+class ScrapeResponseHandler implements ResponseHandler<Map<TorrentId, ScrapeData>> {
+
+    private static final String FAILURE_REASON_KEY = "failure reason";
+    private static final String FILES_KEY = "files";
+    private static final String COMPLETE_KEY = "complete";
+    private static final String DOWNLOADED_KEY = "downloaded";
+    private static final String INCOMPLETE_KEY = "incomplete";
+
+    private static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
+
+    private final List<TorrentId> torrentIds;
+
+    /**
+     * @param torrentIds Torrents, that were requested
+     * @since 1.8
+     */
+    ScrapeResponseHandler(List<TorrentId> torrentIds) {
+        this.torrentIds = torrentIds;
+    }
+
+    @Override
+    public Map<TorrentId, ScrapeData> handleResponse(HttpResponse response) throws IOException {
+        StatusLine statusLine = response.getStatusLine();
+        HttpEntity entity = response.getEntity();
+        if (statusLine.getStatusCode() >= 300) {
+            EntityUtils.consumeQuietly(entity);
+            throw new BtException("Tracker returned error (" + statusLine.getStatusCode() + ": "
+                    + statusLine.getReasonPhrase() + ")");
+        } else if (entity == null) {
+            throw new BtException("Tracker response is empty");
+        }
+        return handleResponse(EntityUtils.toByteArray(entity));
+    }
+
+    /**
+     * @since 1.8
+     */
+    Map<TorrentId, ScrapeData> handleResponse(byte[] bytes) {
+        BEMap root;
+        try (BEParser parser = new BEParser(bytes)) {
+            root = parser.readMap();
+        } catch (Exception e) {
+            throw new BtException("Failed to parse scrape response", e);
+        }
+
+        Map<String, BEObject<?>> responseMap = root.getValue();
+        BEObject<?> failureReason = responseMap.get(FAILURE_REASON_KEY);
+        if (failureReason instanceof BEString) {
+            throw new BtException("Tracker returned failure: " + ((BEString) failureReason).getValue(DEFAULT_CHARSET));
+        }
+
+        BEObject<?> files = responseMap.get(FILES_KEY);
+        if (!(files instanceof BEMap)) {
+            throw new BtException("Invalid scrape response format: missing '" + FILES_KEY + "' dictionary");
+        }
+
+        try {
+            return readFiles(((BEMap) files).getContent());
+        } catch (Exception e) {
+            throw new BtException("Invalid scrape response format", e);
+        }
+    }
+
+    /**
+     * Info hashes are binary strings, that can't be decoded unambiguously into dictionary keys,
+     * so the entries are read directly from the binary representation of the dictionary.
+     */
+    private Map<TorrentId, ScrapeData> readFiles(byte[] content) {
+        Set<TorrentId> requested = new HashSet<>(torrentIds);
+        Map<TorrentId, ScrapeData> result = new HashMap<>((int) (torrentIds.size() / 0.75f) + 1);
+
+        int position = 1; // skip dictionary prefix
+        while (content[position] != 'e') {
+            int delimiter = position;
+            while (content[delimiter] != ':') {
+                delimiter++;
+            }
+            int keyLength = Integer.parseInt(new String(content, position, delimiter - position, DEFAULT_CHARSET));
+            int keyOffset = delimiter + 1;
+            position = keyOffset + keyLength;
+
+            BEObject<?> entry;
+            try (BEParser parser = new BEParser(ByteBuffer.wrap(content, position, content.length - position))) {
+                entry = readObject(parser);
+            }
+            position += entry.getContent().length;
+
+            if (keyLength == TorrentId.length() && entry instanceof BEMap) {
+                TorrentId torrentId = TorrentId.fromBytes(Arrays.copyOfRange(content, keyOffset, keyOffset + keyLength));
+                if (requested.contains(torrentId)) {
+                    Map<String, BEObject<?>> entryMap = ((BEMap) entry).getValue();
+                    result.put(torrentId, new ScrapeData(
+                            readInt(entryMap, COMPLETE_KEY),
+                            readInt(entryMap, DOWNLOADED_KEY),
+                            readInt(entryMap, INCOMPLETE_KEY)));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static BEObject<?> readObject(BEParser parser) {
+        switch (parser.readType()) {
+            case STRING: {
+                return parser.readString();
+            }
+            case INTEGER: {
+                return parser.readInteger();
+            }
+            case LIST: {
+                return parser.readList();
+            }
+            case MAP: {
+                return parser.readMap();
+            }
+            default: {
+                throw new IllegalStateException("Unknown type: " + parser.readType().name().toLowerCase());
+            }
+        }
+    }
+
+    private static int readInt(Map<String, BEObject<?>> map, String key) {
+        BEObject<?> value = map.get(key);
+        // possible truncation of integer values is not a problem
+        return (value instanceof BEInteger) ? ((BEInteger) value).getValue().intValue() : 0;
+    }
+}
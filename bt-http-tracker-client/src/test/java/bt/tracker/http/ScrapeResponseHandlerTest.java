@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.tracker.http;
+
+import bt.BtException;
+import bt.metainfo.TorrentId;
+import bt.tracker.ScrapeData;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class ScrapeResponseHandlerTest {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    @Test
+    public void handleResponse_BinaryInfoHashes() throws Exception {
+        // both info hashes are invalid UTF-8 sequences
+        TorrentId id1 = torrentId((byte) 0x80);
+        TorrentId id2 = torrentId((byte) 0xFE);
+        TorrentId unknown = torrentId((byte) 0x01);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write("d5:filesd".getBytes(ASCII));
+        writeEntry(out, id1, "d8:completei5e10:downloadedi50e10:incompletei10ee");
+        writeEntry(out, id2, "d8:completei1ee");
+        out.write("ee".getBytes(ASCII));
+
+        Map<TorrentId, ScrapeData> result = new ScrapeResponseHandler(Arrays.asList(id1, id2, unknown))
+                .handleResponse(out.toByteArray());
+
+        assertEquals(2, result.size());
+        assertData(result.get(id1), 5, 50, 10);
+        assertData(result.get(id2), 1, 0, 0);
+        assertFalse(result.containsKey(unknown));
+    }
+
+    @Test(expected = BtException.class)
+    public void handleResponse_Failure() {
+        new ScrapeResponseHandler(Arrays.asList(torrentId((byte) 0x01)))
+                .handleResponse("d14:failure reason6:deniede".getBytes(ASCII));
+    }
+
+    private static void writeEntry(ByteArrayOutputStream out, TorrentId torrentId, String entry) throws Exception {
+        out.write("20:".getBytes(ASCII));
+        out.write(torrentId.getBytes());
+        out.write(entry.getBytes(ASCII));
+    }
+
+    private static void assertData(ScrapeData data, int seeders, int completed, int leechers) {
+        assertEquals(seeders, data.getSeederCount());
+        assertEquals(completed, data.getCompletedCount());
+        assertEquals(leechers, data.getLeecherCount());
+    }
+
+    private static TorrentId torrentId(byte b) {
+        byte[] bytes = new byte[20];
+        Arrays.fill(bytes, b);
+        return TorrentId.fromBytes(bytes);
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bt.bencoding;
+
+import bt.bencoding.model.BEInteger;
+import bt.bencoding.model.BEList;
+import bt.bencoding.model.BEMap;
+import bt.bencoding.model.BEObject;
+import bt.bencoding.model.BEString;
+import the8472.bencode.BDecoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.ToIntFunction;
+
+/**
+ * Compares the stream-based and the buffer-based parser backends with the mldht decoder on real-world documents.
+ * Each iteration decodes the whole document.
+ * Not a unit test; run manually with {@code main}.
+ */
+public class BEParserBenchmark {
+
+    private static final int WARMUP_MILLIS = 3_000;
+    private static final int MEASURE_MILLIS = 5_000;
+
+    public static void main(String[] args) throws IOException {
+        run("single_file.torrent", readResource("/bt/metainfo/single_file.torrent"));
+        run("multi_file.torrent", readResource("/bt/metainfo/multi_file.torrent"));
+        run("KRPC get_peers response", krpcGetPeersResponse());
+    }
+
+    private static void run(String name, byte[] document) {
+        ToIntFunction<byte[]> stream = bs -> {
+            try (BEParser parser = new BEParser(new ByteArrayInputStream(bs))) {
+                return walk(parser.readMap());
+            }
+        };
+        ToIntFunction<byte[]> buffer = bs -> {
+            try (BEParser parser = new BEParser(ByteBuffer.wrap(bs))) {
+                return walk(parser.readMap());
+            }
+        };
+        // decoder instances are reused by mldht (one per thread)
+        BDecoder decoder = new BDecoder();
+        ToIntFunction<byte[]> mldht = bs -> walk(decoder.decode(ByteBuffer.wrap(bs)));
+
+        // all backends must see the same document
+        int expected = stream.applyAsInt(document);
+        if (buffer.applyAsInt(document) != expected || mldht.applyAsInt(document) != expected) {
+            throw new IllegalStateException("Backends disagree on document: " + name);
+        }
+
+        double streamNanos = measure(stream, document);
+        double bufferNanos = measure(buffer, document);
+        double mldhtNanos = measure(mldht, document);
+        System.out.printf("%-25s %7d bytes | stream: %10.0f ns/op | buffer: %10.0f ns/op | mldht: %10.0f ns/op" +
+                        " | buffer speedup: %.1fx (vs stream), %.1fx (vs mldht)%n",
+                name, document.length, streamNanos, bufferNanos, mldhtNanos,
+                streamNanos / bufferNanos, mldhtNanos / bufferNanos);
+    }
+
+    /**
+     * Visits every node of the document, so that lazily decoded values are materialized.
+     *
+     * @return Number of containers and integers plus the total length of strings and dictionary keys
+     */
+    private static int walk(BEObject<?> object) {
+        switch (object.getType()) {
+            case MAP: {
+                int result = 1;
+                for (Map.Entry<String, BEObject<?>> entry : ((BEMap) object).getValue().entrySet()) {
+                    result += entry.getKey().length() + walk(entry.getValue());
+                }
+                return result;
+            }
+            case LIST: {
+                int result = 1;
+                for (BEObject<?> element : ((BEList) object).getValue()) {
+                    result += walk(element);
+                }
+                return result;
+            }
+            case STRING: {
+                return ((BEString) object).getValue().length;
+            }
+            case INTEGER: {
+                ((BEInteger) object).getValue();
+                return 1;
+            }
+            default: {
+                throw new IllegalArgumentException("Unexpected type: " + object.getType());
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int walk(Object object) {
+        if (object instanceof Map) {
+            int result = 1;
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) object).entrySet()) {
+                result += entry.getKey().length() + walk(entry.getValue());
+            }
+            return result;
+        } else if (object instanceof List) {
+            int result = 1;
+            for (Object element : (List<Object>) object) {
+                result += walk(element);
+            }
+            return result;
+        } else if (object instanceof byte[]) {
+            return ((byte[]) object).length;
+        } else if (object instanceof Long) {
+            return 1;
+        } else {
+            throw new IllegalArgumentException("Unexpected object: " + object);
+        }
+    }
+
+    private static double measure(ToIntFunction<byte[]> parser, byte[] document) {
+        int blackhole = 0;
+        long deadline = System.currentTimeMillis() + WARMUP_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            blackhole += parser.applyAsInt(document);
+        }
+
+        long ops = 0;
+        long start = System.nanoTime();
+        deadline = System.currentTimeMillis() + MEASURE_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            for (int i = 0; i < 100; i++) {
+                blackhole += parser.applyAsInt(document);
+            }
+            ops += 100;
+        }
+        long elapsed = System.nanoTime() - start;
+
+        if (blackhole == 42) {
+            System.out.print("");
+        }
+        return (double) elapsed / ops;
+    }
+
+    private static byte[] readResource(String name) throws IOException {
+        try (InputStream in = BEParserBenchmark.class.getResourceAsStream(name)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int read;
+            while ((read = in.read(buf)) != -1) {
+                out.write(buf, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Typical DHT get_peers response: 8 compact IPv4 nodes and 50 peer values
+     */
+    private static byte[] krpcGetPeersResponse() throws IOException {
+        Charset ascii = Charset.forName("ASCII");
+        Random random = new Random(0);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        out.write("d1:rd2:id20:".getBytes(ascii));
+        out.write(randomBytes(random, 20));
+        out.write("5:nodes208:".getBytes(ascii));
+        out.write(randomBytes(random, 208));
+        out.write("5:token8:".getBytes(ascii));
+        out.write(randomBytes(random, 8));
+        out.write("6:valuesl".getBytes(ascii));
+        for (int i = 0; i < 50; i++) {
+            out.write("6:".getBytes(ascii));
+            out.write(randomBytes(random, 6));
+        }
+        out.write("ee1:t6:".getBytes(ascii));
+        out.write(randomBytes(random, 6));
+        out.write("1:v4:".getBytes(ascii));
+        out.write(randomBytes(random, 4));
+        out.write("1:y1:re".getBytes(ascii));
+
+        byte[] document = out.toByteArray();
+        // sanity check
+        BEMap map = new BEParser(document).readMap();
+        if (map.getValue().size() != 4) {
+            throw new IllegalStateException("Malformed KRPC payload");
+        }
+        return document;
+    }
+
+    private static byte[] randomBytes(Random random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -25,6 +25,7 @@ import bt.tracker.AnnounceKey;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -64,12 +65,21 @@ public class ChunkDescriptorTestUtil {
         return storageUnit;
     }
 
+    private static byte[] concat(byte[][] arrays) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] array : arrays) {
+            out.write(array, 0, array.length);
+        }
+        return out.toByteArray();
+    }
+
     public static Torrent mockTorrent(String name, long size, long chunkSize, byte[][] chunkHashes, TorrentFile... files) {
         Torrent torrent = mock(Torrent.class);
 
         when(torrent.getTorrentId()).thenReturn(fromName(name));
         when(torrent.getName()).thenReturn(name);
         when(torrent.getChunkHashes()).thenReturn(Arrays.asList(chunkHashes));
+        when(torrent.getConcatenatedChunkHashes()).thenReturn(concat(chunkHashes));
         when(torrent.getChunkSize()).thenReturn(chunkSize);
         when(torrent.getSize()).thenReturn(size);
         when(torrent.getFiles()).thenReturn(Arrays.asList(files));
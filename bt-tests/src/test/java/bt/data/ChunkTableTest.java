@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.data;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static bt.data.ChunkDescriptorTestUtil.mockStorageUnits;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ChunkTableTest {
+
+    private static ChunkTable buildTable(long chunkSize, long blockSize, long... capacities) {
+        List<StorageUnit> units = mockStorageUnits(capacities);
+        DataRange data = new ReadWriteDataRange(units, 0, units.get(units.size() - 1).capacity());
+        int chunksTotal = (int) ((data.length() + chunkSize - 1) / chunkSize);
+        byte[] hashes = new byte[chunksTotal * 20];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = (byte) (i / 20);
+        }
+        return new ChunkTable(data, chunkSize, blockSize, hashes);
+    }
+
+    @Test
+    public void testChunkTable_Layout() {
+        ChunkTable chunks = buildTable(12, 4, 10, 20, 5);
+
+        assertEquals(3, chunks.size());
+
+        ChunkDescriptor last = chunks.get(2);
+        assertEquals(11, last.length());
+        assertEquals(3, last.blockCount());
+        assertEquals(3, last.lastBlockSize());
+        assertEquals(11, last.getData().length());
+
+        byte[] expectedChecksum = new byte[20];
+        Arrays.fill(expectedChecksum, (byte) 2);
+        assertArrayEquals(expectedChecksum, last.getChecksum());
+    }
+
+    @Test
+    public void testChunkTable_DescriptorsAreEqualForSameChunk() {
+        ChunkTable chunks = buildTable(12, 4, 10, 20, 5);
+
+        assertEquals(chunks.get(1), chunks.get(1));
+        assertEquals(chunks.get(1).hashCode(), chunks.get(1).hashCode());
+        assertNotEquals(chunks.get(0), chunks.get(1));
+        assertNotEquals(chunks.get(0), buildTable(12, 4, 10, 20, 5).get(0));
+    }
+
+    @Test
+    public void testChunkTable_MarkBlocks() {
+        // 3 blocks per chunk, so that chunks share words of the block mask
+        ChunkTable chunks = buildTable(12, 4, 10, 20, 5);
+
+        ChunkDescriptor chunk = chunks.get(1);
+        assertTrue(chunk.isEmpty());
+
+        // partial block is not counted
+        chunk.getData().getSubrange(1, 3).putBytes(new byte[3]);
+        assertTrue(chunk.isEmpty());
+
+        chunk.getData().getSubrange(4).putBytes(new byte[8]);
+        assertFalse(chunk.isEmpty());
+        assertFalse(chunk.isComplete());
+        assertFalse(chunk.isPresent(0));
+        assertTrue(chunk.isPresent(1));
+        assertTrue(chunk.isPresent(2));
+
+        // neighbouring chunks are not affected
+        assertTrue(chunks.get(0).isEmpty());
+        assertTrue(chunks.get(2).isEmpty());
+
+        chunks.get(1).getData().getSubrange(0, 4).putBytes(new byte[4]);
+        assertTrue(chunk.isComplete());
+
+        // last block of the last chunk is smaller than the others
+        ChunkDescriptor last = chunks.get(2);
+        last.getData().getSubrange(8).putBytes(new byte[3]);
+        assertTrue(last.isPresent(2));
+        assertFalse(last.isComplete());
+    }
+}
@@ -72,4 +72,19 @@ public class JavaSecurityDigesterTest {
         JavaSecurityDigester digester = new JavaSecurityDigester(algorithm, len / 7);
         assertArrayEquals(hash, digester.digest(new ByteRange(data)));
     }
+
+    @Test
+    public void testDigester_Incremental() {
+        int len = 10000;
+        byte[] data = sequence(len);
+        byte[] hash = digest.digest(data);
+
+        JavaSecurityDigester digester = new JavaSecurityDigester(algorithm, len);
+        MessageDigest incremental = digester.createDigest();
+        int step = len / 7;
+        for (int off = 0; off < len; off += step) {
+            incremental.update(data, off, Math.min(step, len - off));
+        }
+        assertArrayEquals(hash, incremental.digest());
+    }
 }
@@ -16,6 +16,7 @@
 
 package bt.metainfo;
 
+import bt.BtException;
 import bt.bencoding.BtParseException;
 import bt.tracker.AnnounceKey;
 import org.junit.Before;
@@ -31,6 +32,7 @@ import java.util.Optional;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 public class MetadataServiceTest {
 
@@ -127,4 +129,22 @@ public class MetadataServiceTest {
         assertNotNull(exception);
         assertArrayEquals(Arrays.copyOfRange(bytes, 0, 30), exception.getScannedContents());
     }
+
+    @Test
+    public void testBuildTorrent_InvalidMetainfo() {
+
+        // info dictionary contains neither "length" nor "files"
+        String metainfo = "d8:announce15:http://t.co/ann4:infod4:name4:test12:piece lengthi16384e6:pieces0:ee";
+        byte[] bytes = metainfo.getBytes(Charset.forName("ASCII"));
+
+        BtException exception = null;
+        try {
+            metadataService.fromByteArray(bytes);
+        } catch (BtException e) {
+            exception = e;
+        }
+
+        assertNotNull(exception);
+        assertTrue(exception.getMessage().startsWith("Validation failed for torrent metainfo"));
+    }
 }
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.net;
+
+import bt.peer.PeerOptions;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PeerAddressTest {
+
+    @Test
+    public void testPeerAddress_IPv4() throws Exception {
+        InetAddress inetAddress = InetAddress.getByName("192.168.1.254");
+        PeerAddress address = PeerAddress.of(new InetSocketAddress(inetAddress, 6891));
+
+        assertTrue(address.isIPv4());
+        assertEquals(6891, address.getPort());
+        assertArrayEquals(inetAddress.getAddress(), address.getAddressBytes());
+        assertEquals(new InetSocketAddress(inetAddress, 6891), address.toInetSocketAddress());
+        assertEquals("192.168.1.254:6891", address.toString());
+        assertEquals(address, PeerAddress.of(new byte[]{0, (byte) 192, (byte) 168, 1, (byte) 254}, 1, 4, 6891));
+    }
+
+    @Test
+    public void testPeerAddress_IPv6() throws Exception {
+        InetAddress inetAddress = InetAddress.getByName("2001:db8::ff00:42:8329");
+        PeerAddress address = PeerAddress.of(inetAddress, 65535);
+
+        assertFalse(address.isIPv4());
+        assertArrayEquals(inetAddress.getAddress(), address.getAddressBytes());
+        assertEquals(inetAddress, address.toInetAddress());
+        assertFalse(address.equals(PeerAddress.of(inetAddress, 65534)));
+    }
+
+    @Test
+    public void testInetPeer_EqualsRegardlessOfAddressRepresentation() throws Exception {
+        InetAddress inetAddress = InetAddress.getByName("10.0.0.1");
+        Peer fromCompact = new InetPeer(PeerAddress.of(inetAddress, 1), PeerOptions.defaultOptions());
+        Peer fromInet = new InetPeer(new InetSocketAddress(inetAddress, 1));
+
+        assertEquals(fromInet, fromCompact);
+        assertEquals(fromCompact, fromInet);
+        assertEquals(fromInet.hashCode(), fromCompact.hashCode());
+        assertEquals(fromInet.getInetSocketAddress(), fromCompact.getInetSocketAddress());
+    }
+
+    @Test
+    public void testPeerAddressMap_AgainstHashMap() {
+        Random random = new Random(42);
+        PeerAddressMap<Integer> map = new PeerAddressMap<>();
+        Map<PeerAddress, Integer> expected = new HashMap<>();
+
+        for (int i = 0; i < 100_000; i++) {
+            // small key space to get plenty of collisions, updates and removals
+            byte[] bytes = {10, 0, 0, (byte) random.nextInt(32)};
+            PeerAddress key = PeerAddress.of(bytes, 0, 4, random.nextInt(64));
+            switch (random.nextInt(3)) {
+                case 0: {
+                    assertEquals(expected.put(key, i), map.put(key, i));
+                    break;
+                }
+                case 1: {
+                    assertEquals(expected.remove(key), map.remove(key));
+                    break;
+                }
+                default: {
+                    assertEquals(expected.get(key), map.get(key));
+                    assertEquals(expected.containsKey(key), map.containsKey(key));
+                }
+            }
+            assertEquals(expected.size(), map.size());
+        }
+
+        int[] sum = new int[1];
+        map.forEachValue(value -> sum[0] += value);
+        assertEquals(expected.values().stream().mapToInt(Integer::intValue).sum(), sum[0]);
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(PeerAddress.of(new byte[]{10, 0, 0, 1}, 0, 4, 1)));
+    }
+}
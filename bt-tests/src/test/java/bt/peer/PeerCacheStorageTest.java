@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.peer;
+
+import bt.event.EventBus;
+import bt.event.PeerSourceType;
+import bt.metainfo.TorrentId;
+import bt.net.InetPeer;
+import bt.net.Peer;
+import bt.runtime.Config;
+import bt.service.RuntimeLifecycleBinder;
+import bt.tracker.AnnounceKey;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PeerCacheStorageTest {
+
+    @Test
+    public void testPeerCacheStorage_WriteRead() throws Exception {
+        List<InetSocketAddress> peers = Arrays.asList(
+                new InetSocketAddress(InetAddress.getByName("192.168.1.1"), 6891),
+                new InetSocketAddress(InetAddress.getByName("2001:db8::1"), 65535));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PeerCacheStorage.write(peers, out);
+
+        assertEquals(peers, PeerCacheStorage.read(new ByteArrayInputStream(out.toByteArray())));
+    }
+
+    @Test(expected = IOException.class)
+    public void testPeerCacheStorage_ReadTruncated() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PeerCacheStorage.write(Arrays.asList(new InetSocketAddress(InetAddress.getByName("192.168.1.1"), 6891)), out);
+        byte[] bytes = out.toByteArray();
+
+        PeerCacheStorage.read(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 1)));
+    }
+
+    @Test
+    public void testPeerCacheStorage_PeersRestoredWhenTorrentIsRestarted() throws Exception {
+        Path directory = Files.createTempDirectory("bt-peer-cache");
+        try {
+            Config config = new Config();
+            config.setPeerCacheStorageDirectory(directory);
+            EventBus eventBus = new EventBus();
+            List<Peer> addedPeers = new ArrayList<>();
+            List<PeerSourceType> sourceTypes = new ArrayList<>();
+            PeerCacheStorage storage = new PeerCacheStorage(config, new PeerRegistryStub() {
+                @Override
+                public void addPeer(TorrentId torrentId, Peer peer, PeerSourceType peerSourceType) {
+                    addedPeers.add(peer);
+                    sourceTypes.add(peerSourceType);
+                }
+            }, eventBus, new RuntimeLifecycleBinder());
+
+            TorrentId torrentId = TorrentId.fromBytes(new byte[TorrentId.length()]);
+            InetSocketAddress address = new InetSocketAddress(InetAddress.getByName("192.168.1.1"), 6891);
+            eventBus.fireTorrentStarted(torrentId);
+            eventBus.firePeerConnected(torrentId, new InetPeer(address), false, 1, new BitSet(), false);
+            assertEquals(Collections.singletonList(address), storage.getGoodPeers(torrentId));
+
+            // peers are saved and forgotten, when the torrent is stopped
+            eventBus.fireTorrentStopped(torrentId);
+            assertTrue(storage.getGoodPeers(torrentId).isEmpty());
+            assertTrue(addedPeers.isEmpty());
+
+            eventBus.fireTorrentStarted(torrentId);
+            assertEquals(1, addedPeers.size());
+            assertEquals(address, addedPeers.get(0).getInetSocketAddress());
+            assertEquals(PeerSourceType.MANUAL, sourceTypes.get(0));
+            assertEquals(Collections.singletonList(address), storage.getGoodPeers(torrentId));
+        } finally {
+            File[] files = directory.toFile().listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void testPeerCacheStorage_IncomingConnectionsAreNotSaved() throws Exception {
+        Path directory = Files.createTempDirectory("bt-peer-cache");
+        try {
+            Config config = new Config();
+            config.setPeerCacheStorageDirectory(directory);
+            EventBus eventBus = new EventBus();
+            PeerCacheStorage storage = new PeerCacheStorage(config, new PeerRegistryStub(),
+                    eventBus, new RuntimeLifecycleBinder());
+
+            TorrentId torrentId = TorrentId.fromBytes(new byte[TorrentId.length()]);
+            InetSocketAddress outgoing = new InetSocketAddress(InetAddress.getByName("192.168.1.1"), 6891);
+            InetSocketAddress incoming = new InetSocketAddress(InetAddress.getByName("192.168.1.2"), 54321);
+            eventBus.fireTorrentStarted(torrentId);
+            eventBus.firePeerConnected(torrentId, new InetPeer(outgoing), false, 1, new BitSet(), false);
+            eventBus.firePeerConnected(torrentId, new InetPeer(incoming), true, 2, new BitSet(), false);
+            assertEquals(Collections.singletonList(outgoing), storage.getGoodPeers(torrentId));
+        } finally {
+            File[] files = directory.toFile().listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    private static class PeerRegistryStub implements IPeerRegistry {
+
+        @Override
+        public Peer getLocalPeer() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void addPeer(TorrentId torrentId, Peer peer) {
+            throw new UnsupportedOperationException("Deprecated method should not be used");
+        }
+
+        @Override
+        public void addPeer(TorrentId torrentId, Peer peer, PeerSourceType peerSourceType) {
+        }
+
+        @Override
+        public void addPeerSource(TorrentId torrentId, AnnounceKey announceKey) {
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.peer;
+
+import bt.net.InetPeer;
+import bt.net.Peer;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PeerCacheTest {
+
+    @Test
+    public void testPeerCache_SizeIsBounded() {
+        PeerCache cache = new PeerCache(100);
+        for (int i = 0; i < 1000; i++) {
+            cache.store(new InetPeer(address(i)));
+        }
+        assertTrue("Cache size exceeds the limit: " + cache.size(), cache.size() <= 100);
+    }
+
+    @Test
+    public void testPeerCache_RecentlyUsedPeersAreKept() throws Exception {
+        PeerCache cache = new PeerCache(100);
+        Peer recent = cache.store(new InetPeer(address(0)));
+        for (int i = 1; i < 1000; i++) {
+            cache.store(new InetPeer(address(i)));
+            // keep using the first peer
+            assertSame(recent, cache.getPeerForAddress(address(0)));
+        }
+    }
+
+    @Test
+    public void testPeerCache_StoreReturnsExistingEntry() {
+        PeerCache cache = new PeerCache(100);
+        Peer peer = cache.getPeerForAddress(address(1));
+        assertSame(peer, cache.store(new InetPeer(address(1))));
+        assertEquals(1, cache.size());
+    }
+
+    private static InetSocketAddress address(int i) {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), 1024 + i);
+    }
+}
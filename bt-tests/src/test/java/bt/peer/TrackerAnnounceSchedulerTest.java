@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.peer;
+
+import bt.metainfo.TorrentId;
+import bt.net.InetPeer;
+import bt.net.Peer;
+import bt.service.IRuntimeLifecycleBinder;
+import bt.torrent.TorrentRegistry;
+import bt.tracker.AnnounceKey;
+import bt.tracker.ITrackerService;
+import bt.tracker.Tracker;
+import bt.tracker.TrackerRequestBuilder;
+import bt.tracker.TrackerResponse;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TrackerAnnounceSchedulerTest {
+
+    private static final AnnounceKey ANNOUNCE_KEY = new AnnounceKey("http://tracker.example.com/announce");
+
+    private TorrentRegistry torrentRegistry;
+    private BlockingQueue<Query> queries;
+    private Tracker tracker;
+    private Map<TorrentId, TrackerResponse> announceResponses;
+    private ITrackerService trackerService;
+
+    @Before
+    public void setUp() {
+        torrentRegistry = mock(TorrentRegistry.class);
+        queries = new LinkedBlockingQueue<>();
+        tracker = new QueryRecordingTracker(queries);
+        announceResponses = new ConcurrentHashMap<>();
+        trackerService = new AnnounceRecordingTrackerService(tracker, announceResponses);
+    }
+
+    @Test
+    public void testScheduler_ConcurrentQueriesAreLimited() throws Exception {
+        TrackerAnnounceScheduler scheduler = new TrackerAnnounceScheduler(torrentRegistry, trackerService,
+                mock(IRuntimeLifecycleBinder.class), Duration.ofHours(1), 2);
+
+        List<Peer> received = new CopyOnWriteArrayList<>();
+        TorrentId id1 = torrentId(1), id2 = torrentId(2), id3 = torrentId(3);
+        when(torrentRegistry.getDescriptor(id1)).thenReturn(Optional.empty());
+
+        TrackerAnnounceScheduler.Entry entry1 = scheduler.register(tracker, ANNOUNCE_KEY, id1, received::add);
+        TrackerAnnounceScheduler.Entry entry2 = scheduler.register(tracker, ANNOUNCE_KEY, id2, received::add);
+        TrackerAnnounceScheduler.Entry entry3 = scheduler.register(tracker, ANNOUNCE_KEY, id3, received::add);
+        entry1.requestAnnounce();
+        entry2.requestAnnounce();
+        entry3.requestAnnounce();
+
+        Query first = queries.poll(5, TimeUnit.SECONDS);
+        Query second = queries.poll(5, TimeUnit.SECONDS);
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNull(queries.poll(200, TimeUnit.MILLISECONDS));
+
+        // completing a query frees a slot for the remaining torrent
+        Peer peer = new InetPeer(InetAddress.getLoopbackAddress(), 6891);
+        TrackerResponse response = TrackerResponse.ok();
+        response.setPeers(Collections.singletonList(peer));
+        Query completed = (first.torrentId.equals(id1)) ? first : second;
+        completed.future.complete(response);
+
+        Query third = queries.poll(5, TimeUnit.SECONDS);
+        assertNotNull(third);
+        assertEquals(Collections.singletonList(peer), received);
+
+        // tracker should not be queried again before the interval elapses
+        entry1.requestAnnounce();
+        entry2.requestAnnounce();
+        assertNull(queries.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testScheduler_TimedOutQueryReleasesSlot() throws Exception {
+        TrackerAnnounceScheduler scheduler = new TrackerAnnounceScheduler(torrentRegistry, trackerService,
+                mock(IRuntimeLifecycleBinder.class), Duration.ofHours(1), 1, Duration.ofMillis(500));
+
+        TorrentId id1 = torrentId(1), id2 = torrentId(2);
+        when(torrentRegistry.getDescriptor(id1)).thenReturn(Optional.empty());
+        when(torrentRegistry.getDescriptor(id2)).thenReturn(Optional.empty());
+
+        TrackerAnnounceScheduler.Entry entry1 = scheduler.register(tracker, ANNOUNCE_KEY, id1, peer -> {});
+        TrackerAnnounceScheduler.Entry entry2 = scheduler.register(tracker, ANNOUNCE_KEY, id2, peer -> {});
+        entry1.requestAnnounce();
+        Query hung = queries.poll(5, TimeUnit.SECONDS);
+        assertNotNull(hung);
+        entry2.requestAnnounce();
+
+        // second query is started, when the first one times out
+        Query next = queries.poll(5, TimeUnit.SECONDS);
+        assertNotNull(next);
+        assertEquals(id2, next.torrentId);
+
+        // late response is ignored and does not free a slot for the third query
+        hung.future.complete(TrackerResponse.ok());
+        TrackerAnnounceScheduler.Entry entry3 = scheduler.register(tracker, ANNOUNCE_KEY, torrentId(3), peer -> {});
+        entry3.requestAnnounce();
+        assertNull(queries.poll(200, TimeUnit.MILLISECONDS));
+
+        // timed out query is retried after a failure interval
+        next.future.complete(TrackerResponse.ok());
+        Query third = queries.poll(5, TimeUnit.SECONDS);
+        assertNotNull(third);
+        assertEquals(torrentId(3), third.torrentId);
+        entry1.requestAnnounce();
+        assertNull(queries.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testScheduler_AnnounceResponseIsUsed() throws Exception {
+        TrackerAnnounceScheduler scheduler = new TrackerAnnounceScheduler(torrentRegistry, trackerService,
+                mock(IRuntimeLifecycleBinder.class), Duration.ofMinutes(1), 2);
+
+        List<Peer> received = new CopyOnWriteArrayList<>();
+        TorrentId id = torrentId(1);
+        when(torrentRegistry.getDescriptor(id)).thenReturn(Optional.empty());
+
+        // "started" event has been announced outside of the scheduler
+        Peer peer = new InetPeer(InetAddress.getLoopbackAddress(), 6891);
+        TrackerResponse response = TrackerResponse.ok();
+        response.setInterval(1800);
+        response.setPeers(Collections.singletonList(peer));
+        announceResponses.put(id, response);
+
+        TrackerAnnounceScheduler.Entry entry = scheduler.register(tracker, ANNOUNCE_KEY, id, received::add);
+        entry.requestAnnounce();
+        assertNull(queries.poll(200, TimeUnit.MILLISECONDS));
+        assertEquals(Collections.singletonList(peer), received);
+
+        // the same response is not processed twice
+        entry.requestAnnounce();
+        assertNull(queries.poll(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, received.size());
+    }
+
+    private static TorrentId torrentId(int i) {
+        byte[] bytes = new byte[20];
+        bytes[0] = (byte) i;
+        return TorrentId.fromBytes(bytes);
+    }
+
+    private static class Query {
+        private final TorrentId torrentId;
+        private final CompletableFuture<TrackerResponse> future;
+
+        Query(TorrentId torrentId) {
+            this.torrentId = torrentId;
+            this.future = new CompletableFuture<>();
+        }
+    }
+
+    private static class AnnounceRecordingTrackerService implements ITrackerService {
+
+        private final Tracker tracker;
+        private final Map<TorrentId, TrackerResponse> announceResponses;
+
+        AnnounceRecordingTrackerService(Tracker tracker, Map<TorrentId, TrackerResponse> announceResponses) {
+            this.tracker = tracker;
+            this.announceResponses = announceResponses;
+        }
+
+        @Override
+        public boolean isSupportedProtocol(String trackerUrl) {
+            return true;
+        }
+
+        @Override
+        public Tracker getTracker(String trackerUrl) {
+            return tracker;
+        }
+
+        @Override
+        public Tracker getTracker(AnnounceKey announceKey) {
+            return tracker;
+        }
+
+        @Override
+        public Optional<TrackerResponse> getLastAnnounceResponse(AnnounceKey announceKey, TorrentId torrentId) {
+            return Optional.ofNullable(announceResponses.get(torrentId));
+        }
+    }
+
+    private static class QueryRecordingTracker implements Tracker {
+
+        private final BlockingQueue<Query> queries;
+
+        QueryRecordingTracker(BlockingQueue<Query> queries) {
+            this.queries = queries;
+        }
+
+        @Override
+        public TrackerRequestBuilder request(TorrentId torrentId) {
+            return new TrackerRequestBuilder(torrentId) {
+                @Override
+                public TrackerResponse start() {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public TrackerResponse stop() {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public TrackerResponse complete() {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public TrackerResponse query() {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public CompletableFuture<TrackerResponse> queryAsync() {
+                    Query query = new Query(torrentId);
+                    queries.add(query);
+                    return query.future;
+                }
+            };
+        }
+    }
+}
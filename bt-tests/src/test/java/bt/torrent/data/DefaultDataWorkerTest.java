@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.torrent.data;
+
+import bt.data.Bitfield;
+import bt.data.ChunkDescriptor;
+import bt.data.ChunkVerifier;
+import bt.data.DataDescriptor;
+import bt.data.DataDescriptorFactory;
+import bt.data.DataRange;
+import bt.data.DefaultChunkVerifier;
+import bt.data.digest.Digester;
+import bt.data.digest.SHA1Digester;
+import bt.data.range.Range;
+import bt.data.storage.impl.file.FileSystemStorage;
+import bt.metainfo.Torrent;
+import bt.metainfo.TorrentFile;
+import bt.metainfo.TorrentId;
+import bt.service.CryptoUtil;
+import bt.service.IRuntimeLifecycleBinder;
+import bt.service.RuntimeLifecycleBinder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DefaultDataWorkerTest {
+
+    private static final int PIECE_SIZE = 16;
+    private static final int BLOCK_SIZE = 4;
+
+    private static final byte[] CONTENTS = new byte[]{
+            1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16,
+            17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32
+    };
+
+    private Path rootDirectory;
+    private RuntimeLifecycleBinder lifecycleBinder;
+    private DataDescriptor data;
+    private Digester digester;
+    private ChunkVerifier verifier;
+    private AtomicInteger verifications;
+    private WriteCache writeCache;
+    private DefaultDataWorker worker;
+
+    @Before
+    public void setUp() throws Exception {
+        rootDirectory = Files.createTempDirectory("bt-data-worker");
+        digester = SHA1Digester.rolling(8);
+        verifier = new DefaultChunkVerifier(digester, 1);
+
+        Torrent torrent = mock(Torrent.class);
+        TorrentFile file = mock(TorrentFile.class);
+        when(file.getSize()).thenReturn((long) CONTENTS.length);
+        when(file.getPathElements()).thenReturn(Arrays.asList("data.bin"));
+        when(torrent.getTorrentId()).thenReturn(TorrentId.fromBytes(new byte[TorrentId.length()]));
+        when(torrent.getName()).thenReturn("data.bin");
+        when(torrent.getChunkSize()).thenReturn((long) PIECE_SIZE);
+        when(torrent.getSize()).thenReturn((long) CONTENTS.length);
+        when(torrent.getFiles()).thenReturn(Arrays.asList(file));
+        byte[] firstHash = CryptoUtil.getSha1Digest(Arrays.copyOfRange(CONTENTS, 0, PIECE_SIZE));
+        byte[] secondHash = CryptoUtil.getSha1Digest(Arrays.copyOfRange(CONTENTS, PIECE_SIZE, 2 * PIECE_SIZE));
+        byte[] chunkHashes = Arrays.copyOf(firstHash, firstHash.length + secondHash.length);
+        System.arraycopy(secondHash, 0, chunkHashes, firstHash.length, secondHash.length);
+        when(torrent.getChunkHashes()).thenReturn(Arrays.asList(firstHash, secondHash));
+        when(torrent.getConcatenatedChunkHashes()).thenReturn(chunkHashes);
+        when(torrent.isPrivate()).thenReturn(false);
+        when(torrent.getAnnounceKey()).thenReturn(Optional.empty());
+
+        data = new DataDescriptorFactory(verifier, BLOCK_SIZE)
+                .createDescriptor(torrent, new FileSystemStorage(rootDirectory));
+        Bitfield bitfield = data.getBitfield();
+        while (bitfield.getVerified().cardinality() < bitfield.getPiecesTotal()) {
+            Thread.sleep(10);
+        }
+
+        lifecycleBinder = new RuntimeLifecycleBinder();
+        verifications = new AtomicInteger();
+        worker = createWorker(digester, 1024);
+    }
+
+    private DefaultDataWorker createWorker(Digester digester, int writeCacheSize) {
+        writeCache = new WriteCache(writeCacheSize);
+        return new DefaultDataWorker(lifecycleBinder, data, new CountingVerifier(), digester,
+                100, new PieceCache(0), writeCache);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        shutdown();
+        data.close();
+        Files.walk(rootDirectory)
+                .sorted(Comparator.reverseOrder())
+                .forEach(path -> path.toFile().delete());
+    }
+
+    @Test
+    public void testFlushPendingPieces_PartialPieceWrittenToStorage() throws Exception {
+        addBlock(0, 0);
+        addBlock(0, 2);
+        assertTrue(worker.isBlockPending(0, 0));
+        assertTrue(writeCache.getAllocatedSize() > 0);
+
+        worker.flushPendingPieces();
+        // flush is executed by the worker, after the blocks, that have been added before
+        addBlock(1, 0);
+
+        ChunkDescriptor chunk = data.getChunkDescriptors().get(0);
+        assertFalse(worker.isBlockPending(0, 0));
+        assertTrue(chunk.isPresent(0));
+        assertFalse(chunk.isPresent(1));
+        assertTrue(chunk.isPresent(2));
+        // piece 1 has been buffered after the flush
+        assertEquals(PIECE_SIZE, writeCache.getAllocatedSize());
+
+        // rest of the piece is written through
+        addBlock(0, 1);
+        assertTrue(addBlock(0, 3).getVerificationFuture().get().get(5, TimeUnit.SECONDS));
+        assertArrayEquals(Arrays.copyOfRange(CONTENTS, 0, PIECE_SIZE), chunk.getData().getBytes());
+    }
+
+    @Test
+    public void testShutdown_BuffersReleased() throws Exception {
+        addBlock(0, 0);
+        addBlock(1, 0);
+        assertEquals(2 * PIECE_SIZE, writeCache.getAllocatedSize());
+
+        shutdown();
+        assertEquals(0, writeCache.getAllocatedSize());
+    }
+
+    @Test
+    public void testAddBlock_InOrder_HashedIncrementally() throws Exception {
+        assertTrue(addPiece(0, 0, 1, 2, 3));
+        assertEquals(0, verifications.get());
+    }
+
+    @Test
+    public void testAddBlock_OutOfOrder_HashedIncrementally() throws Exception {
+        assertTrue(addPiece(0, 2, 0, 3, 1));
+        assertEquals(0, verifications.get());
+    }
+
+    @Test
+    public void testAddBlock_OutOfOrder_WrittenThrough_HashedIncrementally() throws Exception {
+        // no room in the write cache, blocks are hashed from the storage, when the gap is filled
+        worker = createWorker(digester, 0);
+        assertTrue(addPiece(0, 3, 1, 0, 2));
+        assertEquals(0, verifications.get());
+        assertArrayEquals(Arrays.copyOfRange(CONTENTS, 0, PIECE_SIZE),
+                data.getChunkDescriptors().get(0).getData().getBytes());
+    }
+
+    @Test
+    public void testAddBlock_DuplicateBlock_Rejected() throws Exception {
+        addBlock(0, 0);
+        BlockWrite duplicate = addBlock(0, 0);
+        assertTrue(duplicate.isRejected());
+
+        assertTrue(addPiece(0, 1, 2, 3));
+        assertEquals(0, verifications.get());
+    }
+
+    @Test
+    public void testAddBlock_BlockOfCompletePiece_Rejected() throws Exception {
+        addBlock(0, 0);
+        addBlock(0, 1);
+        addBlock(0, 2);
+        BlockWrite last = addBlock(0, 3);
+
+        // late copy of a block arrives, while the piece is being verified
+        BlockWrite late = addBlock(0, 3);
+        assertTrue(late.isRejected());
+        assertFalse(late.getVerificationFuture().isPresent());
+
+        assertTrue(last.getVerificationFuture().get().get(5, TimeUnit.SECONDS));
+        assertTrue(addBlock(0, 1).isRejected());
+        assertTrue(data.getBitfield().isCompleteVerified(0));
+    }
+
+    @Test
+    public void testAddBlock_WrittenThrough_RewrittenBlock_HashedFromStorage() throws Exception {
+        worker = createWorker(digester, 0);
+        addBlock(0, 0);
+        addBlock(0, 1);
+        // block, that has already been hashed, is overwritten with different contents
+        worker.addBlock(null, 0, 0, new byte[BLOCK_SIZE]).get(5, TimeUnit.SECONDS);
+        addBlock(0, 2);
+        assertFalse(addPiece(0, 3));
+    }
+
+    @Test
+    public void testAddBlock_WrittenThrough_DuplicateBlock_Verified() throws Exception {
+        worker = createWorker(digester, 0);
+        addBlock(0, 0);
+        addBlock(0, 1);
+        addBlock(0, 0);
+        assertTrue(addPiece(0, 2, 3));
+    }
+
+    @Test
+    public void testAddBlock_CorruptedBlock_PieceRejected() throws Exception {
+        addBlock(0, 0);
+        addBlock(0, 1);
+        byte[] block = new byte[BLOCK_SIZE];
+        worker.addBlock(null, 0, 2 * BLOCK_SIZE, block).get(5, TimeUnit.SECONDS);
+        BlockWrite write = addBlock(0, 3);
+        assertFalse(write.getVerificationFuture().get().get(5, TimeUnit.SECONDS));
+        assertEquals(0, verifications.get());
+    }
+
+    @Test
+    public void testAddBlock_IncrementalHashingNotSupported_FullVerification() throws Exception {
+        worker = createWorker(new Digester() {
+            @Override
+            public byte[] digest(DataRange data) {
+                return digester.digest(data);
+            }
+
+            @Override
+            public byte[] digest(Range<?> data) {
+                return digester.digest(data);
+            }
+        }, 1024);
+        assertTrue(addPiece(0, 1, 0, 2, 3));
+        assertEquals(1, verifications.get());
+    }
+
+    @Test
+    public void testFlushPendingPieces_HashingRestartedFromStorage() throws Exception {
+        addBlock(0, 0);
+        addBlock(0, 1);
+        worker.flushPendingPieces();
+        assertTrue(addPiece(0, 2, 3));
+        assertEquals(0, verifications.get());
+    }
+
+    /**
+     * @return Verification result
+     */
+    private boolean addPiece(int pieceIndex, int... blockIndices) throws Exception {
+        BlockWrite write = null;
+        for (int blockIndex : blockIndices) {
+            write = addBlock(pieceIndex, blockIndex);
+        }
+        return write.getVerificationFuture().get().get(5, TimeUnit.SECONDS);
+    }
+
+    private BlockWrite addBlock(int pieceIndex, int blockIndex) throws Exception {
+        int offset = pieceIndex * PIECE_SIZE + blockIndex * BLOCK_SIZE;
+        byte[] block = Arrays.copyOfRange(CONTENTS, offset, offset + BLOCK_SIZE);
+        BlockWrite write = worker.addBlock(null, pieceIndex, blockIndex * BLOCK_SIZE, block).get(5, TimeUnit.SECONDS);
+        if (write.getError().isPresent()) {
+            throw new AssertionError("Failed to write block", write.getError().get());
+        }
+        return write;
+    }
+
+    private void shutdown() {
+        lifecycleBinder.visitBindings(IRuntimeLifecycleBinder.LifecycleEvent.SHUTDOWN,
+                binding -> binding.getRunnable().run());
+    }
+
+    private class CountingVerifier implements ChunkVerifier {
+
+        @Override
+        public boolean verify(List<ChunkDescriptor> chunks, Bitfield bitfield) {
+            return verifier.verify(chunks, bitfield);
+        }
+
+        @Override
+        public boolean verify(ChunkDescriptor chunk) {
+            verifications.incrementAndGet();
+            return verifier.verify(chunk);
+        }
+
+        @Override
+        public boolean verify(ChunkDescriptor chunk, byte[] data) {
+            verifications.incrementAndGet();
+            return verifier.verify(chunk, data);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.torrent.data;
+
+import bt.data.ChunkDescriptor;
+import bt.data.DataRange;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PieceCacheTest {
+
+    @Test
+    public void testGetBlock() {
+        PieceCache cache = new PieceCache(8);
+        ChunkDescriptor chunk = new Chunk();
+        cache.put(chunk, new byte[]{1, 2, 3, 4}, () -> {});
+
+        assertTrue(cache.contains(chunk));
+        assertArrayEquals(new byte[]{2, 3}, cache.getBlock(chunk, 1, 2));
+        assertNull(cache.getBlock(new Chunk(), 1, 2));
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() {
+        PieceCache cache = new PieceCache(8);
+        ChunkDescriptor chunk1 = new Chunk(), chunk2 = new Chunk(), chunk3 = new Chunk();
+        AtomicInteger evicted = new AtomicInteger();
+
+        cache.put(chunk1, new byte[4], () -> evicted.set(1));
+        cache.put(chunk2, new byte[4], () -> evicted.set(2));
+        // access chunk1, so that chunk2 becomes the least recently used
+        cache.getBlock(chunk1, 0, 1);
+        cache.put(chunk3, new byte[4], () -> evicted.set(3));
+
+        assertEquals(2, evicted.get());
+        assertTrue(cache.contains(chunk1));
+        assertFalse(cache.contains(chunk2));
+        assertTrue(cache.contains(chunk3));
+    }
+
+    @Test
+    public void testDoNotCachePieceLargerThanCache() {
+        PieceCache cache = new PieceCache(8);
+        ChunkDescriptor chunk = new Chunk();
+        cache.put(chunk, new byte[9], () -> {});
+        assertFalse(cache.contains(chunk));
+    }
+
+    @Test
+    public void testDisabled() {
+        PieceCache cache = new PieceCache(0);
+        ChunkDescriptor chunk = new Chunk();
+        cache.put(chunk, new byte[1], () -> {});
+        assertFalse(cache.contains(chunk));
+    }
+
+    private static class Chunk implements ChunkDescriptor {
+
+        @Override
+        public byte[] getChecksum() {
+            return new byte[0];
+        }
+
+        @Override
+        public DataRange getData() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int blockCount() {
+            return 1;
+        }
+
+        @Override
+        public long length() {
+            return 0;
+        }
+
+        @Override
+        public long blockSize() {
+            return 0;
+        }
+
+        @Override
+        public long lastBlockSize() {
+            return 0;
+        }
+
+        @Override
+        public boolean isPresent(int blockIndex) {
+            return true;
+        }
+
+        @Override
+        public boolean isComplete() {
+            return true;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return false;
+        }
+    }
+}
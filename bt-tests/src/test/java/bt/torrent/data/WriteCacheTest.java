@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.torrent.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WriteCacheTest {
+
+    @Test
+    public void testAllocate_BudgetExhausted() {
+        WriteCache cache = new WriteCache(10);
+        byte[] buffer = cache.allocate(6);
+        assertNotNull(buffer);
+        assertNull(cache.allocate(6));
+
+        cache.release(buffer);
+        assertNotNull(cache.allocate(6));
+    }
+
+    @Test
+    public void testAllocate_BudgetExhausted_ReclaimersInvoked() {
+        WriteCache cache = new WriteCache(10);
+        byte[][] buffer = new byte[1][];
+        buffer[0] = cache.allocate(6);
+        Runnable reclaimer = () -> cache.release(buffer[0]);
+        cache.addReclaimer(reclaimer);
+
+        // current allocation fails, but the budget is freed for the next one
+        assertNull(cache.allocate(6));
+        assertEquals(0, cache.getAllocatedSize());
+        assertNotNull(cache.allocate(6));
+
+        cache.removeReclaimer(reclaimer);
+        assertNull(cache.allocate(6));
+        assertEquals(6, cache.getAllocatedSize());
+    }
+
+    @Test
+    public void testAllocate_Disabled() {
+        assertNull(new WriteCache(0).allocate(1));
+    }
+
+    @Test
+    public void testPendingPiece_Complete() {
+        PendingPiece piece = new PendingPiece(new byte[5], 2, 3);
+        piece.putBlock(4, new byte[]{5});
+        piece.putBlock(0, new byte[]{1, 2});
+        assertFalse(piece.isComplete());
+        assertTrue(piece.isPresent(0));
+        assertFalse(piece.isPresent(1));
+
+        piece.putBlock(2, new byte[]{3, 4});
+        assertTrue(piece.isComplete());
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5}, piece.getData());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPendingPiece_UnalignedBlock() {
+        new PendingPiece(new byte[4], 2, 2).putBlock(1, new byte[]{1});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPendingPiece_BlockOutOfBounds() {
+        new PendingPiece(new byte[4], 2, 2).putBlock(2, new byte[]{1, 2, 3});
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.torrent.messaging;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AllowedFastProducerTest {
+
+    // test vectors from BEP-6
+    private static final byte[] ADDRESS = new byte[]{80, 4, 4, (byte) 200};
+    private static final byte[] INFO_HASH = new byte[20];
+    private static final int PIECES_TOTAL = 1313;
+
+    static {
+        Arrays.fill(INFO_HASH, (byte) 0xAA);
+    }
+
+    @Test
+    public void testGenerateAllowedFastSet_7() {
+        BitSet expected = bitSet(1059, 431, 808, 1217, 287, 376, 1188);
+        assertEquals(expected, AllowedFastProducer.generateAllowedFastSet(ADDRESS, INFO_HASH, PIECES_TOTAL, 7));
+    }
+
+    @Test
+    public void testGenerateAllowedFastSet_9() {
+        BitSet expected = bitSet(1059, 431, 808, 1217, 287, 376, 1188, 353, 508);
+        assertEquals(expected, AllowedFastProducer.generateAllowedFastSet(ADDRESS, INFO_HASH, PIECES_TOTAL, 9));
+    }
+
+    @Test
+    public void testGenerateAllowedFastSet_LastOctetIgnored() {
+        byte[] address = Arrays.copyOf(ADDRESS, ADDRESS.length);
+        address[3] = 1;
+        assertEquals(AllowedFastProducer.generateAllowedFastSet(ADDRESS, INFO_HASH, PIECES_TOTAL, 9),
+                AllowedFastProducer.generateAllowedFastSet(address, INFO_HASH, PIECES_TOTAL, 9));
+    }
+
+    @Test
+    public void testGenerateAllowedFastSet_MoreThanPiecesTotal() {
+        BitSet allowedFastSet = AllowedFastProducer.generateAllowedFastSet(ADDRESS, INFO_HASH, 3, 10);
+        assertEquals(3, allowedFastSet.cardinality());
+    }
+
+    @Test
+    public void testGenerateAllowedFastSet_Disabled() {
+        assertTrue(AllowedFastProducer.generateAllowedFastSet(ADDRESS, INFO_HASH, PIECES_TOTAL, 0).isEmpty());
+    }
+
+    private static BitSet bitSet(int... indices) {
+        BitSet bitSet = new BitSet();
+        for (int index : indices) {
+            bitSet.set(index);
+        }
+        return bitSet;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.torrent.messaging;
+
+import bt.metainfo.TorrentId;
+import bt.net.InetPeer;
+import bt.net.Peer;
+import bt.protocol.Bitfield;
+import bt.protocol.Have;
+import bt.protocol.HaveAll;
+import bt.protocol.HaveNone;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class BitfieldCollectingConsumerTest {
+
+    @Test
+    public void testConsume() throws Exception {
+        Peer bitfieldPeer = peer(1), seed = peer(2), leech = peer(3);
+        BitfieldCollectingConsumer consumer = new BitfieldCollectingConsumer();
+
+        consumer.consume(new Bitfield(new byte[]{(byte) 0x80}), context(bitfieldPeer));
+        consumer.consume(new Have(5), context(bitfieldPeer));
+        consumer.consume(HaveAll.instance(), context(seed));
+        consumer.consume(HaveNone.instance(), context(leech));
+
+        assertArrayEquals(new byte[]{(byte) 0x80}, consumer.getBitfields().get(bitfieldPeer));
+        assertEquals(Collections.singleton(5), consumer.getHaves().get(bitfieldPeer));
+        assertEquals(Collections.singleton(seed), consumer.getHaveAll());
+        assertEquals(Collections.singleton(leech), consumer.getHaveNone());
+        assertFalse(consumer.getBitfields().containsKey(seed));
+    }
+
+    private static MessageContext context(Peer peer) {
+        return new MessageContext(TorrentId.fromBytes(new byte[TorrentId.length()]), peer, null);
+    }
+
+    private static Peer peer(int i) throws Exception {
+        return new InetPeer(InetAddress.getByAddress(new byte[]{10, 0, 0, (byte) i}), 6881);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.torrent.messaging;
+
+import bt.statistic.TransferAmountHandler;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectionState_BlockReceivingTimeTest {
+
+    private ConnectionState connectionState;
+
+    @Before
+    public void setUp() {
+        connectionState = new ConnectionState(new TransferAmountHandler() {
+            @Override
+            public void handleUpload(long value) {
+            }
+
+            @Override
+            public void handleDownload(long value) {
+            }
+        });
+    }
+
+    @Test
+    public void testAverageBlockReceivingTime_NoBlocks() {
+        assertEquals(0, connectionState.getAverageBlockReceivingTime());
+    }
+
+    @Test
+    public void testAverageBlockReceivingTime_FirstBlock() {
+        connectionState.onBlockReceived(800);
+        assertEquals(800, connectionState.getAverageBlockReceivingTime());
+    }
+
+    @Test
+    public void testAverageBlockReceivingTime_Smoothing() {
+        connectionState.onBlockReceived(800);
+        connectionState.onBlockReceived(1600);
+        assertEquals(900, connectionState.getAverageBlockReceivingTime());
+        connectionState.onBlockReceived(100);
+        assertEquals(800, connectionState.getAverageBlockReceivingTime());
+    }
+
+    @Test
+    public void testSnubbed_ClearedOnBlockReceived() {
+        assertFalse(connectionState.isSnubbed());
+        connectionState.setSnubbed(true);
+        assertTrue(connectionState.isSnubbed());
+        connectionState.onBlockReceived(100);
+        assertFalse(connectionState.isSnubbed());
+    }
+}
@@ -17,16 +17,29 @@
 package bt.tracker;
 
 import bt.metainfo.TorrentId;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -51,6 +64,7 @@ public class MultiTrackerTest {
     private ITrackerService trackerService;
     private List<Tracker> accessLog;
     private StoppableTracker tracker1, tracker2, tracker3, backup1, backup2;
+    private ExecutorService executor;
 
     @Before
     public void setUp() {
@@ -61,7 +75,8 @@ public class MultiTrackerTest {
 
         torrentId = TorrentId.fromBytes(new byte[20]);
 
-        accessLog = new ArrayList<>();
+        accessLog = Collections.synchronizedList(new ArrayList<>());
+        executor = Executors.newFixedThreadPool(8);
 
         tracker1 = new StoppableTracker(trackerUrl1, torrentId, accessLog::add);
         tracker2 = new StoppableTracker(trackerUrl2, torrentId, accessLog::add);
@@ -77,6 +92,14 @@ public class MultiTrackerTest {
         when(trackerService.getTracker(backupUrl2)).thenReturn(backup2);
     }
 
+    @After
+    public void tearDown() {
+        for (StoppableTracker tracker : Arrays.asList(tracker1, tracker2, tracker3, backup1, backup2)) {
+            tracker.release();
+        }
+        executor.shutdownNow();
+    }
+
     @Test
     public void testMultiTracker_FirstTrackerReachable() {
 
@@ -137,6 +160,147 @@ public class MultiTrackerTest {
         assertLogHasTrackers(tracker1, tracker2, tracker3, backup2);
     }
 
+    @Test
+    public void testMultiTracker_Async_FirstSuccessfulTrackerIsPromoted() {
+
+        MultiTracker tracker = new MultiTracker(trackerService, announceKey, false);
+
+        tracker1.shutdown();
+        tracker2.shutdown();
+        TrackerResponse response = tracker.request(torrentId).startAsync().join();
+        assertTrue(response.isSuccess());
+        // all trackers in the tier are queried
+        assertLogHasTrackers(tracker1, tracker2, tracker3);
+
+        clearLog();
+        tracker.request(torrentId).query();
+        assertLogHasTrackers(tracker3);
+    }
+
+    @Test
+    public void testMultiTracker_Async_UnreachableTrackers_Backups() {
+
+        MultiTracker tracker = new MultiTracker(trackerService, announceKey, false);
+
+        tracker1.shutdown();
+        tracker2.shutdown();
+        tracker3.shutdown();
+        backup1.shutdown();
+
+        TrackerResponse response = tracker.request(torrentId).queryAsync().join();
+        assertTrue(response.isSuccess());
+        assertLogHasTrackers(tracker1, tracker2, tracker3, backup1, backup2);
+
+        clearLog();
+        backup2.shutdown();
+        CompletableFuture<TrackerResponse> future = tracker.request(torrentId).stopAsync();
+        assertTrue(future.isCompletedExceptionally());
+        assertLogHasTrackers(tracker1, tracker2, tracker3, backup2, backup1);
+    }
+
+    @Test
+    public void testMultiTracker_Executor_TierIsQueriedConcurrently() throws Exception {
+
+        MultiTracker tracker = new MultiTracker(trackerService, announceKey, false);
+
+        tracker1.hold();
+        tracker2.hold();
+        tracker3.hold();
+        CompletableFuture<TrackerResponse> future = tracker.request(torrentId).executor(executor).startAsync();
+
+        // all trackers in the tier have been contacted, while none of them has responded yet
+        awaitAccess(tracker1, tracker2, tracker3);
+        assertFalse(future.isDone());
+
+        tracker2.release();
+        assertTrue(future.get(5, TimeUnit.SECONDS).isSuccess());
+        // slow trackers don't hold up the response
+        assertFalse(tracker1.isReleased());
+        assertFalse(tracker3.isReleased());
+        assertEquals(3, accessLog.size());
+    }
+
+    @Test
+    public void testMultiTracker_Executor_FirstSuccessfulResponseIsPromoted() throws Exception {
+
+        MultiTracker tracker = new MultiTracker(trackerService, announceKey, false);
+
+        tracker1.shutdown();
+        tracker2.hold();
+        tracker3.hold();
+        CompletableFuture<TrackerResponse> future = tracker.request(torrentId).executor(executor).queryAsync();
+        awaitAccess(tracker1, tracker2, tracker3);
+
+        tracker3.release();
+        assertTrue(future.get(5, TimeUnit.SECONDS).isSuccess());
+
+        // late successful response does not change the order
+        tracker2.release();
+        tracker2.awaitResponded();
+
+        clearLog();
+        tracker.request(torrentId).query();
+        assertLogHasTrackers(tracker3);
+    }
+
+    @Test
+    public void testMultiTracker_Executor_NextTierIsQueriedAfterAllTrackersFailed() throws Exception {
+
+        MultiTracker tracker = new MultiTracker(trackerService, announceKey, false);
+
+        tracker1.shutdown();
+        tracker2.shutdown();
+        tracker3.shutdown();
+        tracker3.hold();
+        CompletableFuture<TrackerResponse> future = tracker.request(torrentId).executor(executor).queryAsync();
+        awaitAccess(tracker1, tracker2, tracker3);
+        tracker1.awaitResponded();
+        tracker2.awaitResponded();
+
+        // backup tier is not contacted, until the last tracker in the main tier has failed
+        assertEquals(3, accessLog.size());
+        assertFalse(future.isDone());
+
+        tracker3.release();
+        assertTrue(future.get(5, TimeUnit.SECONDS).isSuccess());
+        assertTrue(new HashSet<>(accessLog).contains(backup1));
+    }
+
+    @Test
+    public void testMultiTracker_Executor_AllTrackersFailed() throws Exception {
+
+        MultiTracker tracker = new MultiTracker(trackerService, announceKey, false);
+
+        for (StoppableTracker t : Arrays.asList(tracker1, tracker2, tracker3, backup1, backup2)) {
+            t.shutdown();
+        }
+        CompletableFuture<TrackerResponse> future = tracker.request(torrentId).executor(executor).stopAsync();
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Exception expected");
+        } catch (ExecutionException e) {
+            // expected
+        }
+        assertEquals(new HashSet<>(Arrays.asList(tracker1, tracker2, tracker3, backup1, backup2)),
+                new HashSet<>(accessLog));
+    }
+
+    private void awaitAccess(Tracker... trackers) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!new HashSet<>(snapshotLog()).containsAll(Arrays.asList(trackers))) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Trackers have not been contacted: " + Arrays.asList(trackers) + ", log: " + snapshotLog());
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private List<Tracker> snapshotLog() {
+        synchronized (accessLog) {
+            return new ArrayList<>(accessLog);
+        }
+    }
+
     private void assertLogHasTrackers(Tracker... trackersInVisitingOrder) {
         Tracker[] visitedTrackers = accessLog.toArray(new Tracker[accessLog.size()]);
         assertArrayEquals(trackersInVisitingOrder, visitedTrackers);
@@ -151,12 +315,16 @@ public class MultiTrackerTest {
         private Tracker instance;
         private final String url;
         private TrackerRequestBuilder requestBuilder;
-        private boolean shutdown;
+        private volatile boolean shutdown;
+        private volatile CountDownLatch gate;
+        private final CountDownLatch responded;
 
         public StoppableTracker(String url, TorrentId torrentId, Consumer<Tracker> accessLog) {
 
             instance = this;
             this.url = url;
+            this.gate = new CountDownLatch(0);
+            this.responded = new CountDownLatch(1);
 
             requestBuilder = new TrackerRequestBuilder(torrentId) {
                 @Override
@@ -181,7 +349,16 @@ public class MultiTrackerTest {
 
                 private TrackerResponse logAndResponse() {
                     accessLog.accept(instance);
-                    return shutdown? TrackerResponse.exceptional(new IOException("shutdown")) : TrackerResponse.ok();
+                    try {
+                        gate.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        return TrackerResponse.exceptional(e);
+                    }
+                    try {
+                        return shutdown? TrackerResponse.exceptional(new IOException("shutdown")) : TrackerResponse.ok();
+                    } finally {
+                        responded.countDown();
+                    }
                 }
             };
         }
@@ -199,6 +376,25 @@ public class MultiTrackerTest {
             shutdown = true;
         }
 
+        /**
+         * Delay responses until {@link #release()} is invoked.
+         */
+        public void hold() {
+            gate = new CountDownLatch(1);
+        }
+
+        public void release() {
+            gate.countDown();
+        }
+
+        public boolean isReleased() {
+            return gate.getCount() == 0;
+        }
+
+        public void awaitResponded() throws InterruptedException {
+            assertTrue("No response from " + url, responded.await(5, TimeUnit.SECONDS));
+        }
+
         @Override
         public String toString() {
             return url;
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.tracker;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TrackerRequestLimiterTest {
+
+    @Test
+    public void testLimiter_RequestsAreQueuedPerHost() throws Exception {
+        TrackerRequestLimiter limiter = new TrackerRequestLimiter(2, Runnable::run);
+        List<CompletableFuture<String>> started = new ArrayList<>();
+
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            results.add(limiter.submit("host1", () -> newRequest(started)));
+        }
+        CompletableFuture<String> otherHostResult = limiter.submit("host2", () -> newRequest(started));
+
+        // third request to host1 is queued, but the request to host2 is started immediately
+        assertEquals(3, started.size());
+
+        started.get(0).complete("1");
+        assertEquals("1", results.get(0).get(1, TimeUnit.SECONDS));
+        assertEquals(4, started.size());
+
+        started.get(1).complete("2");
+        started.get(2).complete("host2");
+        started.get(3).complete("3");
+        assertEquals("2", results.get(1).get(1, TimeUnit.SECONDS));
+        assertEquals("3", results.get(2).get(1, TimeUnit.SECONDS));
+        assertEquals("host2", otherHostResult.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testLimiter_FailedRequestReleasesSlot() {
+        TrackerRequestLimiter limiter = new TrackerRequestLimiter(1, Runnable::run);
+
+        CompletableFuture<String> failed = limiter.submit("host", () -> {
+            throw new IllegalStateException();
+        });
+        assertTrue(failed.isCompletedExceptionally());
+
+        CompletableFuture<String> next = limiter.submit("host", () -> CompletableFuture.completedFuture("ok"));
+        assertFalse(next.isCompletedExceptionally());
+        assertEquals("ok", next.join());
+    }
+
+    @Test
+    public void testLimiter_TimedOutRequestReleasesSlot() throws Exception {
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+        try {
+            TrackerRequestLimiter limiter = new TrackerRequestLimiter(1, Runnable::run, timer, Duration.ofMillis(50));
+            List<CompletableFuture<String>> started = new ArrayList<>();
+
+            CompletableFuture<String> hung = limiter.submit("host", () -> newRequest(started));
+            CompletableFuture<String> next = limiter.submit("host", () -> newRequest(started));
+            assertEquals(1, started.size());
+
+            try {
+                hung.get(1, TimeUnit.SECONDS);
+                throw new AssertionError("Request should have timed out");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof TimeoutException);
+            }
+
+            // queued request is started in place of the timed out one
+            assertEquals(2, started.size());
+            started.get(1).complete("ok");
+            assertEquals("ok", next.get(1, TimeUnit.SECONDS));
+        } finally {
+            timer.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testLimiter_GetHost() {
+        assertEquals("tracker.example.com", TrackerRequestLimiter.getHost("udp://Tracker.Example.com:80/announce"));
+        assertEquals("tracker.example.com", TrackerRequestLimiter.getHost("http://tracker.example.com/announce?key=1"));
+    }
+
+    private static CompletableFuture<String> newRequest(List<CompletableFuture<String>> started) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        started.add(future);
+        return future;
+    }
+}
@@ -32,28 +32,39 @@ import java.net.SocketException;
 import java.time.Duration;
 import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class SingleClientUdpTracker extends ExternalResource implements Runnable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SingleClientUdpTracker.class);
 
-    private static final Duration CONNECTION_EXPIRATION_TIME = Duration.ofMinutes(2);
+    private static final Duration DEFAULT_CONNECTION_EXPIRATION_TIME = Duration.ofMinutes(2);
     private static final long EPHEMERAL_CONNECTION_ID = 0x41727101980L;
 
     private static final int CONNECT_CODE = 0;
     private static final int ANNOUNCE_CODE = 1;
+    private static final int SCRAPE_CODE = 2;
     private static final int ERROR_CODE = 3;
 
     private final DatagramSocket serverSocket;
     private final int interval;
     private final int leechers;
     private final int seeders;
+    private final Duration connectionExpirationTime;
+
+    private final AtomicInteger connectRequests;
+    private final AtomicInteger announceRequests;
+    private final AtomicInteger requestsToDrop;
 
     private volatile boolean shutdown;
     private volatile long currentConnection;
     private volatile long connectedOn;
 
     public SingleClientUdpTracker(int interval, int leechers, int seeders) {
+        this(interval, leechers, seeders, DEFAULT_CONNECTION_EXPIRATION_TIME);
+    }
+
+    public SingleClientUdpTracker(int interval, int leechers, int seeders, Duration connectionExpirationTime) {
         try {
             this.serverSocket = new DatagramSocket(new InetSocketAddress(Inet4Address.getLoopbackAddress(), 0));
         } catch (SocketException e) {
@@ -63,6 +74,25 @@ public class SingleClientUdpTracker extends ExternalResource implements Runnable
         this.interval = interval;
         this.leechers = leechers;
         this.seeders = seeders;
+        this.connectionExpirationTime = connectionExpirationTime;
+        this.connectRequests = new AtomicInteger();
+        this.announceRequests = new AtomicInteger();
+        this.requestsToDrop = new AtomicInteger();
+    }
+
+    /**
+     * Don't respond to the next {@code count} requests (they are still counted).
+     */
+    public void dropRequests(int count) {
+        requestsToDrop.set(count);
+    }
+
+    public int getConnectRequests() {
+        return connectRequests.get();
+    }
+
+    public int getAnnounceRequests() {
+        return announceRequests.get();
     }
 
     public SocketAddress getServerAddress() {
@@ -81,7 +111,14 @@ public class SingleClientUdpTracker extends ExternalResource implements Runnable
                 throw new RuntimeException("Unexpected I/O error", e);
             }
 
-            byte[] response = processRequest(Arrays.copyOfRange(rbuf, 0, received.getLength()));
+            byte[] request = Arrays.copyOfRange(rbuf, 0, received.getLength());
+            countRequest(request);
+            if (requestsToDrop.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                LOGGER.info("Dropped message from {}", received.getSocketAddress());
+                continue;
+            }
+
+            byte[] response = processRequest(request);
             DatagramPacket sent = new DatagramPacket(response, response.length, received.getSocketAddress());
             try {
                 serverSocket.send(sent);
@@ -92,11 +129,20 @@ public class SingleClientUdpTracker extends ExternalResource implements Runnable
         }
     }
 
+    private void countRequest(byte[] requestData) {
+        int action = Protocols.readInt(requestData, 8);
+        if (action == CONNECT_CODE) {
+            connectRequests.incrementAndGet();
+        } else if (action == ANNOUNCE_CODE) {
+            announceRequests.incrementAndGet();
+        }
+    }
+
     private byte[] processRequest(byte[] requestData) {
         long connectionId = Protocols.readLong(requestData, 0);
         int action = Protocols.readInt(requestData, 8);
         int transactionId = Protocols.readInt(requestData, 12);
-        boolean connectionExpired = System.currentTimeMillis() - connectedOn > CONNECTION_EXPIRATION_TIME.toMillis();
+        boolean connectionExpired = System.currentTimeMillis() - connectedOn > connectionExpirationTime.toMillis();
 
         switch (action) {
             case CONNECT_CODE: {
@@ -118,6 +164,14 @@ public class SingleClientUdpTracker extends ExternalResource implements Runnable
                 }
                 return createAnnounceResponse(currentConnection, transactionId);
             }
+            case SCRAPE_CODE: {
+                if (currentConnection != connectionId) {
+                    return createError(transactionId, "Unknown connection: " + connectionId);
+                } else if (connectionExpired) {
+                    return createError(transactionId, "Connection expired: " + connectionId);
+                }
+                return createScrapeResponse(transactionId, (requestData.length - 16) / 20);
+            }
             default: {
                 return createError(transactionId, "Unsupported action: " + action);
             }
@@ -146,6 +200,18 @@ public class SingleClientUdpTracker extends ExternalResource implements Runnable
         return data;
     }
 
+    private byte[] createScrapeResponse(int transactionId, int torrentCount) {
+        byte[] data = new byte[4 + 4 + torrentCount * 12];
+        System.arraycopy(Protocols.getIntBytes(SCRAPE_CODE), 0, data, 0, 4);
+        System.arraycopy(Protocols.getIntBytes(transactionId), 0, data, 4, 4);
+        for (int i = 0, offset = 8; i < torrentCount; i++, offset += 12) {
+            System.arraycopy(Protocols.getIntBytes(seeders), 0, data, offset, 4);
+            System.arraycopy(Protocols.getIntBytes(torrentCount), 0, data, offset + 4, 4);
+            System.arraycopy(Protocols.getIntBytes(leechers), 0, data, offset + 8, 4);
+        }
+        return data;
+    }
+
     private byte[] createError(int transactionId, String message) {
         byte[] messageBytes;
         try {
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2016—2017 Andrei Tomashpolskiy and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.tracker.udp;
+
+import bt.BtException;
+import bt.metainfo.TorrentId;
+import bt.net.PeerId;
+import bt.tracker.ScrapeData;
+import bt.tracker.TrackerResponse;
+import bt.tracker.udp.AnnounceRequest.EventType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.Inet4Address;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class UdpTrackerEngineTest {
+
+    private SingleClientUdpTracker tracker;
+    private UdpTrackerEngine engine;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        tracker = new SingleClientUdpTracker(1, 2, 3);
+        executor = Executors.newSingleThreadExecutor();
+        executor.submit(tracker);
+
+        engine = new UdpTrackerEngine(new InetSocketAddress(Inet4Address.getLoopbackAddress(), 0),
+                new MockRuntimeLifecycleBinder());
+    }
+
+    private void useEngine(Duration baseTimeout, Duration sessionDuration) {
+        engine.shutdown();
+        engine = new UdpTrackerEngine(new InetSocketAddress(Inet4Address.getLoopbackAddress(), 0),
+                new MockRuntimeLifecycleBinder(), baseTimeout, 3, sessionDuration);
+    }
+
+    private void useTracker(Duration connectionExpirationTime) {
+        tracker.shutdown();
+        tracker = new SingleClientUdpTracker(1, 2, 3, connectionExpirationTime);
+        executor.submit(tracker);
+    }
+
+    @After
+    public void tearDown() {
+        engine.shutdown();
+        tracker.shutdown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testEngine_ConcurrentRequestsShareConnection() throws Exception {
+        // tracker rejects connect requests, until the previous connection expires,
+        // so both requests will succeed only if a single connection ID is used
+        CompletableFuture<TrackerResponse> f1 = engine.sendMessage(tracker.getServerAddress(),
+                createAnnounceRequest(), AnnounceResponseHandler.handler());
+        CompletableFuture<TrackerResponse> f2 = engine.sendMessage(tracker.getServerAddress(),
+                createAnnounceRequest(), AnnounceResponseHandler.handler());
+
+        assertSuccess(f1.get(10, TimeUnit.SECONDS));
+        assertSuccess(f2.get(10, TimeUnit.SECONDS));
+
+        // connection ID is cached
+        assertSuccess(engine.sendMessage(tracker.getServerAddress(),
+                createAnnounceRequest(), AnnounceResponseHandler.handler()).get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testEngine_LostRequestIsRetransmitted() throws Exception {
+        useEngine(Duration.ofMillis(100), Duration.ofMinutes(1));
+        assertSuccess(announce().get(10, TimeUnit.SECONDS));
+
+        tracker.dropRequests(1);
+        assertSuccess(announce().get(10, TimeUnit.SECONDS));
+        assertEquals(1, tracker.getConnectRequests());
+        assertEquals(3, tracker.getAnnounceRequests());
+    }
+
+    @Test
+    public void testEngine_NoResponse_GivesUpAfterMaxAttempts() throws Exception {
+        useEngine(Duration.ofMillis(50), Duration.ofMinutes(1));
+        assertSuccess(announce().get(10, TimeUnit.SECONDS));
+
+        tracker.dropRequests(Integer.MAX_VALUE);
+        long started = System.currentTimeMillis();
+        assertTimeout(announce());
+        // 50 + 100 + 200 ms
+        assertTrue(System.currentTimeMillis() - started >= 350);
+        assertEquals(1 + 3, tracker.getAnnounceRequests());
+    }
+
+    @Test
+    public void testEngine_NoResponse_MaxRequestTimeIsEnforced() throws Exception {
+        useEngine(Duration.ofSeconds(10), Duration.ofMinutes(1));
+
+        tracker.dropRequests(Integer.MAX_VALUE);
+        long started = System.currentTimeMillis();
+        // connect request is not answered either
+        assertTimeout(engine.sendMessage(tracker.getServerAddress(),
+                createAnnounceRequest(), AnnounceResponseHandler.handler(), Duration.ofMillis(300)));
+        assertTrue(System.currentTimeMillis() - started < 5000);
+        assertEquals(1, tracker.getConnectRequests());
+        assertEquals(0, tracker.getAnnounceRequests());
+    }
+
+    @Test
+    public void testEngine_RetransmissionRefreshesExpiredConnection() throws Exception {
+        useTracker(Duration.ofMillis(200));
+        useEngine(Duration.ofMillis(500), Duration.ofMillis(200));
+        assertSuccess(announce().get(10, TimeUnit.SECONDS));
+
+        // by the time of re-transmission the connection ID is expired,
+        // and the tracker would respond with an error, if it was re-used
+        tracker.dropRequests(1);
+        assertSuccess(announce().get(10, TimeUnit.SECONDS));
+        assertEquals(2, tracker.getConnectRequests());
+        assertEquals(3, tracker.getAnnounceRequests());
+    }
+
+    @Test
+    public void testTracker_ScrapeIsBatched() throws Exception {
+        InetSocketAddress address = (InetSocketAddress) tracker.getServerAddress();
+        UdpTracker udpTracker = new UdpTracker(null, engine, 0, 0,
+                "udp://" + address.getHostString() + ":" + address.getPort());
+
+        List<TorrentId> torrentIds = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            byte[] bytes = new byte[20];
+            bytes[0] = (byte) i;
+            torrentIds.add(TorrentId.fromBytes(bytes));
+        }
+
+        Map<TorrentId, ScrapeData> result = udpTracker.scrape(torrentIds).get(10, TimeUnit.SECONDS);
+        assertEquals(100, result.size());
+
+        // mock tracker reports the number of torrents in the request as the completed count
+        ScrapeData first = result.get(torrentIds.get(0));
+        assertEquals(3, first.getSeederCount());
+        assertEquals(ScrapeRequest.MAX_TORRENTS_PER_REQUEST, first.getCompletedCount());
+        assertEquals(2, first.getLeecherCount());
+        assertEquals(100 - ScrapeRequest.MAX_TORRENTS_PER_REQUEST, result.get(torrentIds.get(99)).getCompletedCount());
+    }
+
+    private CompletableFuture<TrackerResponse> announce() {
+        return engine.sendMessage(tracker.getServerAddress(), createAnnounceRequest(), AnnounceResponseHandler.handler());
+    }
+
+    private static void assertTimeout(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("Exception expected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof BtException);
+            assertTrue(e.getCause().getCause() instanceof TimeoutException);
+        }
+    }
+
+    private static void assertSuccess(TrackerResponse response) {
+        assertFalse(response.getError().isPresent());
+        assertEquals(1, response.getInterval());
+        assertEquals(2, response.getLeecherCount());
+        assertEquals(3, response.getSeederCount());
+    }
+
+    private static AnnounceRequest createAnnounceRequest() {
+        AnnounceRequest request = new AnnounceRequest();
+        request.setTorrentId(TorrentId.fromBytes(new byte[20]));
+        request.setPeerId(PeerId.fromBytes(new byte[20]));
+        request.setEventType(EventType.START);
+        return request;
+    }
+}